@@ -1,5 +1,11 @@
 package enigma;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Divya Sivanandan
@@ -10,6 +16,15 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
+        int limit = 0;
+        for (int i = 0; i < chars.length(); i += 1) {
+            limit = Math.max(limit, chars.charAt(i) + 1);
+        }
+        _index = new int[limit];
+        Arrays.fill(_index, -1);
+        for (int i = chars.length() - 1; i >= 0; i -= 1) {
+            _index[chars.charAt(i)] = i;
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -24,7 +39,7 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return (_chars.indexOf(ch) != -1);
+        return toInt(ch) != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -37,10 +52,83 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        return _chars.indexOf(Character.toString(ch));
+        return ch < _index.length ? _index[ch] : -1;
+    }
+
+    /** Returns the characters of MSG as a packed array of indices into
+     *  this alphabet, skipping whitespace as Machine.convert does.  The
+     *  alphabet must have at most 256 characters; indices are stored
+     *  as unsigned bytes. */
+    byte[] pack(String msg) {
+        if (size() > MAX_PACKED) {
+            throw error("alphabet too large to pack into bytes");
+        }
+        byte[] packed = new byte[msg.length()];
+        int n = 0;
+        for (int i = 0; i < msg.length(); i += 1) {
+            char ch = msg.charAt(i);
+            if (ch <= ' ') {
+                continue;
+            }
+            int index = toInt(ch);
+            if (index == -1) {
+                throw error("character %c not in alphabet", ch);
+            }
+            packed[n] = (byte) index;
+            n += 1;
+        }
+        return Arrays.copyOf(packed, n);
+    }
+
+    /** Returns a table giving, for each byte B (as 0 .. 255) of text
+     *  encoded in CHARSET, the index of the character it encodes, or SKIP
+     *  if it is whitespace or a UTF-8 continuation byte, which
+     *  Machine.convert ignores.  Bytes of characters outside the alphabet
+     *  map to size() - 1, which Machine treats them as.  Returns null
+     *  unless CHARSET encodes each of my characters, and each whitespace
+     *  character, as the single byte of the same value, so that text can
+     *  be converted a byte at a time. */
+    int[] byteIndices(Charset charset) {
+        int limit;
+        boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+        if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            limit = BYTE_VALUES;
+        } else if (utf8 || charset.equals(StandardCharsets.US_ASCII)) {
+            limit = ASCII_VALUES;
+        } else {
+            return null;
+        }
+        if (_index.length > limit) {
+            return null;
+        }
+        int[] table = new int[BYTE_VALUES];
+        for (int b = 0; b < BYTE_VALUES; b += 1) {
+            if (b <= ' ' || (utf8 && (b & UTF8_TAG) == UTF8_CONTINUATION)) {
+                table[b] = SKIP;
+            } else {
+                int index = toInt((char) b);
+                table[b] = index == -1 ? size() - 1 : index;
+            }
+        }
+        return table;
     }
 
+    /** Entry of byteIndices() for a byte to skip. */
+    static final int SKIP = -1;
+
+    /** Number of byte values, and of ASCII characters. */
+    private static final int BYTE_VALUES = 256, ASCII_VALUES = 128;
+
+    /** Mask and value of the top bits of a UTF-8 continuation byte. */
+    private static final int UTF8_TAG = 0xc0, UTF8_CONTINUATION = 0x80;
+
+    /** Largest alphabet whose indices fit in an unsigned byte. */
+    static final int MAX_PACKED = 256;
+
     /** Represents the letters in the alphabet. */
     private String _chars;
 
+    /** Maps each character to its index in _chars, or to -1. */
+    private int[] _index;
+
 }
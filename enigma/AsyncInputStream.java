@@ -0,0 +1,138 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** An InputStream that reads ahead from another on a thread of its own,
+ *  so that work done by that stream, such as decompression, overlaps with
+ *  the work of its reader.  Chunks of data pass to the reader through a
+ *  RingBuffer and return through another for reuse.
+ *  @author Divya Sivanandan
+ */
+final class AsyncInputStream extends InputStream {
+
+    /** A stream reading ahead from SOURCE, in a thread named NAME. */
+    AsyncInputStream(InputStream source, String name) {
+        _source = source;
+        _full = new RingBuffer<>(CHUNKS, () -> _closed);
+        _free = new RingBuffer<>(CHUNKS, () -> _closed);
+        for (int k = 0; k < CHUNKS; k += 1) {
+            _free.put(new Chunk());
+        }
+        _thread = new Thread(this::fill, name);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    /** Body of the read-ahead thread, which ends at the end of input or
+     *  once I am closed. */
+    private void fill() {
+        try {
+            while (!_closed) {
+                Chunk chunk = _free.take();
+                try {
+                    chunk.length = _source.read(chunk.data);
+                } catch (IOException excp) {
+                    chunk.length = -1;
+                    chunk.error = excp;
+                }
+                _full.put(chunk);
+                if (chunk.length < 0) {
+                    return;
+                }
+            }
+        } catch (EnigmaException excp) {
+            return;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (_current == null || _pos >= _current.length) {
+            if (_current != null && _current.length < 0) {
+                if (_current.error != null) {
+                    throw _current.error;
+                }
+                return -1;
+            }
+            if (_current != null) {
+                _free.put(_current);
+            }
+            try {
+                _current = _full.take();
+            } catch (EnigmaException excp) {
+                throw new IOException("stream closed");
+            }
+            _pos = 0;
+        }
+        int n = Math.min(len, _current.length - _pos);
+        System.arraycopy(_current.data, _pos, buf, off, n);
+        _pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _thread.interrupt();
+        boolean interrupted = false;
+        while (_thread.isAlive()) {
+            try {
+                _thread.join();
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        _source.close();
+    }
+
+    /** A buffer of data read ahead. */
+    private static final class Chunk {
+        /** The data. */
+        private final byte[] data = new byte[CHUNK_SIZE];
+        /** Number of bytes of DATA filled, or -1 at the end of input. */
+        private int length;
+        /** Error ending the input, or null. */
+        private IOException error;
+    }
+
+    /** Bytes per chunk. */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /** Number of chunks in circulation. */
+    private static final int CHUNKS = 4;
+
+    /** Stream read ahead. */
+    private final InputStream _source;
+
+    /** Thread reading ahead from _source. */
+    private final Thread _thread;
+
+    /** Chunks read, and chunks free for reading into. */
+    private final RingBuffer<Chunk> _full, _free;
+
+    /** Chunk being consumed, or null. */
+    private Chunk _current;
+
+    /** Position of the next byte in _current. */
+    private int _pos;
+
+    /** True once I am closed. */
+    private volatile boolean _closed;
+
+}
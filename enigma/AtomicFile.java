@@ -0,0 +1,78 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static enigma.EnigmaException.*;
+
+/** Side files (checkpoints, progress records, tables) that are replaced
+ *  atomically, so that a crash leaves either the old or the new contents
+ *  and never a torn file.
+ *  @author Divya Sivanandan
+ */
+final class AtomicFile {
+
+    /** Not instantiable. */
+    private AtomicFile() {
+    }
+
+    /** Replace the contents of FILE with CONTENTS, encoded as UTF-8. */
+    static void write(File file, String contents) {
+        write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Replace the contents of FILE with BYTES. */
+    static void write(File file, byte[] bytes) {
+        write(file, out -> out.write(bytes));
+    }
+
+    /** Writes the contents of a file. */
+    interface Contents {
+        /** Write the contents to OUT. */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /** Replace the contents of FILE with what CONTENTS writes, which may
+     *  be large: it is streamed through a buffer to a new temporary file
+     *  beside FILE, which is forced and then renamed over FILE. */
+    static void write(File file, Contents contents) {
+        File temp;
+        try {
+            temp = File.createTempFile(file.getName() + ".tmp", null,
+                                       file.getAbsoluteFile()
+                                       .getParentFile());
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                BufferedOutputStream buffered =
+                    new BufferedOutputStream(out, BUFFER_SIZE);
+                contents.writeTo(buffered);
+                buffered.flush();
+                out.getFD().sync();
+            } catch (IOException excp) {
+                throw error("could not write %s", temp);
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                throw error("could not write %s", file);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /** Size of the buffer through which contents are written. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+}
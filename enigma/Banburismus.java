@@ -0,0 +1,209 @@
+package enigma;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Scores pairs of messages enciphered under the same wheel order for
+ *  depth, in the manner of Banburismus: for every relative offset of
+ *  every pair, counts the positions at which the two ciphertexts agree.
+ *  Two messages enciphered from the same machine state agree at roughly
+ *  the plaintext repeat rate; unrelated ones only at 1/|alphabet|.
+ *
+ *  Messages are kept packed as byte indices (see Alphabet.pack).  The
+ *  all-pairs comparison is split into tiles of messages small enough
+ *  that two tiles stay in cache together, and pairs of tiles are scored
+ *  in parallel.
+ *  @author Divya Sivanandan
+ */
+class Banburismus {
+
+    /** Plaintext repeat rate of German, used when none is given. */
+    static final double GERMAN_KAPPA = 0.0762;
+
+    /** A scorer for messages in ALPHA whose plaintexts agree at a rate
+     *  of KAPPA, which must exceed the random rate 1/ALPHA.size(). */
+    Banburismus(Alphabet alpha, double kappa) {
+        double random = 1.0 / alpha.size();
+        if (kappa <= random || kappa >= 1.0) {
+            throw error("repeat rate must lie between %.4f and 1", random);
+        }
+        _alphabet = alpha;
+        _hit = 10.0 * Math.log10(kappa / random);
+        _miss = 10.0 * Math.log10((1.0 - kappa) / (1.0 - random));
+        _messages = new ArrayList<>();
+    }
+
+    /** A scorer for German messages in ALPHA. */
+    Banburismus(Alphabet alpha) {
+        this(alpha, GERMAN_KAPPA);
+    }
+
+    /** Add the ciphertext MSG to the traffic set and return its index.
+     *  Whitespace in MSG is ignored. */
+    int add(String msg) {
+        _messages.add(_alphabet.pack(msg));
+        return _messages.size() - 1;
+    }
+
+    /** Return the number of messages added so far. */
+    int size() {
+        return _messages.size();
+    }
+
+    /** Return the weight in decibans of COINCIDENCES agreements among
+     *  OVERLAP aligned letters. */
+    double score(int coincidences, int overlap) {
+        return coincidences * _hit + (overlap - coincidences) * _miss;
+    }
+
+    /** Return the LIMIT best-scoring pair/offset alignments over all pairs
+     *  of messages and all offsets at which they share at least
+     *  MINOVERLAP letters, best first. */
+    List<Depth> depths(int minOverlap, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        byte[][] msgs = _messages.toArray(new byte[0][]);
+        int[] tiles = tiles(msgs);
+        int numTiles = tiles.length - 1;
+        PriorityQueue<Depth> best =
+            IntStream.range(0, numTiles * (numTiles + 1) / 2).parallel()
+            .mapToObj(t -> scoreTiles(msgs, tiles, t, minOverlap, limit))
+            .reduce(new PriorityQueue<>(Collections.reverseOrder()),
+                    (a, b) -> merge(a, b, limit));
+        List<Depth> result = new ArrayList<>(best);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the boundaries of tiles of consecutive messages in MSGS, each
+     *  holding at most TILE_BYTES letters unless it is a single message.
+     *  Tile K holds messages tiles[K] .. tiles[K + 1] - 1. */
+    private static int[] tiles(byte[][] msgs) {
+        ArrayList<Integer> bounds = new ArrayList<>();
+        bounds.add(0);
+        int bytes = 0;
+        for (int i = 0; i < msgs.length; i += 1) {
+            if (bytes > 0 && bytes + msgs[i].length > TILE_BYTES) {
+                bounds.add(i);
+                bytes = 0;
+            }
+            bytes += msgs[i].length;
+        }
+        if (msgs.length > 0) {
+            bounds.add(msgs.length);
+        }
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Score all pairs drawn from the T-th pair of tiles (in row-major
+     *  order over the upper triangle) of MSGS, whose boundaries are TILES,
+     *  keeping the LIMIT best alignments of at least MINOVERLAP letters. */
+    private PriorityQueue<Depth> scoreTiles(byte[][] msgs, int[] tiles,
+                                            int t, int minOverlap,
+                                            int limit) {
+        int row = 0, remaining = t, width = tiles.length - 1;
+        while (remaining >= width - row) {
+            remaining -= width - row;
+            row += 1;
+        }
+        int col = row + remaining;
+        PriorityQueue<Depth> best =
+            new PriorityQueue<>(Collections.reverseOrder());
+        for (int i = tiles[row]; i < tiles[row + 1]; i += 1) {
+            int start = row == col ? i + 1 : tiles[col];
+            for (int j = start; j < tiles[col + 1]; j += 1) {
+                scorePair(msgs, i, j, minOverlap, limit, best);
+            }
+        }
+        return best;
+    }
+
+    /** Add to BEST, which holds at most LIMIT entries, the alignments of
+     *  messages I and J of MSGS that overlap by at least MINOVERLAP
+     *  letters and beat the worst entry of BEST. */
+    private void scorePair(byte[][] msgs, int i, int j, int minOverlap,
+                           int limit, PriorityQueue<Depth> best) {
+        byte[] a = msgs[i], b = msgs[j];
+        for (int d = minOverlap - b.length; d <= a.length - minOverlap;
+             d += 1) {
+            int lo = Math.max(0, d), hi = Math.min(a.length, b.length + d);
+            int overlap = hi - lo;
+            int hits = coincidences(a, lo, b, lo - d, overlap);
+            double score = score(hits, overlap);
+            if (best.size() < limit) {
+                best.add(new Depth(i, j, d, overlap, hits, score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new Depth(i, j, d, overlap, hits, score));
+            }
+        }
+    }
+
+    /** Return the number of K, 0 <= K < LEN, for which A[ASTART + K] is
+     *  B[BSTART + K].  Compares eight letters at a time: a letter agrees
+     *  exactly when its byte of the XOR of the two words is zero. */
+    static int coincidences(byte[] a, int aStart, byte[] b, int bStart,
+                            int len) {
+        int count = 0;
+        int k;
+        for (k = 0; k + Long.BYTES <= len; k += Long.BYTES) {
+            long x = (long) WORDS.get(a, aStart + k)
+                ^ (long) WORDS.get(b, bStart + k);
+            long zeros = ~(((x & LOW7) + LOW7) | x | LOW7);
+            count += Long.bitCount(zeros);
+        }
+        for (; k < len; k += 1) {
+            count += a[aStart + k] == b[bStart + k] ? 1 : 0;
+        }
+        return count;
+    }
+
+    /** Return A, after adding to it the entries of B and then trimming it
+     *  to the LIMIT best. */
+    private static PriorityQueue<Depth> merge(PriorityQueue<Depth> a,
+                                              PriorityQueue<Depth> b,
+                                              int limit) {
+        PriorityQueue<Depth> result =
+            new PriorityQueue<>(Collections.reverseOrder());
+        result.addAll(a);
+        result.addAll(b);
+        while (result.size() > limit) {
+            result.poll();
+        }
+        return result;
+    }
+
+    /** View of a byte array as unaligned longs. */
+    private static final VarHandle WORDS =
+        MethodHandles.byteArrayViewVarHandle(long[].class,
+                                             ByteOrder.nativeOrder());
+
+    /** The low seven bits of every byte of a long. */
+    private static final long LOW7 = 0x7f7f7f7f7f7f7f7fL;
+
+    /** Maximum number of letters in a tile of messages, chosen so that
+     *  two tiles fit comfortably in a core's private cache. */
+    private static final int TILE_BYTES = 1 << 14;
+
+    /** Alphabet of the messages. */
+    private final Alphabet _alphabet;
+
+    /** Decibans contributed by one coincidence. */
+    private final double _hit;
+
+    /** Decibans contributed by one non-coincidence. */
+    private final double _miss;
+
+    /** Packed ciphertexts. */
+    private final ArrayList<byte[]> _messages;
+
+}
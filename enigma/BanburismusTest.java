@@ -0,0 +1,51 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Banburismus class.
+ *  @author Divya Sivanandan
+ */
+public class BanburismusTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testCoincidences() {
+        byte[] a = UPPER.pack("ABCDEFG");
+        byte[] b = UPPER.pack("XBCXEXG");
+        assertEquals(4, Banburismus.coincidences(a, 0, b, 0, 7));
+        assertEquals(2, Banburismus.coincidences(a, 1, b, 1, 2));
+    }
+
+    @Test
+    public void testFindsOffset() {
+        String text = "QWERTYUIOPASDFGHJKLZXCVBNMMNBVCXZLKJHGFDSAPOIUYTREWQ";
+        Banburismus b = new Banburismus(UPPER);
+        b.add("ZZZZZ" + text);
+        b.add("KKKK");
+        b.add(text.substring(10));
+        List<Depth> depths = b.depths(4, 3);
+        assertEquals(3, depths.size());
+        Depth top = depths.get(0);
+        assertEquals(0, top.first());
+        assertEquals(2, top.second());
+        assertEquals(15, top.offset());
+        assertEquals(text.length() - 10, top.coincidences());
+        assertTrue(top.score() >= depths.get(1).score());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadKappa() {
+        new Banburismus(UPPER, 0.01);
+    }
+
+}
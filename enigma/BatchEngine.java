@@ -0,0 +1,246 @@
+package enigma;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** Runs many copies of a machine, each under its own key, in lockstep
+ *  over the same text.  The state of the copies ("lanes") is held as
+ *  parallel primitive arrays indexed by slot and then by lane: the
+ *  position of each rotor and the offset of its wiring in a table shared
+ *  by all rotors.  Each character is first stepped and then converted
+ *  through every slot for all lanes at once, so the inner loops run over
+ *  lanes with no virtual calls.
+ *
+ *  Wiring tables are doubled in length so that a rotor whose wiring is
+ *  offset by P maps C by looking up C + P and subtracting P, with no
+ *  modulus.  The offset of a rotor at position P with ring setting R is
+ *  P - R, and is what each lane tracks; notch tables are doubled too, so
+ *  that the notch flag of the position is found at the offset plus R.
+ *
+ *  The stepping is that of Machine, for wheel orders that put moving
+ *  rotors in exactly the pawl slots, as those of a KeySpace do.
+ *  @author Divya Sivanandan
+ */
+class BatchEngine {
+
+    /** An engine with LANES lanes for the rotors available to M, using
+     *  the plugboard of M or, if it has none, no plugboard. */
+    BatchEngine(Machine M, int lanes) {
+        Alphabet alpha = M.alphabet();
+        _size = alpha.size();
+        _numRotors = M.numRotors();
+        _pawls = M.numPawls();
+        _lanes = lanes;
+        Map<String, Rotor> all = M.getAllRotors();
+        _rotorIds = new HashMap<>();
+        _fwd = new int[all.size() * 2 * _size];
+        _bwd = new int[all.size() * 2 * _size];
+        _notch = new boolean[all.size() * 2 * _size];
+        int id = 0;
+        for (Map.Entry<String, Rotor> e : all.entrySet()) {
+            Permutation perm = e.getValue().permutation();
+            for (int i = 0; i < 2 * _size; i += 1) {
+                _fwd[id * 2 * _size + i] = perm.wrap(perm.permute(i % _size));
+                _bwd[id * 2 * _size + i] = perm.wrap(perm.invert(i % _size));
+            }
+            Rotor r = e.getValue();
+            if (r.rotates()) {
+                int saved = r.setting();
+                for (int p = 0; p < _size; p += 1) {
+                    r.set(p);
+                    _notch[id * 2 * _size + p] = r.atNotch();
+                    _notch[id * 2 * _size + _size + p] = r.atNotch();
+                }
+                r.set(saved);
+            }
+            _rotorIds.put(e.getKey(), id);
+            id += 1;
+        }
+        _plugFwd = new int[_size];
+        _plugBwd = new int[_size];
+        Permutation plug = M.plugboard();
+        for (int i = 0; i < _size; i += 1) {
+            _plugFwd[i] = plug == null ? i : plug.wrap(plug.permute(i));
+            _plugBwd[i] = plug == null ? i : plug.wrap(plug.invert(i));
+        }
+        _wiring = new int[_numRotors][lanes];
+        _notchBase = new int[_numRotors][lanes];
+        _pos = new int[_numRotors][lanes];
+        _cur = new int[lanes];
+        _live = lanes;
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Set LANE to the rotors named ROTORS (reflector first) at SETTINGS,
+     *  the positions of all but the reflector, leftmost first, with ring
+     *  settings 0. */
+    void load(int lane, String[] rotors, int[] settings) {
+        load(lane, rotors, settings, new int[settings.length]);
+    }
+
+    /** Set LANE to the rotors named ROTORS (reflector first) at SETTINGS
+     *  with ring settings RINGS, both for all but the reflector, leftmost
+     *  first. */
+    void load(int lane, String[] rotors, int[] settings, int[] rings) {
+        if (rotors.length != _numRotors
+            || settings.length != _numRotors - 1
+            || rings.length != settings.length) {
+            throw error("wrong number of rotors");
+        }
+        for (int s = 0; s < _numRotors; s += 1) {
+            Integer id = _rotorIds.get(rotors[s]);
+            if (id == null) {
+                throw error("Rotor not available");
+            }
+            _wiring[s][lane] = id * 2 * _size;
+            int ring = s == 0 ? 0 : rings[s - 1];
+            int offset = s == 0 ? 0 : settings[s - 1] - ring;
+            _notchBase[s][lane] = id * 2 * _size + ring;
+            _pos[s][lane] = offset < 0 ? offset + _size : offset;
+        }
+    }
+
+    /** Set the first COUNT lanes to KEYS[0 .. COUNT - 1] of KEYSPACE, and
+     *  any remaining lanes to KEYS[0], and make all lanes live. */
+    void load(KeySpace keySpace, long[] keys, int count) {
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            long key = keys[lane < count ? lane : 0];
+            load(lane, keySpace.rotors(key), keySpace.settings(key),
+                 keySpace.rings(key));
+        }
+        _live = _lanes;
+    }
+
+    /** Convert only lanes 0 .. LIVE - 1 from now on, until the next
+     *  load of all lanes. */
+    void retain(int live) {
+        _live = live;
+    }
+
+    /** Exchange the machines of lanes A and B. */
+    void swap(int a, int b) {
+        for (int s = 0; s < _numRotors; s += 1) {
+            swap(_wiring[s], a, b);
+            swap(_notchBase[s], a, b);
+            swap(_pos[s], a, b);
+        }
+    }
+
+    /** Exchange ARR[A] and ARR[B]. */
+    private static void swap(int[] arr, int a, int b) {
+        int t = arr[a];
+        arr[a] = arr[b];
+        arr[b] = t;
+    }
+
+    /** Convert the alphabet indices TEXT[0 .. LEN - 1] in every live
+     *  lane, advancing the machines, and store the result for character
+     *  T in lane L in OUT[T * lanes() + L]. */
+    void convert(int[] text, int len, int[] out) {
+        convert(text, 0, len, out);
+    }
+
+    /** Convert TEXT[FROM .. TO - 1] as convert(int[], int, int[]) does,
+     *  continuing from where the machines are, but store the result for
+     *  character T in lane L in OUT[(T - FROM) * lanes() + L], so that
+     *  OUT need only hold TO - FROM characters. */
+    void convert(int[] text, int from, int to, int[] out) {
+        int n = _numRotors, lanes = _live, size = _size;
+        int[] cur = _cur;
+        for (int t = from; t < to; t += 1) {
+            step();
+            int c = _plugFwd[text[t]];
+            for (int lane = 0; lane < lanes; lane += 1) {
+                cur[lane] = c;
+            }
+            for (int s = n - 1; s >= 0; s -= 1) {
+                int[] wiring = _wiring[s], pos = _pos[s];
+                for (int lane = 0; lane < lanes; lane += 1) {
+                    int x = _fwd[wiring[lane] + cur[lane] + pos[lane]]
+                        - pos[lane];
+                    cur[lane] = x + ((x >> SIGN) & size);
+                }
+            }
+            for (int s = 1; s < n; s += 1) {
+                int[] wiring = _wiring[s], pos = _pos[s];
+                for (int lane = 0; lane < lanes; lane += 1) {
+                    int x = _bwd[wiring[lane] + cur[lane] + pos[lane]]
+                        - pos[lane];
+                    cur[lane] = x + ((x >> SIGN) & size);
+                }
+            }
+            int o = (t - from) * _lanes;
+            for (int lane = 0; lane < lanes; lane += 1) {
+                out[o + lane] = _plugBwd[cur[lane]];
+            }
+        }
+    }
+
+    /** Advance the rotors of every lane as Machine.convert does before
+     *  converting a character. */
+    private void step() {
+        int n = _numRotors, first = _numRotors - _pawls, size = _size;
+        if (_pawls == 0) {
+            return;
+        }
+        for (int lane = 0; lane < _live; lane += 1) {
+            boolean rightNotch = false;
+            for (int s = n - 1; s >= first; s -= 1) {
+                int p = _pos[s][lane];
+                boolean here = _notch[_notchBase[s][lane] + p];
+                if (s == n - 1 || rightNotch || (here && s != first)) {
+                    _pos[s][lane] = p + 1 == size ? 0 : p + 1;
+                }
+                rightNotch = here;
+            }
+        }
+    }
+
+    /** Shift that turns an int into 0 or -1 by its sign. */
+    private static final int SIGN = 31;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of rotor slots and of pawls. */
+    private final int _numRotors, _pawls;
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** Number of lanes converted. */
+    private int _live;
+
+    /** Index of each rotor's tables, by name. */
+    private final HashMap<String, Integer> _rotorIds;
+
+    /** Doubled forward and backward wirings of all rotors. */
+    private final int[] _fwd, _bwd;
+
+    /** Doubled notch flags of all rotors, by position. */
+    private final boolean[] _notch;
+
+    /** Plugboard and its inverse. */
+    private final int[] _plugFwd, _plugBwd;
+
+    /** Offset of the wiring of the rotor in each slot of each lane. */
+    private final int[][] _wiring;
+
+    /** Offset of the notches of the rotor in each slot of each lane,
+     *  plus its ring setting. */
+    private final int[][] _notchBase;
+
+    /** Offset of the wiring of the rotor in each slot of each lane: its
+     *  position less its ring setting. */
+    private final int[][] _pos;
+
+    /** Character being converted in each lane. */
+    private final int[] _cur;
+
+}
@@ -0,0 +1,61 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchEngine class.
+ *  @author Divya Sivanandan
+ */
+public class BatchEngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Check that every lane of an engine loaded with random keys of
+     *  machine M agrees with M itself on a long random message, so that
+     *  all notches and double steps are exercised. */
+    private void checkAgainstMachine(Machine M, long seed) {
+        Random random = new Random(seed);
+        KeySpace space = new KeySpace(M);
+        int lanes = 7, len = 2000;
+        long[] keys = new long[lanes];
+        for (int i = 0; i < lanes; i += 1) {
+            keys[i] = (long) (random.nextDouble() * space.size());
+        }
+        int[] text = new int[len];
+        for (int t = 0; t < len; t += 1) {
+            text[t] = random.nextInt(UPPER.size());
+        }
+        BatchEngine engine = new BatchEngine(M, lanes);
+        engine.load(space, keys, lanes);
+        int[] out = new int[len * lanes];
+        engine.convert(text, len, out);
+        for (int lane = 0; lane < lanes; lane += 1) {
+            space.apply(keys[lane], M);
+            for (int t = 0; t < len; t += 1) {
+                assertEquals(msg("key " + keys[lane], "letter %d", t),
+                             M.convert(text[t]), out[t * lanes + lane]);
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        checkAgainstMachine(navalMachine(), 1);
+    }
+
+    @Test
+    public void testMatchesMachineWithPlugboard() {
+        Machine M = navalMachine();
+        M.setPlugboard(new Permutation("(AQ) (EP) (YZ)", UPPER));
+        checkAgainstMachine(M, 2);
+    }
+
+}
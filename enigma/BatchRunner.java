@@ -0,0 +1,257 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static enigma.EnigmaException.*;
+
+/** Runs many jobs of Main in one JVM.  A manifest file lists the jobs,
+ *  one per line, each as the arguments of Main: any options, then a
+ *  configuration file, an input file and an output file.  Blank lines
+ *  and lines starting with # are ignored, and relative file names are
+ *  taken relative to the directory of the manifest.
+ *
+ *  Each configuration file is read once.  The jobs naming it get copies
+ *  (see Machine.copy) of a single machine configured from it, so they
+ *  share its rotors' permutations and, with --compile, the tables of
+ *  every configuration any of them compiles.  Jobs run on a
+ *  work-stealing pool.  An error ends only the job raising it; each job
+ *  is reported with its time or its error once all have finished.
+ *
+ *  Metrics are collected in one place, Metrics.INSTANCE, so a job with
+ *  --metrics runs alone, with the metrics reset as it starts, and the
+ *  summary it prints covers only itself.
+ *  @author Divya Sivanandan
+ */
+public final class BatchRunner {
+
+    /** Run the jobs of a manifest as specified by ARGS, which are
+     *      [--threads N] MANIFEST
+     *  using N threads (by default, one per processor).  Prints a line
+     *  per job and a summary, and exits with code 1 if any job failed. */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            if (args.length == 3 && args[0].equals("--threads")) {
+                try {
+                    threads = Integer.parseInt(args[1]);
+                } catch (NumberFormatException excp) {
+                    threads = 0;
+                }
+                if (threads <= 0) {
+                    throw error("bad value for --threads");
+                }
+                args = Arrays.copyOfRange(args, 2, args.length);
+            }
+            if (args.length != 1) {
+                throw error("usage: BatchRunner [--threads N] MANIFEST");
+            }
+            long start = System.nanoTime();
+            List<Result> results = new BatchRunner(new File(args[0]))
+                .run(threads);
+            int failed = 0;
+            for (Result result : results) {
+                System.out.println(result);
+                failed += result.error() == null ? 0 : 1;
+            }
+            System.out.printf("%d jobs, %d failed, %.3f ms%n",
+                              results.size(), failed,
+                              (System.nanoTime() - start) / MILLI);
+            if (failed == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The outcome of a job. */
+    static final class Result {
+        /** The job on line LINE of the manifest, with arguments ARGS,
+         *  which took NANOS nanoseconds and failed with ERROR, or
+         *  succeeded if ERROR is null. */
+        Result(int line, String[] args, long nanos, String error) {
+            _line = line;
+            _args = args;
+            _nanos = nanos;
+            _error = error;
+        }
+
+        /** Return the line of the manifest giving my job. */
+        int line() {
+            return _line;
+        }
+
+        /** Return the nanoseconds my job took. */
+        long nanos() {
+            return _nanos;
+        }
+
+        /** Return the message of the error ending my job, or null if it
+         *  succeeded. */
+        String error() {
+            return _error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("line %d: %s %.3f ms: %s", _line,
+                                 _error == null ? "ok" : "FAILED",
+                                 _nanos / MILLI,
+                                 _error == null ? String.join(" ", _args)
+                                 : _error);
+        }
+
+        /** Manifest line. */
+        private final int _line;
+        /** Arguments of Main. */
+        private final String[] _args;
+        /** Time taken. */
+        private final long _nanos;
+        /** Error message, or null. */
+        private final String _error;
+    }
+
+    /** A runner for the jobs listed in MANIFEST. */
+    BatchRunner(File manifest) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(manifest.toPath(),
+                                       StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not read %s", manifest);
+        }
+        File dir = manifest.getAbsoluteFile().getParentFile();
+        for (int k = 0; k < lines.size(); k += 1) {
+            String line = lines.get(k).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] args = line.split("\\s+");
+            for (int i = 0; i < args.length; i += 1) {
+                if (!args[i].startsWith("--")
+                    && !new File(args[i]).isAbsolute()) {
+                    args[i] = new File(dir, args[i]).getPath();
+                }
+            }
+            _lines.add(k + 1);
+            _jobs.add(args);
+        }
+    }
+
+    /** Run all my jobs on a pool of THREADS threads, returning their
+     *  results in manifest order. */
+    List<Result> run(int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+            for (int k = 0; k < _jobs.size(); k += 1) {
+                final int job = k;
+                tasks.add(pool.submit(() -> runJob(job)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (ForkJoinTask<Result> task : tasks) {
+                results.add(task.join());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Run job K, returning its result. */
+    private Result runJob(int k) {
+        String[] args = _jobs.get(k);
+        long start = System.nanoTime();
+        String message = null;
+        try {
+            int files = 0;
+            while (files < args.length && args[files].startsWith("--")) {
+                files += 1;
+            }
+            if (args.length - files != 3) {
+                throw error("a job needs a configuration, input and output "
+                            + "file");
+            }
+            boolean metrics = Arrays.asList(args).subList(0, files)
+                .contains("--metrics");
+            Lock lock = metrics ? _metricsLock.writeLock()
+                : _metricsLock.readLock();
+            lock.lock();
+            try {
+                if (metrics) {
+                    Metrics.INSTANCE.reset();
+                }
+                Main main = new Main(args);
+                try {
+                    main.setMachine(prototype(new File(args[files])).copy());
+                    main.process();
+                } finally {
+                    main.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (RuntimeException excp) {
+            message = excp.getMessage() == null ? excp.toString()
+                : excp.getMessage();
+        }
+        return new Result(_lines.get(k), args, System.nanoTime() - start,
+                          message);
+    }
+
+    /** Return the machine configured from CONFIG, of which all jobs using
+     *  CONFIG get copies, reading CONFIG if no job has yet. */
+    private Machine prototype(File config) {
+        File key;
+        try {
+            key = config.getCanonicalFile();
+        } catch (IOException excp) {
+            key = config.getAbsoluteFile();
+        }
+        return _machines.computeIfAbsent(key, (file) -> {
+            try (Scanner input = new Scanner(Codecs.open(file))) {
+                return Main.configure(input);
+            } catch (IOException excp) {
+                throw error("could not open %s", file);
+            }
+        });
+    }
+
+    /** Return the number of configuration files read so far. */
+    int configurations() {
+        return _machines.size();
+    }
+
+    /** Nanoseconds per millisecond. */
+    private static final double MILLI = 1e6;
+
+    /** Arguments of Main for each job. */
+    private final List<String[]> _jobs = new ArrayList<>();
+
+    /** Manifest line of each job. */
+    private final List<Integer> _lines = new ArrayList<>();
+
+    /** Held exclusively by jobs with --metrics, and shared by the
+     *  others. */
+    private final ReentrantReadWriteLock _metricsLock =
+        new ReentrantReadWriteLock();
+
+    /** Machine configured from each configuration file read, by its
+     *  canonical name. */
+    private final ConcurrentHashMap<File, Machine> _machines =
+        new ConcurrentHashMap<>();
+
+}
@@ -0,0 +1,163 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchRunner class.
+ *  @author Divya Sivanandan
+ */
+public class BatchRunnerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Write TEXT to the file NAME in DIR. */
+    private void write(File dir, String name, String text) throws Exception {
+        Files.write(new File(dir, name).toPath(), text.getBytes());
+    }
+
+    /** Return the contents of the file NAME in DIR. */
+    private String read(File dir, String name) throws Exception {
+        return new String(Files.readAllBytes(new File(dir, name).toPath()));
+    }
+
+    /** Delete DIR and the files in it. */
+    private void delete(File dir) {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /** Return a message of LINES random lines of 25 letters, using
+     *  RANDOM, after the settings line SETTINGS. */
+    private String message(Random random, String settings, int lines) {
+        StringBuilder text = new StringBuilder(settings).append('\n');
+        for (int k = 0; k < lines; k += 1) {
+            for (int i = 0; i < 25; i += 1) {
+                text.append(UPPER.toChar(random.nextInt(26)));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testJobs() throws Exception {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            runJobs(dir);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /** Run and check the jobs of testJobs in DIR. */
+    private void runJobs(File dir) throws Exception {
+        write(dir, "naval.conf", navalConfig());
+        write(dir, "a.in", "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+              + "FROM his shoulder Hiawatha\n");
+        write(dir, "bad.in", "* B Beta III IV IX AXLE\nABC\n");
+        write(dir, "jobs", "# Two jobs sharing a configuration.\n"
+              + "naval.conf a.in a.out\n\n"
+              + "--compile naval.conf a.in b.out\n"
+              + "naval.conf bad.in bad.out\n"
+              + "missing.conf a.in c.out\n");
+
+        BatchRunner runner = new BatchRunner(new File(dir, "jobs"));
+        List<BatchRunner.Result> results = runner.run(2);
+        assertEquals(4, results.size());
+        assertEquals(2, results.get(0).line());
+        assertNull(results.get(0).error());
+        assertNull(results.get(1).error());
+        assertNotNull(results.get(2).error());
+        assertNotNull(results.get(3).error());
+        assertEquals(1, runner.configurations());
+        String nl = System.lineSeparator();
+        assertEquals("QVPQK WEMEC YKCLW ZEODN VQE" + nl,
+                     read(dir, "a.out"));
+        assertEquals(read(dir, "a.out"), read(dir, "b.out"));
+    }
+
+    @Test
+    public void testCompiledJobs() throws Exception {
+        File dir = Files.createTempDirectory("batch").toFile();
+        try {
+            write(dir, "naval.conf", navalConfig());
+            String input =
+                message(new Random(39), "* B Beta III IV I AXLE (HQ)", 40);
+            assertTrue(input.length() > 2 * Machine.COMPILE_THRESHOLD);
+            write(dir, "long.in", input);
+            write(dir, "jobs", "naval.conf long.in plain.out\n"
+                  + "--compile naval.conf long.in compiled.out\n"
+                  + "--compile naval.conf long.in again.out\n");
+            for (BatchRunner.Result result
+                     : new BatchRunner(new File(dir, "jobs")).run(2)) {
+                assertNull(result.error());
+            }
+            String expected = read(dir, "plain.out");
+            assertEquals(40, expected.split("\\R").length);
+            assertEquals(expected, read(dir, "compiled.out"));
+            assertEquals(expected, read(dir, "again.out"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        File dir = Files.createTempDirectory("batch").toFile();
+        Metrics metrics = Metrics.INSTANCE;
+        boolean enabled = metrics.isEnabled();
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream summaries = new ByteArrayOutputStream();
+        try {
+            write(dir, "naval.conf", navalConfig());
+            Random random = new Random(40);
+            StringBuilder jobs = new StringBuilder();
+            List<String> expected = new ArrayList<>();
+            for (int k = 1; k <= 4; k += 1) {
+                write(dir, k + ".in", message(random, "* B Beta I II III AAAA",
+                                              k * 10));
+                jobs.append("--metrics naval.conf ").append(k)
+                    .append(".in ").append(k).append(".out\n")
+                    .append("naval.conf ").append(k).append(".in plain")
+                    .append(k).append(".out\n");
+                expected.add("chars=" + k * 10 * 25);
+            }
+            write(dir, "jobs", jobs.toString());
+            System.setErr(new PrintStream(summaries));
+            for (BatchRunner.Result result
+                     : new BatchRunner(new File(dir, "jobs")).run(4)) {
+                assertNull(result.error());
+            }
+            System.setErr(stderr);
+            List<String> got = new ArrayList<>();
+            for (String line : summaries.toString().split("\\R")) {
+                got.add(line.substring(0, line.indexOf(' ')));
+            }
+            expected.sort(null);
+            got.sort(null);
+            assertEquals(expected, got);
+        } finally {
+            System.setErr(stderr);
+            metrics.setEnabled(enabled);
+            metrics.reset();
+            delete(dir);
+        }
+    }
+
+}
@@ -0,0 +1,415 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+import static enigma.EnigmaException.*;
+
+/** The loop of Main, run on bytes rather than Strings, for alphabets
+ *  that are single bytes in the default charset (see
+ *  Machine.convertsBytes).  Input is read from a channel into a direct
+ *  buffer, each message line is converted in place there, and its groups
+ *  are copied into an output buffer that is written to a channel, so
+ *  message text is never decoded.  Only settings lines become Strings.
+ *
+ *  Lines end at a newline, a carriage return, or both, as in
+ *  Scanner.nextLine; the Unicode line and paragraph separators, which
+ *  Scanner also accepts, are not recognized here.
+ *  @author Divya Sivanandan
+ */
+final class ByteProcessor {
+
+    /** A processor reading from IN and writing to OUT, converting with M,
+     *  which convertsBytes(), and applying settings lines to M with
+     *  SETUP. */
+    ByteProcessor(ReadableByteChannel in, WritableByteChannel out,
+                  Machine M, BiConsumer<Machine, String> setUp) {
+        _in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _in.flip();
+        _out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        _inChannel = in;
+        _outChannel = out;
+        _machine = M;
+        _setUp = setUp;
+        _newline = System.lineSeparator().getBytes(Charset.defaultCharset());
+        _table = M.alphabet().byteIndices(Charset.defaultCharset());
+        _to = Long.MAX_VALUE;
+    }
+
+    /** Restrict output to the lines starting at offsets FROM .. TO - 1 of
+     *  the input, given that the input channel starts at offset START.
+     *  Lines before FROM only advance the machine, and processing stops
+     *  at the first line starting at or after TO. */
+    void setRange(long start, long from, long to) {
+        _bufferOffset = start;
+        _from = from;
+        _to = to;
+    }
+
+    /** Receives checkpoints of a processor. */
+    interface Checkpointer {
+        /** Record that the next input line starts at offset INPUT, that
+         *  OUTPUT bytes of output, everything before that line, have been
+         *  written, and that the current settings line is SETTINGS. */
+        void checkpoint(long input, long output, String settings);
+    }
+
+    /** Call CHECKPOINTER at a line boundary about every INTERVAL
+     *  nanoseconds. */
+    void setCheckpointer(Checkpointer checkpointer, long interval) {
+        _checkpointer = checkpointer;
+        _interval = interval;
+        _nextCheckpoint = System.nanoTime() + interval;
+    }
+
+    /** Record that OUTPUT bytes precede what I write. */
+    void setOutputOffset(long output) {
+        _written = output;
+    }
+
+    /** Waits for input to grow. */
+    interface Follower {
+        /** Wait until the input extends beyond OFFSET, returning true, or
+         *  return false if it is to be taken as ended. */
+        boolean await(long offset);
+    }
+
+    /** Rather than stopping at the end of the input, write all output
+     *  and, if there is a checkpointer, checkpoint, and then
+     *  wait for more input with FOLLOWER.  A final line is only
+     *  processed once it is complete. */
+    void setFollower(Follower follower) {
+        _follower = follower;
+    }
+
+    /** Call LISTENER with the input offset of each line as it is reached,
+     *  before it is processed. */
+    void setLineListener(LongConsumer listener) {
+        _listener = listener;
+    }
+
+    /** Return the input offset of the next line. */
+    long offset() {
+        return _bufferOffset + _in.position();
+    }
+
+    /** Process all input as Main.process does, returning false if there
+     *  was no input at all.  Everything converted before an error is
+     *  written. */
+    boolean run() {
+        Metrics metrics = Metrics.INSTANCE;
+        try {
+            if (!nextLine()) {
+                return false;
+            }
+            long start = metrics.now();
+            setUp();
+            metrics.segment(start, _settings);
+            process();
+            return true;
+        } finally {
+            metrics.endSegment();
+            flush();
+        }
+    }
+
+    /** Process all input as run() does, but with my machine already set
+     *  up: the input resumes in the middle of the segment with settings
+     *  line SETTINGS. */
+    void resume(String settings) {
+        _settings = settings;
+        try {
+            process();
+        } finally {
+            flush();
+        }
+    }
+
+    /** Process the lines following a settings line. */
+    private void process() {
+        Metrics metrics = Metrics.INSTANCE;
+        while (true) {
+            _lines += 1;
+            if (_checkpointer != null && (_lines & CHECK_MASK) == 0
+                && System.nanoTime() >= _nextCheckpoint) {
+                flush();
+                _checkpointer.checkpoint(offset(), _written, _settings);
+                _checkpointLines = _lines;
+                _nextCheckpoint = System.nanoTime() + _interval;
+            }
+            long start = metrics.now();
+            if (!nextLine()) {
+                break;
+            }
+            if (_lineEnd == _lineStart) {
+                if (!quiet()) {
+                    put(_newline);
+                }
+                if (offset() >= _to) {
+                    break;
+                } else if (!nextLine()) {
+                    throw error("input ends with a blank line");
+                }
+            }
+            metrics.parsed(start);
+            if (_lineEnd == _lineStart) {
+                throw error("two blank lines in a row");
+            } else if (_in.get(_lineStart) == '*') {
+                start = metrics.now();
+                setUp();
+                metrics.segment(start, _settings);
+            } else if (quiet()) {
+                _machine.step(count());
+            } else {
+                start = metrics.now();
+                int n = convertLine();
+                metrics.converted(start, n);
+                start = metrics.now();
+                printLine(n);
+                metrics.written(start);
+            }
+        }
+    }
+
+    /** Return true iff the current line precedes the range of lines to
+     *  output. */
+    private boolean quiet() {
+        return _bufferOffset + _lineStart < _from;
+    }
+
+    /** Return the number of characters of the current line that would be
+     *  converted. */
+    private int count() {
+        int n = 0;
+        for (int i = _lineStart; i < _lineEnd; i += 1) {
+            n += _table[_in.get(i) & BYTE_MASK] == Alphabet.SKIP ? 0 : 1;
+        }
+        return n;
+    }
+
+    /** Apply the current line, a settings line, to my machine. */
+    private void setUp() {
+        byte[] line = new byte[_lineEnd - _lineStart];
+        _in.get(_lineStart, line);
+        _settings = new String(line, Charset.defaultCharset());
+        _setUp.accept(_machine, _settings);
+    }
+
+    /** Convert the current line in place, returning the number of
+     *  converted bytes, which start at _lineStart. */
+    private int convertLine() {
+        ByteBuffer text = _in.duplicate();
+        text.limit(_lineEnd).position(_lineStart);
+        ByteBuffer result = _in.duplicate();
+        result.position(_lineStart);
+        return _machine.convert(text, result);
+    }
+
+    /** Write the N converted bytes at _lineStart in groups of five, as
+     *  Main.printMessageLine does, and a line separator. */
+    private void printLine(int n) {
+        for (int i = 0; i < n; i += 1) {
+            if (i > 0 && i % GROUP == 0) {
+                put((byte) ' ');
+            }
+            put(_in.get(_lineStart + i));
+        }
+        put(_newline);
+    }
+
+    /** Find the next line of input, returning false if there is none.
+     *  The line occupies _in[_lineStart .. _lineEnd - 1]. */
+    private boolean nextLine() {
+        if (offset() >= _to) {
+            return false;
+        }
+        int scan = _in.position();
+        while (true) {
+            for (int i = scan; i < _in.limit(); i += 1) {
+                byte b = _in.get(i);
+                if (b == '\n' || b == '\r') {
+                    if (b == '\r' && i + 1 == _in.limit()
+                        && (!_eof || _follower != null)) {
+                        break;
+                    }
+                    _lineStart = _in.position();
+                    _lineEnd = i;
+                    int next = i + 1;
+                    if (b == '\r' && next < _in.limit()
+                        && _in.get(next) == '\n') {
+                        next += 1;
+                    }
+                    _in.position(next);
+                    reached();
+                    return true;
+                }
+            }
+            if (_eof && _follower != null) {
+                idle();
+                if (_follower.await(_bufferOffset + _in.limit())) {
+                    _eof = false;
+                    scan = fill();
+                    continue;
+                }
+                _follower = null;
+            }
+            if (_eof) {
+                if (!_in.hasRemaining()) {
+                    return false;
+                }
+                _lineStart = _in.position();
+                _lineEnd = _in.limit();
+                _in.position(_in.limit());
+                reached();
+                return true;
+            }
+            scan = fill();
+        }
+    }
+
+    /** Write all output so far and, if any lines have been processed
+     *  since the last checkpoint, make one, before waiting for input. */
+    private void idle() {
+        flush();
+        if (_checkpointer != null && _lines != _checkpointLines) {
+            _checkpointer.checkpoint(offset(), _written, _settings);
+            _checkpointLines = _lines;
+        }
+    }
+
+    /** Report the current line to the listener, if any. */
+    private void reached() {
+        if (_listener != null) {
+            _listener.accept(_bufferOffset + _lineStart);
+        }
+    }
+
+    /** Read more input, keeping the unconsumed bytes, and return the
+     *  position in _in of the first byte not yet scanned for a line
+     *  end. */
+    private int fill() {
+        int scanned = Math.max(0, _in.remaining() - 1);
+        _bufferOffset += _in.position();
+        if (_in.position() == 0 && _in.limit() == _in.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(2 * _in.capacity());
+            bigger.put(_in);
+            _in = bigger;
+        } else {
+            _in.compact();
+        }
+        try {
+            if (_inChannel.read(_in) < 0) {
+                _eof = true;
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        _in.flip();
+        return scanned;
+    }
+
+    /** Append B to the output. */
+    private void put(byte b) {
+        if (!_out.hasRemaining()) {
+            flush();
+        }
+        _out.put(b);
+    }
+
+    /** Append BYTES to the output. */
+    private void put(byte[] bytes) {
+        for (byte b : bytes) {
+            put(b);
+        }
+    }
+
+    /** Write all buffered output. */
+    private void flush() {
+        _out.flip();
+        try {
+            while (_out.hasRemaining()) {
+                _written += _outChannel.write(_out);
+            }
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _out.clear();
+    }
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Lines between looks at the clock for checkpoints, less one. */
+    private static final int CHECK_MASK = 0x3ff;
+
+    /** Letters per output group. */
+    private static final int GROUP = 5;
+
+    /** Initial size of the input buffer and size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Input; the bytes between its position and limit are unconsumed. */
+    private ByteBuffer _in;
+
+    /** Output not yet written. */
+    private final ByteBuffer _out;
+
+    /** Source of input. */
+    private final ReadableByteChannel _inChannel;
+
+    /** Destination of output. */
+    private final WritableByteChannel _outChannel;
+
+    /** The machine. */
+    private final Machine _machine;
+
+    /** Applies a settings line to a machine. */
+    private final BiConsumer<Machine, String> _setUp;
+
+    /** Encoded line separator. */
+    private final byte[] _newline;
+
+    /** Alphabet index of each byte, as in Alphabet.byteIndices. */
+    private final int[] _table;
+
+    /** Input offset of the start of _in. */
+    private long _bufferOffset;
+
+    /** Offsets of the first line to output and of the first line not to
+     *  process. */
+    private long _from, _to;
+
+    /** Receives checkpoints, or null. */
+    private Checkpointer _checkpointer;
+
+    /** Nanoseconds between checkpoints, and time of the next one. */
+    private long _interval, _nextCheckpoint;
+
+    /** Lines processed, for pacing checkpoints, and its value at the
+     *  last checkpoint. */
+    private long _lines, _checkpointLines;
+
+    /** Waits for more input, or null. */
+    private Follower _follower;
+
+    /** Bytes of output written, including any written before me. */
+    private long _written;
+
+    /** Receives the offset of each line, or null. */
+    private LongConsumer _listener;
+
+    /** True once the input channel is exhausted. */
+    private boolean _eof;
+
+    /** Bounds of the current line in _in. */
+    private int _lineStart, _lineEnd;
+
+    /** Current settings line. */
+    private String _settings;
+
+}
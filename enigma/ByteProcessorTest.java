@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ByteProcessor class and the byte
+ *  conversions of Machine.
+ *  @author Divya Sivanandan
+ */
+public class ByteProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a naval machine set to KEY of its key space. */
+    private Machine machine(long key) {
+        Machine M = navalMachine();
+        new KeySpace(M).apply(key, M);
+        return M;
+    }
+
+    @Test
+    public void testConvertInPlace() {
+        Random random = new Random(35);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i += 1) {
+            text.append(random.nextInt(6) == 0 ? ' '
+                        : UPPER.toChar(random.nextInt(26)));
+        }
+        String expected = machine(123456).convert(text.toString());
+        for (boolean compiling : new boolean[] { false, true }) {
+            Machine M = machine(123456);
+            M.setCompiling(compiling);
+            assertTrue(M.convertsBytes());
+            ByteBuffer buf = ByteBuffer.allocateDirect(text.length());
+            buf.put(text.toString().getBytes(StandardCharsets.US_ASCII));
+            buf.flip();
+            int n = M.convert(buf.duplicate(), buf);
+            assertEquals(expected.length(), n);
+            byte[] result = new byte[n];
+            buf.flip().get(result);
+            assertEquals(expected,
+                         new String(result, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void testLines() {
+        String input = "* B Beta I II III AAAA\r\nHELLO WORLD\r\n\r\n"
+            + "ABCDEFGHIJ\r* B Beta I II III AAAA\nHELLO WORLD";
+        Machine M = navalMachine();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertTrue(new ByteProcessor(
+            Channels.newChannel(new ByteArrayInputStream(input.getBytes())),
+            Channels.newChannel(bytes), M,
+            (m, line) -> new KeySpace(m).apply(0, m)).run());
+        Machine check = machine(0);
+        String first = check.convert("HELLOWORLD");
+        String second = check.convert("ABCDEFGHIJ");
+        String nl = System.lineSeparator();
+        assertEquals(first.substring(0, 5) + " " + first.substring(5) + nl
+                     + nl
+                     + second.substring(0, 5) + " " + second.substring(5)
+                     + nl
+                     + first.substring(0, 5) + " " + first.substring(5) + nl,
+                     bytes.toString());
+    }
+
+    @Test
+    public void testBlankLines() {
+        for (String input
+                 : new String[] { "* B Beta I II III AAAA\nHELLO\n\n",
+                                  "* B Beta I II III AAAA\nHELLO\n\n\n"
+                                  + "WORLD\n" }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                new ByteProcessor(
+                    Channels.newChannel(
+                        new ByteArrayInputStream(input.getBytes())),
+                    Channels.newChannel(bytes), navalMachine(),
+                    (m, line) -> new KeySpace(m).apply(0, m)).run();
+                fail("blank lines accepted");
+            } catch (EnigmaException excp) {
+                String first = machine(0).convert("HELLO");
+                assertEquals(first + System.lineSeparator()
+                             + System.lineSeparator(), bytes.toString());
+            }
+        }
+    }
+
+}
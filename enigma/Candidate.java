@@ -0,0 +1,52 @@
+package enigma;
+
+/** A key found by a search, with its score.
+ *  @author Divya Sivanandan
+ */
+final class Candidate implements Comparable<Candidate> {
+
+    /** A candidate for KEY (as numbered by a KeySpace) scoring SCORE. */
+    Candidate(long key, double score) {
+        _key = key;
+        _score = score;
+    }
+
+    /** Return my key. */
+    long key() {
+        return _key;
+    }
+
+    /** Return my score; higher is better. */
+    double score() {
+        return _score;
+    }
+
+    /** Orders candidates by decreasing score, then by increasing key. */
+    @Override
+    public int compareTo(Candidate other) {
+        int c = Double.compare(other._score, _score);
+        return c != 0 ? c : Long.compare(_key, other._key);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Candidate && compareTo((Candidate) obj) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(_key) ^ Double.hashCode(_score);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.6f %d", _score, _key);
+    }
+
+    /** Key searched. */
+    private final long _key;
+
+    /** Its score. */
+    private final double _score;
+
+}
@@ -0,0 +1,141 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a run of Main at a line boundary, from which it can be
+ *  resumed: the offset of the next input line, the length of the output
+ *  written so far, the settings line of the current segment, and the
+ *  positions of the rotors.  Kept in a small side file, replaced
+ *  atomically:
+ *      enigma-checkpoint 1
+ *      input OFFSET
+ *      output OFFSET
+ *      positions POSITION,POSITION,...
+ *      settings SETTINGS-LINE
+ *  @author Divya Sivanandan
+ */
+final class Checkpoint {
+
+    /** A checkpoint before the input line at INPUT, with OUTPUT bytes of
+     *  output written, in the segment with settings line SETTINGS, with
+     *  the rotors as they are in M. */
+    Checkpoint(long input, long output, String settings, Machine M) {
+        this(input, output, settings, new int[M.getRotorsUsed().size() - 1]);
+        for (int k = 0; k < _positions.length; k += 1) {
+            _positions[k] = M.getRotorsUsed().get(k + 1).setting();
+        }
+    }
+
+    /** A checkpoint before the input line at INPUT, with OUTPUT bytes of
+     *  output written, in the segment with settings line SETTINGS, with
+     *  the rotors of slots 1 and up at POSITIONS. */
+    private Checkpoint(long input, long output, String settings,
+                       int[] positions) {
+        _input = input;
+        _output = output;
+        _settings = settings;
+        _positions = positions;
+    }
+
+    /** Return the checkpoint file of a run writing to OUTPUT. */
+    static File file(File output) {
+        return new File(output.getPath() + ".ckpt");
+    }
+
+    /** Return the offset of the next input line. */
+    long input() {
+        return _input;
+    }
+
+    /** Return the number of output bytes written. */
+    long output() {
+        return _output;
+    }
+
+    /** Return the settings line of the current segment. */
+    String settings() {
+        return _settings;
+    }
+
+    /** Set the rotors of M, already set up with settings(), to their
+     *  positions at this checkpoint. */
+    void restore(Machine M) {
+        if (_positions.length != M.getRotorsUsed().size() - 1) {
+            throw error("checkpoint does not match configuration");
+        }
+        for (int k = 0; k < _positions.length; k += 1) {
+            M.setRotor(k + 1, _positions[k]);
+        }
+    }
+
+    /** Write me to FILE, atomically. */
+    void save(File file) {
+        StringBuilder text = new StringBuilder();
+        text.append(MAGIC).append('\n');
+        text.append("input ").append(_input).append('\n');
+        text.append("output ").append(_output).append('\n');
+        text.append("positions");
+        for (int k = 0; k < _positions.length; k += 1) {
+            text.append(k == 0 ? ' ' : ',').append(_positions[k]);
+        }
+        text.append('\n');
+        text.append("settings ").append(_settings).append('\n');
+        AtomicFile.write(file, text.toString());
+    }
+
+    /** Return the checkpoint in FILE, or null if there is none. */
+    static Checkpoint load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            List<String> lines =
+                Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (!lines.get(0).equals(MAGIC)) {
+                throw error("%s is not a checkpoint", file);
+            }
+            String[] posns = lines.get(3).substring(POSITIONS).split(",");
+            int[] positions = new int[posns.length];
+            for (int k = 0; k < posns.length; k += 1) {
+                positions[k] = Integer.parseInt(posns[k]);
+            }
+            long input = Long.parseLong(lines.get(1).substring(INPUT));
+            long output = Long.parseLong(lines.get(2).substring(OUTPUT));
+            return new Checkpoint(input, output,
+                                  lines.get(4).substring(SETTINGS),
+                                  positions);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        } catch (IndexOutOfBoundsException | NumberFormatException excp) {
+            throw error("%s is not a checkpoint", file);
+        }
+    }
+
+    /** First line of a checkpoint file. */
+    private static final String MAGIC = "enigma-checkpoint 1";
+
+    /** Lengths of the keywords, with their trailing blanks, of the lines
+     *  of a checkpoint file. */
+    private static final int INPUT = "input ".length(),
+        OUTPUT = "output ".length(), POSITIONS = "positions ".length(),
+        SETTINGS = "settings ".length();
+
+    /** Offset of the next input line. */
+    private final long _input;
+
+    /** Bytes of output written. */
+    private final long _output;
+
+    /** Settings line of the current segment. */
+    private final String _settings;
+
+    /** Positions of the rotors of slots 1 and up. */
+    private final int[] _positions;
+
+}
@@ -0,0 +1,44 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Checkpoint class.
+ *  @author Divya Sivanandan
+ */
+public class CheckpointTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testSaveAndRestore() throws Exception {
+        Machine M = navalMachine();
+        KeySpace space = new KeySpace(M);
+        space.apply(98765, M);
+        String text = "THEQUICKBROWNFOXJUMPSOVERTHELAZYDOG";
+        M.convert(text);
+        File file = Checkpoint.file(File.createTempFile("run", ".out"));
+        new Checkpoint(1234, 5678, "* B Beta I II III AAAA", M).save(file);
+        String expected = M.convert(text);
+
+        Checkpoint loaded = Checkpoint.load(file);
+        assertEquals(1234, loaded.input());
+        assertEquals(5678, loaded.output());
+        assertEquals("* B Beta I II III AAAA", loaded.settings());
+        Machine N = navalMachine();
+        space.apply(98765, N);
+        loaded.restore(N);
+        assertEquals(expected, N.convert(text));
+        file.delete();
+        assertNull(Checkpoint.load(file));
+    }
+
+}
@@ -0,0 +1,32 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** A compression format for the input and output files of Main.  Gzip
+ *  is built in; others, such as zstd, are added by putting a jar on the
+ *  class path that names its implementation in
+ *  META-INF/services/enigma.Codec.  See Codecs.
+ *  @author Divya Sivanandan
+ */
+public interface Codec {
+
+    /** Return my name, as used in messages. */
+    String name();
+
+    /** Return the file name extension of my format, such as ".gz". */
+    String extension();
+
+    /** Return true iff the first LENGTH bytes of HEADER, which holds the
+     *  first few bytes of a file, begin a file in my format. */
+    boolean matches(byte[] header, int length);
+
+    /** Return a stream of the decompressed contents of IN. */
+    InputStream decompress(InputStream in) throws IOException;
+
+    /** Return a stream compressing into OUT.  Closing it must finish the
+     *  compressed data and close OUT. */
+    OutputStream compress(OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,182 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static enigma.EnigmaException.*;
+
+/** Opens the files of Main, compressed or not.  An input file is
+ *  recognized as compressed by its first bytes or, failing that, by its
+ *  extension, and is decompressed on a separate thread as it is read.  An
+ *  output file is compressed iff its name has the extension of a codec.
+ *  @author Divya Sivanandan
+ */
+final class Codecs {
+
+    /** Not instantiable. */
+    private Codecs() {
+    }
+
+    /** Return the codecs available: gzip, then any installed as
+     *  services. */
+    static synchronized List<Codec> all() {
+        if (_all == null) {
+            _all = new ArrayList<>();
+            _all.add(new Gzip());
+            for (Codec codec : ServiceLoader.load(Codec.class)) {
+                _all.add(codec);
+            }
+        }
+        return _all;
+    }
+
+    /** Return the codec whose extension ends NAME, or null. */
+    static Codec forName(String name) {
+        for (Codec codec : all()) {
+            if (name.endsWith(codec.extension())) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /** Return the codec matching the first LENGTH bytes of HEADER, or
+     *  null. */
+    static Codec forHeader(byte[] header, int length) {
+        for (Codec codec : all()) {
+            if (codec.matches(header, length)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /** Return a stream of the contents of FILE, decompressed if it is
+     *  compressed. */
+    static InputStream open(File file) throws IOException {
+        InputStream in =
+            new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        in.mark(HEADER_SIZE);
+        int length = in.readNBytes(header, 0, HEADER_SIZE);
+        in.reset();
+        Codec codec;
+        try {
+            codec = detect(file, header, length);
+        } catch (EnigmaException excp) {
+            in.close();
+            throw excp;
+        }
+        if (codec == null) {
+            return in;
+        }
+        return new AsyncInputStream(codec.decompress(in),
+                                    codec.name() + "-" + file.getName());
+    }
+
+    /** Return the contents of FILE, decompressed if it is compressed, as
+     *  text in the default charset. */
+    static String read(File file) throws IOException {
+        try (InputStream in = open(file)) {
+            return new String(in.readAllBytes());
+        }
+    }
+
+    /** Return true iff FILE is compressed. */
+    static boolean compressed(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] header = new byte[HEADER_SIZE];
+            return detect(file, header,
+                          in.readNBytes(header, 0, HEADER_SIZE)) != null;
+        }
+    }
+
+    /** Return the codec of FILE, whose first LENGTH bytes are in HEADER,
+     *  or null if it is not compressed. */
+    private static Codec detect(File file, byte[] header, int length) {
+        Codec codec = forHeader(header, length);
+        if (codec == null) {
+            codec = forName(file.getName());
+        }
+        if (codec == null && startsWith(header, length, ZSTD_MAGIC)) {
+            throw error("%s is zstd-compressed, but no zstd codec is "
+                        + "installed", file);
+        }
+        return codec;
+    }
+
+    /** Return a stream writing to FILE, compressing if the name of FILE
+     *  has the extension of a codec. */
+    static OutputStream create(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        Codec codec = forName(file.getName());
+        return codec == null ? out : codec.compress(out);
+    }
+
+    /** Return true iff the first LENGTH bytes of HEADER start with
+     *  MAGIC. */
+    static boolean startsWith(byte[] header, int length, int[] magic) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i += 1) {
+            if ((header[i] & 0xff) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The gzip format of java.util.zip. */
+    private static final class Gzip implements Codec {
+
+        @Override
+        public String name() {
+            return "gzip";
+        }
+
+        @Override
+        public String extension() {
+            return ".gz";
+        }
+
+        @Override
+        public boolean matches(byte[] header, int length) {
+            return startsWith(header, length, GZIP_MAGIC);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+    }
+
+    /** First bytes of gzip and zstd files. */
+    private static final int[] GZIP_MAGIC = { 0x1f, 0x8b },
+        ZSTD_MAGIC = { 0x28, 0xb5, 0x2f, 0xfd };
+
+    /** Number of leading bytes examined to recognize a format. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Size of I/O buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Available codecs, once loaded. */
+    private static List<Codec> _all;
+
+}
@@ -0,0 +1,93 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** The suite of all JUnit tests for the Codecs class.
+ *  @author Divya Sivanandan
+ */
+public class CodecsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testGzipRoundTrip() throws Exception {
+        byte[] data = new byte[300000];
+        new Random(34).nextBytes(data);
+        File file = File.createTempFile("codecs", ".gz");
+        try (OutputStream out = Codecs.create(file)) {
+            out.write(data);
+        }
+        File renamed = new File(file.getPath() + ".dat");
+        assertTrue(file.renameTo(renamed));
+        try (InputStream in = Codecs.open(renamed)) {
+            assertTrue(in instanceof AsyncInputStream);
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        renamed.delete();
+    }
+
+    @Test
+    public void testAsyncClose() throws Exception {
+        AtomicBoolean reading = new AtomicBoolean();
+        AtomicBoolean closedWhileReading = new AtomicBoolean();
+        InputStream source = new InputStream() {
+            @Override
+            public int read() {
+                return 'A';
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) {
+                reading.set(true);
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                }
+                Arrays.fill(buf, off, off + len, (byte) 'A');
+                reading.set(false);
+                return len;
+            }
+
+            @Override
+            public void close() {
+                closedWhileReading.set(reading.get());
+            }
+        };
+        String name = "codecs-test-close";
+        InputStream in = new AsyncInputStream(source, name);
+        assertEquals('A', in.read());
+        in.close();
+        assertFalse(closedWhileReading.get());
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName().equals(name));
+        }
+        in.close();
+    }
+
+    @Test
+    public void testPlain() throws Exception {
+        File file = File.createTempFile("codecs", ".txt");
+        try (OutputStream out = Codecs.create(file)) {
+            out.write("AB".getBytes());
+        }
+        try (InputStream in = Codecs.open(file)) {
+            assertFalse(in instanceof AsyncInputStream);
+            assertArrayEquals("AB".getBytes(), in.readAllBytes());
+        }
+        file.delete();
+    }
+
+}
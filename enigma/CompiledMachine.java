@@ -0,0 +1,248 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/** A Machine specialized to its current configuration.  Between settings
+ *  lines the rotor stack, the positions of the non-moving slots and the
+ *  plugboard do not change, so everything to the left of the moving
+ *  slots, reflector included, collapses into a single lookup table, and
+ *  each moving slot gets pre-shifted tables giving its mapping at every
+ *  position.  A character then costs one table load per moving slot and
+ *  direction, one for the fixed core and two for the plugboard, with no
+ *  virtual calls.
+ *
+ *  Positions of the moving rotors are read from and written back to the
+ *  Rotors of the Machine on each call, so the two paths can be mixed.
+ *  @author Divya Sivanandan
+ */
+final class CompiledMachine {
+
+    /** Largest alphabet for which pre-shifted tables are built; they take
+     *  2 * size() * size() ints per moving slot. */
+    static final int MAX_SIZE = 256;
+
+    /** Return true iff M, whose rotors have been inserted, can be
+     *  compiled: its alphabet is small enough and its reflector slot is
+     *  not one of its pawl slots. */
+    static boolean supports(Machine M) {
+        return M.alphabet().size() <= MAX_SIZE
+            && M.plugboard() != null
+            && M.getRotorsUsed().size() == M.numRotors()
+            && M.numPawls() > 0
+            && M.numPawls() < M.numRotors();
+    }
+
+    /** A specialization of M, which must satisfy supports(M), to its
+     *  current configuration. */
+    CompiledMachine(Machine M) {
+        ArrayList<Rotor> used = M.getRotorsUsed();
+        Alphabet alpha = M.alphabet();
+        int n = used.size();
+        _size = alpha.size();
+        _alphabet = alpha;
+        _first = n - M.numPawls();
+        int m = n - _first;
+        _rotors = new Rotor[m];
+        _moves = new boolean[m];
+        _notch = new boolean[m][_size];
+        _fwd = new int[m][_size * _size];
+        _bwd = new int[m][_size * _size];
+        _pos = new int[m];
+        for (int k = 0; k < m; k += 1) {
+            Rotor r = used.get(_first + k);
+            _rotors[k] = r;
+            _moves[k] = r.rotates();
+            int saved = r.setting();
+            for (int p = 0; p < _size; p += 1) {
+                if (!_moves[k] && p != saved) {
+                    continue;
+                } else if (_moves[k]) {
+                    r.set(p);
+                }
+                _notch[k][p] = _moves[k] && r.atNotch();
+                for (int c = 0; c < _size; c += 1) {
+                    _fwd[k][p * _size + c] = r.convertForward(c);
+                    _bwd[k][p * _size + c] = r.convertBackward(c);
+                }
+            }
+            if (_moves[k]) {
+                r.set(saved);
+            }
+        }
+        _core = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            int x = c;
+            for (int s = _first - 1; s >= 0; s -= 1) {
+                x = used.get(s).convertForward(x);
+            }
+            for (int s = 1; s < _first; s += 1) {
+                x = used.get(s).convertBackward(x);
+            }
+            _core[c] = x;
+        }
+        Permutation plug = M.plugboard();
+        _plugFwd = new int[_size];
+        _plugBwd = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plugFwd[c] = plug.wrap(plug.permute(c));
+            _plugBwd[c] = plug.wrap(plug.invert(c));
+        }
+    }
+
+    /** A specialization of M sharing the tables of COMPILED, which was
+     *  compiled for a machine in the same configuration as M. */
+    CompiledMachine(CompiledMachine compiled, Machine M) {
+        _size = compiled._size;
+        _alphabet = compiled._alphabet;
+        _first = compiled._first;
+        _moves = compiled._moves;
+        _notch = compiled._notch;
+        _fwd = compiled._fwd;
+        _bwd = compiled._bwd;
+        _core = compiled._core;
+        _plugFwd = compiled._plugFwd;
+        _plugBwd = compiled._plugBwd;
+        _rotors = new Rotor[_moves.length];
+        for (int k = 0; k < _rotors.length; k += 1) {
+            _rotors[k] = M.getRotorsUsed().get(_first + k);
+        }
+        _pos = new int[_moves.length];
+    }
+
+    /** Return the conversion of MSG, skipping whitespace, exactly as
+     *  Machine.convert(String) would, and advance the rotors. */
+    String convert(String msg) {
+        char[] text = msg.toCharArray();
+        return new String(text, 0, convert(text, 0, text.length, text, 0));
+    }
+
+    /** Convert the characters IN[FROM .. TO - 1], skipping whitespace,
+     *  into OUT, which may be IN, starting at OUTPOS, exactly as
+     *  Machine.convert(char[], int, int, char[], int) would.  Returns the
+     *  number of characters written. */
+    int convert(char[] in, int from, int to, char[] out, int outPos) {
+        if (_text.length < to - from) {
+            _text = new int[Math.max(to - from, 2 * _text.length)];
+        }
+        int len = 0;
+        for (int i = from; i < to; i += 1) {
+            char ch = in[i];
+            if (ch > ' ') {
+                int c = _alphabet.toInt(ch);
+                _text[len] = c < 0 ? _size - 1 : c;
+                len += 1;
+            }
+        }
+        convert(_text, 0, len, _text);
+        for (int i = 0; i < len; i += 1) {
+            out[outPos + i] = _alphabet.toChar(_text[i]);
+        }
+        return len;
+    }
+
+    /** Convert the remaining bytes of IN into OUT exactly as
+     *  Machine.convert(ByteBuffer, ByteBuffer) would, mapping bytes to
+     *  indices by TABLE, as returned by Alphabet.byteIndices.  Returns
+     *  the number of bytes written. */
+    int convert(ByteBuffer in, ByteBuffer out, int[] table) {
+        int n = in.remaining();
+        if (_text.length < n) {
+            _text = new int[Math.max(n, 2 * _text.length)];
+        }
+        int len = 0;
+        for (int i = 0; i < n; i += 1) {
+            int c = table[in.get() & BYTE_MASK];
+            if (c != Alphabet.SKIP) {
+                _text[len] = c;
+                len += 1;
+            }
+        }
+        convert(_text, 0, len, _text);
+        for (int i = 0; i < len; i += 1) {
+            out.put((byte) _alphabet.toChar(_text[i]));
+        }
+        return len;
+    }
+
+    /** Convert the alphabet indices IN[FROM .. TO - 1] into OUT[FROM ..
+     *  TO - 1], which may be IN, advancing the rotors before each. */
+    void convert(int[] in, int from, int to, int[] out) {
+        int m = _pos.length, size = _size;
+        int[] pos = _pos;
+        for (int k = 0; k < m; k += 1) {
+            pos[k] = _rotors[k].setting();
+        }
+        for (int i = from; i < to; i += 1) {
+            boolean rightNotch = false;
+            for (int k = m - 1; k >= 0; k -= 1) {
+                int p = pos[k];
+                boolean here = _notch[k][p];
+                if (_moves[k] && (k == m - 1 || rightNotch
+                                  || (here && k != 0))) {
+                    pos[k] = p + 1 == size ? 0 : p + 1;
+                }
+                rightNotch = here;
+            }
+            int c = _plugFwd[in[i]];
+            for (int k = m - 1; k >= 0; k -= 1) {
+                c = _fwd[k][pos[k] * size + c];
+            }
+            c = _core[c];
+            for (int k = 0; k < m; k += 1) {
+                c = _bwd[k][pos[k] * size + c];
+            }
+            out[i] = _plugBwd[c];
+        }
+        for (int k = 0; k < m; k += 1) {
+            _rotors[k].set(pos[k]);
+        }
+    }
+
+    /** Return the index of the first moving slot. */
+    int firstMoving() {
+        return _first;
+    }
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Index of the first pawl slot. */
+    private final int _first;
+
+    /** Rotors of the pawl slots, left to right. */
+    private final Rotor[] _rotors;
+
+    /** Whether the rotor of each pawl slot moves. */
+    private final boolean[] _moves;
+
+    /** Notch flags of the rotor of each pawl slot, by position. */
+    private final boolean[][] _notch;
+
+    /** Forward and backward mappings of each pawl slot: the mapping of C
+     *  at position P is at index P * size + C. */
+    private final int[][] _fwd, _bwd;
+
+    /** Composition of every slot to the left of the pawl slots, through
+     *  the reflector and back. */
+    private final int[] _core;
+
+    /** Plugboard and its inverse. */
+    private final int[] _plugFwd, _plugBwd;
+
+    /** Working storage for the indices of converted characters. */
+    private int[] _text = new int[TEXT_SIZE];
+
+    /** Initial length of _text. */
+    private static final int TEXT_SIZE = 256;
+
+    /** Positions of the pawl slots during a conversion. */
+    private final int[] _pos;
+
+}
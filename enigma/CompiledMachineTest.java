@@ -0,0 +1,155 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CompiledMachine class.
+ *  @author Divya Sivanandan
+ */
+public class CompiledMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a naval machine with rotors B Beta III IV I set to
+     *  SETTING, with rings RINGS and plugboard (HQ) (EX) (IP) (TR). */
+    private Machine machine(String setting, String rings) {
+        Machine M = navalMachine();
+        M.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        M.setRotors(setting);
+        M.setRings(rings);
+        M.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", UPPER));
+        return M;
+    }
+
+    /** Return the positions of the rotors of M, leftmost first. */
+    private String positions(Machine M) {
+        StringBuilder result = new StringBuilder();
+        for (Rotor r : M.getRotorsUsed().subList(1, M.numRotors())) {
+            result.append(UPPER.toChar(r.setting()));
+        }
+        return result.toString();
+    }
+
+    /** Return LENGTH random letters, with some blanks, from RANDOM. */
+    private String text(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            text.append(random.nextInt(7) == 0 ? ' '
+                        : UPPER.toChar(random.nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        Random random = new Random(31);
+        for (int trial = 0; trial < 20; trial += 1) {
+            String setting = text(random, 4).replace(' ', 'A'),
+                rings = text(random, 4).replace(' ', 'Z'),
+                msg = text(random, 2000);
+            Machine plain = machine(setting, rings),
+                compiled = machine(setting, rings);
+            String expected = plain.convert(msg);
+            assertEquals(msg, expected,
+                         new CompiledMachine(compiled).convert(msg));
+            assertEquals(msg, positions(plain), positions(compiled));
+        }
+    }
+
+    @Test
+    public void testDoubleStep() {
+        Machine plain = machine("AAIP", "AAAA"),
+            compiled = machine("AAIP", "AAAA");
+        CompiledMachine C = new CompiledMachine(compiled);
+        String[] expected = { "AAIQ", "AAJR", "ABKS", "ABKT" };
+        for (String posns : expected) {
+            assertEquals(plain.convert("X"), C.convert("X"));
+            assertEquals(posns, positions(plain));
+            assertEquals(posns, positions(compiled));
+        }
+    }
+
+    @Test
+    public void testWritesPositionsBack() {
+        Random random = new Random(3);
+        Machine plain = machine("QEVZ", "BCDE"),
+            mixed = machine("QEVZ", "BCDE");
+        CompiledMachine C = new CompiledMachine(mixed);
+        for (int round = 0; round < 50; round += 1) {
+            String msg = text(random, random.nextInt(60));
+            if (random.nextBoolean()) {
+                assertEquals(plain.convert(msg), C.convert(msg));
+            } else {
+                for (char ch : msg.toCharArray()) {
+                    if (ch != ' ') {
+                        assertEquals(plain.convert(UPPER.toInt(ch)),
+                                     mixed.convert(UPPER.toInt(ch)));
+                    }
+                }
+            }
+            assertEquals(positions(plain), positions(mixed));
+        }
+    }
+
+    @Test
+    public void testThreshold() {
+        Random random = new Random(256);
+        Machine plain = machine("KXZD", "AAAA"),
+            compiling = machine("KXZD", "AAAA");
+        compiling.setCompiling(true);
+        int converted = 0;
+        while (converted + 40 < Machine.COMPILE_THRESHOLD) {
+            String msg = text(random, 40);
+            assertEquals(plain.convert(msg), compiling.convert(msg));
+            assertFalse(compiling.isCompiled());
+            converted += 40;
+        }
+        String msg = text(random, 40);
+        assertEquals(plain.convert(msg), compiling.convert(msg));
+        assertTrue(compiling.isCompiled());
+        assertEquals(positions(plain), positions(compiling));
+
+        compiling.setRotors("KXZD");
+        plain.setRotors("KXZD");
+        assertFalse(compiling.isCompiled());
+        msg = text(random, 10);
+        assertEquals(plain.convert(msg), compiling.convert(msg));
+        assertFalse(compiling.isCompiled());
+
+        Machine fresh = machine("AAAA", "AAAA");
+        fresh.setCompiling(true);
+        fresh.convert(text(random, Machine.COMPILE_THRESHOLD));
+        assertTrue(fresh.isCompiled());
+    }
+
+    @Test
+    public void testSharedTables() {
+        Random random = new Random(1);
+        Machine first = machine("AXLE", "FGHI");
+        CompiledMachine shared = new CompiledMachine(first);
+        Machine second = first.copy();
+        second.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        second.setRotors("AMIT");
+        second.setRings("FGHI");
+        second.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", UPPER));
+        CompiledMachine sharing = new CompiledMachine(shared, second);
+        Machine checkFirst = machine("AXLE", "FGHI"),
+            checkSecond = machine("AMIT", "FGHI");
+        for (int round = 0; round < 10; round += 1) {
+            String msg = text(random, 300);
+            assertEquals(checkSecond.convert(msg), sharing.convert(msg));
+            assertEquals(checkFirst.convert(msg), shared.convert(msg));
+        }
+        assertEquals(positions(checkFirst), positions(first));
+        assertEquals(positions(checkSecond), positions(second));
+    }
+
+}
@@ -0,0 +1,542 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Statistics of a corpus of message files in the input format of Main:
+ *  the count of each letter, of each bigram within a message, and of
+ *  each letter in each column of a message written out in rows of P
+ *  letters, for every period P up to periods().  A message is the text
+ *  between settings lines; whitespace and characters outside the
+ *  alphabet are ignored.
+ *
+ *  Files are added in parallel.  Uncompressed files in alphabets of
+ *  single bytes are memory-mapped and cut into chunks at settings
+ *  lines, and each thread counts its chunks into its own CorpusStats,
+ *  with no sharing, before the counts are merged.  Statistics can be
+ *  saved to a compact binary file, big-endian:
+ *      MAGIC, ALPHABET (modified UTF-8), PERIODS, MESSAGES, LETTERS,
+ *      letter counts, bigram counts, column counts,
+ *      number of files, and for each: PATH, LENGTH, MODIFIED
+ *  and loaded back, and a loaded file is updated incrementally by adding
+ *  only files it has not seen.  A file that has changed since it was
+ *  counted is an error, since its old counts cannot be taken back.
+ *  @author Divya Sivanandan
+ */
+public final class CorpusStats {
+
+    /** Update statistics as specified by ARGS, which are
+     *      [--periods N] CONFIG STATS FILE...
+     *  adding the message FILEs not yet counted to the statistics file
+     *  STATS, created if it does not exist, for the alphabet of the
+     *  configuration file CONFIG, with periods up to N (default
+     *  DEFAULT_PERIODS) for a new file.  Prints a summary. */
+    public static void main(String... args) {
+        try {
+            int periods = DEFAULT_PERIODS, k = 0;
+            if (args.length > 1 && args[0].equals("--periods")) {
+                try {
+                    periods = Integer.parseInt(args[1]);
+                } catch (NumberFormatException excp) {
+                    periods = 0;
+                }
+                if (periods <= 0) {
+                    throw error("bad value for --periods");
+                }
+                k = 2;
+            }
+            if (args.length - k < 2) {
+                throw error("usage: CorpusStats [--periods N] CONFIG STATS "
+                            + "FILE...");
+            }
+            Alphabet alpha;
+            try (Scanner config = Main.open(new File(args[k]))) {
+                alpha = Main.configure(config).alphabet();
+            }
+            File statsFile = new File(args[k + 1]);
+            CorpusStats stats = statsFile.exists() ? load(statsFile)
+                : new CorpusStats(alpha, periods);
+            if (!stats.alphabet().equals(chars(alpha))) {
+                throw error("%s is for another alphabet", statsFile);
+            }
+            List<File> files = new ArrayList<>();
+            for (int i = k + 2; i < args.length; i += 1) {
+                files.add(new File(args[i]));
+            }
+            stats.add(files);
+            stats.save(statsFile);
+            System.out.print(stats.summary());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Empty statistics over ALPHA, with periods 1 .. PERIODS. */
+    CorpusStats(Alphabet alpha, int periods) {
+        _alphabet = alpha;
+        _size = alpha.size();
+        _periods = periods;
+        _counts = new long[_size];
+        _bigrams = new long[_size * _size];
+        _columns = new long[_size * periods * (periods + 1) / 2];
+        _column = new int[periods + 1];
+    }
+
+    /** Return the characters of my alphabet. */
+    String alphabet() {
+        return chars(_alphabet);
+    }
+
+    /** Return the characters of ALPHA, in order. */
+    private static String chars(Alphabet alpha) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            result.append(alpha.toChar(i));
+        }
+        return result.toString();
+    }
+
+    /** Return the largest period whose columns are counted. */
+    int periods() {
+        return _periods;
+    }
+
+    /** Return the number of messages counted. */
+    long messages() {
+        return _messages;
+    }
+
+    /** Return the number of letters counted. */
+    long letters() {
+        return _letters;
+    }
+
+    /** Return the number of occurrences of the letter with index C. */
+    long count(int c) {
+        return _counts[c];
+    }
+
+    /** Return the number of occurrences, within a message, of the letter
+     *  with index B immediately after the one with index A. */
+    long bigram(int a, int b) {
+        return _bigrams[a * _size + b];
+    }
+
+    /** Return the count of each bigram A, B, at A * size + B, where size
+     *  is that of my alphabet. */
+    long[] bigrams() {
+        return _bigrams.clone();
+    }
+
+    /** Return the index of coincidence of all letters, scaled so that
+     *  random text scores about 1, as KeySearch scores it. */
+    double ioc() {
+        return ioc(_counts, 0);
+    }
+
+    /** Return the mean index of coincidence, scaled as by ioc(), of the
+     *  columns of the messages written in rows of PERIOD letters. */
+    double periodicIoc(int period) {
+        if (period < 1 || period > _periods) {
+            throw error("period %d not counted", period);
+        }
+        double sum = 0;
+        int base = _size * period * (period - 1) / 2;
+        for (int col = 0; col < period; col += 1) {
+            sum += ioc(_columns, base + col * _size);
+        }
+        return sum / period;
+    }
+
+    /** Return the scaled index of coincidence of the letter counts
+     *  COUNTS[FROM .. FROM + size - 1]. */
+    private double ioc(long[] counts, int from) {
+        long n = 0, sum = 0;
+        for (int c = from; c < from + _size; c += 1) {
+            n += counts[c];
+            sum += counts[c] * (counts[c] - 1);
+        }
+        return n < 2 ? 0.0 : (double) sum * _size / ((double) n * (n - 1));
+    }
+
+    /** Return a printable summary of me. */
+    String summary() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("files %d messages %d letters %d%n",
+                                    _files.size(), _messages, _letters));
+        result.append(String.format("ioc %.4f%n", ioc()));
+        for (int p = 1; p <= _periods; p += 1) {
+            result.append(String.format("period %d ioc %.4f%n", p,
+                                        periodicIoc(p)));
+        }
+        return result.toString();
+    }
+
+    /** Cut files into chunks of about SIZE bytes when counting them. */
+    void setChunkSize(long size) {
+        if (size <= 0) {
+            throw error("bad chunk size: %d", size);
+        }
+        _chunkSize = size;
+    }
+
+    /** Count the messages of FILES that I have not already counted, in
+     *  parallel. */
+    void add(List<File> files) {
+        List<Chunk> chunks = new ArrayList<>();
+        LinkedHashMap<String, long[]> added = new LinkedHashMap<>();
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            long[] stamp = { file.length(), file.lastModified() };
+            if (!file.isFile()) {
+                throw error("could not open %s", file);
+            }
+            long[] seen = _files.containsKey(path) ? _files.get(path)
+                : added.get(path);
+            if (seen != null) {
+                if (seen[0] != stamp[0] || seen[1] != stamp[1]) {
+                    throw error("%s has changed since it was counted", file);
+                }
+                continue;
+            }
+            added.put(path, stamp);
+            chunks.addAll(chunks(file));
+        }
+        CorpusStats total =
+            chunks.parallelStream()
+            .collect(() -> new CorpusStats(_alphabet, _periods),
+                     CorpusStats::count, CorpusStats::merge);
+        merge(total);
+        _files.putAll(added);
+    }
+
+    /** Add the counts of OTHER, over the same alphabet and periods, to
+     *  mine. */
+    void merge(CorpusStats other) {
+        _messages += other._messages;
+        _letters += other._letters;
+        add(_counts, other._counts);
+        add(_bigrams, other._bigrams);
+        add(_columns, other._columns);
+    }
+
+    /** Add the elements of FROM to those of TO. */
+    private static void add(long[] to, long[] from) {
+        for (int i = 0; i < to.length; i += 1) {
+            to[i] += from[i];
+        }
+    }
+
+    /** A part of a file that starts at a message: bytes START .. END - 1
+     *  of FILE, or all of FILE, read as text, if START is negative. */
+    private static final class Chunk {
+        /** The chunk START .. END - 1 of FILE. */
+        Chunk(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+        /** The file. */
+        private final File file;
+        /** Its bounds. */
+        private final long start, end;
+    }
+
+    /** Return FILE cut into chunks of about _chunkSize bytes at settings
+     *  lines, or as a single chunk to be read as text if it is compressed
+     *  or my alphabet is not single bytes. */
+    private List<Chunk> chunks(File file) {
+        List<Chunk> result = new ArrayList<>();
+        try {
+            if (byteTable() == null || Codecs.compressed(file)) {
+                result.add(new Chunk(file, -1, -1));
+                return result;
+            }
+            try (FileChannel in = FileChannel.open(file.toPath(),
+                                                   StandardOpenOption.READ)) {
+                long length = in.size();
+                for (long start = 0; start < length; ) {
+                    long end = length;
+                    if (length - start > _chunkSize) {
+                        end = nextMessage(in, start + _chunkSize);
+                    }
+                    result.add(new Chunk(file, start, end));
+                    start = end;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+        return result;
+    }
+
+    /** Return the offset of the first settings line of IN at or after
+     *  FROM, or the length of IN if there is none. */
+    private static long nextMessage(FileChannel in, long from)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        byte last = 0;
+        for (long pos = from - 1; pos < in.size(); ) {
+            buf.clear();
+            int n = in.read(buf, pos);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i += 1) {
+                byte b = buf.get(i);
+                if (b == '*' && (last == '\n' || last == '\r')) {
+                    return pos + i;
+                }
+                last = b;
+            }
+            pos += n;
+        }
+        return in.size();
+    }
+
+    /** Count the messages of CHUNK. */
+    private void count(Chunk chunk) {
+        startMessage();
+        try {
+            if (chunk.start < 0) {
+                countText(chunk.file);
+                return;
+            }
+            try (FileChannel in = FileChannel.open(chunk.file.toPath(),
+                                                   StandardOpenOption.READ)) {
+                MappedByteBuffer text =
+                    in.map(FileChannel.MapMode.READ_ONLY, chunk.start,
+                           chunk.end - chunk.start);
+                countBytes(text);
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", chunk.file);
+        }
+    }
+
+    /** Count the messages in the bytes of TEXT. */
+    private void countBytes(ByteBuffer text) {
+        int[] table = byteTable();
+        boolean lineStart = true, settings = false;
+        for (int i = 0, n = text.limit(); i < n; i += 1) {
+            int b = text.get(i) & BYTE_MASK;
+            if (b == '\n' || b == '\r') {
+                lineStart = true;
+                settings = false;
+            } else if (lineStart && b == '*') {
+                settings = true;
+                lineStart = false;
+                newMessage();
+            } else {
+                lineStart = false;
+                if (!settings && table[b] >= 0) {
+                    letter(table[b]);
+                }
+            }
+        }
+    }
+
+    /** Count the messages of FILE, read line by line as text. */
+    private void countText(File file) throws IOException {
+        try (Scanner in = new Scanner(Codecs.open(file))) {
+            while (in.hasNextLine()) {
+                String line = in.nextLine();
+                if (line.startsWith("*")) {
+                    newMessage();
+                    continue;
+                }
+                for (int i = 0; i < line.length(); i += 1) {
+                    char ch = line.charAt(i);
+                    if (ch > ' ' && _alphabet.contains(ch)) {
+                        letter(_alphabet.toInt(ch));
+                    }
+                }
+            }
+            if (in.ioException() != null) {
+                throw in.ioException();
+            }
+        }
+    }
+
+    /** Return the alphabet index of each byte of text in the default
+     *  charset, or -1 for bytes to ignore, or null if my alphabet is not
+     *  single bytes in that charset. */
+    private int[] byteTable() {
+        if (_byteTable == null) {
+            int[] table = _alphabet.byteIndices(Charset.defaultCharset());
+            if (table == null) {
+                return null;
+            }
+            for (int b = 0; b < table.length; b += 1) {
+                if (table[b] >= 0 && !_alphabet.contains((char) b)) {
+                    table[b] = -1;
+                }
+            }
+            _byteTable = table;
+        }
+        return _byteTable;
+    }
+
+    /** Count the start of a message. */
+    private void newMessage() {
+        _messages += 1;
+        startMessage();
+    }
+
+    /** Forget the letters before, starting a message. */
+    private void startMessage() {
+        _previous = -1;
+        for (int p = 1; p <= _periods; p += 1) {
+            _column[p] = 0;
+        }
+    }
+
+    /** Count the letter with index C, following those before it in the
+     *  current message. */
+    private void letter(int c) {
+        _letters += 1;
+        _counts[c] += 1;
+        if (_previous >= 0) {
+            _bigrams[_previous * _size + c] += 1;
+        }
+        _previous = c;
+        int base = 0;
+        for (int p = 1; p <= _periods; p += 1) {
+            int col = _column[p];
+            _columns[base + col * _size + c] += 1;
+            _column[p] = col + 1 == p ? 0 : col + 1;
+            base += p * _size;
+        }
+    }
+
+    /** Write me to FILE, atomically. */
+    void save(File file) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(MAGIC);
+            out.writeUTF(alphabet());
+            out.writeInt(_periods);
+            out.writeLong(_messages);
+            out.writeLong(_letters);
+            for (long[] counts : new long[][] { _counts, _bigrams,
+                                                _columns }) {
+                for (long n : counts) {
+                    out.writeLong(n);
+                }
+            }
+            out.writeInt(_files.size());
+            for (Map.Entry<String, long[]> e : _files.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue()[0]);
+                out.writeLong(e.getValue()[1]);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+        AtomicFile.write(file, bytes.toByteArray());
+    }
+
+    /** Return the statistics saved in FILE. */
+    static CorpusStats load(File file) {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readLong() != MAGIC) {
+                throw error("%s is not a statistics file", file);
+            }
+            CorpusStats result =
+                new CorpusStats(new Alphabet(in.readUTF()), in.readInt());
+            result._messages = in.readLong();
+            result._letters = in.readLong();
+            for (long[] counts : new long[][] { result._counts,
+                                                result._bigrams,
+                                                result._columns }) {
+                for (int i = 0; i < counts.length; i += 1) {
+                    counts[i] = in.readLong();
+                }
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String path = in.readUTF();
+                result._files.put(path, new long[] { in.readLong(),
+                                                     in.readLong() });
+            }
+            return result;
+        } catch (EOFException excp) {
+            throw error("%s is not a statistics file", file);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Default largest period. */
+    static final int DEFAULT_PERIODS = 26;
+
+    /** Default approximate bytes of a file counted by one task. */
+    static final long CHUNK_SIZE = 1 << 24;
+
+    /** First bytes of a statistics file. */
+    private static final long MAGIC = 0x656e69676d615354L;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Its size. */
+    private final int _size;
+
+    /** Largest period counted. */
+    private final int _periods;
+
+    /** Numbers of messages and letters. */
+    private long _messages, _letters;
+
+    /** Count of each letter. */
+    private final long[] _counts;
+
+    /** Count of each bigram A, B, at A * size + B. */
+    private final long[] _bigrams;
+
+    /** Count of each letter C in column K for period P, at
+     *  size * (P * (P - 1) / 2 + K) + C. */
+    private final long[] _columns;
+
+    /** Files counted, by absolute path, with their lengths and
+     *  modification times when counted. */
+    private final LinkedHashMap<String, long[]> _files =
+        new LinkedHashMap<>();
+
+    /** Column of the next letter of the current message for each
+     *  period. */
+    private final int[] _column;
+
+    /** Index of the previous letter of the current message, or -1. */
+    private int _previous;
+
+    /** Approximate bytes of a file counted by one task. */
+    private long _chunkSize = CHUNK_SIZE;
+
+    /** Alphabet index of each byte, or -1, or null if not computed. */
+    private int[] _byteTable;
+
+}
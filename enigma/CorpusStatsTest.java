@@ -0,0 +1,140 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CorpusStats class.
+ *  @author Divya Sivanandan
+ */
+public class CorpusStatsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return MESSAGES random messages in the input format of Main. */
+    private String corpus(int messages, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int m = 0; m < messages; m += 1) {
+            text.append("* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BW)\n");
+            for (int k = random.nextInt(5); k > 0; k -= 1) {
+                for (int i = random.nextInt(80); i > 0; i -= 1) {
+                    text.append(random.nextInt(6) == 0 ? ' '
+                                : (char) ('A' + random.nextInt(26)));
+                }
+                text.append(random.nextInt(2) == 0 ? "\n" : "\r\n");
+            }
+        }
+        return text.toString();
+    }
+
+    /** Return the counts of bigram A, B in the messages of TEXT. */
+    private long bigrams(String text, char a, char b) {
+        long n = 0;
+        for (String message : text.split("\\*[^\n]*\n")) {
+            String letters = message.replaceAll("\\s", "");
+            for (int i = 1; i < letters.length(); i += 1) {
+                if (letters.charAt(i - 1) == a && letters.charAt(i) == b) {
+                    n += 1;
+                }
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void testCounts() throws Exception {
+        String text = corpus(200, 43);
+        File file = File.createTempFile("corpus", ".in");
+        Files.write(file.toPath(), text.getBytes());
+        Alphabet alpha = navalMachine().alphabet();
+        CorpusStats stats = new CorpusStats(alpha, 5);
+        stats.setChunkSize(500);
+        stats.add(Arrays.asList(file));
+        file.delete();
+
+        assertEquals(200, stats.messages());
+        String letters = text.replaceAll("\\*[^\n]*\n|\\s", "");
+        assertEquals(letters.length(), stats.letters());
+        for (char ch : new char[] { 'A', 'E', 'Z' }) {
+            assertEquals(letters.chars().filter((c) -> c == ch).count(),
+                         stats.count(alpha.toInt(ch)));
+        }
+        assertEquals(bigrams(text, 'Q', 'U'),
+                     stats.bigram(alpha.toInt('Q'), alpha.toInt('U')));
+        assertEquals(bigrams(text, 'E', 'E'),
+                     stats.bigram(alpha.toInt('E'), alpha.toInt('E')));
+        assertEquals(stats.ioc(), stats.periodicIoc(1), 1e-12);
+    }
+
+    @Test
+    public void testIncremental() throws Exception {
+        File plain = File.createTempFile("corpus", ".in");
+        Files.write(plain.toPath(), corpus(50, 44).getBytes());
+        File packed = File.createTempFile("corpus", ".gz");
+        try (OutputStream out =
+             new GZIPOutputStream(new FileOutputStream(packed))) {
+            out.write(corpus(50, 45).getBytes());
+        }
+        Alphabet alpha = navalMachine().alphabet();
+        CorpusStats all = new CorpusStats(alpha, 3);
+        all.add(Arrays.asList(plain, packed));
+
+        File saved = File.createTempFile("corpus", ".stats");
+        CorpusStats first = new CorpusStats(alpha, 3);
+        first.add(Arrays.asList(plain));
+        first.save(saved);
+        CorpusStats loaded = CorpusStats.load(saved);
+        loaded.add(Arrays.asList(plain, packed, plain));
+        assertEquals(100, loaded.messages());
+        assertEquals(all.letters(), loaded.letters());
+        assertEquals(all.summary(), loaded.summary());
+        plain.delete();
+        packed.delete();
+        saved.delete();
+    }
+
+    @Test
+    public void testCompressedConfig() throws Exception {
+        File config = File.createTempFile("naval", ".conf.gz");
+        try (OutputStream out =
+             new GZIPOutputStream(new FileOutputStream(config))) {
+            out.write(navalConfig().getBytes());
+        }
+        File messages = File.createTempFile("corpus", ".in");
+        Files.write(messages.toPath(), corpus(20, 46).getBytes());
+        File saved = File.createTempFile("corpus", ".stats");
+        saved.delete();
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream summary = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(summary));
+            CorpusStats.main(config.getPath(), saved.getPath(),
+                             messages.getPath());
+        } finally {
+            System.setOut(stdout);
+        }
+        CorpusStats loaded = CorpusStats.load(saved);
+        assertEquals(20, loaded.messages());
+        assertEquals(loaded.summary(), summary.toString());
+        config.delete();
+        messages.delete();
+        saved.delete();
+    }
+
+}
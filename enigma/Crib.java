@@ -0,0 +1,57 @@
+package enigma;
+
+/** A crib: a guessed piece of plaintext together with the position in
+ *  a ciphertext at which it is believed to lie.
+ *  @author Divya Sivanandan
+ */
+final class Crib {
+
+    /** A crib whose plaintext, packed as by Alphabet.pack, is PLAIN, placed
+     *  at letter POSITION of a ciphertext. */
+    Crib(byte[] plain, int position) {
+        _plain = plain;
+        _position = position;
+    }
+
+    /** Return my plaintext as packed alphabet indices.  The array is
+     *  shared and must not be modified. */
+    byte[] plain() {
+        return _plain;
+    }
+
+    /** Return the index of the ciphertext letter under my first letter. */
+    int position() {
+        return _position;
+    }
+
+    /** Return my length in letters. */
+    int length() {
+        return _plain.length;
+    }
+
+    /** Return true iff I do not put any letter over the same letter of
+     *  the packed ciphertext TEXT, and lie entirely within it. */
+    boolean admissible(byte[] text) {
+        if (_position < 0 || _position + _plain.length > text.length) {
+            return false;
+        }
+        for (int k = 0; k < _plain.length; k += 1) {
+            if (_plain[k] == text[_position + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Crib at " + _position;
+    }
+
+    /** Packed plaintext. */
+    private final byte[] _plain;
+
+    /** Position in the ciphertext. */
+    private final int _position;
+
+}
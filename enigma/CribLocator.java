@@ -0,0 +1,187 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the admissible positions of cribs in long ciphertexts.  Because
+ *  the reflector of an Enigma is a derangement, no letter ever encrypts
+ *  to itself, so a crib can only lie where none of its letters falls on
+ *  the same ciphertext letter.
+ *
+ *  The ciphertext is scanned in chunks of CHUNK_WORDS * 64 positions.
+ *  For each chunk, every letter that occurs in some crib gets a bitset of
+ *  the positions at which it occurs; the conflicting positions of a crib
+ *  are then the OR of those bitsets, each shifted by the offset of the
+ *  letter within the crib.  All cribs are checked against a chunk while
+ *  its bitsets are in cache, and chunks are processed in parallel.
+ *  @author Divya Sivanandan
+ */
+class CribLocator {
+
+    /** Receives the admissible positions of cribs. */
+    interface Sink {
+        /** Receive the admissible positions of crib number CRIB among
+         *  positions BASE .. BASE + 64 * ADMISSIBLE.length - 1: bit
+         *  K % 64 of ADMISSIBLE[K / 64] is set iff the crib may lie at
+         *  BASE + K.  ADMISSIBLE is reused after the call returns.  May
+         *  be called concurrently from several threads. */
+        void accept(int crib, int base, long[] admissible);
+    }
+
+    /** A locator for cribs in ALPHA, which must be packable into bytes. */
+    CribLocator(Alphabet alpha) {
+        if (alpha.size() > Alphabet.MAX_PACKED) {
+            throw error("alphabet too large to pack into bytes");
+        }
+        _alphabet = alpha;
+        _cribs = new ArrayList<>();
+    }
+
+    /** Return true iff the machine M, once its rotors are inserted, never
+     *  encrypts a letter to itself, so that crib positions can be
+     *  excluded as this class does. */
+    static boolean applies(Machine M) {
+        return !M.getRotorsUsed().isEmpty()
+            && M.getRotorsUsed().get(0).permutation().derangement();
+    }
+
+    /** Add CRIB, ignoring whitespace, and return its index. */
+    int add(String crib) {
+        byte[] packed = _alphabet.pack(crib);
+        if (packed.length == 0) {
+            throw error("empty crib");
+        }
+        _cribs.add(packed);
+        return _cribs.size() - 1;
+    }
+
+    /** Return the number of cribs added so far. */
+    int size() {
+        return _cribs.size();
+    }
+
+    /** Report to SINK the admissible positions in the packed ciphertext
+     *  TEXT of every crib. */
+    void locate(byte[] text, Sink sink) {
+        byte[][] cribs = _cribs.toArray(new byte[0][]);
+        int[] slot = new int[Alphabet.MAX_PACKED];
+        Arrays.fill(slot, -1);
+        int letters = 0, longest = 0;
+        for (byte[] crib : cribs) {
+            longest = Math.max(longest, crib.length);
+            for (byte b : crib) {
+                if (slot[b & BYTE] == -1) {
+                    slot[b & BYTE] = letters;
+                    letters += 1;
+                }
+            }
+        }
+        int numLetters = letters, maxLen = longest;
+        int chunkSize = CHUNK_WORDS * Long.SIZE;
+        int chunks = (text.length + chunkSize - 1) / chunkSize;
+        IntStream.range(0, chunks).parallel().forEach(c ->
+            scanChunk(text, c * chunkSize, cribs, slot, numLetters, maxLen,
+                      sink));
+    }
+
+    /** Return the admissible positions in the packed ciphertext TEXT of
+     *  every crib, ordered by crib and then by position. */
+    List<Crib> locate(byte[] text) {
+        ArrayList<ArrayList<Crib>> found = new ArrayList<>();
+        for (int i = 0; i < _cribs.size(); i += 1) {
+            found.add(new ArrayList<>());
+        }
+        locate(text, (crib, base, admissible) -> {
+            ArrayList<Crib> list = found.get(crib);
+            synchronized (list) {
+                for (int w = 0; w < admissible.length; w += 1) {
+                    long bits = admissible[w];
+                    while (bits != 0) {
+                        int k = Long.numberOfTrailingZeros(bits);
+                        list.add(new Crib(_cribs.get(crib),
+                                          base + w * Long.SIZE + k));
+                        bits &= bits - 1;
+                    }
+                }
+            }
+        });
+        ArrayList<Crib> result = new ArrayList<>();
+        for (ArrayList<Crib> list : found) {
+            list.sort(Comparator.comparingInt(Crib::position));
+            result.addAll(list);
+        }
+        return result;
+    }
+
+    /** Report to SINK the admissible positions of CRIBS in the chunk of
+     *  the packed ciphertext TEXT starting at BASE.  SLOT maps each of
+     *  the NUMLETTERS letters used by CRIBS to a bitset, and no crib is
+     *  longer than MAXLEN. */
+    private static void scanChunk(byte[] text, int base, byte[][] cribs,
+                                  int[] slot, int numLetters, int maxLen,
+                                  Sink sink) {
+        int span = Math.min(text.length - base,
+                            CHUNK_WORDS * Long.SIZE + maxLen);
+        int spanWords = CHUNK_WORDS + (maxLen + Long.SIZE - 1) / Long.SIZE
+            + 1;
+        long[][] occurs = new long[numLetters][spanWords];
+        for (int p = 0; p < span; p += 1) {
+            int s = slot[text[base + p] & BYTE];
+            if (s >= 0) {
+                occurs[s][p >>> 6] |= 1L << p;
+            }
+        }
+        long[] admissible = new long[CHUNK_WORDS];
+        for (int c = 0; c < cribs.length; c += 1) {
+            byte[] crib = cribs[c];
+            int fits = Math.min(text.length - crib.length + 1 - base,
+                                CHUNK_WORDS * Long.SIZE);
+            Arrays.fill(admissible, 0);
+            for (int k = 0; k < crib.length; k += 1) {
+                orShifted(admissible, occurs[slot[crib[k] & BYTE]], k);
+            }
+            for (int w = 0; w < CHUNK_WORDS; w += 1) {
+                int lo = w * Long.SIZE;
+                long valid = fits >= lo + Long.SIZE ? -1L
+                    : fits <= lo ? 0L : (1L << (fits - lo)) - 1;
+                admissible[w] = ~admissible[w] & valid;
+            }
+            sink.accept(c, base, admissible);
+        }
+    }
+
+    /** Set in each word of DEST the bits of SRC that lie SHIFT
+     *  positions further on, so that bit P of DEST receives bit
+     *  P + SHIFT of SRC. */
+    private static void orShifted(long[] dest, long[] src, int shift) {
+        int q = shift >>> 6, r = shift & (Long.SIZE - 1);
+        if (r == 0) {
+            for (int w = 0; w < dest.length; w += 1) {
+                dest[w] |= src[w + q];
+            }
+        } else {
+            for (int w = 0; w < dest.length; w += 1) {
+                dest[w] |= (src[w + q] >>> r)
+                    | (src[w + q + 1] << (Long.SIZE - r));
+            }
+        }
+    }
+
+    /** Number of 64-position words of ciphertext scanned per chunk. */
+    static final int CHUNK_WORDS = 1 << 10;
+
+    /** Mask converting a packed letter to its unsigned index. */
+    private static final int BYTE = 0xff;
+
+    /** Alphabet of cribs and ciphertexts. */
+    private final Alphabet _alphabet;
+
+    /** Packed cribs. */
+    private final ArrayList<byte[]> _cribs;
+
+}
@@ -0,0 +1,228 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.CribLocator.CHUNK_WORDS;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribLocator class, which check
+ *  its positions against Crib.admissible.
+ *  @author Divya Sivanandan
+ */
+public class CribLocatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Positions scanned per chunk. */
+    private static final int CHUNK = CHUNK_WORDS * Long.SIZE;
+
+    /** Letters of the alphabets used. */
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Return the string of the packed text TEXT in ALPHA. */
+    private String unpack(byte[] text, Alphabet alpha) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : text) {
+            result.append(alpha.toChar(b));
+        }
+        return result.toString();
+    }
+
+    /** Return LENGTH random letters of an alphabet of SIZE letters,
+     *  using RAND. */
+    private byte[] random(Random rand, int length, int size) {
+        byte[] result = new byte[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = (byte) rand.nextInt(size);
+        }
+        return result;
+    }
+
+    /** Change letters of TEXT, in an alphabet of SIZE letters, so that
+     *  CRIB may lie at each of POSITIONS. */
+    private void plant(byte[] text, int size, byte[] crib, int... positions) {
+        for (int p : positions) {
+            for (int k = 0; k < crib.length; k += 1) {
+                boolean[] banned = new boolean[size];
+                for (int q : positions) {
+                    int j = p + k - q;
+                    if (j >= 0 && j < crib.length) {
+                        banned[crib[j]] = true;
+                    }
+                }
+                int v = text[p + k];
+                while (banned[v]) {
+                    v = (v + 1) % size;
+                }
+                text[p + k] = (byte) v;
+            }
+        }
+    }
+
+    /** Return the positions in TEXT at which CRIB is admissible, by
+     *  Crib.admissible. */
+    private List<Integer> expected(byte[] text, byte[] crib) {
+        List<Integer> result = new ArrayList<>();
+        for (int p = 0; p <= text.length; p += 1) {
+            if (new Crib(crib, p).admissible(text)) {
+                result.add(p);
+            }
+        }
+        return result;
+    }
+
+    /** Check that a locator for CRIBS, in an alphabet of SIZE letters,
+     *  finds in TEXT exactly the positions that Crib.admissible allows,
+     *  and return the positions of each crib. */
+    private List<List<Integer>> check(byte[] text, int size,
+                                      byte[]... cribs) {
+        Alphabet alpha = new Alphabet(LETTERS.substring(0, size));
+        CribLocator locator = new CribLocator(alpha);
+        for (byte[] crib : cribs) {
+            locator.add(unpack(crib, alpha));
+        }
+        List<Crib> found = locator.locate(text);
+        List<List<Integer>> result = new ArrayList<>();
+        int total = 0;
+        for (int c = 0; c < cribs.length; c += 1) {
+            List<Integer> want = expected(text, cribs[c]);
+            List<Integer> got = new ArrayList<>();
+            int end = Math.min(found.size(), total + want.size());
+            for (Crib crib : found.subList(total, end)) {
+                assertTrue(Arrays.equals(cribs[c], crib.plain()));
+                got.add(crib.position());
+            }
+            total += got.size();
+            assertEquals(msg("check", "crib %d of length %d in %d letters",
+                             c, cribs[c].length, text.length),
+                         want, got);
+            result.add(got);
+        }
+        assertEquals(total, found.size());
+        return result;
+    }
+
+    @Test
+    public void testShifts() {
+        Random rand = new Random(61);
+        byte[] text = random(rand, 1000, 8);
+        byte[] crib = random(rand, 200, 8);
+        int[] planted = { 0, 63, 64, 65, 127, 128, 300, 800 };
+        plant(text, 8, crib, planted);
+        List<Integer> got = check(text, 8, crib).get(0);
+        for (int p : planted) {
+            assertTrue("planted at " + p, got.contains(p));
+        }
+        byte[] word = random(rand, 64, 2);
+        byte[] words = random(rand, 129, 2);
+        plant(text, 8, word, 1, 500);
+        plant(text, 8, words, 192, 700);
+        List<List<Integer>> all = check(text, 8, word, words, crib);
+        assertTrue(all.get(0).contains(1) && all.get(0).contains(500));
+        assertTrue(all.get(1).contains(192) && all.get(1).contains(700));
+    }
+
+    @Test
+    public void testChunkBoundaries() {
+        Random rand = new Random(67);
+        byte[] text = random(rand, 2 * CHUNK + 70, 26);
+        byte[] crib = random(rand, 130, 26);
+        int[] planted = { CHUNK - 130, CHUNK - 64, CHUNK - 1, CHUNK,
+                          CHUNK + 1, 2 * CHUNK - 60, 2 * CHUNK + 70 - 130 };
+        plant(text, 26, crib, planted);
+        List<Integer> got = check(text, 26, crib, random(rand, 1, 26),
+                                  random(rand, 65, 26)).get(0);
+        for (int p : planted) {
+            assertTrue("planted at " + p, got.contains(p));
+        }
+    }
+
+    @Test
+    public void testTail() {
+        Random rand = new Random(71);
+        for (int length : new int[] { 1, 63, 64, 65, 127, 128, 129,
+                                      CHUNK - 1, CHUNK, CHUNK + 1 }) {
+            byte[] text = random(rand, length, 4);
+            byte[] crib = random(rand, Math.min(length, 10), 4);
+            plant(text, 4, crib, length - crib.length);
+            List<Integer> got = check(text, 4, crib, random(rand, 1, 4),
+                                      text.clone()).get(0);
+            assertEquals(length - crib.length,
+                         (int) got.get(got.size() - 1));
+            byte[] tooLong = random(rand, length + 1, 4);
+            assertTrue(check(text, 4, tooLong).get(0).isEmpty());
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        Random rand = new Random(73);
+        for (int trial = 0; trial < 40; trial += 1) {
+            int size = 2 + rand.nextInt(25);
+            int length = rand.nextInt(4) == 0 ? rand.nextInt(3 * CHUNK)
+                : rand.nextInt(500);
+            byte[] text = random(rand, length + 1, size);
+            byte[][] cribs = new byte[1 + rand.nextInt(4)][];
+            for (int c = 0; c < cribs.length; c += 1) {
+                cribs[c] = random(rand, 1 + rand.nextInt(150), size);
+                if (cribs[c].length <= text.length) {
+                    plant(text, size, cribs[c],
+                          rand.nextInt(text.length - cribs[c].length + 1));
+                }
+            }
+            check(text, size, cribs);
+        }
+    }
+
+    @Test
+    public void testSink() {
+        Random rand = new Random(79);
+        byte[] text = random(rand, 3 * CHUNK + 5, 26);
+        byte[] crib = random(rand, 70, 26);
+        plant(text, 26, crib, 3, CHUNK + 7, 3 * CHUNK + 5 - 70);
+        CribLocator locator = new CribLocator(UPPER);
+        locator.add(unpack(crib, UPPER));
+        assertEquals(1, locator.size());
+        List<Integer> got = new ArrayList<>();
+        locator.locate(text, (c, base, admissible) -> {
+            assertEquals(0, c);
+            assertEquals(0, base % CHUNK);
+            assertEquals(CHUNK_WORDS, admissible.length);
+            synchronized (got) {
+                for (int k = 0; k < CHUNK; k += 1) {
+                    if ((admissible[k / Long.SIZE] & 1L << k) != 0) {
+                        got.add(base + k);
+                    }
+                }
+            }
+        });
+        got.sort(null);
+        assertEquals(expected(text, crib), got);
+    }
+
+    @Test
+    public void testErrors() {
+        CribLocator locator = new CribLocator(UPPER);
+        try {
+            locator.add(" \n");
+            fail("empty crib accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(0, locator.size());
+        }
+        Machine M = navalMachine();
+        assertFalse(CribLocator.applies(M));
+        M.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        assertTrue(CribLocator.applies(M));
+    }
+
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+/** Evidence that two messages of a traffic set are in depth, i.e. that
+ *  they were enciphered from the same machine state at some relative
+ *  offset.  Produced by Banburismus.
+ *  @author Divya Sivanandan
+ */
+final class Depth implements Comparable<Depth> {
+
+    /** Evidence that message SECOND, started OFFSET letters after message
+     *  FIRST, agrees with it in COINCIDENCES of the OVERLAP letters they
+     *  share, for a total weight of SCORE decibans. */
+    Depth(int first, int second, int offset, int overlap, int coincidences,
+          double score) {
+        _first = first;
+        _second = second;
+        _offset = offset;
+        _overlap = overlap;
+        _coincidences = coincidences;
+        _score = score;
+    }
+
+    /** Return the index of the first message of the pair. */
+    int first() {
+        return _first;
+    }
+
+    /** Return the index of the second message of the pair. */
+    int second() {
+        return _second;
+    }
+
+    /** Return the number of letters by which second() starts after
+     *  first().  Letter K of first() lies over letter K - offset() of
+     *  second(); the offset may be negative. */
+    int offset() {
+        return _offset;
+    }
+
+    /** Return the number of letters the two messages share at offset(). */
+    int overlap() {
+        return _overlap;
+    }
+
+    /** Return the number of positions in the overlap at which the two
+     *  ciphertexts have the same letter. */
+    int coincidences() {
+        return _coincidences;
+    }
+
+    /** Return the weight of evidence for this depth in decibans. */
+    double score() {
+        return _score;
+    }
+
+    /** Orders depths by decreasing score, then by pair and offset. */
+    @Override
+    public int compareTo(Depth other) {
+        int c = Double.compare(other._score, _score);
+        if (c == 0) {
+            c = Integer.compare(_first, other._first);
+        }
+        if (c == 0) {
+            c = Integer.compare(_second, other._second);
+        }
+        if (c == 0) {
+            c = Integer.compare(_offset, other._offset);
+        }
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d %d %+d %d/%d %.1f", _first, _second,
+                             _offset, _coincidences, _overlap, _score);
+    }
+
+    /** Index of the first message. */
+    private final int _first;
+
+    /** Index of the second message. */
+    private final int _second;
+
+    /** Start of the second message relative to the first. */
+    private final int _offset;
+
+    /** Length of the overlap. */
+    private final int _overlap;
+
+    /** Number of coincidences in the overlap. */
+    private final int _coincidences;
+
+    /** Weight of evidence in decibans. */
+    private final double _score;
+
+}
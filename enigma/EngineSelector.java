@@ -0,0 +1,380 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** The choice, for Main, of how to convert: whether to compile each
+ *  settings line into tables (see CompiledMachine) and whether to run a
+ *  Pipeline rather than a single thread.  By default the choice follows
+ *  from the configuration and a sample of the input: compiling repays
+ *  building 2 * |alphabet|^2 entries per moving slot only when segments
+ *  are long compared with that, and is impossible for alphabets of more
+ *  than CompiledMachine.MAX_SIZE characters, while pipelining pays only
+ *  for long inputs of several segments with processors to spare.
+ *
+ *  Alternatively, a calibration run converts the start of the input with
+ *  every candidate, on this hardware, and picks the fastest.  Its result
+ *  is cached, under the CRC-32 checksum of the configuration file, in the
+ *  directory named by the system property enigma.engine.cache (default
+ *  enigma-engines in the temporary directory), and reused for that
+ *  configuration until the next calibration.
+ *  @author Divya Sivanandan
+ */
+final class EngineSelector {
+
+    /** The ways of converting. */
+    enum Engine {
+        /** One thread, one character at a time. */
+        PLAIN("plain", false, false),
+        /** One thread, with compiled tables. */
+        COMPILE("compile", true, false),
+        /** A pipeline, one character at a time. */
+        PIPELINE("pipeline", false, true),
+        /** A pipeline, with compiled tables. */
+        PIPELINE_COMPILE("pipeline-compile", true, true);
+
+        /** The engine named NAME that compiles iff COMPILES and pipelines
+         *  iff PIPELINES. */
+        Engine(String name, boolean compiles, boolean pipelines) {
+            _name = name;
+            _compiles = compiles;
+            _pipelines = pipelines;
+        }
+
+        /** Return true iff I compile settings lines. */
+        boolean compiles() {
+            return _compiles;
+        }
+
+        /** Return true iff I run a pipeline. */
+        boolean pipelines() {
+            return _pipelines;
+        }
+
+        /** Return the options of Main that select me. */
+        String[] options() {
+            if (_compiles && _pipelines) {
+                return new String[] { "--compile", "--pipeline" };
+            } else if (_compiles) {
+                return new String[] { "--compile" };
+            } else if (_pipelines) {
+                return new String[] { "--pipeline" };
+            }
+            return new String[0];
+        }
+
+        @Override
+        public String toString() {
+            return _name;
+        }
+
+        /** Return the engine named NAME. */
+        static Engine forName(String name) {
+            for (Engine engine : values()) {
+                if (engine._name.equals(name)) {
+                    return engine;
+                }
+            }
+            throw error("unknown engine %s", name);
+        }
+
+        /** My name. */
+        private final String _name;
+        /** True iff I compile. */
+        private final boolean _compiles;
+        /** True iff I pipeline. */
+        private final boolean _pipelines;
+    }
+
+    /** A selector for converting, with M, configured from CONFIG, the
+     *  messages of INPUT.  Either file may be null if it is not a file,
+     *  in which case nothing is cached, or the input is assumed short.
+     *  The choice may use a pipeline iff PIPELINING. */
+    EngineSelector(Machine M, File config, File input, boolean pipelining) {
+        _machine = M;
+        _config = config;
+        _input = input;
+        _pipelining = pipelining;
+        _processors = Runtime.getRuntime().availableProcessors();
+        sample();
+    }
+
+    /** Return the checksum of my configuration file, in hex, or null if
+     *  there is none. */
+    String checksum() {
+        return _config == null ? null : checksum(_config);
+    }
+
+    /** Return the CRC-32 checksum of the contents of CONFIG, in hex. */
+    static String checksum(File config) {
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(Files.readAllBytes(config.toPath()));
+            return String.format("%08x", crc.getValue());
+        } catch (IOException excp) {
+            throw error("could not read %s", config);
+        }
+    }
+
+    /** Return my choice: the result of a new calibration iff CALIBRATE,
+     *  or otherwise that cached for my configuration if there is one,
+     *  or otherwise that of heuristic().  The reason for it is then
+     *  given by reason(). */
+    Engine select(boolean calibrate) {
+        if (calibrate) {
+            if (_config == null || _input == null) {
+                Engine result = heuristic();
+                _reason = "cannot calibrate without files; " + _reason;
+                return result;
+            }
+            Engine result = calibrate();
+            save(result);
+            return result;
+        }
+        Engine cached = cached();
+        if (cached != null && (_pipelining || !cached.pipelines())) {
+            _reason = String.format("calibrated for configuration %s, "
+                                    + "cached in %s", checksum(),
+                                    cacheFile());
+            return cached;
+        }
+        return heuristic();
+    }
+
+    /** Return the reason for my last choice. */
+    String reason() {
+        return _reason;
+    }
+
+    /** Return the choice that follows from my configuration and sample
+     *  of the input. */
+    Engine heuristic() {
+        int size = _machine.alphabet().size();
+        int slots = _machine.numRotors(), pawls = _machine.numPawls();
+        long breakEven = Math.max(Machine.COMPILE_THRESHOLD,
+                                  (long) size * size * pawls / slots);
+        boolean compile = size <= CompiledMachine.MAX_SIZE && pawls > 0
+            && pawls < slots && averageSegment() >= breakEven;
+        boolean pipeline = _pipelining && _processors > 1
+            && _length >= PIPELINE_THRESHOLD && segments() >= 2;
+        _reason = String.format("heuristic: %d letters, %d slots, %d pawls, "
+                                + "%s input in about %d segments, "
+                                + "%d processors",
+                                size, slots, pawls,
+                                _length < 0 ? "unknown"
+                                : _length + " byte", segments(),
+                                _processors);
+        return pipeline ? (compile ? Engine.PIPELINE_COMPILE
+                           : Engine.PIPELINE)
+            : compile ? Engine.COMPILE : Engine.PLAIN;
+    }
+
+    /** Return the fastest candidate at converting the start of my input,
+     *  cut back to the end of its last whole line that is not blank,
+     *  timing each over CALIBRATION_ROUNDS runs after a first one to warm
+     *  up, and set the reason accordingly. */
+    Engine calibrate() {
+        File sample = null, output = null;
+        boolean metrics = Metrics.INSTANCE.isEnabled();
+        try {
+            sample = File.createTempFile("calibrate", ".in");
+            output = File.createTempFile("calibrate", ".out");
+            byte[] head;
+            try (InputStream in = Codecs.open(_input)) {
+                head = in.readNBytes(CALIBRATION_BYTES);
+            }
+            int end = head.length;
+            if (end == CALIBRATION_BYTES) {
+                end -= 1;
+                while (end > 0 && head[end] != '\n') {
+                    end -= 1;
+                }
+                while (end > 0 && (head[end - 1] == '\n'
+                                   || head[end - 1] == '\r')) {
+                    end -= 1;
+                }
+            }
+            Files.write(sample.toPath(), Arrays.copyOf(head, end));
+            Metrics.INSTANCE.setEnabled(false);
+            Map<Engine, Long> times = new EnumMap<>(Engine.class);
+            for (Engine engine : Engine.values()) {
+                if (engine.pipelines() && !_pipelining) {
+                    continue;
+                }
+                run(engine, sample, output);
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < CALIBRATION_ROUNDS; r += 1) {
+                    long start = System.nanoTime();
+                    run(engine, sample, output);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                times.put(engine, best);
+            }
+            Engine result = Engine.PLAIN;
+            StringBuilder reason = new StringBuilder("calibrated:");
+            for (Map.Entry<Engine, Long> e : times.entrySet()) {
+                reason.append(String.format(" %s %.1f MB/s", e.getKey(),
+                                            end * 1e3 / e.getValue()));
+                if (e.getValue() < times.get(result)) {
+                    result = e.getKey();
+                }
+            }
+            _reason = reason.toString();
+            return result;
+        } catch (IOException excp) {
+            throw error("could not calibrate: %s", excp.getMessage());
+        } finally {
+            Metrics.INSTANCE.setEnabled(metrics);
+            if (sample != null) {
+                sample.delete();
+            }
+            if (output != null) {
+                output.delete();
+            }
+        }
+    }
+
+    /** Convert SAMPLE to OUTPUT with ENGINE. */
+    private void run(Engine engine, File sample, File output) {
+        String[] options = engine.options();
+        String[] args = new String[options.length + 3];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = _config.getPath();
+        args[options.length + 1] = sample.getPath();
+        args[options.length + 2] = output.getPath();
+        Main main = new Main(args);
+        try {
+            main.process();
+        } finally {
+            main.close();
+        }
+    }
+
+    /** Return the cache file of my configuration, or null if there is
+     *  none. */
+    File cacheFile() {
+        String checksum = checksum();
+        if (checksum == null) {
+            return null;
+        }
+        String dir = System.getProperty(CACHE_PROPERTY);
+        if (dir == null) {
+            dir = new File(System.getProperty("java.io.tmpdir"),
+                           "enigma-engines").getPath();
+        }
+        return new File(dir, checksum);
+    }
+
+    /** Return the engine cached for my configuration, or null if there
+     *  is none. */
+    private Engine cached() {
+        File file = cacheFile();
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file.toPath());
+            return lines.isEmpty() ? null : Engine.forName(lines.get(0));
+        } catch (IOException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Cache ENGINE, calibrated for my configuration, with the reason. */
+    private void save(Engine engine) {
+        File file = cacheFile();
+        file.getParentFile().mkdirs();
+        AtomicFile.write(file, String.format("%s%n%s%n", engine, _reason));
+    }
+
+    /** Count the bytes and segments of up to SAMPLE_BYTES of the start of
+     *  my input, and find its length, if it is an uncompressed file. */
+    private void sample() {
+        _length = -1;
+        if (_input == null) {
+            return;
+        }
+        try {
+            if (!Codecs.compressed(_input)) {
+                _length = _input.length();
+            }
+            byte[] head;
+            try (InputStream in = Codecs.open(_input)) {
+                head = in.readNBytes(SAMPLE_BYTES);
+            }
+            _sampled = head.length;
+            for (int i = 0; i < head.length; i += 1) {
+                if (head[i] == '*' && (i == 0 || head[i - 1] == '\n')) {
+                    _sampleSegments += 1;
+                }
+            }
+        } catch (IOException excp) {
+            _length = -1;
+        }
+    }
+
+    /** Return the estimated number of segments of my input. */
+    private long segments() {
+        if (_sampleSegments == 0) {
+            return _input == null ? 0 : 1;
+        } else if (_length <= _sampled) {
+            return _sampleSegments;
+        }
+        return _sampleSegments * (_length / _sampled);
+    }
+
+    /** Return the estimated average length of a segment of my input, in
+     *  bytes. */
+    private long averageSegment() {
+        if (_input == null) {
+            return 0;
+        }
+        return _sampled / Math.max(1, _sampleSegments);
+    }
+
+    /** Inputs of at least this many bytes may be pipelined. */
+    static final long PIPELINE_THRESHOLD = 8L << 20;
+
+    /** Bytes of the input sampled for its segments. */
+    static final int SAMPLE_BYTES = 1 << 20;
+
+    /** Bytes of the input converted by each calibration run. */
+    static final int CALIBRATION_BYTES = 256 << 10;
+
+    /** Timed runs of each candidate when calibrating. */
+    static final int CALIBRATION_ROUNDS = 2;
+
+    /** System property naming the cache directory. */
+    static final String CACHE_PROPERTY = "enigma.engine.cache";
+
+    /** Machine configured from my configuration. */
+    private final Machine _machine;
+
+    /** Configuration and input files, or null. */
+    private final File _config, _input;
+
+    /** True iff a pipeline may be chosen. */
+    private final boolean _pipelining;
+
+    /** Number of processors. */
+    private final int _processors;
+
+    /** Length of the input file, or -1 if unknown. */
+    private long _length;
+
+    /** Bytes sampled and segments found in them. */
+    private long _sampled, _sampleSegments;
+
+    /** Reason for the last choice. */
+    private String _reason = "";
+
+}
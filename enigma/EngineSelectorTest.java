@@ -0,0 +1,116 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EngineSelector class.
+ *  @author Divya Sivanandan
+ */
+public class EngineSelectorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return a temporary file holding MESSAGES messages of LENGTH
+     *  letters each. */
+    private File input(int messages, int length) throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int m = 0; m < messages; m += 1) {
+            text.append("* B Beta III IV I AXLE (HQ) (EX)\n");
+            for (int i = 0; i < length; i += 1) {
+                text.append((char) ('A' + i % 26));
+                if (i % 60 == 59 || i == length - 1) {
+                    text.append('\n');
+                }
+            }
+        }
+        File file = File.createTempFile("select", ".in");
+        Files.write(file.toPath(), text.toString().getBytes());
+        return file;
+    }
+
+    @Test
+    public void testHeuristic() throws Exception {
+        File shortSegments = input(100, 20);
+        File longSegments = input(2, 100000);
+        Machine M = navalMachine();
+        assertEquals(EngineSelector.Engine.PLAIN,
+                     new EngineSelector(M, null, shortSegments, true)
+                     .heuristic());
+        EngineSelector.Engine engine =
+            new EngineSelector(M, null, longSegments, true).heuristic();
+        assertTrue(engine.compiles());
+        assertFalse(engine.pipelines());
+        assertEquals(EngineSelector.Engine.PLAIN,
+                     new EngineSelector(M, null, null, true).heuristic());
+        shortSegments.delete();
+        longSegments.delete();
+    }
+
+    @Test
+    public void testCalibrationCache() throws Exception {
+        File dir = Files.createTempDirectory("engines").toFile();
+        File config = File.createTempFile("select", ".conf");
+        Files.write(config.toPath(), navalConfig().getBytes());
+        File in = input(20, 500);
+        String saved = System.getProperty(EngineSelector.CACHE_PROPERTY);
+        System.setProperty(EngineSelector.CACHE_PROPERTY, dir.getPath());
+        try {
+            Machine M = navalMachine();
+            EngineSelector selector = new EngineSelector(M, config, in, false);
+            EngineSelector.Engine calibrated = selector.select(true);
+            assertFalse(calibrated.pipelines());
+            assertTrue(selector.reason().startsWith("calibrated"));
+            assertTrue(selector.cacheFile().isFile());
+
+            EngineSelector again = new EngineSelector(M, config, in, false);
+            assertEquals(calibrated, again.select(false));
+            assertTrue(again.reason().contains(again.checksum()));
+        } finally {
+            if (saved == null) {
+                System.clearProperty(EngineSelector.CACHE_PROPERTY);
+            } else {
+                System.setProperty(EngineSelector.CACHE_PROPERTY, saved);
+            }
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+            config.delete();
+            in.delete();
+        }
+    }
+
+    @Test
+    public void testCalibrationSample() throws Exception {
+        File config = File.createTempFile("select", ".conf");
+        Files.write(config.toPath(), navalConfig().getBytes());
+        String settings = "* B Beta III IV I AXLE (HQ) (EX)\n";
+        StringBuilder text = new StringBuilder(settings);
+        while (text.length() < EngineSelector.CALIBRATION_BYTES - 10) {
+            text.append("ABCDEFGHIJKLMNOPQRSTUVWXY\n");
+        }
+        text.setLength(EngineSelector.CALIBRATION_BYTES - 10);
+        text.append("\n\n").append(settings).append("HELLO WORLD\n");
+        File in = File.createTempFile("select", ".in");
+        Files.write(in.toPath(), text.toString().getBytes());
+        try {
+            EngineSelector selector =
+                new EngineSelector(navalMachine(), config, in, false);
+            assertNotNull(selector.calibrate());
+            assertTrue(selector.reason().startsWith("calibrated"));
+        } finally {
+            config.delete();
+            in.delete();
+        }
+    }
+
+}
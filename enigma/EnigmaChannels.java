@@ -0,0 +1,158 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/** Byte channels that convert text with a Machine as it passes through,
+ *  the channel counterparts of EnigmaReader and EnigmaWriter.  Text is
+ *  in the default charset and is converted as bytes (see
+ *  Machine.convert(ByteBuffer, ByteBuffer)), a buffer at a time, so the
+ *  machine's alphabet must be single bytes in that charset.
+ *  @author Divya Sivanandan
+ */
+final class EnigmaChannels {
+
+    /** Not instantiable. */
+    private EnigmaChannels() {
+    }
+
+    /** Return a channel reading the conversion of the text of IN by M,
+     *  which must already be set up, grouping letters in fives iff GROUP
+     *  and copying whitespace through iff WHITESPACE (see
+     *  StreamFormat). */
+    static ReadableByteChannel readable(ReadableByteChannel in, Machine M,
+                                        boolean group, boolean whitespace) {
+        return new Readable(in, new StreamFormat(M, group, whitespace));
+    }
+
+    /** Return a channel writing the conversion of its text by M, which
+     *  must already be set up, to OUT, grouping letters in fives iff
+     *  GROUP and copying whitespace through iff WHITESPACE (see
+     *  StreamFormat).  Each write returns once all of its conversion has
+     *  been written to OUT, which must therefore be in blocking mode. */
+    static WritableByteChannel writable(WritableByteChannel out, Machine M,
+                                        boolean group, boolean whitespace) {
+        return new Writable(out, new StreamFormat(M, group, whitespace));
+    }
+
+    /** A converting ReadableByteChannel. */
+    private static final class Readable implements ReadableByteChannel {
+        /** A channel reading the conversion of IN by FORMAT. */
+        Readable(ReadableByteChannel in, StreamFormat format) {
+            format.checkBytes();
+            _in = in;
+            _format = format;
+            _text = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            _converted =
+                ByteBuffer.allocateDirect(StreamFormat.maxOutput(BUFFER_SIZE));
+            _converted.flip();
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            if (!_open) {
+                throw new ClosedChannelException();
+            }
+            while (!_converted.hasRemaining()) {
+                _text.clear();
+                int n = _in.read(_text);
+                if (n <= 0) {
+                    return n;
+                }
+                _text.flip();
+                _converted.clear();
+                _format.convert(_text, _converted);
+                _converted.flip();
+            }
+            int n = Math.min(dst.remaining(), _converted.remaining());
+            ByteBuffer chunk = _converted.duplicate();
+            chunk.limit(chunk.position() + n);
+            dst.put(chunk);
+            _converted.position(_converted.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            _open = false;
+            _in.close();
+        }
+
+        /** The underlying channel. */
+        private final ReadableByteChannel _in;
+        /** Converts and lays out text. */
+        private final StreamFormat _format;
+        /** Text read from _in. */
+        private final ByteBuffer _text;
+        /** Converted text; what remains is yet to be read. */
+        private final ByteBuffer _converted;
+        /** False once closed. */
+        private boolean _open = true;
+    }
+
+    /** A converting WritableByteChannel. */
+    private static final class Writable implements WritableByteChannel {
+        /** A channel writing the conversion of its text by FORMAT to
+         *  OUT. */
+        Writable(WritableByteChannel out, StreamFormat format) {
+            format.checkBytes();
+            _out = out;
+            _format = format;
+            _converted =
+                ByteBuffer.allocateDirect(StreamFormat.maxOutput(BUFFER_SIZE));
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            if (!_open) {
+                throw new ClosedChannelException();
+            }
+            int result = src.remaining();
+            ByteBuffer chunk = src.duplicate();
+            while (src.hasRemaining()) {
+                int n = Math.min(src.remaining(), BUFFER_SIZE);
+                chunk.limit(src.position() + n).position(src.position());
+                _converted.clear();
+                _format.convert(chunk, _converted);
+                _converted.flip();
+                while (_converted.hasRemaining()) {
+                    _out.write(_converted);
+                }
+                src.position(src.position() + n);
+            }
+            return result;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            _open = false;
+            _out.close();
+        }
+
+        /** The underlying channel. */
+        private final WritableByteChannel _out;
+        /** Converts and lays out text. */
+        private final StreamFormat _format;
+        /** Converted text not yet written. */
+        private final ByteBuffer _converted;
+        /** False once closed. */
+        private boolean _open = true;
+    }
+
+    /** Bytes of text converted at once. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+}
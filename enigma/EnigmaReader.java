@@ -0,0 +1,82 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader of the conversion by a Machine of the text of another
+ *  Reader.  Each read converts as much of the underlying text as it
+ *  asks for, in bulk, laid out by a StreamFormat; no more than a buffer
+ *  of text is held at once.
+ *  @author Divya Sivanandan
+ */
+final class EnigmaReader extends Reader {
+
+    /** A reader of the conversion of IN by M, which must already be set
+     *  up, grouping letters in fives iff GROUP and copying whitespace
+     *  through iff WHITESPACE (see StreamFormat). */
+    EnigmaReader(Reader in, Machine M, boolean group, boolean whitespace) {
+        _in = in;
+        _format = new StreamFormat(M, group, whitespace);
+        _text = new char[BUFFER_SIZE];
+        _converted = new char[StreamFormat.maxOutput(BUFFER_SIZE)];
+    }
+
+    /** A reader of the conversion of IN by M, which must already be set
+     *  up, dropping whitespace. */
+    EnigmaReader(Reader in, Machine M) {
+        this(in, M, false, false);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            if (len == 0) {
+                return 0;
+            }
+            while (_next == _end) {
+                int n = _in.read(_text, 0, _text.length);
+                if (n < 0) {
+                    return -1;
+                }
+                _next = 0;
+                _end = _format.convert(_text, 0, n, _converted, 0);
+            }
+            int n = Math.min(len, _end - _next);
+            System.arraycopy(_converted, _next, cbuf, off, n);
+            _next += n;
+            return n;
+        }
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        synchronized (lock) {
+            return _next < _end || _in.ready();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** Characters of input read at once. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The underlying reader. */
+    private final Reader _in;
+
+    /** Converts and lays out text. */
+    private final StreamFormat _format;
+
+    /** Text read from _in. */
+    private final char[] _text;
+
+    /** Converted text, of which _converted[_next .. _end - 1] is yet to
+     *  be read. */
+    private final char[] _converted;
+
+    /** Bounds of the unread converted text. */
+    private int _next, _end;
+
+}
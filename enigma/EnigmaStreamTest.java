@@ -0,0 +1,131 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for EnigmaReader, EnigmaWriter and
+ *  EnigmaChannels.
+ *  @author Divya Sivanandan
+ */
+public class EnigmaStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a naval machine set to KEY of its key space. */
+    private Machine machine(long key) {
+        Machine M = navalMachine();
+        new KeySpace(M).apply(key, M);
+        return M;
+    }
+
+    /** Return LINES random lines of letters and spaces. */
+    private String text(int lines) {
+        Random random = new Random(40);
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < lines; k += 1) {
+            int n = random.nextInt(200);
+            for (int i = 0; i < n; i += 1) {
+                text.append(random.nextInt(6) == 0 ? ' '
+                            : UPPER.toChar(random.nextInt(26)));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return TEXT converted by a fresh machine set to KEY and laid out
+     *  as Main prints it, line by line. */
+    private String grouped(String text, long key) {
+        Machine M = machine(key);
+        StringBuilder result = new StringBuilder();
+        for (String line : text.split("\n", -1)) {
+            String converted = M.convert(line);
+            for (int i = 0; i < converted.length(); i += 5) {
+                result.append(i == 0 ? "" : " ").append(
+                    converted, i, Math.min(i + 5, converted.length()));
+            }
+            result.append('\n');
+        }
+        return result.substring(0, result.length() - 1);
+    }
+
+    @Test
+    public void testWriter() throws Exception {
+        String text = text(300);
+        StringWriter plain = new StringWriter();
+        EnigmaWriter writer = new EnigmaWriter(plain, machine(77));
+        Random random = new Random(41);
+        for (int i = 0; i < text.length(); ) {
+            int n = Math.min(text.length() - i, random.nextInt(50));
+            writer.write(text, i, n);
+            i += n;
+        }
+        writer.close();
+        assertEquals(machine(77).convert(text.replace('\n', ' ')),
+                     plain.toString());
+    }
+
+    @Test
+    public void testReader() throws Exception {
+        String text = text(300);
+        for (boolean compiling : new boolean[] { false, true }) {
+            Machine M = machine(78);
+            M.setCompiling(compiling);
+            EnigmaReader reader =
+                new EnigmaReader(new StringReader(text), M, true, true);
+            StringBuilder result = new StringBuilder();
+            char[] buf = new char[7];
+            for (int n; (n = reader.read(buf, 0, buf.length)) >= 0; ) {
+                result.append(buf, 0, n);
+            }
+            assertEquals(grouped(text, 78), result.toString());
+        }
+    }
+
+    @Test
+    public void testChannels() throws Exception {
+        String text = text(300);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        WritableByteChannel out =
+            EnigmaChannels.writable(Channels.newChannel(bytes), machine(79),
+                                    false, true);
+        out.write(ByteBuffer.wrap(text.getBytes()));
+        out.close();
+        String converted = machine(79).convert(text);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0, j = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            expected.append(ch <= ' ' ? ch : converted.charAt(j++));
+        }
+        assertEquals(expected.toString(), bytes.toString());
+
+        ReadableByteChannel in = EnigmaChannels.readable(
+            Channels.newChannel(new ByteArrayInputStream(text.getBytes())),
+            machine(79), true, true);
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        ByteBuffer buf = ByteBuffer.allocate(1000);
+        while (in.read(buf) >= 0) {
+            buf.flip();
+            read.write(buf.array(), 0, buf.limit());
+            buf.clear();
+        }
+        assertEquals(grouped(text, 79), read.toString());
+    }
+
+}
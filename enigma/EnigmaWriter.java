@@ -0,0 +1,76 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts its text with a Machine and writes the result
+ *  to another Writer.  Each write is converted in bulk, a buffer at a
+ *  time, laid out by a StreamFormat, and passed on at once, so the
+ *  underlying writer sees the conversion of everything written so far.
+ *  @author Divya Sivanandan
+ */
+final class EnigmaWriter extends Writer {
+
+    /** A writer of the conversion by M, which must already be set up, of
+     *  its text to OUT, grouping letters in fives iff GROUP and copying
+     *  whitespace through iff WHITESPACE (see StreamFormat). */
+    EnigmaWriter(Writer out, Machine M, boolean group, boolean whitespace) {
+        _out = out;
+        _format = new StreamFormat(M, group, whitespace);
+        _converted = new char[StreamFormat.maxOutput(BUFFER_SIZE)];
+    }
+
+    /** A writer of the conversion by M, which must already be set up, of
+     *  its text to OUT, dropping whitespace. */
+    EnigmaWriter(Writer out, Machine M) {
+        this(out, M, false, false);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            for (int i = off; i < off + len; i += BUFFER_SIZE) {
+                int to = Math.min(off + len, i + BUFFER_SIZE);
+                int n = _format.convert(cbuf, i, to, _converted, 0);
+                _out.write(_converted, 0, n);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        synchronized (lock) {
+            for (int i = off; i < off + len; i += BUFFER_SIZE) {
+                int to = Math.min(off + len, i + BUFFER_SIZE);
+                str.getChars(i, to, _text, 0);
+                write(_text, 0, to - i);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _out.close();
+    }
+
+    /** Characters converted at once. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The underlying writer. */
+    private final Writer _out;
+
+    /** Converts and lays out text. */
+    private final StreamFormat _format;
+
+    /** Text of a String being written. */
+    private final char[] _text = new char[BUFFER_SIZE];
+
+    /** Converted text. */
+    private final char[] _converted;
+
+}
@@ -0,0 +1,820 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** A differential test of every optimized way of converting text
+ *  against the reference: a Machine converting one character at a time
+ *  through its Rotors and Permutations.  Each trial draws a random
+ *  configuration (alphabet, numbers of slots and pawls, wirings,
+ *  notches) and random messages under random settings (positions, ring
+ *  settings, plugboards), and runs them through each engine.  Engines
+ *  that convert letters (compiled, shared-cache, batch, byte-oriented,
+ *  stream, state-table and cached conversion) are compared with the
+ *  reference letter by letter, and those that run Main on files
+ *  (byte-oriented, compiling, pipelined) with Main reading through
+ *  Scanners, character by character.  The first divergence is reported
+ *  with the configuration, the settings line and the positions of the
+ *  reference machine's rotors just before the letter that differs.  The
+ *  time each engine takes is recorded along the way, giving its
+ *  throughput over all trials.
+ *
+ *  New engines are checked by registering them with addEngine.
+ *  @author Divya Sivanandan
+ */
+public final class EquivalenceHarness {
+
+    /** Run trials as specified by ARGS, which are
+     *      [--trials N] [--seed S] [--length L]
+     *  running N (default 100) trials drawn from seed S (default random)
+     *  with lines of up to L (default 2000) characters, and print a
+     *  report.  Exits with code 1 if an engine diverges. */
+    public static void main(String... args) {
+        try {
+            int trials = 100, length = 2000;
+            long seed = new Random().nextLong();
+            int k;
+            for (k = 0; k + 1 < args.length && args[k].startsWith("--");
+                 k += 2) {
+                try {
+                    switch (args[k]) {
+                    case "--trials":
+                        trials = Integer.parseInt(args[k + 1]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[k + 1]);
+                        break;
+                    case "--length":
+                        length = Integer.parseInt(args[k + 1]);
+                        break;
+                    default:
+                        throw error("unknown option %s", args[k]);
+                    }
+                } catch (NumberFormatException excp) {
+                    throw error("bad value for %s", args[k]);
+                }
+            }
+            if (k != args.length || trials < 0 || length <= 0) {
+                throw error("usage: EquivalenceHarness [--trials N] "
+                            + "[--seed S] [--length L]");
+            }
+            EquivalenceHarness harness = new EquivalenceHarness(seed, length);
+            boolean ok = harness.run(trials);
+            System.out.printf("seed %d%n", seed);
+            System.out.print(harness.report());
+            if (ok) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A harness drawing trials from SEED, with message lines of up to
+     *  LENGTH characters, and checking all the engines of this
+     *  package. */
+    EquivalenceHarness(long seed, int length) {
+        _random = new Random(seed);
+        _length = length;
+        _throughput.put(REFERENCE, new long[2]);
+        _throughput.put(REFERENCE_MAIN, new long[2]);
+        addEngine("compiled", false, (t) -> letters(t, true, false));
+        addEngine("shared-cache", false, (t) -> letters(t, true, true));
+        addEngine("batch", false, this::batch);
+        addEngine("bytes", false, (t) -> bytes(t, false));
+        addEngine("compiled-bytes", false, (t) -> bytes(t, true));
+        addEngine("writer", false, this::writer);
+        addEngine("channel", false, this::channel);
+        addEngine("state-table", false, this::stateTable);
+        addEngine("result-cache", false, this::resultCache);
+        addEngine("main-bytes", true, (t) -> mainFiles(t));
+        addEngine("main-compile", true, (t) -> mainFiles(t, "--compile"));
+        addEngine("main-pipeline", true, (t) -> mainFiles(t, "--pipeline"));
+    }
+
+    /** A way of converting the messages of a trial. */
+    interface Engine {
+        /** Return the conversion of the messages of TRIAL: their letters
+         *  only, all segments in turn, or the output of Main. */
+        String convert(Trial trial) throws IOException;
+    }
+
+    /** Check ENGINE, named NAME, in every trial: against Main's output
+     *  iff FORMATTED, and otherwise against the reference's letters. */
+    void addEngine(String name, boolean formatted, Engine engine) {
+        (formatted ? _formatted : _letters).put(name, engine);
+        _throughput.put(name, new long[2]);
+    }
+
+    /** Run up to TRIALS more trials, stopping at the first divergence.
+     *  Return true iff there was none. */
+    boolean run(int trials) {
+        for (int n = 0; n < trials && _divergence == null; n += 1) {
+            Trial trial = new Trial(_random, _length);
+            _trials += 1;
+            String letters = timed(REFERENCE, trial, this::reference);
+            for (Map.Entry<String, Engine> e : _letters.entrySet()) {
+                check(e.getKey(), trial, letters,
+                      timed(e.getKey(), trial, e.getValue()));
+                if (_divergence != null) {
+                    break;
+                }
+            }
+            if (_divergence != null) {
+                break;
+            }
+            String output = timed(REFERENCE_MAIN, trial, this::mainScanner);
+            for (Map.Entry<String, Engine> e : _formatted.entrySet()) {
+                check(e.getKey(), trial, output,
+                      timed(e.getKey(), trial, e.getValue()));
+                if (_divergence != null) {
+                    break;
+                }
+            }
+        }
+        return _divergence == null;
+    }
+
+    /** Return the first divergence found, or null if there is none. */
+    Divergence divergence() {
+        return _divergence;
+    }
+
+    /** Return a report of the throughput of each engine and of the first
+     *  divergence, if any. */
+    String report() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("%d trials%n", _trials));
+        for (Map.Entry<String, long[]> e : _throughput.entrySet()) {
+            long chars = e.getValue()[0], nanos = e.getValue()[1];
+            result.append(String.format(
+                "%-16s %12d chars %10.1f ms %10.2f Mchars/s%n", e.getKey(),
+                chars, nanos / 1e6, nanos == 0 ? 0.0 : chars * 1e3 / nanos));
+        }
+        result.append(_divergence == null ? "no divergence\n"
+                      : _divergence.toString());
+        return result.toString();
+    }
+
+    /** The first point at which an engine's output differs from the
+     *  reference's. */
+    static final class Divergence {
+
+        /** A divergence of ENGINE in TRIAL at OFFSET of its output, where
+         *  the reference has EXPECTED and the engine ACTUAL (either -1 at
+         *  the end of the output), with STATE describing the reference
+         *  machine there. */
+        Divergence(String engine, Trial trial, int offset, int expected,
+                   int actual, String state) {
+            _engine = engine;
+            _trial = trial;
+            _offset = offset;
+            _expected = expected;
+            _actual = actual;
+            _state = state;
+        }
+
+        /** Return the name of the engine that diverged. */
+        String engine() {
+            return _engine;
+        }
+
+        /** Return the trial in which it diverged. */
+        Trial trial() {
+            return _trial;
+        }
+
+        /** Return the offset in its output at which it diverged. */
+        int offset() {
+            return _offset;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("divergence: %s at offset %d: expected %s,"
+                                 + " got %s%n%s%nconfiguration:%n%s",
+                                 _engine, _offset, describe(_expected),
+                                 describe(_actual), _state,
+                                 _trial.config());
+        }
+
+        /** Return a description of character CH, or -1 for none. */
+        private static String describe(int ch) {
+            return ch < 0 ? "end of output" : "'" + (char) ch + "'";
+        }
+
+        /** Name of the engine. */
+        private final String _engine;
+        /** The trial. */
+        private final Trial _trial;
+        /** Offset of the divergence in the output. */
+        private final int _offset;
+        /** Characters expected and found there, or -1. */
+        private final int _expected, _actual;
+        /** State of the reference machine there. */
+        private final String _state;
+    }
+
+    /** A random configuration and random messages for it. */
+    static final class Trial {
+
+        /** A trial drawn from RANDOM, with message lines of up to LENGTH
+         *  characters. */
+        Trial(Random random, int length) {
+            List<Character> pool = new ArrayList<>();
+            for (char ch : POOL.toCharArray()) {
+                pool.add(ch);
+            }
+            Collections.shuffle(pool, random);
+            int size = 2 + random.nextInt(pool.size() - 1);
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < size; i += 1) {
+                chars.append(pool.get(i));
+            }
+            _alphabet = new Alphabet(chars.toString());
+            int numRotors = 3 + random.nextInt(3);
+            int pawls = 1 + random.nextInt(numRotors - 1);
+            int fixed = numRotors - 1 - pawls;
+            StringBuilder config = new StringBuilder(chars);
+            config.append(String.format("%n%d %d%n", numRotors, pawls));
+            List<String> reflectors = new ArrayList<>(),
+                fixedRotors = new ArrayList<>(), moving = new ArrayList<>();
+            for (int i = 1 + random.nextInt(2); i > 0; i -= 1) {
+                reflectors.add("R" + i);
+                config.append(String.format("R%d R %s%n", i,
+                                            cycles(random, chars, 2)));
+            }
+            for (int i = fixed + random.nextInt(2); i > 0; i -= 1) {
+                fixedRotors.add("N" + i);
+                config.append(String.format("N%d N %s%n", i,
+                                            cycles(random, chars, size)));
+            }
+            for (int i = pawls + random.nextInt(2); i > 0; i -= 1) {
+                moving.add("M" + i);
+                StringBuilder notches = new StringBuilder();
+                for (int n = random.nextInt(4); n > 0; n -= 1) {
+                    char notch = chars.charAt(random.nextInt(size));
+                    if (notches.indexOf(String.valueOf(notch)) < 0) {
+                        notches.append(notch);
+                    }
+                }
+                config.append(String.format("M%d M%s %s%n", i, notches,
+                                            cycles(random, chars, size)));
+            }
+            _config = config.toString();
+            for (int s = 1 + random.nextInt(3); s > 0; s -= 1) {
+                StringBuilder line = new StringBuilder("*");
+                line.append(pick(random, reflectors, 1));
+                line.append(pick(random, fixedRotors, fixed));
+                line.append(pick(random, moving, pawls));
+                line.append(' ').append(letters(random, chars,
+                                                numRotors - 1));
+                line.append(' ').append(letters(random, chars,
+                                                numRotors - 1));
+                String plugs = cycles(random, chars, 2);
+                int swaps = random.nextInt(size / 2 + 1);
+                for (String cycle : plugs.split(" ")) {
+                    if (swaps == 0) {
+                        break;
+                    } else if (cycle.length() == 4) {
+                        line.append(' ').append(cycle);
+                        swaps -= 1;
+                    }
+                }
+                List<String> lines = new ArrayList<>();
+                for (int n = 1 + random.nextInt(3); n > 0; n -= 1) {
+                    StringBuilder text = new StringBuilder();
+                    text.append(chars.charAt(random.nextInt(size)));
+                    for (int i = random.nextInt(length); i > 0; i -= 1) {
+                        text.append(random.nextInt(8) == 0 ? ' '
+                                    : chars.charAt(random.nextInt(size)));
+                    }
+                    lines.add(text.toString().trim());
+                }
+                _segments.add(new Segment(line.toString(), lines));
+            }
+        }
+
+        /** Return the text of my configuration file. */
+        String config() {
+            return _config;
+        }
+
+        /** Return my alphabet. */
+        Alphabet alphabet() {
+            return _alphabet;
+        }
+
+        /** Return my segments: settings lines and their messages. */
+        List<Segment> segments() {
+            return _segments;
+        }
+
+        /** Return my input file: each segment's settings line and
+         *  message lines. */
+        String input() {
+            StringBuilder result = new StringBuilder();
+            for (Segment segment : _segments) {
+                result.append(segment.settingsLine()).append('\n');
+                for (String line : segment.lines()) {
+                    result.append(line).append('\n');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return the number of letters of my messages. */
+        long letters() {
+            long n = 0;
+            for (Segment segment : _segments) {
+                n += segment.letters().length();
+            }
+            return n;
+        }
+
+        /** Return a new machine for my configuration. */
+        Machine machine() {
+            return Main.configure(new Scanner(_config));
+        }
+
+        /** Return the settings of the rotors of M, set up by a settings
+         *  line, after converting LETTER letters of my messages, as a
+         *  settings line followed by the rotor positions reached. */
+        String state(Machine M, long letter) {
+            for (Segment segment : _segments) {
+                String text = segment.letters();
+                if (letter < text.length() || segment == last()) {
+                    segment.setUp(M);
+                    M.convert(text.substring(0, (int) Math.min(
+                                  letter, text.length())));
+                    StringBuilder posns = new StringBuilder();
+                    for (Rotor r : M.getRotorsUsed().subList(
+                             1, M.getRotorsUsed().size())) {
+                        posns.append(_alphabet.toChar(r.setting()));
+                    }
+                    return String.format("settings: %s%npositions: %s",
+                                         segment.settingsLine(), posns);
+                }
+                letter -= text.length();
+            }
+            return "no messages";
+        }
+
+        /** Return my last segment. */
+        private Segment last() {
+            return _segments.get(_segments.size() - 1);
+        }
+
+        /** Return N distinct names drawn from NAMES by RANDOM, each
+         *  preceded by a space. */
+        private static String pick(Random random, List<String> names,
+                                   int n) {
+            List<String> shuffled = new ArrayList<>(names);
+            Collections.shuffle(shuffled, random);
+            StringBuilder result = new StringBuilder();
+            for (String name : shuffled.subList(0, n)) {
+                result.append(' ').append(name);
+            }
+            return result.toString();
+        }
+
+        /** Return N characters of CHARS drawn by RANDOM. */
+        private static String letters(Random random, CharSequence chars,
+                                      int n) {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < n; i += 1) {
+                result.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            return result.toString();
+        }
+
+        /** Return the cycles of a random permutation of CHARS drawn by
+         *  RANDOM, of lengths up to MAXCYCLE. */
+        private static String cycles(Random random, CharSequence chars,
+                                     int maxCycle) {
+            List<Character> order = new ArrayList<>();
+            for (int i = 0; i < chars.length(); i += 1) {
+                order.add(chars.charAt(i));
+            }
+            Collections.shuffle(order, random);
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < order.size(); ) {
+                int len = Math.min(order.size() - i,
+                                   1 + random.nextInt(maxCycle));
+                if (maxCycle == 2 && order.size() - i >= 2) {
+                    len = 2;
+                }
+                result.append(result.length() == 0 ? "(" : " (");
+                for (int j = 0; j < len; j += 1) {
+                    result.append(order.get(i + j));
+                }
+                result.append(')');
+                i += len;
+            }
+            return result.toString();
+        }
+
+        /** Characters from which alphabets are drawn. */
+        private static final String POOL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+            + "0123456789.,;:!?-+=/<>";
+
+        /** Text of my configuration file. */
+        private final String _config;
+        /** My alphabet. */
+        private final Alphabet _alphabet;
+        /** My segments. */
+        private final List<Segment> _segments = new ArrayList<>();
+    }
+
+    /** A settings line and the message lines that follow it. */
+    static final class Segment {
+
+        /** The settings line SETTINGS followed by LINES. */
+        Segment(String settings, List<String> lines) {
+            _settings = settings;
+            _lines = lines;
+        }
+
+        /** Return my settings line. */
+        String settingsLine() {
+            return _settings;
+        }
+
+        /** Return my message lines. */
+        List<String> lines() {
+            return _lines;
+        }
+
+        /** Return the letters of my message lines, with no
+         *  whitespace. */
+        String letters() {
+            StringBuilder result = new StringBuilder();
+            for (String line : _lines) {
+                result.append(line.replace(" ", ""));
+            }
+            return result.toString();
+        }
+
+        /** Set up M, made from the configuration of my trial, for my
+         *  settings line, as Main does but without Main. */
+        void setUp(Machine M) {
+            String[] words = _settings.split(" ");
+            int n = M.numRotors();
+            String[] names = new String[n];
+            System.arraycopy(words, 1, names, 0, n);
+            StringBuilder plugs = new StringBuilder();
+            for (int i = n + 3; i < words.length; i += 1) {
+                plugs.append(words[i]);
+            }
+            M.getRotorsUsed().clear();
+            M.insertRotors(names);
+            M.setRotors(words[n + 1]);
+            M.setRings(words[n + 2]);
+            M.setPlugboard(new Permutation(plugs.toString(), M.alphabet()));
+        }
+
+        /** The settings line. */
+        private final String _settings;
+        /** The message lines. */
+        private final List<String> _lines;
+    }
+
+    /** Return the result of ENGINE, named NAME, for TRIAL, adding the
+     *  time it took and the letters of TRIAL to those of NAME. */
+    private String timed(String name, Trial trial, Engine engine) {
+        long start = System.nanoTime();
+        String result;
+        try {
+            result = engine.convert(trial);
+        } catch (IOException excp) {
+            throw error("%s: %s", name, excp.getMessage());
+        } catch (EnigmaException excp) {
+            result = "error: " + excp.getMessage();
+        }
+        long[] stats = _throughput.get(name);
+        stats[1] += System.nanoTime() - start;
+        stats[0] += trial.letters();
+        return result;
+    }
+
+    /** Record a divergence of ENGINE on TRIAL if its output ACTUAL
+     *  differs from EXPECTED. */
+    private void check(String engine, Trial trial, String expected,
+                       String actual) {
+        int n = Math.min(expected.length(), actual.length()), k = 0;
+        while (k < n && expected.charAt(k) == actual.charAt(k)) {
+            k += 1;
+        }
+        if (k == expected.length() && k == actual.length()) {
+            return;
+        }
+        long letter = 0;
+        for (int i = 0; i < k; i += 1) {
+            letter += expected.charAt(i) > ' ' ? 1 : 0;
+        }
+        _divergence = new Divergence(
+            engine, trial, k, k < expected.length() ? expected.charAt(k) : -1,
+            k < actual.length() ? actual.charAt(k) : -1,
+            trial.state(trial.machine(), letter));
+    }
+
+    /** Return the letters of TRIAL converted by the reference. */
+    private String reference(Trial trial) {
+        Machine M = trial.machine();
+        StringBuilder result = new StringBuilder();
+        for (Segment segment : trial.segments()) {
+            segment.setUp(M);
+            String text = segment.letters();
+            for (int i = 0; i < text.length(); i += 1) {
+                int c = M.convert(M.alphabet().toInt(text.charAt(i)));
+                result.append(M.alphabet().toChar(c));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the letters of TRIAL converted by Machine.convert(String),
+     *  compiling iff COMPILING, by a copy of a machine another copy of
+     *  which has already converted them iff SHARED. */
+    private String letters(Trial trial, boolean compiling, boolean shared) {
+        Machine M = trial.machine();
+        Machine other = null;
+        if (shared) {
+            other = M.copy();
+            M = M.copy();
+            other.setCompiling(compiling);
+        }
+        M.setCompiling(compiling);
+        StringBuilder result = new StringBuilder();
+        for (Segment segment : trial.segments()) {
+            if (other != null) {
+                segment.setUp(other);
+                other.convert(segment.letters());
+            }
+            segment.setUp(M);
+            result.append(M.convert(segment.letters()));
+        }
+        return result.toString();
+    }
+
+    /** Return the letters of TRIAL converted by a BatchEngine. */
+    private String batch(Trial trial) {
+        Machine M = trial.machine();
+        Alphabet alpha = trial.alphabet();
+        StringBuilder result = new StringBuilder();
+        for (Segment segment : trial.segments()) {
+            segment.setUp(M);
+            List<Rotor> used = M.getRotorsUsed();
+            String[] names = new String[used.size()];
+            int[] settings = new int[used.size() - 1];
+            int[] rings = new int[used.size() - 1];
+            for (int k = 0; k < used.size(); k += 1) {
+                names[k] = used.get(k).name();
+                if (k > 0) {
+                    settings[k - 1] = used.get(k).setting();
+                    rings[k - 1] = used.get(k).ring();
+                }
+            }
+            BatchEngine engine = new BatchEngine(M, BATCH_LANES);
+            for (int lane = 0; lane < BATCH_LANES; lane += 1) {
+                engine.load(lane, names, settings, rings);
+            }
+            String text = segment.letters();
+            int[] in = new int[text.length()];
+            for (int i = 0; i < in.length; i += 1) {
+                in[i] = alpha.toInt(text.charAt(i));
+            }
+            int[] out = new int[in.length * BATCH_LANES];
+            engine.convert(in, in.length, out);
+            for (int i = 0; i < in.length; i += 1) {
+                int c = out[i * BATCH_LANES];
+                for (int lane = 1; lane < BATCH_LANES; lane += 1) {
+                    if (out[i * BATCH_LANES + lane] != c) {
+                        c = alpha.size();
+                    }
+                }
+                result.append(c < alpha.size() ? alpha.toChar(c) : '#');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the letters of TRIAL converted by Machine.convert(ByteBuffer,
+     *  ByteBuffer), compiling iff COMPILING, or those of the reference
+     *  if its alphabet is not single bytes. */
+    private String bytes(Trial trial, boolean compiling) {
+        Machine M = trial.machine();
+        if (!M.convertsBytes()) {
+            return reference(trial);
+        }
+        M.setCompiling(compiling);
+        StringBuilder result = new StringBuilder();
+        for (Segment segment : trial.segments()) {
+            segment.setUp(M);
+            for (String line : segment.lines()) {
+                ByteBuffer in = ByteBuffer.wrap(line.getBytes());
+                ByteBuffer out = ByteBuffer.allocate(in.remaining());
+                M.convert(in, out);
+                result.append(new String(out.array(), 0, out.position()));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the letters of TRIAL converted by EnigmaWriters. */
+    private String writer(Trial trial) throws IOException {
+        Machine M = trial.machine();
+        StringWriter result = new StringWriter();
+        for (Segment segment : trial.segments()) {
+            segment.setUp(M);
+            EnigmaWriter writer = new EnigmaWriter(result, M);
+            for (String line : segment.lines()) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.flush();
+        }
+        return result.toString();
+    }
+
+    /** Return the letters of TRIAL converted by the writable channels of
+     *  EnigmaChannels. */
+    private String channel(Trial trial) throws IOException {
+        Machine M = trial.machine();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (Segment segment : trial.segments()) {
+            segment.setUp(M);
+            WritableByteChannel out =
+                EnigmaChannels.writable(Channels.newChannel(result), M,
+                                        false, false);
+            for (String line : segment.lines()) {
+                out.write(ByteBuffer.wrap((line + "\n").getBytes()));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the letters of TRIAL converted through StateTables, written
+     *  for each of its settings lines whose table would take at most
+     *  TABLE_BYTES, and as Machine.convert(String) does without one for
+     *  the rest.  Its time includes writing the tables. */
+    private String stateTable(Trial trial) throws IOException {
+        Machine M = trial.machine();
+        File dir = Files.createTempDirectory("equiv").toFile();
+        try {
+            StringBuilder result = new StringBuilder();
+            for (Segment segment : trial.segments()) {
+                segment.setUp(M);
+                int size = M.alphabet().size();
+                if (StateTable.supports(M)
+                    && Math.pow(size, M.numPawls()) * (size + Integer.BYTES)
+                       <= TABLE_BYTES) {
+                    File file = StateTable.file(dir, "equiv", M);
+                    if (!file.isFile()) {
+                        StateTable.write(M, file);
+                    }
+                    M.setTable(new StateTable(StateTable.open(file), M));
+                }
+                for (String line : segment.lines()) {
+                    result.append(M.convert(line));
+                }
+            }
+            return result.toString();
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /** Return the letters of TRIAL converted twice by machines sharing a
+     *  ResultCache: first by Machine.convert(String), filling the cache,
+     *  and then by a copy through Machine.convert(char[], int, int,
+     *  char[], int), which finds every line there.  Returns the first
+     *  pass if it differs from the reference, and otherwise the second,
+     *  so that a divergence of either is reported. */
+    private String resultCache(Trial trial) {
+        Machine M = trial.machine();
+        M.setResultCache(new ResultCache(trial.config(), CACHE_BYTES,
+                                         null));
+        StringBuilder first = new StringBuilder();
+        for (Segment segment : trial.segments()) {
+            segment.setUp(M);
+            for (String line : segment.lines()) {
+                first.append(M.convert(line));
+            }
+        }
+        if (!first.toString().equals(reference(trial))) {
+            return first.toString();
+        }
+        Machine copy = M.copy();
+        StringBuilder second = new StringBuilder();
+        for (Segment segment : trial.segments()) {
+            segment.setUp(copy);
+            for (String line : segment.lines()) {
+                char[] text = line.toCharArray();
+                second.append(text, 0,
+                              copy.convert(text, 0, text.length, text, 0));
+            }
+        }
+        return second.toString();
+    }
+
+    /** Return the output of Main reading TRIAL through Scanners. */
+    private String mainScanner(Trial trial) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Main(new Scanner(trial.config()), new Scanner(trial.input()),
+                 new PrintStream(out)).process();
+        return out.toString();
+    }
+
+    /** Return the output of Main run with OPTIONS on files holding
+     *  TRIAL. */
+    private String mainFiles(Trial trial, String... options)
+        throws IOException {
+        File config = File.createTempFile("equiv", ".conf");
+        File input = File.createTempFile("equiv", ".in");
+        File output = File.createTempFile("equiv", ".out");
+        try {
+            Files.write(config.toPath(), trial.config().getBytes());
+            Files.write(input.toPath(), trial.input().getBytes());
+            String[] args = new String[options.length + 3];
+            System.arraycopy(options, 0, args, 0, options.length);
+            args[options.length] = config.getPath();
+            args[options.length + 1] = input.getPath();
+            args[options.length + 2] = output.getPath();
+            Main main = new Main(args);
+            try {
+                main.process();
+            } finally {
+                main.close();
+            }
+            return new String(Files.readAllBytes(output.toPath()));
+        } finally {
+            config.delete();
+            input.delete();
+            output.delete();
+        }
+    }
+
+    /** Name under which the reference's time is recorded. */
+    private static final String REFERENCE = "reference";
+
+    /** Name under which the time of Main reading through Scanners is
+     *  recorded. */
+    private static final String REFERENCE_MAIN = "reference-main";
+
+    /** Number of lanes, all loaded alike, of the BatchEngine checked. */
+    private static final int BATCH_LANES = 4;
+
+    /** Capacity of the ResultCache of a trial. */
+    private static final long CACHE_BYTES = 1 << 24;
+
+    /** Largest StateTable written for a trial. */
+    private static final double TABLE_BYTES = 1 << 16;
+
+    /** Source of trials. */
+    private final Random _random;
+
+    /** Longest message line. */
+    private final int _length;
+
+    /** Engines checked against the reference's letters, by name. */
+    private final LinkedHashMap<String, Engine> _letters =
+        new LinkedHashMap<>();
+
+    /** Engines checked against the output of Main, by name. */
+    private final LinkedHashMap<String, Engine> _formatted =
+        new LinkedHashMap<>();
+
+    /** Letters converted and nanoseconds taken by each engine, by
+     *  name. */
+    private final LinkedHashMap<String, long[]> _throughput =
+        new LinkedHashMap<>();
+
+    /** Number of trials run. */
+    private int _trials;
+
+    /** First divergence found, or null. */
+    private Divergence _divergence;
+
+}
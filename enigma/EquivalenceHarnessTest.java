@@ -0,0 +1,44 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the EquivalenceHarness class.
+ *  @author Divya Sivanandan
+ */
+public class EquivalenceHarnessTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void testEngines() {
+        EquivalenceHarness harness = new EquivalenceHarness(45, 300);
+        assertTrue(harness.report(), harness.run(10));
+        assertNull(harness.divergence());
+    }
+
+    @Test
+    public void testDivergence() {
+        EquivalenceHarness harness = new EquivalenceHarness(46, 100);
+        harness.addEngine("broken", false, (trial) -> {
+            StringBuilder result = new StringBuilder();
+            Machine M = trial.machine();
+            for (EquivalenceHarness.Segment segment : trial.segments()) {
+                segment.setUp(M);
+                result.append(M.convert(segment.letters()));
+            }
+            return result.append('#').toString();
+        });
+        assertFalse(harness.run(10));
+        EquivalenceHarness.Divergence divergence = harness.divergence();
+        assertEquals("broken", divergence.engine());
+        assertEquals(divergence.trial().letters(), divergence.offset());
+        assertTrue(harness.report().contains("expected end of output"));
+        assertTrue(harness.report().contains("positions: "));
+    }
+
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** Waits for a file to grow, for Main's --follow mode.  Changes are
+ *  watched for with a WatchService on the file's directory, which
+ *  reports them within milliseconds where the platform supports it; the
+ *  file's length is also polled, in case it does not.  The WatchService
+ *  is released by close().
+ *  @author Divya Sivanandan
+ */
+final class FileFollower implements ByteProcessor.Follower, Closeable {
+
+    /** A follower of FILE. */
+    FileFollower(File file) {
+        _file = file;
+        Path dir = file.getAbsoluteFile().toPath().getParent();
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+                         StandardWatchEventKinds.ENTRY_CREATE);
+        } catch (IOException | UnsupportedOperationException excp) {
+            watcher = null;
+        }
+        _watcher = watcher;
+    }
+
+    @Override
+    public boolean await(long offset) {
+        while (!_stopped) {
+            long length = _file.length();
+            if (length > offset) {
+                return true;
+            } else if (length < offset) {
+                throw error("%s was truncated", _file);
+            }
+            try {
+                WatchKey key = _watcher == null ? null
+                    : _watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key == null && _watcher == null) {
+                    Thread.sleep(POLL_MILLIS);
+                } else if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ClosedWatchServiceException excp) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /** Make await() return false from now on, ending the input. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Stop, as stop() does, and release my WatchService. */
+    @Override
+    public void close() throws IOException {
+        stop();
+        if (_watcher != null) {
+            _watcher.close();
+        }
+    }
+
+    /** Longest wait between looks at the file's length. */
+    static final long POLL_MILLIS = 100;
+
+    /** The file followed. */
+    private final File _file;
+
+    /** Watches the file's directory, or null if that is not possible. */
+    private final WatchService _watcher;
+
+    /** True once following should stop. */
+    private volatile boolean _stopped;
+
+}
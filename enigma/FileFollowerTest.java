@@ -0,0 +1,94 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the FileFollower class.
+ *  @author Divya Sivanandan
+ */
+public class FileFollowerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Append TEXT to FILE. */
+    private void append(File file, String text) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes());
+        }
+    }
+
+    /** Wait until FILE holds at least LENGTH bytes. */
+    private void awaitLength(File file, long length) throws Exception {
+        while (file.length() < length) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testFollow() throws Exception {
+        File input = File.createTempFile("follow", ".in");
+        File output = File.createTempFile("follow", ".out");
+        String nl = System.lineSeparator();
+        append(input, "* 0\nABCDE\n");
+        Machine M = navalMachine();
+        FileFollower follower = new FileFollower(input);
+        Thread thread;
+        try (FileChannel in = FileChannel.open(input.toPath(),
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output.toPath(),
+                                                StandardOpenOption.WRITE)) {
+            ByteProcessor processor = new ByteProcessor(in, out, M,
+                (m, line) -> new KeySpace(m).apply(0, m));
+            processor.setFollower(follower);
+            thread = new Thread(processor::run);
+            thread.start();
+            awaitLength(output, 5 + nl.length());
+            append(input, "FGH");
+            Thread.sleep(2 * FileFollower.POLL_MILLIS);
+            assertEquals(5 + nl.length(), output.length());
+            append(input, "IJ\nKL");
+            awaitLength(output, 2 * (5 + nl.length()));
+            follower.stop();
+            thread.join();
+        } finally {
+            follower.close();
+        }
+        Machine check = navalMachine();
+        new KeySpace(check).apply(0, check);
+        assertEquals(check.convert("ABCDE") + nl + check.convert("FGHIJ")
+                     + nl + check.convert("KL") + nl,
+                     Files.readString(output.toPath()));
+        input.delete();
+        output.delete();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        File input = File.createTempFile("follow", ".in");
+        append(input, "ABC");
+        FileFollower follower = new FileFollower(input);
+        boolean[] result = { true };
+        Thread thread = new Thread(() -> result[0] = follower.await(3));
+        thread.start();
+        Thread.sleep(2 * FileFollower.POLL_MILLIS);
+        follower.close();
+        thread.join();
+        assertFalse(result[0]);
+        assertFalse(follower.await(3));
+        follower.close();
+        input.delete();
+    }
+
+}
@@ -0,0 +1,80 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A thread-safe histogram of non-negative longs (typically durations
+ *  in nanoseconds) in power-of-two buckets: bucket K counts values V
+ *  with 2**(K-1) <= V < 2**K, and bucket 0 counts zeros.
+ *  @author Divya Sivanandan
+ */
+final class Histogram {
+
+    /** Number of buckets. */
+    static final int BUCKETS = Long.SIZE + 1;
+
+    /** Record VALUE, treating negative values as 0. */
+    void record(long value) {
+        long v = Math.max(0, value);
+        _buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(v));
+        _total.add(v);
+    }
+
+    /** Return the number of values recorded. */
+    long count() {
+        long n = 0;
+        for (int k = 0; k < BUCKETS; k += 1) {
+            n += _buckets.get(k);
+        }
+        return n;
+    }
+
+    /** Return the sum of the values recorded. */
+    long total() {
+        return _total.sum();
+    }
+
+    /** Return the counts of each bucket. */
+    long[] buckets() {
+        long[] result = new long[BUCKETS];
+        for (int k = 0; k < BUCKETS; k += 1) {
+            result[k] = _buckets.get(k);
+        }
+        return result;
+    }
+
+    /** Return an upper bound on the FRACTION quantile of the values
+     *  recorded (the top of the bucket holding it), or 0 if none were. */
+    long quantile(double fraction) {
+        long[] counts = buckets();
+        long n = 0;
+        for (long c : counts) {
+            n += c;
+        }
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k += 1) {
+            seen += counts[k];
+            if (seen >= rank && seen > 0) {
+                return k == 0 ? 0 : k >= Long.SIZE ? Long.MAX_VALUE
+                    : (1L << k) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /** Forget all values recorded. */
+    void reset() {
+        for (int k = 0; k < BUCKETS; k += 1) {
+            _buckets.set(k, 0);
+        }
+        _total.reset();
+    }
+
+    /** Bucket counts. */
+    private final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+
+    /** Sum of values. */
+    private final LongAdder _total = new LongAdder();
+
+}
@@ -0,0 +1,66 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Histogram class.
+ *  @author Divya Sivanandan
+ */
+public class HistogramTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testBuckets() {
+        Histogram h = new Histogram();
+        for (long v : new long[] { 0, -7, 1, 2, 3, 4, 1000, Long.MAX_VALUE }) {
+            h.record(v);
+        }
+        long[] buckets = h.buckets();
+        assertEquals(Histogram.BUCKETS, buckets.length);
+        assertEquals(2, buckets[0]);
+        assertEquals(1, buckets[1]);
+        assertEquals(2, buckets[2]);
+        assertEquals(1, buckets[3]);
+        assertEquals(1, buckets[10]);
+        assertEquals(1, buckets[63]);
+        assertEquals(8, h.count());
+        assertEquals(1010 + Long.MAX_VALUE, h.total());
+    }
+
+    @Test
+    public void testQuantiles() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.quantile(0.5));
+        for (int v = 1; v <= 100; v += 1) {
+            h.record(v);
+        }
+        assertEquals(1, h.quantile(0.01));
+        assertEquals(63, h.quantile(0.5));
+        assertEquals(127, h.quantile(0.99));
+        assertEquals(127, h.quantile(1.0));
+        h.record(0);
+        assertEquals(0, h.quantile(0.0));
+        h.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, h.quantile(1.0));
+    }
+
+    @Test
+    public void testReset() {
+        Histogram h = new Histogram();
+        h.record(5);
+        h.record(50);
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.total());
+        assertEquals(0, h.quantile(0.99));
+        h.record(5);
+        assertEquals(1, h.count());
+        assertEquals(7, h.quantile(0.5));
+    }
+
+}
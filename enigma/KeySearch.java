@@ -0,0 +1,638 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.LongStream;
+
+import static enigma.EnigmaException.*;
+
+/** Exhaustive search of the key space of a configuration for the keys
+ *  that best decrypt a ciphertext, with no plugboard.  Without cribs a
+ *  key scores the index of coincidence of its decryption, scaled so that
+ *  random text scores about 1, or, given the bigram counts of a corpus
+ *  (see CorpusStats), the mean log probability of the bigrams of its
+ *  decryption.  With cribs it scores the fraction of crib letters that
+ *  its decryption reproduces, which only needs the ciphertext up to the
+ *  end of the last crib.
+ *
+ *  Each searching thread keeps its own Machine, parsed from the
+ *  configuration text, since rotors carry their positions, and its own
+ *  BatchEngine, which does the bulk of the work.
+ *  @author Divya Sivanandan
+ */
+class KeySearch {
+
+    /** A search over the keys of the configuration whose text is CONFIG
+     *  for decryptions of CIPHERTEXT, whose whitespace is ignored. */
+    KeySearch(String config, String ciphertext) {
+        this(config, ciphertext, false);
+    }
+
+    /** A search over the keys of the configuration whose text is CONFIG
+     *  for decryptions of CIPHERTEXT, whose whitespace is ignored,
+     *  covering ring settings iff RINGS.  Ring settings are searched only
+     *  up to equivalence over the length of CIPHERTEXT, as KeySpace
+     *  describes. */
+    KeySearch(String config, String ciphertext, boolean rings) {
+        _config = config;
+        Machine M = newMachine();
+        _alphabet = M.alphabet();
+        ArrayList<Integer> text = new ArrayList<>();
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char ch = ciphertext.charAt(i);
+            if (ch > ' ') {
+                if (!_alphabet.contains(ch)) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                text.add(_alphabet.toInt(ch));
+            }
+        }
+        _text = text.stream().mapToInt(Integer::intValue).toArray();
+        _keys = rings ? new KeySpace(M, _text.length) : new KeySpace(M);
+        _cribs = new ArrayList<>();
+        _scratch = ThreadLocal.withInitial(Scratch::new);
+    }
+
+    /** Return the key space searched. */
+    KeySpace keySpace() {
+        return _keys;
+    }
+
+    /** Return the alphabet of the configuration. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Score keys by how well they reproduce CRIBS, as placed by a
+     *  CribLocator, rather than by index of coincidence. */
+    void setCribs(List<Crib> cribs) {
+        _placements = new ArrayList<>();
+        for (Crib crib : cribs) {
+            if (crib.position() < 0
+                || crib.position() + crib.length() > _text.length) {
+                throw error("crib outside ciphertext");
+            }
+        }
+        _cribs = new ArrayList<>(cribs);
+        int total = 0;
+        for (Crib crib : _cribs) {
+            total += crib.length();
+        }
+        long[] letters = new long[total];
+        int k = 0;
+        for (Crib crib : _cribs) {
+            byte[] p = crib.plain();
+            for (int i = 0; i < p.length; i += 1, k += 1) {
+                letters[k] = ((long) (crib.position() + i) << Integer.SIZE)
+                    | (p[i] & 0xff);
+            }
+        }
+        Arrays.sort(letters);
+        _cribPositions = new int[total];
+        _cribLetters = new int[total];
+        for (k = 0; k < total; k += 1) {
+            _cribPositions[k] = (int) (letters[k] >>> Integer.SIZE);
+            _cribLetters[k] = (int) letters[k];
+        }
+    }
+
+    /** Score keys by the plaintext CRIB, whose whitespace is ignored,
+     *  placed at every position of the ciphertext where it may lie: where
+     *  no letter of it falls on the same letter of the ciphertext, as
+     *  found by a CribLocator, if every reflector of the configuration
+     *  is a derangement, and otherwise anywhere.  A key scores the
+     *  largest fraction of the letters of CRIB that its decryption
+     *  reproduces at any of those positions.  Such scores are not
+     *  pruned (see setPruning).  Returns the number of positions. */
+    int setCrib(String crib) {
+        byte[] packed = _alphabet.pack(crib);
+        if (packed.length == 0) {
+            throw error("empty crib");
+        }
+        boolean deranged = true;
+        for (Rotor r : newMachine().getAllRotors().values()) {
+            deranged &= !r.reflecting() || r.permutation().derangement();
+        }
+        ArrayList<Crib> placements = new ArrayList<>();
+        if (deranged) {
+            byte[] text = new byte[_text.length];
+            for (int i = 0; i < text.length; i += 1) {
+                text[i] = (byte) _text[i];
+            }
+            CribLocator locator = new CribLocator(_alphabet);
+            locator.add(crib);
+            placements.addAll(locator.locate(text));
+        } else {
+            for (int p = 0; p + packed.length <= _text.length; p += 1) {
+                placements.add(new Crib(packed, p));
+            }
+        }
+        if (placements.isEmpty()) {
+            throw error("crib fits nowhere in the ciphertext");
+        }
+        setCribs(new ArrayList<>());
+        _placements = placements;
+        return placements.size();
+    }
+
+    /** Score keys progressively: decrypt in blocks of PRUNE_BLOCK
+     *  letters, keeping each key's score up to date, and abandon a key
+     *  as soon as it cannot make the cut, that is, when a bound on its
+     *  final score falls below the lowest score kept by the searching
+     *  thread's heap.  The bound is exact, so the results are unchanged,
+     *  unless TOLERANCE is finite.  Exact bounds are tight for cribs but
+     *  loose for the index of coincidence, so when scoring by index of
+     *  coincidence a finite TOLERANCE also abandons a key once the index
+     *  of coincidence of its decryption so far, plus TOLERANCE standard
+     *  deviations of that of as many random letters, is below the lowest
+     *  score kept.  Small tolerances prune most keys early in long
+     *  ciphertexts, at the risk of losing the weakest of the best
+     *  candidates.  A NaN TOLERANCE turns pruning off. */
+    void setPruning(double tolerance) {
+        _tolerance = tolerance;
+    }
+
+    /** Score keys without cribs by the bigrams of STATS, which must be
+     *  over my alphabet, rather than by index of coincidence, as
+     *  setBigrams describes. */
+    void setStatistics(CorpusStats stats) {
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0; c < _alphabet.size(); c += 1) {
+            chars.append(_alphabet.toChar(c));
+        }
+        if (!stats.alphabet().equals(chars.toString())) {
+            throw error("statistics are for another alphabet");
+        }
+        setBigrams(stats.bigrams());
+    }
+
+    /** Score keys without cribs by the mean over the bigrams A, B of
+     *  their decryptions of the log probability of B following A,
+     *  estimated from COUNTS, the count of each bigram at A * size + B
+     *  (see CorpusStats.bigrams), with one added to each.  Such scores
+     *  are not pruned (see setPruning). */
+    void setBigrams(long[] counts) {
+        int size = _alphabet.size();
+        if (counts.length != size * size) {
+            throw error("bigram counts are for another alphabet");
+        }
+        double[] logs = new double[counts.length];
+        for (int a = 0; a < size; a += 1) {
+            long row = 0;
+            for (int b = 0; b < size; b += 1) {
+                row += counts[a * size + b];
+            }
+            for (int b = 0; b < size; b += 1) {
+                logs[a * size + b] =
+                    Math.log((counts[a * size + b] + 1.0) / (row + size));
+            }
+        }
+        _bigramLogs = logs;
+    }
+
+    /** Keep the best candidates of search(FROM, TO, LIMIT) off the Java
+     *  heap iff OFFHEAP, as TopKeys describes, for large limits. */
+    void setOffHeap(boolean offHeap) {
+        _offHeap = offHeap;
+    }
+
+    /** Return the number of letters decrypted, summed over keys, by the
+     *  searches so far. */
+    long lettersDecrypted() {
+        return _decrypted.sum();
+    }
+
+    /** Return the LIMIT best candidates among keys FROM .. TO - 1, best
+     *  first. */
+    List<Candidate> search(long from, long to, int limit) {
+        TopKeys best = new TopKeys(limit, _offHeap);
+        search(from, to, best);
+        return best.results().candidates(limit);
+    }
+
+    /** Offer every key FROM .. TO - 1 to BEST.  The range is searched in
+     *  parallel, in batches of BATCH consecutive keys run in lockstep by
+     *  a BatchEngine, each thread offering to its own heap of BEST. */
+    void search(long from, long to, TopKeys best) {
+        long batches = (to - from + BATCH - 1) / BATCH;
+        LongStream.range(0, batches).parallel()
+            .forEach((b) -> searchBatch(from + b * BATCH,
+                                        Math.min(to, from + (b + 1) * BATCH),
+                                        best.heap()));
+    }
+
+    /** Score the canonical keys among FROM .. TO - 1, at most BATCH of
+     *  them, with this thread's BatchEngine, offering them to HEAP. */
+    private void searchBatch(long from, long to, TopKeys.Heap heap) {
+        Scratch s = _scratch.get();
+        int count = 0;
+        for (long key = from; key < to; key += 1) {
+            if (!_keys.coversRings() || _keys.canonical(key)) {
+                s.keys[count] = key;
+                count += 1;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        s.engine.load(_keys, s.keys, count);
+        if (!_placements.isEmpty()) {
+            searchPlacements(count, heap, s);
+            return;
+        }
+        int end = _cribs.isEmpty() ? _text.length : cribsEnd();
+        boolean prune = !Double.isNaN(_tolerance)
+            && (!_cribs.isEmpty() || _bigramLogs == null);
+        searchProgressively(count, end, prune, heap, s);
+    }
+
+    /** Score the keys S.keys[0 .. COUNT - 1], loaded into S.engine,
+     *  over the first END letters of the ciphertext, a block of
+     *  PRUNE_BLOCK letters at a time, offering to HEAP those that are
+     *  not abandoned (see setPruning) if PRUNE, and otherwise all of
+     *  them.  Live keys are kept in the first lanes, so abandoned ones
+     *  cost nothing more. */
+    private void searchProgressively(int count, int end, boolean prune,
+                                     TopKeys.Heap heap, Scratch s) {
+        int size = _alphabet.size(), live = count;
+        boolean coincidence = _cribs.isEmpty() && _bigramLogs == null;
+        boolean bigrams = _cribs.isEmpty() && _bigramLogs != null;
+        s.engine.retain(live);
+        Arrays.fill(s.laneCounts, 0);
+        Arrays.fill(s.sums, 0, count, 0);
+        Arrays.fill(s.maxima, 0, count, 0);
+        Arrays.fill(s.hits, 0, count, 0);
+        Arrays.fill(s.logSums, 0, count, 0.0);
+        long n = _text.length;
+        int crib = 0;
+        for (int t = 0; t < end && live > 0; ) {
+            int next = Math.min(end, t + PRUNE_BLOCK);
+            s.engine.convert(_text, t, next, s.batchOut);
+            _decrypted.add((long) (next - t) * live);
+            if (coincidence) {
+                for (int k = t; k < next; k += 1) {
+                    int o = (k - t) * BATCH;
+                    for (int lane = 0; lane < live; lane += 1) {
+                        int i = lane * size + s.batchOut[o + lane];
+                        int c = s.laneCounts[i];
+                        s.laneCounts[i] = c + 1;
+                        s.sums[lane] += 2 * c;
+                        s.maxima[lane] = Math.max(s.maxima[lane], c + 1);
+                    }
+                }
+            } else if (bigrams) {
+                for (int k = t; k < next; k += 1) {
+                    int o = (k - t) * BATCH;
+                    for (int lane = 0; lane < live; lane += 1) {
+                        int c = s.batchOut[o + lane];
+                        if (k > 0) {
+                            s.logSums[lane] +=
+                                _bigramLogs[s.previous[lane] * size + c];
+                        }
+                        s.previous[lane] = c;
+                    }
+                }
+            } else {
+                for (; crib < _cribPositions.length
+                         && _cribPositions[crib] < next; crib += 1) {
+                    int o = (_cribPositions[crib] - t) * BATCH;
+                    for (int lane = 0; lane < live; lane += 1) {
+                        s.hits[lane] +=
+                            s.batchOut[o + lane] == _cribLetters[crib] ? 1 : 0;
+                    }
+                }
+            }
+            t = next;
+            if (!prune) {
+                continue;
+            }
+            double threshold = heap.threshold();
+            for (int lane = live - 1; lane >= 0; lane -= 1) {
+                double bound;
+                if (!coincidence) {
+                    bound = (double) (s.hits[lane] + _cribLetters.length
+                                      - crib) / _cribLetters.length;
+                } else if (n < 2) {
+                    bound = 0.0;
+                } else {
+                    long r = n - t, max = s.maxima[lane];
+                    bound = (double) (s.sums[lane] + r * (2 * max + r - 1))
+                        * size / (n * (n - 1));
+                    if (t > 1 && t < n) {
+                        double spread =
+                            Math.sqrt(2.0 * (size - 1) / ((long) t * (t - 1)));
+                        bound = Math.min(bound, (double) s.sums[lane] * size
+                                         / ((long) t * (t - 1))
+                                         + _tolerance * spread);
+                    }
+                }
+                if (bound < threshold) {
+                    live -= 1;
+                    s.swap(lane, live, size);
+                }
+            }
+            s.engine.retain(live);
+        }
+        for (int lane = 0; lane < live; lane += 1) {
+            double score;
+            if (coincidence) {
+                score = n < 2 ? 0.0
+                    : (double) s.sums[lane] * size / (n * (n - 1));
+            } else if (bigrams) {
+                score = n < 2 ? 0.0 : s.logSums[lane] / (n - 1);
+            } else {
+                score = (double) s.hits[lane] / _cribLetters.length;
+            }
+            heap.offer(s.keys[lane], score);
+        }
+    }
+
+    /** Score the keys S.keys[0 .. COUNT - 1], loaded into S.engine, by
+     *  the crib of setCrib, a block of PRUNE_BLOCK letters at a time,
+     *  offering them all to HEAP.  Only placements overlapping the
+     *  current block are counted at once, each in its own slot of
+     *  S.placementHits, so that it need not hold every placement. */
+    private void searchPlacements(int count, TopKeys.Heap heap,
+                                  Scratch s) {
+        int length = _placements.get(0).length(), end = placementsEnd();
+        int slots = PRUNE_BLOCK + length;
+        int[] counts = s.placementHits(slots * BATCH);
+        Arrays.fill(s.hits, 0, count, 0);
+        int first = 0, started = 0;
+        for (int t = 0; t < end; ) {
+            int next = Math.min(end, t + PRUNE_BLOCK);
+            s.engine.convert(_text, t, next, s.batchOut);
+            _decrypted.add((long) (next - t) * count);
+            for (; started < _placements.size()
+                     && _placements.get(started).position() < next;
+                 started += 1) {
+                int o = started % slots * BATCH;
+                Arrays.fill(counts, o, o + count, 0);
+            }
+            for (int p = first; p < started; p += 1) {
+                Crib placed = _placements.get(p);
+                byte[] plain = placed.plain();
+                int base = placed.position(), o = p % slots * BATCH;
+                int stop = Math.min(next, base + length);
+                for (int k = Math.max(t, base); k < stop; k += 1) {
+                    int letter = plain[k - base] & 0xff, b = (k - t) * BATCH;
+                    for (int lane = 0; lane < count; lane += 1) {
+                        counts[o + lane] +=
+                            s.batchOut[b + lane] == letter ? 1 : 0;
+                    }
+                }
+            }
+            for (; first < started
+                     && _placements.get(first).position() + length <= next;
+                 first += 1) {
+                int o = first % slots * BATCH;
+                for (int lane = 0; lane < count; lane += 1) {
+                    s.hits[lane] = Math.max(s.hits[lane], counts[o + lane]);
+                }
+            }
+            t = next;
+        }
+        for (int lane = 0; lane < count; lane += 1) {
+            heap.offer(s.keys[lane], (double) s.hits[lane] / length);
+        }
+    }
+
+    /** Return the score of KEY, computed with this thread's Machine
+     *  rather than a BatchEngine. */
+    double score(long key) {
+        Scratch s = _scratch.get();
+        _keys.apply(key, s.machine);
+        int end = !_placements.isEmpty() ? placementsEnd()
+            : _cribs.isEmpty() ? _text.length : cribsEnd();
+        for (int i = 0; i < end; i += 1) {
+            s.plain[i] = s.machine.convert(_text[i]);
+        }
+        if (!_placements.isEmpty()) {
+            return placementScore(s.plain, 0, 1);
+        } else if (_cribs.isEmpty()) {
+            return textScore(s.plain, 0, 1, s.counts);
+        }
+        return cribScore(s.plain, 0, 1);
+    }
+
+    /** Return the score, without cribs, of the decryption whose K-th
+     *  letter is PLAIN[K * STRIDE + LANE], using COUNTS for working
+     *  storage. */
+    private double textScore(int[] plain, int lane, int stride,
+                             int[] counts) {
+        return _bigramLogs == null
+            ? coincidenceScore(plain, lane, stride, counts)
+            : bigramScore(plain, lane, stride);
+    }
+
+    /** Return the mean log probability, by setBigrams, of the bigrams of
+     *  the decryption whose K-th letter is PLAIN[K * STRIDE + LANE]. */
+    private double bigramScore(int[] plain, int lane, int stride) {
+        int n = _text.length, size = _alphabet.size();
+        if (n < 2) {
+            return 0.0;
+        }
+        double sum = 0;
+        int prev = plain[lane];
+        for (int k = 1; k < n; k += 1) {
+            int next = plain[k * stride + lane];
+            sum += _bigramLogs[prev * size + next];
+            prev = next;
+        }
+        return sum / (n - 1);
+    }
+
+    /** Return the scaled index of coincidence of the decryption whose
+     *  K-th letter is PLAIN[K * STRIDE + LANE], using COUNTS for working
+     *  storage. */
+    private double coincidenceScore(int[] plain, int lane, int stride,
+                                    int[] counts) {
+        Arrays.fill(counts, 0);
+        long n = _text.length;
+        for (int k = 0; k < n; k += 1) {
+            counts[plain[k * stride + lane]] += 1;
+        }
+        long sum = 0;
+        for (int c : counts) {
+            sum += (long) c * (c - 1);
+        }
+        if (n < 2) {
+            return 0.0;
+        }
+        return (double) sum * counts.length / (n * (n - 1));
+    }
+
+    /** Return the fraction of crib letters reproduced by the decryption
+     *  whose K-th letter is PLAIN[K * STRIDE + LANE]. */
+    private double cribScore(int[] plain, int lane, int stride) {
+        int hits = 0, total = 0;
+        for (Crib crib : _cribs) {
+            byte[] p = crib.plain();
+            int base = crib.position();
+            for (int k = 0; k < p.length; k += 1) {
+                hits += plain[(base + k) * stride + lane] == (p[k] & 0xff)
+                    ? 1 : 0;
+            }
+            total += p.length;
+        }
+        return (double) hits / total;
+    }
+
+    /** Return the largest fraction of the letters of the crib placed by
+     *  setCrib reproduced at any of its positions by the decryption
+     *  whose K-th letter is PLAIN[K * STRIDE + LANE]. */
+    private double placementScore(int[] plain, int lane, int stride) {
+        int best = 0, length = 0;
+        for (Crib crib : _placements) {
+            byte[] p = crib.plain();
+            int base = crib.position(), hits = 0;
+            for (int k = 0; k < p.length; k += 1) {
+                hits += plain[(base + k) * stride + lane] == (p[k] & 0xff)
+                    ? 1 : 0;
+            }
+            best = Math.max(best, hits);
+            length = p.length;
+        }
+        return (double) best / length;
+    }
+
+    /** Return the length of ciphertext needed to check every position
+     *  of the crib placed by setCrib. */
+    private int placementsEnd() {
+        Crib last = _placements.get(_placements.size() - 1);
+        return last.position() + last.length();
+    }
+
+    /** Return the length of ciphertext needed to check all cribs. */
+    private int cribsEnd() {
+        int end = 0;
+        for (Crib crib : _cribs) {
+            end = Math.max(end, crib.position() + crib.length());
+        }
+        return end;
+    }
+
+    /** Return a new machine for my configuration, with no plugboard. */
+    Machine newMachine() {
+        Machine M = Main.configure(new Scanner(_config));
+        M.setPlugboard(new Permutation("", M.alphabet()));
+        return M;
+    }
+
+    /** Per-thread working storage. */
+    private final class Scratch {
+        /** This thread's machine. */
+        private final Machine machine = newMachine();
+        /** Letter counts. */
+        private final int[] counts = new int[_alphabet.size()];
+        /** Decrypted text. */
+        private final int[] plain = new int[_text.length];
+        /** This thread's batch engine. */
+        private final BatchEngine engine = new BatchEngine(machine, BATCH);
+        /** Keys of the current batch. */
+        private final long[] keys = new long[BATCH];
+        /** Decrypted text of the current block of the current batch,
+         *  interleaved by lane. */
+        private final int[] batchOut = new int[PRUNE_BLOCK * BATCH];
+        /** Hits of the placements of setCrib being counted, by slot and
+         *  lane, or null. */
+        private int[] placementCounts;
+        /** Letter counts of each lane's decryption so far, by lane. */
+        private final int[] laneCounts = new int[BATCH * _alphabet.size()];
+        /** Sum over letters of count * (count - 1), by lane. */
+        private final long[] sums = new long[BATCH];
+        /** Highest letter count, by lane. */
+        private final int[] maxima = new int[BATCH];
+        /** Crib letters reproduced, by lane. */
+        private final int[] hits = new int[BATCH];
+        /** Sum of bigram log probabilities so far, by lane. */
+        private final double[] logSums = new double[BATCH];
+        /** Last letter decrypted, by lane. */
+        private final int[] previous = new int[BATCH];
+
+        /** Return storage for placement hits of at least LENGTH ints. */
+        int[] placementHits(int length) {
+            if (placementCounts == null || placementCounts.length < length) {
+                placementCounts = new int[length];
+            }
+            return placementCounts;
+        }
+
+        /** Exchange everything about lanes A and B of an alphabet of SIZE
+         *  letters. */
+        void swap(int a, int b, int size) {
+            engine.swap(a, b);
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            long sum = sums[a];
+            sums[a] = sums[b];
+            sums[b] = sum;
+            int t = maxima[a];
+            maxima[a] = maxima[b];
+            maxima[b] = t;
+            t = hits[a];
+            hits[a] = hits[b];
+            hits[b] = t;
+            double logSum = logSums[a];
+            logSums[a] = logSums[b];
+            logSums[b] = logSum;
+            t = previous[a];
+            previous[a] = previous[b];
+            previous[b] = t;
+            for (int c = 0; c < size; c += 1) {
+                t = laneCounts[a * size + c];
+                laneCounts[a * size + c] = laneCounts[b * size + c];
+                laneCounts[b * size + c] = t;
+            }
+        }
+    }
+
+    /** Number of keys run in lockstep by each BatchEngine. */
+    static final int BATCH = 256;
+
+    /** Letters decrypted between checks of progressive scoring. */
+    static final int PRUNE_BLOCK = 32;
+
+    /** Text of the configuration file. */
+    private final String _config;
+
+    /** Alphabet of the configuration. */
+    private final Alphabet _alphabet;
+
+    /** Key space searched. */
+    private final KeySpace _keys;
+
+    /** Ciphertext as alphabet indices. */
+    private final int[] _text;
+
+    /** Cribs to score against, if any. */
+    private ArrayList<Crib> _cribs;
+
+    /** Positions of the crib of setCrib, by position, if any. */
+    private ArrayList<Crib> _placements = new ArrayList<>();
+
+    /** Position and letter of every letter of every crib, by
+     *  position. */
+    private int[] _cribPositions = new int[0], _cribLetters = new int[0];
+
+    /** Tolerance of progressive scoring, or NaN if it is off. */
+    private double _tolerance = Double.NaN;
+
+    /** True iff best candidates are kept off the Java heap. */
+    private boolean _offHeap;
+
+    /** Log probability of each bigram A, B, at A * size + B, or null to
+     *  score by index of coincidence. */
+    private double[] _bigramLogs;
+
+    /** Letters decrypted, summed over keys. */
+    private final LongAdder _decrypted = new LongAdder();
+
+    /** Working storage of each searching thread. */
+    private final ThreadLocal<Scratch> _scratch;
+
+}
@@ -0,0 +1,193 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Divya Sivanandan
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Plaintext of the test messages. */
+    private static final String PLAIN =
+        "SHOULDYOUASKMEWHENCETHESESTORIESWHENCETHESELEGENDSANDTRADITIONS"
+        + "WITHTHEODORSOFTHEFORESTWITHTHEDEWANDDAMPOFMEADOWSWITHTHECURLING"
+        + "SMOKEOFWIGWAMSWITHTHERUSHINGOFGREATRIVERSWITHTHEIRFREQUENT"
+        + "REPETITIONSANDTHEIRWILDREVERBERATIONSASOFTHUNDERINTHEMOUNTAINS"
+        + "ISHOULDANSWERISHOULDTELLYOUFROMTHEFORESTSANDTHEPRAIRIES";
+
+    /** Key under which PLAIN is encrypted. */
+    private static final long KEY = 7321;
+
+    /** Return a search of the encryption of PLAIN under KEY. */
+    private KeySearch search() {
+        Machine M = navalMachine();
+        new KeySpace(M).apply(KEY, M);
+        return new KeySearch(navalConfig(), M.convert(PLAIN));
+    }
+
+    @Test
+    public void testExactPruning() {
+        KeySearch plain = search();
+        List<Candidate> expected = plain.search(0, 20000, 5);
+        assertEquals(KEY, expected.get(0).key());
+
+        KeySearch pruned = search();
+        pruned.setPruning(Double.POSITIVE_INFINITY);
+        assertEquals(expected, pruned.search(0, 20000, 5));
+        assertTrue(pruned.lettersDecrypted() < plain.lettersDecrypted());
+    }
+
+    @Test
+    public void testTolerance() {
+        Machine M = navalMachine();
+        new KeySpace(M).apply(KEY, M);
+        String cipher = M.convert(PLAIN + PLAIN + PLAIN + PLAIN);
+        KeySearch plain = new KeySearch(navalConfig(), cipher);
+        plain.search(0, 10000, 5);
+        KeySearch loose = new KeySearch(navalConfig(), cipher);
+        loose.setPruning(1.0);
+        assertEquals(KEY, loose.search(0, 10000, 5).get(0).key());
+        assertTrue(loose.lettersDecrypted() * 4 < plain.lettersDecrypted());
+    }
+
+    @Test
+    public void testCribPruning() {
+        Alphabet alpha = navalMachine().alphabet();
+        List<Crib> cribs =
+            Arrays.asList(new Crib(alpha.pack("SHOULDYOU"), 0),
+                          new Crib(alpha.pack("SMOKEOFWIGWAMS"), 126));
+        KeySearch plain = search();
+        plain.setCribs(cribs);
+        List<Candidate> expected = plain.search(0, 20000, 1);
+        assertEquals(KEY, expected.get(0).key());
+
+        KeySearch pruned = search();
+        pruned.setCribs(cribs);
+        pruned.setPruning(Double.POSITIVE_INFINITY);
+        assertEquals(expected, pruned.search(0, 20000, 1));
+        assertTrue(pruned.lettersDecrypted() < plain.lettersDecrypted());
+    }
+
+    @Test
+    public void testCrib() {
+        KeySearch search = search();
+        String crib = "WITH THE CURLING";
+        int positions = search.setCrib(crib);
+        assertTrue(positions > 0);
+        assertTrue(positions <= PLAIN.length() - 14);
+        List<Candidate> best = search.search(0, 20000, 3);
+        assertEquals(KEY, best.get(0).key());
+        assertEquals(1.0, best.get(0).score(), 0.0);
+        for (Candidate c : best) {
+            assertEquals(search.score(c.key()), c.score(), 1e-12);
+        }
+        KeySearch pruned = search();
+        pruned.setCrib(crib);
+        pruned.setPruning(Double.POSITIVE_INFINITY);
+        assertEquals(best, pruned.search(0, 20000, 3));
+    }
+
+    @Test
+    public void testBlocks() throws Exception {
+        Alphabet alpha = navalMachine().alphabet();
+        File file = File.createTempFile("corpus", ".txt");
+        try {
+            CorpusStats stats = corpus(file);
+            for (int mode = 0; mode < 4; mode += 1) {
+                KeySearch search = search();
+                if (mode == 1) {
+                    search.setCribs(
+                        Arrays.asList(new Crib(alpha.pack("SHOULDYOU"), 0),
+                                      new Crib(alpha.pack("THEODORS"), 67)));
+                } else if (mode == 2) {
+                    search.setCrib("WITH THE");
+                } else if (mode == 3) {
+                    search.setStatistics(stats);
+                }
+                int limit = 3 * KeySearch.BATCH - 17;
+                List<Candidate> all = search.search(KEY - 40, KEY - 40 + limit,
+                                                    limit);
+                assertEquals(limit, all.size());
+                for (Candidate c : all) {
+                    assertEquals(msg("testBlocks", "mode %d key %d", mode,
+                                     c.key()),
+                                 search.score(c.key()), c.score(), 0.0);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCribErrors() {
+        KeySearch search = search();
+        try {
+            search.setCrib(" ");
+            fail("empty crib accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("empty"));
+        }
+        try {
+            search.setCrib(PLAIN + "A");
+            fail("crib longer than the ciphertext accepted");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("nowhere"));
+        }
+    }
+
+    /** Return statistics of a corpus of PLAIN, stored in FILE. */
+    private CorpusStats corpus(File file) throws Exception {
+        Files.writeString(file.toPath(),
+                          "* B Beta III IV I AAAA\n" + PLAIN + "\n");
+        CorpusStats stats = new CorpusStats(UPPER, 1);
+        stats.add(Arrays.asList(file));
+        return stats;
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        File file = File.createTempFile("corpus", ".txt");
+        try {
+            CorpusStats stats = corpus(file);
+            Machine M = navalMachine();
+            new KeySpace(M).apply(KEY, M);
+            String cipher = M.convert(PLAIN.substring(0, 40));
+            KeySearch search = new KeySearch(navalConfig(), cipher);
+            search.setStatistics(stats);
+            List<Candidate> best = search.search(0, 20000, 3);
+            assertEquals(KEY, best.get(0).key());
+            for (Candidate c : best) {
+                assertEquals(search.score(c.key()), c.score(), 1e-12);
+                assertTrue(c.score() < 0);
+            }
+            KeySearch pruned = new KeySearch(navalConfig(), cipher);
+            pruned.setStatistics(stats);
+            pruned.setPruning(1.0);
+            assertEquals(best, pruned.search(0, 20000, 3));
+            try {
+                search.setBigrams(new long[3]);
+                fail("bigram counts of the wrong size accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("alphabet"));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+}
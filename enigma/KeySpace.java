@@ -0,0 +1,546 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static enigma.EnigmaException.*;
+
+/** The space of keys (reflector, wheel order and rotor positions) of a
+ *  machine, numbered densely from 0 to size() - 1.  The fixed slots of a
+ *  wheel order are filled with distinct non-moving rotors and the moving
+ *  slots with distinct moving rotors, taken in name order.  A key is
+ *      (reflector * orders() + order) * positions() + position
+ *  where position is the rotor settings read as a number in base
+ *  |alphabet| whose least significant digit is the rightmost rotor.  So
+ *  consecutive keys differ only in the rightmost rotor except at carries,
+ *  and apply() can then update a Machine by moving just that rotor.
+ *
+ *  A key space may also cover ring settings, for messages of a given
+ *  length.  A rotor's wiring depends only on its position less its ring
+ *  setting, its offset, and its position matters only through the
+ *  timing of its notches, which matters only for the pawl slots that can
+ *  turn the slot to their left: all but the leftmost.  So the position
+ *  digits of a key are read as offsets, and each of those stepping slots
+ *  gets a timing digit choosing among the positions that are not
+ *  equivalent, that is, that meet the notches at different points of a
+ *  message of that length; the rest have ring setting 0.  A key is then
+ *      ((reflector * orders() + order) * positions() + offsets)
+ *          * timings() + timing
+ *  with the rightmost stepping slot's digit least significant, and
+ *  timings() is far smaller than the |alphabet|^(numRotors - 1) that
+ *  searching every ring setting would multiply the key space by.  Rotors
+ *  whose notches give them fewer classes than timings() allows for have
+ *  keys that are not canonical(), and duplicate others.
+ *  @author Divya Sivanandan
+ */
+class KeySpace {
+
+    /** The key space of M, using the rotors available to it, with ring
+     *  settings 0. */
+    KeySpace(Machine M) {
+        this(M, -1);
+    }
+
+    /** The key space of M, using the rotors available to it, including
+     *  ring settings for messages of LENGTH letters, unless LENGTH is
+     *  negative. */
+    KeySpace(Machine M, int length) {
+        _alphabet = M.alphabet();
+        _numRotors = M.numRotors();
+        _pawls = M.numPawls();
+        _reflectors = new ArrayList<>();
+        _fixed = new ArrayList<>();
+        _moving = new ArrayList<>();
+        for (Map.Entry<String, Rotor> e : M.getAllRotors().entrySet()) {
+            Rotor r = e.getValue();
+            if (r.reflecting()) {
+                _reflectors.add(e.getKey());
+            } else if (r.rotates()) {
+                _moving.add(e.getKey());
+            } else {
+                _fixed.add(e.getKey());
+            }
+        }
+        Collections.sort(_reflectors);
+        Collections.sort(_fixed);
+        Collections.sort(_moving);
+        try {
+            _fixedOrders = arrangements(_fixed.size(), numFixed());
+            _movingOrders = arrangements(_moving.size(), _pawls);
+            _positions = 1;
+            for (int i = 1; i < _numRotors; i += 1) {
+                _positions = Math.multiplyExact(_positions, _alphabet.size());
+            }
+            _timings = 1;
+            _classes = new int[0];
+            if (length >= 0) {
+                timingClasses(M, length);
+            }
+            _size = Math.multiplyExact(_reflectors.size(),
+                                       Math.multiplyExact(orders(),
+                                                          _positions));
+            _size = Math.multiplyExact(_size, _timings);
+        } catch (ArithmeticException excp) {
+            throw error("key space too large");
+        }
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the number of wheel orders for each reflector. */
+    long orders() {
+        return Math.multiplyExact(_fixedOrders, _movingOrders);
+    }
+
+    /** Return the number of rotor positions for each wheel order. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the number of combinations of timings of the stepping
+     *  slots for each wheel order and set of offsets: 1 unless I cover
+     *  ring settings. */
+    long timings() {
+        return _timings;
+    }
+
+    /** Return true iff I cover ring settings. */
+    boolean coversRings() {
+        return _ringLength >= 0;
+    }
+
+    /** Return the names of the rotors of KEY, reflector first, as for
+     *  Machine.insertRotors. */
+    String[] rotors(long key) {
+        check(key);
+        String[] names = new String[_numRotors];
+        long rest = key / _timings / _positions;
+        long order = rest % orders();
+        names[0] = _reflectors.get((int) (rest / orders()));
+        pick(_fixed, order / _movingOrders, names, 1, numFixed());
+        pick(_moving, order % _movingOrders, names, 1 + numFixed(), _pawls);
+        return names;
+    }
+
+    /** Return the settings of the non-reflector rotors of KEY, leftmost
+     *  first. */
+    int[] settings(long key) {
+        int[] result = offsets(key);
+        if (_classes.length == 0) {
+            return result;
+        }
+        int[] timing = timing(key);
+        String[] names = rotors(key);
+        for (int j = 0; j < _classes.length; j += 1) {
+            int slot = _numRotors - _classes.length + j;
+            int[] reps = _representatives.get(names[slot])[j];
+            result[slot - 1] = reps[Math.min(timing[j], reps.length - 1)];
+        }
+        return result;
+    }
+
+    /** Return the ring settings of the non-reflector rotors of KEY,
+     *  leftmost first. */
+    int[] rings(long key) {
+        int[] result = settings(key), offsets = offsets(key);
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = Math.floorMod(result[i] - offsets[i],
+                                      _alphabet.size());
+        }
+        return result;
+    }
+
+    /** Return true iff KEY is the first of the keys equivalent to it:
+     *  iff each of its timing digits selects a class of the rotor in its
+     *  slot.  Digits beyond a rotor's classes select its last class. */
+    boolean canonical(long key) {
+        if (_classes.length == 0) {
+            check(key);
+            return true;
+        }
+        int[] timing = timing(key);
+        String[] names = rotors(key);
+        for (int j = 0; j < _classes.length; j += 1) {
+            int slot = _numRotors - _classes.length + j;
+            if (timing[j] >= _representatives.get(names[slot])[j].length) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the offsets of the non-reflector rotors of KEY, their
+     *  positions less their ring settings, leftmost first. */
+    private int[] offsets(long key) {
+        check(key);
+        int[] result = new int[_numRotors - 1];
+        long rest = key / _timings % _positions;
+        for (int i = result.length - 1; i >= 0; i -= 1) {
+            result[i] = (int) (rest % _alphabet.size());
+            rest /= _alphabet.size();
+        }
+        return result;
+    }
+
+    /** Return the timing digits of KEY, one per stepping slot, leftmost
+     *  first. */
+    private int[] timing(long key) {
+        int[] result = new int[_classes.length];
+        long rest = key % _timings;
+        for (int j = result.length - 1; j >= 0; j -= 1) {
+            result[j] = (int) (rest % _classes[j]);
+            rest /= _classes[j];
+        }
+        return result;
+    }
+
+    /** Work out the timing classes of each moving rotor of M in each
+     *  stepping slot for messages of LENGTH letters, setting
+     *  _representatives, _classes and _timings.  The slot to the right
+     *  of a stepping slot has its notch seen at most at the positions it
+     *  passes through, a window of consecutive positions; a stepping slot
+     *  steps at most once for each notch seen there, plus once for each
+     *  of its own notches it reaches, which bounds its own window.  Two
+     *  positions of a rotor are equivalent iff its notches fall at the
+     *  same points of its window from each. */
+    private void timingClasses(Machine M, int length) {
+        _ringLength = length;
+        int size = _alphabet.size(), stepping = Math.max(0, _pawls - 1);
+        ArrayList<boolean[]> notches = new ArrayList<>();
+        for (String name : _moving) {
+            notches.add(notches(M.getAllRotors().get(name)));
+        }
+        long[] windows = new long[stepping];
+        long window = length;
+        for (int j = stepping - 1; j >= 0; j -= 1) {
+            windows[j] = window;
+            long seen = 0;
+            for (boolean[] notch : notches) {
+                seen = Math.max(seen, hits(notch, window));
+            }
+            long steps = seen;
+            while (steps < length) {
+                long own = 0;
+                for (boolean[] notch : notches) {
+                    own = Math.max(own, hits(notch, steps + 2));
+                }
+                if (steps + 1 > seen + own) {
+                    break;
+                }
+                steps += 1;
+            }
+            window = Math.min(length, steps + 1);
+        }
+        _classes = new int[stepping];
+        for (int i = 0; i < _moving.size(); i += 1) {
+            int[][] reps = new int[stepping][];
+            for (int j = 0; j < stepping; j += 1) {
+                reps[j] = representatives(notches.get(i),
+                                          (int) Math.min(size, windows[j]));
+                _classes[j] = Math.max(_classes[j], reps[j].length);
+            }
+            _representatives.put(_moving.get(i), reps);
+        }
+        for (int classes : _classes) {
+            _timings = Math.multiplyExact(_timings, classes);
+        }
+    }
+
+    /** Return the notch flags of R, by position. */
+    private boolean[] notches(Rotor r) {
+        boolean[] result = new boolean[_alphabet.size()];
+        int saved = r.setting();
+        for (int p = 0; p < result.length; p += 1) {
+            r.set(p);
+            result[p] = r.atNotch();
+        }
+        r.set(saved);
+        return result;
+    }
+
+    /** Return the most positions flagged in NOTCH among WINDOW
+     *  consecutive positions. */
+    private static long hits(boolean[] notch, long window) {
+        int size = notch.length, all = 0;
+        for (boolean b : notch) {
+            all += b ? 1 : 0;
+        }
+        int rest = (int) (window % size), most = 0;
+        for (int p = 0; p < size; p += 1) {
+            int n = 0;
+            for (int i = 0; i < rest; i += 1) {
+                n += notch[(p + i) % size] ? 1 : 0;
+            }
+            most = Math.max(most, n);
+        }
+        return window / size * all + most;
+    }
+
+    /** Return the first of each set of positions from which the
+     *  positions flagged in NOTCH fall at the same points of the next
+     *  WINDOW positions, in increasing order. */
+    private static int[] representatives(boolean[] notch, int window) {
+        int size = notch.length;
+        HashSet<String> seen = new HashSet<>();
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int p = 0; p < size; p += 1) {
+            StringBuilder pattern = new StringBuilder();
+            for (int i = 0; i < window; i += 1) {
+                pattern.append(notch[(p + i) % size] ? '1' : '0');
+            }
+            if (seen.add(pattern.toString())) {
+                result.add(p);
+            }
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Return a settings line for KEY in the form accepted by Main, with
+     *  no plugboard, giving ring settings iff I cover them. */
+    String settingsLine(long key) {
+        StringBuilder line = new StringBuilder("*");
+        for (String name : rotors(key)) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int posn : settings(key)) {
+            line.append(_alphabet.toChar(posn));
+        }
+        if (coversRings()) {
+            line.append(' ');
+            for (int ring : rings(key)) {
+                line.append(_alphabet.toChar(ring));
+            }
+        }
+        return line.toString();
+    }
+
+    /** Set up M, whose plugboard must already be set, for KEY.  If M
+     *  already holds the rotors of KEY, only rotors whose positions or
+     *  ring settings differ are changed. */
+    void apply(long key, Machine M) {
+        String[] names = rotors(key);
+        int[] posns = settings(key), rings = rings(key);
+        ArrayList<Rotor> used = M.getRotorsUsed();
+        boolean same = used.size() == names.length;
+        for (int i = 0; same && i < names.length; i += 1) {
+            same = used.get(i).name().equals(names[i]);
+        }
+        if (!same) {
+            StringBuilder setting = new StringBuilder();
+            for (int posn : posns) {
+                setting.append(_alphabet.toChar(posn));
+            }
+            used.clear();
+            M.insertRotors(names);
+            M.setRotors(setting.toString());
+        }
+        for (int i = 0; i < posns.length; i += 1) {
+            if (used.get(i + 1).ring() != rings[i]) {
+                M.setRing(i + 1, rings[i]);
+            }
+            if (used.get(i + 1).setting() != posns[i]) {
+                M.setRotor(i + 1, posns[i]);
+            }
+        }
+    }
+
+    /** Return a spliterator over all keys. */
+    KeySpliterator spliterator() {
+        return new KeySpliterator(0, _size);
+    }
+
+    /** Return a spliterator over keys FROM .. TO - 1. */
+    KeySpliterator spliterator(long from, long to) {
+        if (from < 0 || from > to || to > _size) {
+            throw error("bad key range %d..%d", from, to);
+        }
+        return new KeySpliterator(from, to);
+    }
+
+    /** Return a stream over keys FROM .. TO - 1, parallel iff PARALLEL. */
+    LongStream keys(long from, long to, boolean parallel) {
+        return StreamSupport.longStream(spliterator(from, to), parallel);
+    }
+
+    /** Write atomically to FILE a checkpoint recording that every key
+     *  before NEXT has been searched. */
+    void saveCheckpoint(File file, long next) {
+        AtomicFile.write(file, String.format("%d %d%n", _size, next));
+    }
+
+    /** Return the first unsearched key recorded in the checkpoint FILE,
+     *  or 0 if there is no such file. */
+    long loadCheckpoint(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (Scanner in = new Scanner(file)) {
+            long size = in.nextLong(), next = in.nextLong();
+            if (size != _size || next < 0 || next > _size) {
+                throw error("checkpoint %s is for another key space", file);
+            }
+            return next;
+        } catch (IOException | NoSuchElementException excp) {
+            throw error("bad checkpoint %s", file);
+        }
+    }
+
+    /** A spliterator over a range of keys that splits into halves and can
+     *  report how far it has got. */
+    static final class KeySpliterator implements Spliterator.OfLong {
+
+        /** A spliterator over keys FROM .. TO - 1. */
+        KeySpliterator(long from, long to) {
+            _next = from;
+            _end = to;
+        }
+
+        /** Return the next key I will deliver; every key before it in my
+         *  range has been delivered. */
+        long position() {
+            return _next;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (_next >= _end) {
+                return false;
+            }
+            action.accept(_next);
+            _next += 1;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long end = _end;
+            for (long key = _next; key < end; key += 1) {
+                action.accept(key);
+            }
+            _next = end;
+        }
+
+        @Override
+        public KeySpliterator trySplit() {
+            long mid = _next + (_end - _next) / 2;
+            if (mid <= _next) {
+                return null;
+            }
+            KeySpliterator prefix = new KeySpliterator(_next, mid);
+            _next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return _end - _next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL
+                | IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return null;
+        }
+
+        /** Next key to deliver. */
+        private long _next;
+
+        /** End of my range. */
+        private final long _end;
+    }
+
+    /** Return the number of ordered selections of K of N items. */
+    private static long arrangements(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        long result = 1;
+        for (int i = 0; i < k; i += 1) {
+            result = Math.multiplyExact(result, n - i);
+        }
+        return result;
+    }
+
+    /** Fill NAMES[START .. START + K - 1] with the INDEX-th ordered
+     *  selection of K of the names in FROM. */
+    private static void pick(List<String> from, long index, String[] names,
+                             int start, int k) {
+        ArrayList<String> left = new ArrayList<>(from);
+        for (int j = 0; j < k; j += 1) {
+            long sub = arrangements(left.size() - 1, k - j - 1);
+            names[start + j] = left.remove((int) (index / sub));
+            index %= sub;
+        }
+    }
+
+    /** Check that KEY is in range. */
+    private void check(long key) {
+        if (key < 0 || key >= _size) {
+            throw error("key %d out of range", key);
+        }
+    }
+
+    /** Return the number of non-moving, non-reflector slots. */
+    private int numFixed() {
+        return _numRotors - 1 - _pawls;
+    }
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Names of reflectors, fixed rotors and moving rotors. */
+    private final ArrayList<String> _reflectors, _fixed, _moving;
+
+    /** Number of ways to fill the fixed and the moving slots. */
+    private long _fixedOrders, _movingOrders;
+
+    /** Number of rotor positions for each wheel order. */
+    private long _positions;
+
+    /** Total number of keys. */
+    private long _size;
+
+    /** Number of combinations of timing classes. */
+    private long _timings;
+
+    /** Number of timing classes of each stepping slot, leftmost first,
+     *  or none if I do not cover ring settings. */
+    private int[] _classes;
+
+    /** Representative positions of the timing classes of each moving
+     *  rotor in each stepping slot, by name. */
+    private final HashMap<String, int[][]> _representatives =
+        new HashMap<>();
+
+    /** Length of message for which ring settings are covered, or -1. */
+    private int _ringLength = -1;
+
+}
@@ -0,0 +1,180 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Spliterator;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace class.
+ *  @author Divya Sivanandan
+ */
+public class KeySpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testSize() {
+        KeySpace space = new KeySpace(navalMachine());
+        assertEquals(2 * 8 * 7 * 6, space.orders());
+        assertEquals(26 * 26 * 26 * 26, space.positions());
+        assertEquals(2 * 2 * 336 * 26L * 26 * 26 * 26, space.size());
+    }
+
+    @Test
+    public void testDecode() {
+        KeySpace space = new KeySpace(navalMachine());
+        assertEquals("* B Beta I II III AAAA", space.settingsLine(0));
+        assertEquals("* B Beta I II III AAAB", space.settingsLine(1));
+        assertEquals("* B Beta I II III AABA", space.settingsLine(26));
+        assertEquals("* B Beta I II IV AAAA",
+                     space.settingsLine(space.positions()));
+        assertEquals("* C Gamma VIII VII VI ZZZZ",
+                     space.settingsLine(space.size() - 1));
+    }
+
+    @Test
+    public void testApply() {
+        Machine M = navalMachine();
+        KeySpace space = new KeySpace(M);
+        space.apply(27, M);
+        assertEquals("Beta", M.getRotorsUsed().get(1).name());
+        assertEquals(1, M.getRotorsUsed().get(3).setting());
+        assertEquals(1, M.getRotorsUsed().get(4).setting());
+        space.apply(28, M);
+        assertEquals(2, M.getRotorsUsed().get(4).setting());
+    }
+
+    /** Return the conversion of MSG by M set up for rotors NAMES at
+     *  SETTINGS with ring settings RINGS. */
+    private String convert(Machine M, String[] names, int[] settings,
+                           int[] rings, String msg) {
+        M.getRotorsUsed().clear();
+        M.insertRotors(names);
+        StringBuilder posns = new StringBuilder();
+        for (int i = 0; i < settings.length; i += 1) {
+            posns.append(UPPER.toChar(settings[i]));
+        }
+        M.setRotors(posns.toString());
+        for (int i = 0; i < rings.length; i += 1) {
+            M.setRing(i + 1, rings[i]);
+        }
+        return M.convert(msg);
+    }
+
+    @Test
+    public void testRingSpace() {
+        String msg = "SHOULDYOUASKMEWHENCETHESESTORIESWHENCETHESELEGENDS";
+        Machine M = navalMachine();
+        KeySpace space = new KeySpace(M, msg.length());
+        assertEquals(26 * 26 * 26 * 26, space.positions());
+        assertTrue(space.timings() < 26 * 26);
+        assertEquals(new KeySpace(M).size() * space.timings(), space.size());
+        Random random = new Random(44);
+        for (int trial = 0; trial < 20; trial += 1) {
+            long key = Math.floorMod(random.nextLong(), space.size());
+            String[] names = space.rotors(key);
+            int[] settings = space.settings(key), rings = space.rings(key);
+            for (int i = 2; i < settings.length; i += 1) {
+                int shift = random.nextInt(26);
+                settings[i] = (settings[i] + shift) % 26;
+                rings[i] = (rings[i] + shift) % 26;
+            }
+            String expected = convert(M, names, settings, rings, msg);
+            long base = key - key % space.timings();
+            boolean found = false;
+            for (long k = base; k < base + space.timings(); k += 1) {
+                if (space.canonical(k)) {
+                    space.apply(k, M);
+                    found |= M.convert(msg).equals(expected);
+                }
+            }
+            assertTrue(found);
+        }
+    }
+
+    @Test
+    public void testRingEngines() {
+        String msg = "SHOULDYOUASKMEWHENCETHESESTORIESWHENCETHESELEGENDS"
+            + "ANDTRADITIONSWITHTHEODORSOFTHEFORESTWITHTHEDEWAND";
+        Machine M = navalMachine();
+        KeySpace space = new KeySpace(M, msg.length());
+        BatchEngine engine = new BatchEngine(M, 8);
+        long[] keys = new long[8];
+        Random random = new Random(45);
+        for (int lane = 0; lane < keys.length; lane += 1) {
+            keys[lane] = Math.floorMod(random.nextLong(), space.size());
+        }
+        engine.load(space, keys, keys.length);
+        int[] text = new int[msg.length()];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = UPPER.toInt(msg.charAt(i));
+        }
+        int[] out = new int[text.length * keys.length];
+        engine.convert(text, text.length, out);
+        for (int lane = 0; lane < keys.length; lane += 1) {
+            space.apply(keys[lane], M);
+            String expected = M.convert(msg);
+            StringBuilder batch = new StringBuilder();
+            for (int t = 0; t < text.length; t += 1) {
+                batch.append(UPPER.toChar(out[t * keys.length + lane]));
+            }
+            assertEquals(expected, batch.toString());
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new Main(new Scanner(navalConfig()),
+                     new Scanner(space.settingsLine(keys[lane]) + "\n" + msg),
+                     new PrintStream(output)).process();
+            assertEquals(expected,
+                         output.toString().replaceAll("\\s", ""));
+
+            Machine compiled = navalMachine();
+            compiled.setCompiling(true);
+            String[] names = space.rotors(keys[lane]);
+            assertEquals(expected,
+                         convert(compiled, names, space.settings(keys[lane]),
+                                 space.rings(keys[lane]),
+                                 msg + msg + msg + msg + msg + msg)
+                         .substring(0, msg.length()));
+        }
+    }
+
+    @Test
+    public void testSplit() {
+        KeySpace space = new KeySpace(navalMachine());
+        KeySpace.KeySpliterator all = space.spliterator(10, 1010);
+        Spliterator.OfLong half = all.trySplit();
+        assertEquals(500, half.estimateSize());
+        assertEquals(500, all.estimateSize());
+        assertEquals(510, all.position());
+        long[] sum = new long[1];
+        half.forEachRemaining((long k) -> sum[0] += k);
+        all.forEachRemaining((long k) -> sum[0] += k);
+        assertEquals((10 + 1009) * 1000 / 2, sum[0]);
+        assertEquals((10 + 1009) * 1000 / 2,
+                     space.keys(10, 1010, true).sum());
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        KeySpace space = new KeySpace(navalMachine());
+        File file = File.createTempFile("keys", ".ckpt");
+        file.delete();
+        assertEquals(0, space.loadCheckpoint(file));
+        space.saveCheckpoint(file, 12345);
+        assertEquals(12345, space.loadCheckpoint(file));
+        file.delete();
+    }
+
+}
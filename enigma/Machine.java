@@ -1,7 +1,11 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static enigma.EnigmaException.*;
 
@@ -34,10 +38,16 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting, with ring
+     *  setting 0. */
     void insertRotors(String[] rotors) {
+        recompile();
         for (String rName : rotors) {
-            _rotorsUsed.add(_allRotors.get(rName));
+            Rotor r = _allRotors.get(rName);
+            if (r != null) {
+                r.setRing(0);
+            }
+            _rotorsUsed.add(r);
         }
         for (int i = 0; i < (_rotorsUsed.size() - 1); i++) {
             Rotor curr = _rotorsUsed.get(i);
@@ -49,6 +59,7 @@ class Machine {
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        recompile();
         if (setting.length() < _numRotors - 1) {
             throw error("initial settings not given for all rotors");
         }
@@ -62,15 +73,180 @@ class Machine {
         _rotorsUsed.get(_numRotors - 1).setRightRotor(null);
     }
 
+    /** Set the rotor in slot K (slot 0 holds the reflector) to POSN,
+     *  leaving the other rotors and the pawls as they are.  Cheaper than
+     *  setRotors when only a few rotors change between settings. */
+    void setRotor(int k, int posn) {
+        _rotorsUsed.get(k).set(posn);
+        if (_compiled != null && k < _compiled.firstMoving()) {
+            recompile();
+        }
+    }
+
+    /** Set the ring settings of my rotors according to RINGS, a string
+     *  of numRotors()-1 characters in my alphabet, leftmost rotor (not
+     *  counting the reflector) first. */
+    void setRings(String rings) {
+        recompile();
+        if (rings.length() != _numRotors - 1) {
+            throw error("ring settings not given for all rotors");
+        }
+        for (int i = 0; i < rings.length(); i += 1) {
+            if (!_alphabet.contains(rings.charAt(i))) {
+                throw error("invalid ring setting %c", rings.charAt(i));
+            }
+            _rotorsUsed.get(i + 1).setRing(rings.charAt(i));
+        }
+    }
+
+    /** Set the ring setting of the rotor in slot K (slot 0 holds the
+     *  reflector) to RING. */
+    void setRing(int k, int ring) {
+        _rotorsUsed.get(k).setRing(ring);
+        recompile();
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugBoard = plugboard;
+        recompile();
+    }
+
+    /** Use a CompiledMachine for convert(String) iff COMPILING, once
+     *  enough characters have been converted since the configuration last
+     *  changed to repay the cost of compiling it. */
+    void setCompiling(boolean compiling) {
+        _compiling = compiling;
+        recompile();
+    }
+
+    /** Convert with TABLE, a StateTable for my current configuration,
+     *  until that configuration next changes. */
+    void setTable(StateTable table) {
+        recompile();
+        _table = table;
+    }
+
+    /** Look up and record conversions in RESULTS, or in none if it is
+     *  null.  Copies of me made afterwards share it. */
+    void setResultCache(ResultCache results) {
+        _results = results;
+    }
+
+    /** Discard any compiled form of my configuration, which is about to
+     *  change. */
+    private void recompile() {
+        _compiled = null;
+        _table = null;
+        _sinceSetup = 0;
+    }
+
+    /** Return the CompiledMachine with which to convert LEN more
+     *  characters, compiling my configuration if it is time to, or null
+     *  if they are to be converted one at a time. */
+    private CompiledMachine compiled(int len) {
+        if (!_compiling) {
+            return null;
+        }
+        if (_compiled == null && _sinceSetup + len >= COMPILE_THRESHOLD
+            && CompiledMachine.supports(this)) {
+            _compiled = compile();
+        }
+        _sinceSetup += len;
+        return _compiled;
+    }
+
+    /** Return true iff my current configuration has been compiled, so
+     *  that convert(String) goes through a CompiledMachine. */
+    boolean isCompiled() {
+        return _compiled != null;
+    }
+
+    /** Return a CompiledMachine for my current configuration, reusing the
+     *  tables of one compiled for the same configuration by a machine
+     *  sharing my cache, if any. */
+    private CompiledMachine compile() {
+        if (_compiledCache == null) {
+            return new CompiledMachine(this);
+        }
+        String key = configurationKey();
+        CompiledMachine shared = _compiledCache.get(key);
+        if (shared == null) {
+            shared = new CompiledMachine(this);
+            if (_compiledCache.size() < MAX_SHARED_COMPILED) {
+                _compiledCache.putIfAbsent(key, shared);
+            }
+            return shared;
+        }
+        return new CompiledMachine(shared, this);
+    }
+
+    /** Return a description of everything in my configuration other
+     *  than the positions of my moving rotors: the rotors, their ring
+     *  settings, the positions of the rest and the plugboard. */
+    String configurationKey() {
+        StringBuilder key = new StringBuilder();
+        int first = _numRotors - _pawls;
+        for (int k = 0; k < _rotorsUsed.size(); k += 1) {
+            Rotor r = _rotorsUsed.get(k);
+            key.append(r.name()).append(' ').append(r.ring()).append(' ');
+            if (k < first || !r.rotates()) {
+                key.append(r.setting()).append(' ');
+            }
+        }
+        key.append(_plugBoard.getCycles());
+        return key.toString();
+    }
+
+    /** Return a new machine with my alphabet, slots, pawls and available
+     *  rotors, with no rotors inserted and no plugboard.  Its rotors are
+     *  copies of mine sharing my rotors' permutations, so the two
+     *  machines can be used independently, even by different threads.
+     *  The two share compiled configurations: tables compiled by either
+     *  are reused by both. */
+    Machine copy() {
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        for (Map.Entry<String, Rotor> e : _allRotors.entrySet()) {
+            rotors.put(e.getKey(), e.getValue().copy());
+        }
+        Machine result = new Machine(_alphabet, _numRotors, _pawls, rotors);
+        synchronized (this) {
+            if (_compiledCache == null) {
+                _compiledCache = new ConcurrentHashMap<>();
+            }
+        }
+        result._compiledCache = _compiledCache;
+        result._results = _results;
+        return result;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        advance();
+        int currChar = _plugBoard.permute(c);
+        for (int i = (_rotorsUsed.size() - 1); i >= 0; i -= 1) {
+            currChar = _rotorsUsed.get(i).convertForward(currChar);
+        }
+        for (int i = 1; i < _rotorsUsed.size(); i++) {
+            currChar = _rotorsUsed.get(i).convertBackward(currChar);
+        }
+        currChar = _plugBoard.invert(currChar);
+        return currChar;
+    }
+
+    /** Advance the machine as converting COUNT characters would, without
+     *  converting any. */
+    void step(long count) {
+        for (long k = 0; k < count; k += 1) {
+            advance();
+        }
+    }
+
+    /** Advance the rotors, as is done before converting each
+     *  character. */
+    private void advance() {
         for (int i = _numRotors - 1; i >= (_numRotors - _pawls); i -= 1) {
             Rotor curr = _rotorsUsed.get(i);
             if (curr.getRightRotor() == null) {
@@ -86,20 +262,29 @@ class Machine {
         for (int i = _numRotors - 1; i >= (_numRotors - _pawls); i -= 1) {
             _rotorsUsed.get(i).advance();
         }
-        int currChar = _plugBoard.permute(c);
-        for (int i = (_rotorsUsed.size() - 1); i >= 0; i -= 1) {
-            currChar = _rotorsUsed.get(i).convertForward(currChar);
-        }
-        for (int i = 1; i < _rotorsUsed.size(); i++) {
-            currChar = _rotorsUsed.get(i).convertBackward(currChar);
-        }
-        currChar = _plugBoard.invert(currChar);
-        return currChar;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
+        if (_results != null) {
+            return _results.convert(this,
+                                    msg.getBytes(Charset.defaultCharset()),
+                                    () -> convertText(msg));
+        }
+        return convertText(msg);
+    }
+
+    /** Returns the encoding/decoding of MSG, as convert(String) does,
+     *  without consulting my result cache. */
+    private String convertText(String msg) {
+        if (_table != null) {
+            return _table.convert(msg);
+        }
+        CompiledMachine compiled = compiled(msg.length());
+        if (compiled != null) {
+            return compiled.convert(msg);
+        }
         String converted = "";
         msg = msg.trim();
         while (msg.length() > 0) {
@@ -110,17 +295,141 @@ class Machine {
         return converted;
     }
 
+    /** Convert the characters IN[FROM .. TO - 1], skipping whitespace as
+     *  convert(String) does, into OUT starting at OUTPOS, updating the
+     *  state of the rotors accordingly.  Returns the number of characters
+     *  written. */
+    int convert(char[] in, int from, int to, char[] out, int outPos) {
+        if (_results != null) {
+            String text = new String(in, from, to - from);
+            String result = _results.convert(
+                this, text.getBytes(Charset.defaultCharset()), () -> {
+                    char[] chars = text.toCharArray();
+                    return new String(chars, 0,
+                                      convertChars(chars, 0, chars.length,
+                                                   chars, 0));
+                });
+            result.getChars(0, result.length(), out, outPos);
+            return result.length();
+        }
+        return convertChars(in, from, to, out, outPos);
+    }
+
+    /** Convert IN[FROM .. TO - 1] into OUT from OUTPOS as
+     *  convert(char[], int, int, char[], int) does, without consulting
+     *  my result cache. */
+    private int convertChars(char[] in, int from, int to, char[] out,
+                             int outPos) {
+        if (_table != null) {
+            return _table.convert(in, from, to, out, outPos);
+        }
+        CompiledMachine compiled = compiled(to - from);
+        if (compiled != null) {
+            return compiled.convert(in, from, to, out, outPos);
+        }
+        int k = outPos;
+        for (int i = from; i < to; i += 1) {
+            if (in[i] > ' ') {
+                out[k] = _alphabet.toChar(convert(_alphabet.toInt(in[i])));
+                k += 1;
+            }
+        }
+        return k - outPos;
+    }
+
+    /** Return true iff convert(ByteBuffer, ByteBuffer) is available:
+     *  iff text in the default charset encodes each of my characters as
+     *  a single byte. */
+    boolean convertsBytes() {
+        if (_byteIndices == null) {
+            _byteIndices = _alphabet.byteIndices(Charset.defaultCharset());
+        }
+        return _byteIndices != null;
+    }
+
+    /** Convert the remaining bytes of IN, text in the default charset,
+     *  into OUT, skipping whitespace as convert(String) does and
+     *  advancing the positions of both.  OUT may share storage with IN
+     *  provided it does not start after it, so conversion can be done in
+     *  place.  Requires convertsBytes().  Returns the number of bytes
+     *  written. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        if (!convertsBytes()) {
+            throw error("alphabet is not single-byte in %s",
+                        Charset.defaultCharset());
+        }
+        if (_results != null) {
+            byte[] bytes = new byte[in.remaining()];
+            in.get(bytes);
+            byte[] result = _results.convert(this, bytes, () -> {
+                ByteBuffer converted = ByteBuffer.allocate(bytes.length);
+                convertBytes(ByteBuffer.wrap(bytes), converted);
+                return new String(converted.array(), 0,
+                                  converted.position(),
+                                  Charset.defaultCharset());
+            }).getBytes(Charset.defaultCharset());
+            out.put(result);
+            return result.length;
+        }
+        return convertBytes(in, out);
+    }
+
+    /** Convert the remaining bytes of IN into OUT as
+     *  convert(ByteBuffer, ByteBuffer) does, without consulting my
+     *  result cache. */
+    private int convertBytes(ByteBuffer in, ByteBuffer out) {
+        if (_table != null) {
+            return _table.convert(in, out, _byteIndices);
+        }
+        int len = in.remaining();
+        CompiledMachine compiled = compiled(len);
+        if (compiled != null) {
+            return compiled.convert(in, out, _byteIndices);
+        }
+        int[] table = _byteIndices;
+        int start = out.position();
+        for (int i = 0; i < len; i += 1) {
+            int c = table[in.get() & BYTE_MASK];
+            if (c != Alphabet.SKIP) {
+                out.put((byte) _alphabet.toChar(convert(c)));
+            }
+        }
+        return out.position() - start;
+    }
+
     /** Returns the arraylist of rotors currently inserted
      * and in use in Machine. */
     ArrayList<Rotor> getRotorsUsed() {
         return _rotorsUsed;
     }
 
+    /** Returns my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Returns my plugboard, or null if none has been set. */
+    Permutation plugboard() {
+        return _plugBoard;
+    }
+
+    /** Returns all rotors available for use in Machine, by name. */
+    HashMap<String, Rotor> getAllRotors() {
+        return _allRotors;
+    }
+
     /** Returns TRUE is rotor with NAME is in _allRotors. */
     boolean checkRotorAvailable(String name) {
         return _allRotors.containsKey(name);
     }
 
+    /** Number of characters a configuration must be used for before it
+     *  is compiled. */
+    static final int COMPILE_THRESHOLD = 256;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -139,4 +448,31 @@ class Machine {
     /** Set up of plugboard. */
     private Permutation _plugBoard;
 
+    /** True iff convert(String) may use a CompiledMachine. */
+    private boolean _compiling;
+
+    /** Compiled form of my current configuration, or null. */
+    private CompiledMachine _compiled;
+
+    /** State table of my current configuration, or null. */
+    private StateTable _table;
+
+    /** Cache of conversions, or null. */
+    private ResultCache _results;
+
+    /** Characters passed to convert(String) since my configuration last
+     *  changed. */
+    private int _sinceSetup;
+
+    /** Compiled configurations shared with copies of me, by a key
+     *  describing everything they depend on, or null if I share none. */
+    private ConcurrentHashMap<String, CompiledMachine> _compiledCache;
+
+    /** Most compiled configurations kept in a shared cache. */
+    static final int MAX_SHARED_COMPILED = 1024;
+
+    /** Alphabet index of each byte of text, or null if not computed or
+     *  not possible; see Alphabet.byteIndices. */
+    private int[] _byteIndices;
+
 }
@@ -1,9 +1,16 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
@@ -23,10 +30,69 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Input files compressed with gzip, or with any format for which a
+     *  Codec is installed, are recognized and decompressed on the fly.  An
+     *  output file whose name has the extension of a codec, such as .gz,
+     *  is compressed.  Between uncompressed files, messages in alphabets
+     *  of single bytes are converted as bytes (see ByteProcessor).
+     *
+     *  Options, which precede the file names, are
+     *      --compile   specialize the machine to each settings line
+     *                  (see CompiledMachine) for long messages.
+     *      --metrics   collect metrics (see Metrics), publish them through
+     *                  JMX, and print a summary on the standard error.
+     *      --pipeline  read, convert and write on separate threads, with
+     *                  independent segments converted in parallel (see
+     *                  Pipeline).  Parse and output times are not
+     *                  collected in this mode.
+     *      --engine=NAME  convert with the engine NAME: plain, compile,
+     *                  pipeline or pipeline-compile, as the options above,
+     *                  or auto, to choose one from the configuration and
+     *                  the input, or from a cached calibration (see
+     *                  EngineSelector).  The choice is reported on the
+     *                  standard error.
+     *      --calibrate like --engine=auto, but first time every engine on
+     *                  the start of the input file, choose the fastest,
+     *                  and cache the choice for the configuration.
+     *      --tables=DIR  convert by lookup in the state table, in the
+     *                  directory DIR, of each settings line for which
+     *                  there is one (see StateTable).
+     *      --cache[=BYTES]  keep up to BYTES (default 64 MB) of converted
+     *                  lines, and reuse them for lines converted again
+     *                  from the same state (see ResultCache).  Its use
+     *                  is reported on the standard error.
+     *      --cache-file=FILE  like --cache, but load the cache from FILE
+     *                  at the start, if it exists, and save it there at
+     *                  the end (or, with --follow, when killed).
+     *      --index     write an index of the input file to a file of the
+     *                  same name plus .idx (see SegmentIndex), with no
+     *                  other output.
+     *      --segment=N process only segment N (from 0) of the input file,
+     *                  using its index.
+     *      --range=FROM:TO  process only the lines of the input file that
+     *                  start at byte offsets FROM .. TO - 1 (to the end
+     *                  of the file if TO is omitted), using its index.
+     *      --checkpoint[=SECONDS]  every SECONDS (default 10), record
+     *                  the state of the run in a file named after the
+     *                  output file plus .ckpt (see Checkpoint).
+     *      --resume    continue the run recorded by the checkpoint file,
+     *                  if there is one, cutting the output back to the
+     *                  checkpoint, and checkpoint as it proceeds.
+     *      --follow    like --resume, but at the end of the input file
+     *                  wait for it to grow and process each line appended
+     *                  to it as soon as it is complete, until killed.  The
+     *                  output is written, and the state checkpointed,
+     *                  whenever the input is exhausted. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            Main main = new Main(args);
+            try {
+                main.process();
+            } finally {
+                main.close();
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -36,14 +102,21 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            option(args[k]);
+        }
+        args = Arrays.copyOfRange(args, k, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
         _config = getInput(args[0]);
+        _configFile = new File(args[0]);
 
         if (args.length > 1) {
             _input = getInput(args[1]);
+            _inputFile = new File(args[1]);
         } else {
             _input = new Scanner(System.in);
         }
@@ -55,46 +128,443 @@ public final class Main {
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
+    /** A simulator reading its configuration from CONFIG and messages
+     *  from INPUT, and writing to OUTPUT. */
+    Main(Scanner config, Scanner input, PrintStream output) {
+        _config = config;
+        _input = input;
+        _output = output;
+    }
+
+    /** Return an Enigma machine configured from CONFIG, which holds the
+     *  contents of a configuration file. */
+    static Machine configure(Scanner config) {
+        return new Main(config, null, null).readConfig();
+    }
+
+    /** Set M, as returned by configure(Scanner), according to the
+     *  settings line SETTINGS. */
+    static void configure(Machine M, String settings) {
+        Main main = new Main(null, null, null);
+        main._alphabet = M.alphabet();
+        main.setUp(M, settings);
+    }
+
+    /** Apply the command-line option NAME. */
+    private void option(String name) {
+        String value = null;
+        if (name.contains("=")) {
+            value = name.substring(name.indexOf('=') + 1);
+            name = name.substring(0, name.indexOf('='));
+        }
+        switch (name) {
+        case "--checkpoint":
+            _checkpointSeconds = value == null ? DEFAULT_CHECKPOINT_SECONDS
+                : number(name, value);
+            break;
+        case "--follow":
+            _follow = true;
+            _resume = true;
+            _checkpointSeconds = Math.max(_checkpointSeconds,
+                                          DEFAULT_CHECKPOINT_SECONDS);
+            break;
+        case "--resume":
+            _resume = true;
+            _checkpointSeconds = Math.max(_checkpointSeconds,
+                                          DEFAULT_CHECKPOINT_SECONDS);
+            break;
+        case "--index":
+            _index = true;
+            break;
+        case "--segment":
+            _segment = (int) number(name, value);
+            break;
+        case "--range":
+            String[] bounds = (value == null ? "" : value).split(":", -1);
+            _from = number(name, bounds[0]);
+            _to = bounds.length < 2 || bounds[1].isEmpty() ? Long.MAX_VALUE
+                : number(name, bounds[1]);
+            break;
+        case "--compile":
+            _compile = true;
+            break;
+        case "--pipeline":
+            _pipeline = true;
+            break;
+        case "--engine":
+            if ("auto".equals(value)) {
+                _autoEngine = true;
+            } else {
+                EngineSelector.Engine engine =
+                    EngineSelector.Engine.forName(String.valueOf(value));
+                _compile = engine.compiles();
+                _pipeline = engine.pipelines();
+            }
+            break;
+        case "--tables":
+            if (value == null) {
+                throw error("--tables needs a directory");
+            }
+            _tables = new File(value);
+            break;
+        case "--cache":
+            _cacheBytes = value == null ? DEFAULT_CACHE_BYTES
+                : number(name, value);
+            break;
+        case "--cache-file":
+            if (value == null) {
+                throw error("--cache-file needs a file");
+            }
+            _cacheFile = new File(value);
+            _cacheBytes = Math.max(_cacheBytes, DEFAULT_CACHE_BYTES);
+            break;
+        case "--calibrate":
+            _autoEngine = true;
+            _calibrate = true;
+            break;
+        case "--metrics":
+            _metrics = true;
+            Metrics.register();
+            Metrics.INSTANCE.setEnabled(true);
+            break;
+        default:
+            throw error("unknown option %s", name);
+        }
+    }
+
+    /** Return VALUE, the value of option NAME, as a non-negative
+     *  number. */
+    private static long number(String name, String value) {
+        try {
+            long result = Long.parseLong(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("bad value for %s", name);
+    }
+
+    /** Return a Scanner reading from the file named NAME, decompressing
+     *  it if it is compressed. */
     private Scanner getInput(String name) {
+        return open(new File(name));
+    }
+
+    /** Return a Scanner reading from FILE, decompressing it if it is
+     *  compressed (see Codecs). */
+    static Scanner open(File file) {
         try {
-            return new Scanner(new File(name));
+            return new Scanner(Codecs.open(file));
         } catch (IOException excp) {
-            throw error("could not open %s", name);
+            throw error("could not open %s", file);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return a PrintStream writing to the file named NAME, compressing
+     *  if its extension is that of a Codec. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            File file = new File(name);
+            _outputFile = file;
+            OutputStream out;
+            if (_resume && Codecs.forName(name) != null) {
+                throw error("cannot resume compressed output %s", name);
+            } else if (_resume) {
+                out = new FileOutputStream(file, true);
+            } else {
+                out = Codecs.create(file);
+            }
+            if (out instanceof FileOutputStream) {
+                _outputChannel = ((FileOutputStream) out).getChannel();
+            }
+            return new PrintStream(out);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Throw an error if reading _input failed, rather than reached the
+     *  end of the input. */
+    private void checkInput() {
+        if (_input.ioException() != null) {
+            throw error("could not read input: %s",
+                        _input.ioException().getMessage());
+        }
+    }
+
+    /** Use M, which must have been configured from my configuration file
+     *  and not yet used, rather than reading that file again. */
+    void setMachine(Machine M) {
+        _config.close();
+        _machine = M;
+    }
+
+    /** Finish writing _output, closing it unless it is the standard
+     *  output, and close my configuration and input files. */
+    void close() {
+        if (_results != null) {
+            _results.save();
+            System.err.println(_results.summary());
+        }
+        _config.close();
+        if (_inputFile != null) {
+            _input.close();
+        }
+        if (_output == System.out) {
+            _output.flush();
+        } else if (_output != null) {
+            _output.close();
+        }
+        if (_output != null && _output.checkError()) {
+            throw error("could not write output");
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
-        Machine current = readConfig();
+    void process() {
+        Metrics metrics = Metrics.INSTANCE;
+        long start = metrics.now();
+        Machine current = _machine;
+        if (current == null) {
+            current = readConfig();
+            metrics.configLoaded(start);
+        } else {
+            _alphabet = current.alphabet();
+        }
+        if (_autoEngine) {
+            selectEngine(current);
+        }
+        if (_cacheBytes > 0) {
+            attachCache(current);
+        }
+        current.setCompiling(_compile);
+        if (_index || _segment >= 0 || _from >= 0) {
+            processIndexed(current);
+            return;
+        }
+        if (_checkpointSeconds > 0 && !usesBytes(current)) {
+            throw error("checkpoints need uncompressed input and output "
+                        + "files and a single-byte alphabet");
+        }
+        if (usesBytes(current)) {
+            processBytes(current);
+            return;
+        }
         if (!_input.hasNextLine()) {
+            checkInput();
             throw error("No input");
         }
-        setUp(current, _input.nextLine());
-        String nextLine;
-        while (_input.hasNextLine()) {
+        if (_pipeline) {
+            Machine prototype = current;
+            new Pipeline(_input, _output, converters(), () -> {
+                Machine M = prototype.copy();
+                M.setCompiling(_compile);
+                return M;
+            }, this::setUp).run();
+            checkInput();
+            if (_metrics) {
+                System.err.println(metrics.getSummary());
+            }
+            return;
+        }
+        String nextLine = _input.nextLine();
+        start = metrics.now();
+        setUp(current, nextLine);
+        metrics.segment(start, nextLine);
+        while (true) {
+            start = metrics.now();
+            if (!_input.hasNextLine()) {
+                break;
+            }
             nextLine = _input.nextLine();
             if (nextLine.equals("")) {
                 _output.println();
-                nextLine = _input.nextLine();
+                nextLine = afterBlank(_input);
             }
+            metrics.parsed(start);
             if (nextLine.charAt(0) == '*') {
+                start = metrics.now();
                 setUp(current, nextLine);
+                metrics.segment(start, nextLine);
             } else {
-                printMessageLine(current.convert(nextLine));
+                start = metrics.now();
+                String converted = current.convert(nextLine);
+                metrics.converted(start, converted.length());
+                start = metrics.now();
+                printMessageLine(converted);
+                metrics.written(start);
             }
         }
+        metrics.endSegment();
+        checkInput();
+        if (_metrics) {
+            System.err.println(metrics.getSummary());
+        }
+    }
+
+    /** Return the line of INPUT that follows a blank line, which must
+     *  exist and not be blank itself. */
+    static String afterBlank(Scanner input) {
+        if (!input.hasNextLine()) {
+            throw error("input ends with a blank line");
+        }
+        String line = input.nextLine();
+        if (line.isEmpty()) {
+            throw error("two blank lines in a row");
+        }
+        return line;
+    }
+
+    /** Return true iff messages are to be converted by a ByteProcessor
+     *  using machine M: they go from a file to a file, neither of them
+     *  compressed, without --pipeline, and M converts bytes. */
+    private boolean usesBytes(Machine M) {
+        try {
+            return !_pipeline && _inputFile != null && _outputChannel != null
+                && M.convertsBytes() && !Codecs.compressed(_inputFile);
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Apply M to the messages in _inputFile, sending the results to
+     *  _outputChannel, as process() would. */
+    private void processBytes(Machine M) {
+        _output.flush();
+        File checkpointFile = Checkpoint.file(_outputFile);
+        Checkpoint resumed = _resume ? Checkpoint.load(checkpointFile) : null;
+        try (FileChannel in = FileChannel.open(_inputFile.toPath(),
+                                               StandardOpenOption.READ);
+             FileFollower follower =
+                 _follow ? new FileFollower(_inputFile) : null) {
+            ByteProcessor processor =
+                new ByteProcessor(in, _outputChannel, M, this::setUp);
+            if (_resume) {
+                long length = resumed == null ? 0 : resumed.output();
+                if (_outputChannel.size() < length
+                    || (resumed != null && in.size() < resumed.input())) {
+                    throw error("%s does not match its files",
+                                checkpointFile);
+                }
+                _outputChannel.truncate(length);
+            }
+            if (_checkpointSeconds > 0) {
+                processor.setCheckpointer((input, output, settings) -> {
+                    try {
+                        _outputChannel.force(false);
+                    } catch (IOException excp) {
+                        throw error("could not write output");
+                    }
+                    new Checkpoint(input, output, settings, M)
+                        .save(checkpointFile);
+                }, _checkpointSeconds * NANOS_PER_SECOND);
+            }
+            if (follower != null) {
+                processor.setFollower(follower);
+            }
+            if (resumed == null) {
+                if (!processor.run()) {
+                    throw error("No input");
+                }
+            } else {
+                in.position(resumed.input());
+                processor.setRange(resumed.input(), 0, Long.MAX_VALUE);
+                processor.setOutputOffset(resumed.output());
+                setUp(M, resumed.settings());
+                resumed.restore(M);
+                processor.resume(resumed.settings());
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+        if (_checkpointSeconds > 0 && !_follow) {
+            checkpointFile.delete();
+        }
+        if (_metrics) {
+            System.err.println(Metrics.INSTANCE.getSummary());
+        }
+    }
+
+    /** Apply M to part of _inputFile as directed by the --index,
+     *  --segment and --range options, using its SegmentIndex. */
+    private void processIndexed(Machine M) {
+        try {
+            if (_inputFile == null || Codecs.compressed(_inputFile)) {
+                throw error("indexing needs an uncompressed input file");
+            } else if (!M.convertsBytes()) {
+                throw error("indexing needs a single-byte alphabet");
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", _inputFile);
+        }
+        File indexFile = SegmentIndex.indexFile(_inputFile);
+        if (_index) {
+            SegmentIndex.build(_inputFile, M, this::setUp).save(indexFile);
+            return;
+        }
+        SegmentIndex index = SegmentIndex.load(indexFile, _inputFile);
+        long from = _from, to = _to;
+        if (_segment >= 0) {
+            from = index.segmentOffset(_segment);
+            to = _segment + 1 < index.segments()
+                ? index.segmentOffset(_segment + 1) : Long.MAX_VALUE;
+        }
+        SegmentIndex.Start start = index.start(from);
+        _output.flush();
+        WritableByteChannel out = _outputChannel != null ? _outputChannel
+            : Channels.newChannel(_output);
+        try (FileChannel in = FileChannel.open(_inputFile.toPath(),
+                                               StandardOpenOption.READ)) {
+            in.position(start.offset());
+            ByteProcessor processor = new ByteProcessor(in, out, M,
+                                                        this::setUp);
+            processor.setRange(start.offset(), from, to);
+            if (start.atSettings()) {
+                processor.run();
+            } else {
+                setUp(M, index.settings(start.segment()));
+                start.restore(M);
+                processor.resume(index.settings(start.segment()));
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Give M, and so its copies, a ResultCache as the options ask. */
+    private void attachCache(Machine M) {
+        String checksum = _configFile == null ? null
+            : EngineSelector.checksum(_configFile);
+        _results = new ResultCache(checksum, _cacheBytes, _cacheFile);
+        M.setResultCache(_results);
+        if (_follow && _cacheFile != null) {
+            ResultCache results = _results;
+            Runtime.getRuntime().addShutdownHook(new Thread(results::save));
+        }
+    }
+
+    /** Choose whether to compile and pipeline for converting the input
+     *  with M, and report the choice on the standard error. */
+    private void selectEngine(Machine M) {
+        boolean pipelining = !_index && _segment < 0 && _from < 0
+            && _checkpointSeconds == 0;
+        EngineSelector selector =
+            new EngineSelector(M, _configFile, _inputFile, pipelining);
+        EngineSelector.Engine engine = selector.select(_calibrate);
+        _compile = engine.compiles();
+        _pipeline = engine.pipelines();
+        System.err.printf("engine: %s (%s); override with --engine=NAME%n",
+                          engine, selector.reason());
+    }
+
+    /** Return the number of converter threads of a pipeline: all
+     *  processors but those of the reader and the writer. */
+    private static int converters() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
     }
 
     /** Return an Enigma machine configured from the contents of configuration
@@ -166,9 +636,12 @@ public final class Main {
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment, except
+     *  that the rotor positions may be followed by the ring settings of
+     *  the same rotors (default the first letter of the alphabet for
+     *  each). */
     private void setUp(Machine M, String settings) {
-        if (settings.charAt(0) != '*') {
+        if (settings.isEmpty() || settings.charAt(0) != '*') {
             throw error("wrong format for settings");
         }
         String[] split = settings.trim().split("\\s+");
@@ -180,10 +653,19 @@ public final class Main {
                 break;
             }
         }
+        int end = permIndex == 0 ? split.length : permIndex;
+        String rings = null;
+        if (end == M.numRotors() + 3) {
+            rings = split[end - 1];
+            end -= 1;
+        }
+        if (end < 2) {
+            throw error("wrong format for settings");
+        }
         if (permIndex == 0) {
-            String[] rNames = new String[split.length - 2];
-            System.arraycopy(split, 1, rNames, 0, split.length - 2);
-            String initialPosn = split[split.length - 1];
+            String[] rNames = new String[end - 2];
+            System.arraycopy(split, 1, rNames, 0, end - 2);
+            String initialPosn = split[end - 1];
             if (M.getRotorsUsed().size() != 0) {
                 M.getRotorsUsed().clear();
             }
@@ -192,22 +674,62 @@ public final class Main {
                     throw error("Rotor not available");
                 }
             }
+            if (rNames.length != M.numRotors()) {
+                throw error("wrong number of rotors");
+            }
             M.insertRotors(rNames);
             M.setRotors(initialPosn);
         } else {
-            String[] rNames = new String[permIndex - 2];
-            System.arraycopy(split, 1, rNames, 0, permIndex - 2);
-            String initialPosn = split[permIndex - 1];
+            String[] rNames = new String[end - 2];
+            System.arraycopy(split, 1, rNames, 0, end - 2);
+            String initialPosn = split[end - 1];
             for (int i = permIndex; i < split.length; i++) {
                 swaps += split[i];
             }
+            if (rNames.length != M.numRotors()) {
+                throw error("wrong number of rotors");
+            }
+            if (!swaps.matches("(\\([^()]+\\))*")) {
+                throw error("malformed plugboard %s", swaps);
+            }
             if (M.getRotorsUsed().size() != 0) {
                 M.getRotorsUsed().clear();
             }
             M.insertRotors(rNames);
             M.setRotors(initialPosn);
         }
+        if (rings != null) {
+            M.setRings(rings);
+        }
         M.setPlugboard(new Permutation(swaps, _alphabet));
+        if (_tables != null) {
+            StateTable table = stateTable(M);
+            if (table != null) {
+                M.setTable(table);
+            }
+        }
+    }
+
+    /** Return a StateTable for converting with M, which has just been
+     *  set up, from the directory _tables, or null if that has none for
+     *  the configuration of M. */
+    private StateTable stateTable(Machine M) {
+        StateTable shared;
+        synchronized (_stateTables) {
+            if (_checksum == null) {
+                _checksum = EngineSelector.checksum(_configFile);
+            }
+            File file = StateTable.file(_tables, _checksum, M);
+            if (!_stateTables.containsKey(file)) {
+                _stateTables.put(file, file.isFile()
+                                 ? StateTable.open(file) : null);
+            }
+            shared = _stateTables.get(file);
+        }
+        if (shared == null || !shared.matches(M)) {
+            return null;
+        }
+        return new StateTable(shared, M);
     }
 
     /** Print MSG in groups of five (except that the last group may
@@ -246,9 +768,18 @@ public final class Main {
     /** Source of input messages. */
     private Scanner _input;
 
+    /** File named as the source of input messages, or null. */
+    private File _inputFile;
+
+    /** Channel of the output file, if it is not compressed, or null. */
+    private FileChannel _outputChannel;
+
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** Machine already configured from _config, or null. */
+    private Machine _machine;
+
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
@@ -257,4 +788,71 @@ public final class Main {
 
     /** Last rotor read in readRotor(). */
     private Rotor _last;
+
+    /** True iff the machine should compile its configurations. */
+    private boolean _compile;
+
+    /** True iff messages are processed by a Pipeline. */
+    private boolean _pipeline;
+
+    /** True iff the engine is chosen by an EngineSelector. */
+    private boolean _autoEngine;
+
+    /** True iff that choice is calibrated afresh. */
+    private boolean _calibrate;
+
+    /** Configuration file, or null. */
+    private File _configFile;
+
+    /** Most bytes held by the result cache, or 0 if there is none. */
+    private long _cacheBytes;
+
+    /** File the result cache is kept in, or null. */
+    private File _cacheFile;
+
+    /** Cache of converted lines, or null. */
+    private ResultCache _results;
+
+    /** Directory of state tables, or null. */
+    private File _tables;
+
+    /** Checksum of _configFile, once computed. */
+    private String _checksum;
+
+    /** State tables opened from _tables, by file, or null for files that
+     *  do not exist. */
+    private final HashMap<File, StateTable> _stateTables = new HashMap<>();
+
+    /** Seconds between checkpoints, or 0 for none. */
+    private long _checkpointSeconds;
+
+    /** True iff the input file is followed as it grows. */
+    private boolean _follow;
+
+    /** True iff a checkpointed run is to be resumed. */
+    private boolean _resume;
+
+    /** Output file, or null for the standard output. */
+    private File _outputFile;
+
+    /** Default value of --checkpoint. */
+    private static final long DEFAULT_CHECKPOINT_SECONDS = 10;
+
+    /** Default value of --cache, in bytes. */
+    private static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+    /** Nanoseconds per second. */
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** True iff the input file is to be indexed. */
+    private boolean _index;
+
+    /** Segment to process, or -1 for all. */
+    private int _segment = -1;
+
+    /** Offsets bounding the lines to process, or -1 for all. */
+    private long _from = -1, _to = -1;
+
+    /** True iff a summary of metrics should be printed. */
+    private boolean _metrics;
 }
@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class, which check that
+ *  malformed input is reported as an EnigmaException.
+ *  @author Divya Sivanandan
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A valid settings line for a naval machine. */
+    private static final String SETTINGS = "* B Beta I II III AAAA\n";
+
+    /** Inputs each of which is malformed. */
+    private static final String[] MALFORMED = {
+        "\n", "*\nHELLO\n", "* B Beta\nHELLO\n",
+        SETTINGS + "*\n", SETTINGS + "HELLO\n\n",
+        SETTINGS + "HELLO\n\n\nWORLD\n",
+        "* B Beta I II III AAAA (AB\nHELLO\n",
+    };
+
+    /** Return the output of a naval machine on INPUT, converted by
+     *  Main's sequential loop, putting it in BYTES. */
+    private String process(String input, ByteArrayOutputStream bytes) {
+        new Main(new Scanner(navalConfig()), new Scanner(input),
+                 new PrintStream(bytes)).process();
+        return bytes.toString();
+    }
+
+    @Test
+    public void testMalformed() {
+        for (String input : MALFORMED) {
+            try {
+                process(input, new ByteArrayOutputStream());
+                fail(msg("testMalformed", "accepted %s", input));
+            } catch (EnigmaException excp) {
+                assertNotNull(excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testBlankLines() {
+        String expected =
+            process(SETTINGS + "HELLO\n", new ByteArrayOutputStream())
+            + System.lineSeparator();
+        for (String input : new String[] { SETTINGS + "HELLO\n\n",
+                                           SETTINGS + "HELLO\n\n\nX\n" }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                process(input, bytes);
+                fail("blank lines accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(expected, bytes.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testStandardInput() throws Exception {
+        File config = File.createTempFile("naval", ".conf");
+        Files.write(config.toPath(), navalConfig().getBytes());
+        InputStream stdin = System.in;
+        PrintStream stdout = System.out;
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream()));
+            for (String input : MALFORMED) {
+                System.setIn(new ByteArrayInputStream(input.getBytes()));
+                Main main = new Main(new String[] { config.getPath() });
+                try {
+                    main.process();
+                    fail(msg("testStandardInput", "accepted %s", input));
+                } catch (EnigmaException excp) {
+                    assertNotNull(excp.getMessage());
+                }
+            }
+        } finally {
+            System.setIn(stdin);
+            System.setOut(stdout);
+            config.delete();
+        }
+    }
+
+}
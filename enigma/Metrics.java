@@ -0,0 +1,354 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import static enigma.EnigmaException.*;
+
+/** Counters and timings of the encryption pipeline of Main.  Collection
+ *  is off until enabled (by Main's --metrics option or through JMX, as
+ *  enigma:type=Metrics); while off, each probe is a single volatile read,
+ *  and no clock is consulted.
+ *
+ *  Every configuration load and every segment also emits a JFR event
+ *  (enigma.ConfigLoad, enigma.Segment) while collection is enabled or a
+ *  flight recording is running, to be committed if the recording has
+ *  enabled it.  The event types are kept in a class of their own, so
+ *  that otherwise jdk.jfr is not even loaded.
+ *  @author Divya Sivanandan
+ */
+final class Metrics implements MetricsMBean {
+
+    /** The metrics of this JVM. */
+    static final Metrics INSTANCE = new Metrics();
+
+    /** JMX name under which INSTANCE is registered. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Not instantiable outside this class. */
+    private Metrics() {
+    }
+
+    /** Register INSTANCE with the platform MBean server, if it is not
+     *  already registered. */
+    static synchronized void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(INSTANCE, name);
+            }
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Return a start time for a probe: the current time in nanoseconds
+     *  if collection is enabled, and otherwise 0. */
+    long now() {
+        return _enabled ? System.nanoTime() : 0;
+    }
+
+    /** Record a configuration load started at START. */
+    void configLoaded(long start) {
+        if (recording()) {
+            Events.configLoaded();
+        }
+        if (_enabled && start != 0) {
+            _configLoadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /** Record that the input line just read, whose reading and parsing
+     *  started at START, has been parsed. */
+    void parsed(long start) {
+        if (_enabled && start != 0) {
+            long nanos = System.nanoTime() - start;
+            _parseNanos.add(nanos);
+            _parseHistogram.record(nanos);
+        }
+    }
+
+    /** Record the start of a segment with settings line SETTINGS, whose
+     *  set-up started at START. */
+    void segment(long start, String settings) {
+        endSegment();
+        if (recording()) {
+            _events = true;
+            _segmentEvent.set(Events.segment(settings));
+        }
+        if (_enabled && start != 0) {
+            _setUpNanos.add(System.nanoTime() - start);
+            _segments.increment();
+            if (!settings.equals(_lastSettings.get())) {
+                _reconfigurations.increment();
+            }
+            _lastSettings.set(settings);
+        }
+    }
+
+    /** Record the conversion of a line into CHARS characters, started at
+     *  START. */
+    void converted(long start, int chars) {
+        if (_events) {
+            Object event = _segmentEvent.get();
+            if (event != null) {
+                Events.converted(event, chars);
+            }
+        }
+        if (_enabled && start != 0) {
+            long nanos = System.nanoTime() - start;
+            _convertNanos.add(nanos);
+            _convertHistogram.record(nanos);
+            _chars.add(chars);
+            _lines.increment();
+        }
+    }
+
+    /** Record the output of a line, started at START. */
+    void written(long start) {
+        if (_enabled && start != 0) {
+            long nanos = System.nanoTime() - start;
+            _outputNanos.add(nanos);
+            _outputHistogram.record(nanos);
+        }
+    }
+
+    /** Record the end of the current segment, if any. */
+    void endSegment() {
+        if (_events) {
+            Object event = _segmentEvent.get();
+            if (event != null) {
+                Events.end(event);
+                _segmentEvent.remove();
+            }
+        }
+    }
+
+    /** Return true iff JFR events are to be created: collection is
+     *  enabled, or a flight recording has been started in this JVM,
+     *  which sets the system property JFR_REPOSITORY. */
+    private boolean recording() {
+        return _enabled || System.getProperty(JFR_REPOSITORY) != null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public long getLinesConverted() {
+        return _lines.sum();
+    }
+
+    @Override
+    public long getSegments() {
+        return _segments.sum();
+    }
+
+    @Override
+    public long getReconfigurations() {
+        return _reconfigurations.sum();
+    }
+
+    @Override
+    public long getConfigLoadNanos() {
+        return _configLoadNanos.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return _parseNanos.sum();
+    }
+
+    @Override
+    public long getSetUpNanos() {
+        return _setUpNanos.sum();
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return _convertNanos.sum();
+    }
+
+    @Override
+    public long getOutputNanos() {
+        return _outputNanos.sum();
+    }
+
+    @Override
+    public long[] getConvertHistogram() {
+        return _convertHistogram.buckets();
+    }
+
+    @Override
+    public long[] getParseHistogram() {
+        return _parseHistogram.buckets();
+    }
+
+    @Override
+    public long[] getOutputHistogram() {
+        return _outputHistogram.buckets();
+    }
+
+    @Override
+    public String getSummary() {
+        return String.format("chars=%d lines=%d segments=%d reconfigs=%d "
+                             + "config=%.3fms parse=%.3fms setup=%.3fms "
+                             + "convert=%.3fms output=%.3fms "
+                             + "convert.p99<=%dns",
+                             getCharactersConverted(), getLinesConverted(),
+                             getSegments(), getReconfigurations(),
+                             getConfigLoadNanos() / MILLI,
+                             getParseNanos() / MILLI,
+                             getSetUpNanos() / MILLI,
+                             getConvertNanos() / MILLI,
+                             getOutputNanos() / MILLI,
+                             _convertHistogram.quantile(P99));
+    }
+
+    @Override
+    public void reset() {
+        _chars.reset();
+        _lines.reset();
+        _segments.reset();
+        _reconfigurations.reset();
+        _configLoadNanos.reset();
+        _parseNanos.reset();
+        _setUpNanos.reset();
+        _convertNanos.reset();
+        _outputNanos.reset();
+        _convertHistogram.reset();
+        _parseHistogram.reset();
+        _outputHistogram.reset();
+    }
+
+    /** The JFR events of Metrics, which are only loaded, and load
+     *  jdk.jfr, when the first is created.  Events are passed to and from
+     *  Metrics as Objects, so that it never refers to their types. */
+    private static final class Events {
+
+        /** Emit a configuration load event. */
+        static void configLoaded() {
+            ConfigLoadEvent event = new ConfigLoadEvent();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+
+        /** Return a new segment event, begun, for settings line
+         *  SETTINGS. */
+        static Object segment(String settings) {
+            SegmentEvent event = new SegmentEvent();
+            event.begin();
+            event.settings = settings;
+            return event;
+        }
+
+        /** Count a line of CHARS characters in the segment event
+         *  EVENT. */
+        static void converted(Object event, int chars) {
+            SegmentEvent segment = (SegmentEvent) event;
+            segment.characters += chars;
+            segment.lines += 1;
+        }
+
+        /** End and emit the segment event EVENT. */
+        static void end(Object event) {
+            SegmentEvent segment = (SegmentEvent) event;
+            segment.end();
+            if (segment.shouldCommit()) {
+                segment.commit();
+            }
+        }
+
+        /** JFR event for the loading of a configuration. */
+        @Name("enigma.ConfigLoad")
+        @Label("Enigma Configuration Load")
+        @Category("Enigma")
+        static final class ConfigLoadEvent extends Event {
+        }
+
+        /** JFR event spanning one segment of input. */
+        @Name("enigma.Segment")
+        @Label("Enigma Segment")
+        @Category("Enigma")
+        static final class SegmentEvent extends Event {
+            /** Settings line of the segment. */
+            @Label("Settings")
+            String settings;
+
+            /** Characters converted in the segment. */
+            @Label("Characters")
+            @DataAmount(DataAmount.BYTES)
+            long characters;
+
+            /** Message lines in the segment. */
+            @Label("Lines")
+            long lines;
+        }
+    }
+
+    /** System property set by the JVM once a flight recording starts. */
+    private static final String JFR_REPOSITORY = "jdk.jfr.repository";
+
+    /** Nanoseconds per millisecond. */
+    private static final double MILLI = 1e6;
+
+    /** Quantile reported in the summary. */
+    private static final double P99 = 0.99;
+
+    /** True iff metrics are collected. */
+    private volatile boolean _enabled;
+
+    /** True once a segment event has been created, after which the
+     *  current segment event of each thread is kept up to date. */
+    private volatile boolean _events;
+
+    /** Counters. */
+    private final LongAdder _chars = new LongAdder(),
+        _lines = new LongAdder(),
+        _segments = new LongAdder(),
+        _reconfigurations = new LongAdder();
+
+    /** Accumulated times in nanoseconds. */
+    private final LongAdder _configLoadNanos = new LongAdder(),
+        _parseNanos = new LongAdder(),
+        _setUpNanos = new LongAdder(),
+        _convertNanos = new LongAdder(),
+        _outputNanos = new LongAdder();
+
+    /** Per-line time histograms. */
+    private final Histogram _convertHistogram = new Histogram(),
+        _parseHistogram = new Histogram(),
+        _outputHistogram = new Histogram();
+
+    /** JFR event of the current segment of each thread running Main, or
+     *  null. */
+    private final ThreadLocal<Object> _segmentEvent =
+        new ThreadLocal<>();
+
+    /** Settings line of the previous segment of each thread. */
+    private final ThreadLocal<String> _lastSettings = new ThreadLocal<>();
+
+}
@@ -0,0 +1,56 @@
+package enigma;
+
+/** Management interface of Metrics, as seen through JMX.
+ *  @author Divya Sivanandan
+ */
+public interface MetricsMBean {
+
+    /** Return true iff metrics are being collected. */
+    boolean isEnabled();
+
+    /** Start collecting metrics iff ENABLED. */
+    void setEnabled(boolean enabled);
+
+    /** Return the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Return the number of message lines converted. */
+    long getLinesConverted();
+
+    /** Return the number of segments (settings lines) processed. */
+    long getSegments();
+
+    /** Return the number of settings lines that changed the settings. */
+    long getReconfigurations();
+
+    /** Return the time spent loading configurations, in nanoseconds. */
+    long getConfigLoadNanos();
+
+    /** Return the time spent reading and parsing input lines. */
+    long getParseNanos();
+
+    /** Return the time spent setting up machines for segments. */
+    long getSetUpNanos();
+
+    /** Return the time spent converting messages. */
+    long getConvertNanos();
+
+    /** Return the time spent formatting and writing output. */
+    long getOutputNanos();
+
+    /** Return the power-of-two histogram of per-line conversion times. */
+    long[] getConvertHistogram();
+
+    /** Return the power-of-two histogram of per-line parse times. */
+    long[] getParseHistogram();
+
+    /** Return the power-of-two histogram of per-line output times. */
+    long[] getOutputHistogram();
+
+    /** Return a one-line summary of all metrics. */
+    String getSummary();
+
+    /** Reset all metrics to zero. */
+    void reset();
+
+}
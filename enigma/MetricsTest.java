@@ -0,0 +1,165 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Divya Sivanandan
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** The metrics under test. */
+    private final Metrics metrics = Metrics.INSTANCE;
+
+    /** Return a settings line no earlier test has used. */
+    private String settings() {
+        return "* B Beta III IV I " + System.nanoTime();
+    }
+
+    @Test
+    public void testDisabled() {
+        boolean saved = metrics.isEnabled();
+        try {
+            metrics.setEnabled(false);
+            metrics.reset();
+            assertEquals(0, metrics.now());
+            metrics.segment(metrics.now(), settings());
+            metrics.parsed(metrics.now());
+            metrics.converted(metrics.now(), 10);
+            metrics.written(metrics.now());
+            metrics.endSegment();
+            metrics.configLoaded(metrics.now());
+            assertEquals(0, metrics.getCharactersConverted());
+            assertEquals(0, metrics.getLinesConverted());
+            assertEquals(0, metrics.getSegments());
+            assertEquals(0, metrics.getConfigLoadNanos());
+            assertEquals(0, metrics.getConvertHistogram()[0]);
+        } finally {
+            metrics.setEnabled(saved);
+        }
+    }
+
+    @Test
+    public void testCounts() {
+        boolean saved = metrics.isEnabled();
+        try {
+            metrics.setEnabled(true);
+            metrics.reset();
+            String first = settings(), second = settings();
+            for (String line : new String[] { first, first, second }) {
+                metrics.segment(metrics.now(), line);
+                for (int i = 0; i < 3; i += 1) {
+                    metrics.parsed(metrics.now());
+                    metrics.converted(metrics.now(), 10 + i);
+                    metrics.written(metrics.now());
+                }
+            }
+            metrics.endSegment();
+            assertEquals(99, metrics.getCharactersConverted());
+            assertEquals(9, metrics.getLinesConverted());
+            assertEquals(3, metrics.getSegments());
+            assertEquals(2, metrics.getReconfigurations());
+            long lines = 0;
+            for (long[] histogram
+                     : new long[][] { metrics.getConvertHistogram(),
+                                      metrics.getParseHistogram(),
+                                      metrics.getOutputHistogram() }) {
+                for (long n : histogram) {
+                    lines += n;
+                }
+            }
+            assertEquals(27, lines);
+            assertTrue(metrics.getSummary().startsWith(
+                           "chars=99 lines=9 segments=3 reconfigs=2"));
+            metrics.reset();
+            assertEquals(0, metrics.getCharactersConverted());
+            assertEquals(0, metrics.getReconfigurations());
+        } finally {
+            metrics.setEnabled(saved);
+        }
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        boolean saved = metrics.isEnabled();
+        try {
+            Metrics.register();
+            Metrics.register();
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+            server.setAttribute(name, new Attribute("Enabled", false));
+            assertFalse(metrics.isEnabled());
+            server.invoke(name, "reset", null, null);
+            metrics.segment(metrics.now(), settings());
+            metrics.converted(metrics.now(), 5);
+            assertEquals(0L, server.getAttribute(name,
+                                                 "CharactersConverted"));
+
+            server.setAttribute(name, new Attribute("Enabled", true));
+            assertTrue(metrics.isEnabled());
+            assertEquals(true, server.getAttribute(name, "Enabled"));
+            metrics.converted(metrics.now(), 5);
+            metrics.endSegment();
+            assertEquals(5L, server.getAttribute(name,
+                                                 "CharactersConverted"));
+            assertEquals(1L, server.getAttribute(name, "LinesConverted"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "LinesConverted"));
+        } finally {
+            metrics.setEnabled(saved);
+        }
+    }
+
+    @Test
+    public void testNoFlightRecorderWhenDisabled() throws Exception {
+        File config = File.createTempFile("metrics", ".conf");
+        File in = File.createTempFile("metrics", ".in");
+        File out = File.createTempFile("metrics", ".out");
+        Files.write(config.toPath(), navalConfig().getBytes());
+        Files.write(in.toPath(),
+                    "* B Beta III IV I AXLE\nHELLO WORLD\n".getBytes());
+        try {
+            String java = System.getProperty("java.home") + File.separator
+                + "bin" + File.separator + "java";
+            Process main = new ProcessBuilder(
+                java, "-verbose:class", "-cp",
+                System.getProperty("java.class.path"), Main.class.getName(),
+                config.getPath(), in.getPath(), out.getPath())
+                .redirectErrorStream(true).start();
+            int jfr = 0;
+            try (BufferedReader lines = new BufferedReader(
+                     new InputStreamReader(main.getInputStream()))) {
+                for (String line = lines.readLine(); line != null;
+                     line = lines.readLine()) {
+                    jfr += line.contains("jdk.jfr") ? 1 : 0;
+                }
+            }
+            assertEquals(0, main.waitFor());
+            assertEquals(0, jfr);
+            assertEquals("HELLO WORLD".length(),
+                         Files.readString(out.toPath()).trim().length());
+        } finally {
+            config.delete();
+            in.delete();
+            out.delete();
+        }
+    }
+
+}
@@ -53,6 +53,11 @@ class MovingRotor extends Rotor {
         }
     }
 
+    @Override
+    Rotor copy() {
+        return new MovingRotor(name(), permutation(), _notches);
+    }
+
     /** notches of the MovingRotor if any.*/
     private String _notches;
 
@@ -95,4 +95,17 @@ public class MovingRotorTest {
         assertEquals(7, I.convertBackward(9));
     }
 
+    @Test
+    public void checkRing() {
+        setRotor("I", NAVALA, "Q");
+        rotor.set(2);
+        rotor.setRing('C');
+        checkRotor("Rotor I ring C", UPPER_STRING, NAVALA_MAP.get("I"));
+        rotor.set(1);
+        rotor.setRing(2);
+        checkRotor("Rotor I ring 2 at B", UPPER_STRING, NAVALZ_MAP.get("I"));
+        rotor.set('Q');
+        assertTrue(rotor.atNotch());
+    }
+
 }
@@ -0,0 +1,386 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/** Pipelined execution of Main.  A reader thread splits the input into
+ *  batches of lines, one or more converter threads encrypt them, and the
+ *  calling thread formats and writes them, so that reading and writing
+ *  overlap with encryption.
+ *
+ *  A segment (a settings line and the message lines that follow it)
+ *  depends on nothing before it, so segment J goes to converter J modulo
+ *  the number of converters, which converts its batches in order with
+ *  its own Machine.  The writer visits the converters in the same order,
+ *  which keeps the output in input order.  Stages are joined by
+ *  RingBuffers, and batches, with their character buffers, return from
+ *  the writer to the reader for reuse, so a slow writer eventually stalls
+ *  the reader.
+ *
+ *  The output, including any error, is that of Main's sequential loop:
+ *  an error raised by any stage is rethrown by run() once everything
+ *  before it has been written.
+ *  @author Divya Sivanandan
+ */
+final class Pipeline {
+
+    /** A pipeline reading lines from INPUT, whose first line is known to
+     *  exist, and writing to OUTPUT, with CONVERTERS converter threads,
+     *  each using a Machine from MACHINES and applying settings lines to
+     *  it with SETUP. */
+    Pipeline(Scanner input, PrintStream output, int converters,
+             Supplier<Machine> machines, BiConsumer<Machine, String> setUp) {
+        _input = input;
+        _output = output;
+        _setUp = setUp;
+        _machines = new Machine[converters];
+        _toConverter = newRings(converters);
+        _toWriter = newRings(converters);
+        for (int k = 0; k < converters; k += 1) {
+            _machines[k] = machines.get();
+        }
+        _free = new RingBuffer<>(BATCHES_PER_CONVERTER * converters,
+                                 () -> _aborted);
+        for (int k = 0; k < BATCHES_PER_CONVERTER * converters; k += 1) {
+            _free.put(new Batch());
+        }
+    }
+
+    /** Return CONVERTERS rings for batches. */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private RingBuffer<Batch>[] newRings(int converters) {
+        RingBuffer<Batch>[] result = new RingBuffer[converters];
+        for (int k = 0; k < converters; k += 1) {
+            result[k] = new RingBuffer<>(BATCHES_PER_CONVERTER * converters,
+                                         () -> _aborted);
+        }
+        return result;
+    }
+
+    /** Process all input, returning when it has all been written. */
+    void run() {
+        Thread[] threads = new Thread[_machines.length + 1];
+        threads[0] = new Thread(this::read, "enigma-reader");
+        for (int k = 0; k < _machines.length; k += 1) {
+            final int id = k;
+            threads[k + 1] = new Thread(() -> convert(id),
+                                        "enigma-converter-" + k);
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try {
+            write();
+        } finally {
+            _aborted = true;
+            _output.flush();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Body of the reader thread: split the input into batches following
+     *  the line rules of Main.process. */
+    private void read() {
+        int segment = 0;
+        try {
+            Batch batch = _free.take();
+            try {
+                batch.start(_input.nextLine());
+                while (_input.hasNextLine()) {
+                    String line = _input.nextLine();
+                    if (line.equals("")) {
+                        batch.addBlank();
+                        line = Main.afterBlank(_input);
+                    }
+                    if (line.charAt(0) == '*') {
+                        batch.last = true;
+                        dispatch(segment, batch);
+                        segment += 1;
+                        batch = _free.take();
+                        batch.start(line);
+                    } else {
+                        if (batch.full(line.length())) {
+                            dispatch(segment, batch);
+                            batch = _free.take();
+                            batch.clear();
+                        }
+                        batch.addLine(line);
+                    }
+                }
+            } catch (RuntimeException excp) {
+                if (_aborted) {
+                    return;
+                }
+                batch.error = excp;
+            }
+            batch.last = true;
+            dispatch(segment, batch);
+            for (int k = 0; k < _machines.length; k += 1) {
+                dispatch(segment + 1 + k, END);
+            }
+        } catch (EnigmaException excp) {
+            return;
+        }
+    }
+
+    /** Send BATCH, part of segment SEGMENT, to its converter. */
+    private void dispatch(int segment, Batch batch) {
+        _toConverter[segment % _machines.length].put(batch);
+    }
+
+    /** Body of converter thread ID: convert batches with its machine. */
+    private void convert(int id) {
+        Machine M = _machines[id];
+        try {
+            while (true) {
+                Batch batch = _toConverter[id].take();
+                if (batch != END) {
+                    batch.convert(M, _setUp);
+                }
+                _toWriter[id].put(batch);
+                if (batch == END) {
+                    return;
+                }
+            }
+        } catch (EnigmaException excp) {
+            return;
+        }
+    }
+
+    /** Body of the writer: write converted batches in input order. */
+    private void write() {
+        Metrics metrics = Metrics.INSTANCE;
+        StringBuilder text = new StringBuilder();
+        String newline = System.lineSeparator();
+        for (int segment = 0; true; segment += 1) {
+            RingBuffer<Batch> ring = _toWriter[segment % _machines.length];
+            Batch batch;
+            do {
+                batch = ring.take();
+                if (batch == END) {
+                    metrics.endSegment();
+                    return;
+                }
+                if (batch.settings != null) {
+                    metrics.segment(Batch.since(batch.setUpNanos, metrics),
+                                    batch.settings);
+                }
+                text.setLength(0);
+                batch.format(text, newline, metrics);
+                _output.append(text);
+                RuntimeException error = batch.error;
+                _free.put(batch);
+                if (error != null) {
+                    throw error;
+                }
+            } while (!batch.last);
+        }
+    }
+
+    /** A run of consecutive lines from one segment. */
+    private static final class Batch {
+
+        /** Make me the start of a segment with settings line SETTINGS. */
+        void start(String settings) {
+            clear();
+            this.settings = settings;
+        }
+
+        /** Make me empty, continuing the current segment. */
+        void clear() {
+            settings = null;
+            last = false;
+            error = null;
+            setUpNanos = UNMEASURED;
+            lines = 0;
+            used = 0;
+        }
+
+        /** Return true iff I should not take a message line of LENGTH
+         *  characters. */
+        boolean full(int length) {
+            return lines > 0
+                && (lines == MAX_LINES || used + length > MAX_CHARS);
+        }
+
+        /** Add the message line LINE. */
+        void addLine(String line) {
+            reserve(line.length());
+            line.getChars(0, line.length(), in, used);
+            used += line.length();
+            ends[lines] = used;
+            lines += 1;
+        }
+
+        /** Add an empty line, which is copied to the output. */
+        void addBlank() {
+            reserve(0);
+            ends[lines] = BLANK;
+            lines += 1;
+        }
+
+        /** Make room for one more line of LENGTH characters. */
+        private void reserve(int length) {
+            if (lines == ends.length) {
+                ends = Arrays.copyOf(ends, 2 * lines);
+                outEnds = Arrays.copyOf(outEnds, 2 * lines);
+                nanos = Arrays.copyOf(nanos, 2 * lines);
+            }
+            if (used + length > in.length) {
+                in = Arrays.copyOf(in, Math.max(used + length,
+                                                2 * in.length));
+                out = new char[in.length];
+            }
+        }
+
+        /** Convert my lines with M, first setting it up with SETUP if I
+         *  start a segment.  An error ends me at the line causing it. */
+        void convert(Machine M, BiConsumer<Machine, String> setUp) {
+            Metrics metrics = Metrics.INSTANCE;
+            int line = 0;
+            try {
+                long start = metrics.now();
+                if (settings != null) {
+                    setUp.accept(M, settings);
+                    setUpNanos = elapsed(start, metrics);
+                }
+                int from = 0, to = 0;
+                for (; line < lines; line += 1) {
+                    start = metrics.now();
+                    if (ends[line] != BLANK) {
+                        to += M.convert(in, from, ends[line], out, to);
+                        from = ends[line];
+                    }
+                    outEnds[line] = to;
+                    nanos[line] = elapsed(start, metrics);
+                }
+            } catch (RuntimeException excp) {
+                lines = line;
+                error = excp;
+            }
+        }
+
+        /** Append my converted lines to TEXT in groups of five, as
+         *  Main.printMessageLine does, each followed by NEWLINE, recording
+         *  them in METRICS. */
+        void format(StringBuilder text, String newline, Metrics metrics) {
+            int from = 0;
+            for (int line = 0; line < lines; line += 1) {
+                int to = outEnds[line];
+                if (ends[line] != BLANK) {
+                    for (int i = from; i < to; i += GROUP) {
+                        if (i > from) {
+                            text.append(' ');
+                        }
+                        text.append(out, i, Math.min(GROUP, to - i));
+                    }
+                    metrics.converted(since(nanos[line], metrics),
+                                      to - from);
+                }
+                text.append(newline);
+                from = to;
+            }
+        }
+
+        /** Return the nanoseconds since START, a start time from
+         *  METRICS, or UNMEASURED if it is 0. */
+        static long elapsed(long start, Metrics metrics) {
+            return start == 0 ? UNMEASURED : metrics.now() - start;
+        }
+
+        /** Return a start time for a probe of METRICS that records
+         *  NANOS, a duration measured by a converter, or 0 if it is
+         *  UNMEASURED, so that the writer records converters' times. */
+        static long since(long nanos, Metrics metrics) {
+            long now = metrics.now();
+            return nanos == UNMEASURED || now == 0 ? 0 : now - nanos;
+        }
+
+        /** Settings line starting my segment, or null if I continue it. */
+        private String settings;
+
+        /** True iff I end my segment. */
+        private boolean last;
+
+        /** Error ending me, or null. */
+        private RuntimeException error;
+
+        /** Number of lines. */
+        private int lines;
+
+        /** Characters of the message lines, back to back. */
+        private char[] in = new char[MAX_CHARS];
+
+        /** Number of characters in IN. */
+        private int used;
+
+        /** End of each line in IN, or BLANK for an empty line. */
+        private int[] ends = new int[MAX_LINES];
+
+        /** Converted characters, back to back. */
+        private char[] out = new char[MAX_CHARS];
+
+        /** End of each converted line in OUT. */
+        private int[] outEnds = new int[MAX_LINES];
+
+        /** Nanoseconds taken to set up my segment, or UNMEASURED. */
+        private long setUpNanos = UNMEASURED;
+
+        /** Nanoseconds taken to convert each line, or UNMEASURED. */
+        private long[] nanos = new long[MAX_LINES];
+    }
+
+    /** Marks an empty line in a Batch. */
+    private static final int BLANK = -1;
+
+    /** Marks a duration that was not measured, metrics being off. */
+    private static final long UNMEASURED = -1;
+
+    /** Letters per output group. */
+    private static final int GROUP = 5;
+
+    /** Usual maximum number of lines and of characters in a batch. */
+    private static final int MAX_LINES = 512, MAX_CHARS = 1 << 15;
+
+    /** Number of batches in circulation per converter. */
+    private static final int BATCHES_PER_CONVERTER = 8;
+
+    /** Batch marking the end of the input. */
+    private static final Batch END = new Batch();
+
+    /** Source of lines. */
+    private final Scanner _input;
+
+    /** Destination of converted lines. */
+    private final PrintStream _output;
+
+    /** Applies a settings line to a machine. */
+    private final BiConsumer<Machine, String> _setUp;
+
+    /** Machine of each converter. */
+    private final Machine[] _machines;
+
+    /** Batches from the reader to each converter. */
+    private final RingBuffer<Batch>[] _toConverter;
+
+    /** Converted batches from each converter to the writer. */
+    private final RingBuffer<Batch>[] _toWriter;
+
+    /** Written batches, from the writer back to the reader. */
+    private final RingBuffer<Batch> _free;
+
+    /** True once the writer has stopped. */
+    private volatile boolean _aborted;
+
+}
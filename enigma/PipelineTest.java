@@ -0,0 +1,167 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.function.BiConsumer;
+
+import static enigma.EnigmaException.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Divya Sivanandan
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Applies a settings line of the form "* REFLECTOR ROTORS... POSNS"
+     *  to a naval machine. */
+    private static final BiConsumer<Machine, String> SETUP = (M, line) -> {
+        String[] words = line.split(" ");
+        String[] names = new String[words.length - 2];
+        System.arraycopy(words, 1, names, 0, names.length);
+        M.getRotorsUsed().clear();
+        M.insertRotors(names);
+        M.setRotors(words[words.length - 1]);
+        if (line.startsWith("* C")) {
+            throw error("bad reflector");
+        }
+    };
+
+    /** Return random input of SEGMENTS segments using KEYS, with long
+     *  lines, blank lines and stray blanks. */
+    private String randomInput(Random random, KeySpace keys, int segments) {
+        StringBuilder input = new StringBuilder();
+        for (int s = 0; s < segments; s += 1) {
+            long key = (long) (random.nextDouble() * keys.size());
+            input.append(keys.settingsLine(key)).append('\n');
+            for (int n = random.nextInt(700); n > 0; n -= 1) {
+                if (random.nextInt(10) == 0) {
+                    input.append('\n');
+                }
+                for (int k = random.nextInt(200); k >= 0; k -= 1) {
+                    input.append(random.nextInt(8) == 0 ? ' '
+                                 : UPPER.toChar(random.nextInt(26)));
+                }
+                input.append('\n');
+            }
+        }
+        return input.toString();
+    }
+
+    /** Return the output of the sequential loop of Main on INPUT. */
+    private String sequential(String input) {
+        StringBuilder result = new StringBuilder();
+        Machine M = navalMachine();
+        for (String line : input.split("\n")) {
+            if (line.startsWith("*")) {
+                SETUP.accept(M, line);
+            } else if (!line.isEmpty()) {
+                String text = M.convert(line);
+                for (int i = 0; i < text.length(); i += 5) {
+                    result.append(i > 0 ? " " : "")
+                        .append(text, i, Math.min(i + 5, text.length()));
+                }
+                result.append(System.lineSeparator());
+            } else {
+                result.append(System.lineSeparator());
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the output of a pipeline with CONVERTERS converters on
+     *  INPUT, putting it in BYTES. */
+    private String pipelined(String input, int converters,
+                             ByteArrayOutputStream bytes) {
+        PrintStream output = new PrintStream(bytes);
+        new Pipeline(new Scanner(input), output, converters,
+                     TestUtils::navalMachine, SETUP).run();
+        return bytes.toString();
+    }
+
+    @Test
+    public void testOrder() {
+        Random random = new Random(61);
+        KeySpace keys = new KeySpace(navalMachine());
+        String input = randomInput(random, keys, 9).replace("* C", "* B");
+        String expected = sequential(input);
+        assertEquals(expected,
+                     pipelined(input, 1, new ByteArrayOutputStream()));
+        assertEquals(expected,
+                     pipelined(input, 3, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testError() {
+        Random random = new Random(62);
+        KeySpace keys = new KeySpace(navalMachine());
+        String input = randomInput(random, keys, 4).replace("* C", "* B");
+        String tail = randomInput(random, keys, 3).replace("* C", "* B");
+        String expected = sequential(input);
+        String bad = "* C Beta I II III AAAA\nABCDE\n";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            pipelined(input + bad + tail, 3, bytes);
+            fail("error in input not reported");
+        } catch (EnigmaException excp) {
+            assertEquals("bad reflector", excp.getMessage());
+        }
+        assertEquals(expected, bytes.toString());
+    }
+
+    @Test
+    public void testBlankLines() {
+        String settings = "* B Beta I II III AAAA\n";
+        String expected = sequential(settings + "HELLO\n")
+            + System.lineSeparator();
+        for (String input
+                 : new String[] { settings + "HELLO\n\n",
+                                  settings + "HELLO\n\n\nWORLD\n" }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                pipelined(input, 2, bytes);
+                fail("blank lines accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(expected, bytes.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        Metrics metrics = Metrics.INSTANCE;
+        boolean saved = metrics.isEnabled();
+        String input = "* B Beta III IV I AXLE\nHELLO WORLD\n\nFROM\n"
+            + "* B Gamma II V VI QQQQ\nSIX LETTERS GO\n";
+        try {
+            metrics.setEnabled(true);
+            metrics.reset();
+            pipelined(input, 2, new ByteArrayOutputStream());
+            assertEquals(10 + 4 + 12, metrics.getCharactersConverted());
+            assertEquals(3, metrics.getLinesConverted());
+            assertEquals(2, metrics.getSegments());
+            assertEquals(2, metrics.getReconfigurations());
+            assertTrue(metrics.getConvertNanos() > 0);
+            assertTrue(metrics.getSetUpNanos() > 0);
+            long histogram = 0;
+            for (long count : metrics.getConvertHistogram()) {
+                histogram += count;
+            }
+            assertEquals(3, histogram);
+        } finally {
+            metrics.reset();
+            metrics.setEnabled(saved);
+        }
+    }
+
+}
@@ -0,0 +1,292 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** Results of converting message lines, kept so that a line converted
+ *  again from the same state, such as a retransmitted message or a test
+ *  vector run twice, is not converted again.  Entries are addressed by
+ *  the SHA-256 digest of a namespace (the checksum of the configuration
+ *  file), the configuration of the machine (see
+ *  Machine.configurationKey), the positions of its rotors, and the text
+ *  of the line, in the default charset, so the first line of a message
+ *  is found by its settings line and each later line by the state the
+ *  lines before it left.  An entry holds the converted characters and
+ *  the positions the rotors were left in.
+ *
+ *  The cache is bounded by the bytes its entries hold, least recently
+ *  used entries being evicted first, and may be saved to a file,
+ *  big-endian:
+ *      MAGIC, ENTRIES, and for each, least recently used first:
+ *      DIGEST, POSITIONS (count and ints), TEXT (length and UTF-8 bytes),
+ *      INPUT (bytes of input it stands for)
+ *  and loaded back.  It is shared by copies of a Machine, and so by the
+ *  threads of a Pipeline.
+ *  @author Divya Sivanandan
+ */
+final class ResultCache {
+
+    /** A cache holding at most CAPACITY bytes of entries, for a machine
+     *  configured from a file with checksum NAMESPACE, loaded from FILE
+     *  if that is not null and exists, and saved to it by save(). */
+    ResultCache(String namespace, long capacity, File file) {
+        _namespace = (namespace == null ? "" : namespace)
+            .getBytes(StandardCharsets.UTF_8);
+        _capacity = capacity;
+        _file = file;
+        if (file != null && file.exists()) {
+            load();
+        }
+    }
+
+    /** Return the conversion by M of INPUT, text in the default charset,
+     *  from this cache if it is there, and otherwise from CONVERTER,
+     *  recording the result. */
+    String convert(Machine M, byte[] input, Supplier<String> converter) {
+        ByteBuffer key = key(M, input, 0, input.length);
+        String hit = lookup(M, key, input.length);
+        if (hit != null) {
+            return hit;
+        }
+        String result = converter.get();
+        store(M, key, result, input.length);
+        return result;
+    }
+
+    /** Return the key of the conversion of BYTES[FROM .. FROM + LEN - 1],
+     *  text in the default charset, by M in its current state. */
+    ByteBuffer key(Machine M, byte[] bytes, int from, int len) {
+        MessageDigest digest = DIGESTS.get();
+        digest.update(_namespace);
+        digest.update(SEPARATOR);
+        digest.update(M.configurationKey().getBytes(StandardCharsets.UTF_8));
+        for (Rotor r : M.getRotorsUsed()) {
+            digest.update(SEPARATOR);
+            digest.update(Integer.toString(r.setting())
+                          .getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update(SEPARATOR);
+        digest.update(bytes, from, len);
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /** Return the text recorded under KEY, after setting the rotors of M
+     *  to where converting it left them, counting INPUT bytes saved, or
+     *  return null if there is none. */
+    synchronized String lookup(Machine M, ByteBuffer key, long input) {
+        Entry entry = _entries.get(key);
+        if (entry == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        _savedBytes += input;
+        ArrayList<Rotor> used = M.getRotorsUsed();
+        for (int k = 0; k < entry.positions.length; k += 1) {
+            used.get(k + 1).set(entry.positions[k]);
+        }
+        return entry.text;
+    }
+
+    /** Record under KEY the TEXT converted from INPUT bytes, leaving the
+     *  rotors of M where they are now. */
+    synchronized void store(Machine M, ByteBuffer key, String text,
+                            long input) {
+        ArrayList<Rotor> used = M.getRotorsUsed();
+        int[] positions = new int[used.size() - 1];
+        for (int k = 0; k < positions.length; k += 1) {
+            positions[k] = used.get(k + 1).setting();
+        }
+        put(key, new Entry(text, positions, input));
+    }
+
+    /** Add ENTRY under KEY, evicting the least recently used entries
+     *  while I hold more than my capacity. */
+    private void put(ByteBuffer key, Entry entry) {
+        if (entry.bytes() > _capacity) {
+            return;
+        }
+        Entry old = _entries.put(key, entry);
+        if (old != null) {
+            _heldBytes -= old.bytes();
+        }
+        _heldBytes += entry.bytes();
+        while (_heldBytes > _capacity) {
+            Map.Entry<ByteBuffer, Entry> eldest =
+                _entries.entrySet().iterator().next();
+            _heldBytes -= eldest.getValue().bytes();
+            _entries.remove(eldest.getKey());
+            _evictions += 1;
+        }
+    }
+
+    /** Return the number of lookups that found an entry. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found none. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the bytes of input whose conversion was found here. */
+    synchronized long savedBytes() {
+        return _savedBytes;
+    }
+
+    /** Return the number of entries held. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return a one-line report of my use. */
+    synchronized String summary() {
+        long lookups = _hits + _misses;
+        return String.format("result cache: %d hits, %d misses (%.1f%% "
+                             + "hit), %d input bytes not converted, %d "
+                             + "entries of %d bytes, %d evicted",
+                             _hits, _misses,
+                             lookups == 0 ? 0.0 : 100.0 * _hits / lookups,
+                             _savedBytes, _entries.size(), _heldBytes,
+                             _evictions);
+    }
+
+    /** Save my entries to my file, if I have one. */
+    synchronized void save() {
+        if (_file == null) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(MAGIC);
+            out.writeInt(_entries.size());
+            for (Map.Entry<ByteBuffer, Entry> e : _entries.entrySet()) {
+                out.write(e.getKey().array());
+                Entry entry = e.getValue();
+                out.writeInt(entry.positions.length);
+                for (int p : entry.positions) {
+                    out.writeInt(p);
+                }
+                byte[] text = entry.text.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+                out.writeLong(entry.input);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", _file);
+        }
+        AtomicFile.write(_file, bytes.toByteArray());
+    }
+
+    /** Add the entries saved in my file. */
+    private void load() {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(_file)))) {
+            if (in.readLong() != MAGIC) {
+                throw error("%s is not a result cache", _file);
+            }
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                byte[] digest = new byte[DIGEST_BYTES];
+                in.readFully(digest);
+                int[] positions = new int[in.readInt()];
+                for (int k = 0; k < positions.length; k += 1) {
+                    positions[k] = in.readInt();
+                }
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                put(ByteBuffer.wrap(digest),
+                    new Entry(new String(text, StandardCharsets.UTF_8),
+                              positions, in.readLong()));
+            }
+        } catch (EOFException excp) {
+            throw error("%s is not a result cache", _file);
+        } catch (IOException excp) {
+            throw error("could not read %s", _file);
+        }
+    }
+
+    /** A converted line. */
+    private static final class Entry {
+
+        /** The conversion TEXT of INPUT bytes, which left the rotors at
+         *  POSITIONS, leftmost first, excluding the reflector. */
+        Entry(String text, int[] positions, long input) {
+            this.text = text;
+            this.positions = positions;
+            this.input = input;
+        }
+
+        /** Return the bytes I am counted as holding. */
+        long bytes() {
+            return ENTRY_BYTES + 2L * text.length()
+                + (long) Integer.BYTES * positions.length;
+        }
+
+        /** Converted characters. */
+        private final String text;
+        /** Positions the rotors were left in. */
+        private final int[] positions;
+        /** Bytes of input converted. */
+        private final long input;
+    }
+
+    /** Separates the parts of a key. */
+    private static final byte[] SEPARATOR = { 0 };
+
+    /** Length of a digest. */
+    private static final int DIGEST_BYTES = 32;
+
+    /** Bytes counted for an entry besides its text and positions. */
+    private static final int ENTRY_BYTES = 128;
+
+    /** Marks a result cache file. */
+    private static final long MAGIC = 0x656e69676d615243L;
+
+    /** A digest for each thread. */
+    private static final ThreadLocal<MessageDigest> DIGESTS =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException excp) {
+                throw error("no SHA-256");
+            }
+        });
+
+    /** Namespace of my keys. */
+    private final byte[] _namespace;
+
+    /** Most bytes of entries held. */
+    private final long _capacity;
+
+    /** File saved to, or null. */
+    private final File _file;
+
+    /** Entries, least recently used first. */
+    private final LinkedHashMap<ByteBuffer, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Bytes of entries held. */
+    private long _heldBytes;
+
+    /** Counts of lookups that found an entry and that found none, of
+     *  bytes of input not converted, and of entries evicted. */
+    private long _hits, _misses, _savedBytes, _evictions;
+
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ResultCache class.
+ *  @author Divya Sivanandan
+ */
+public class ResultCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Settings line of the machines tested. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BW)";
+
+    /** Lines of a message. */
+    private static final String[] LINES = {
+        "FROM HIS SHOULDER HIAWATHA", "TOOK THE CAMERA OF ROSEWOOD",
+        "MADE OF SLIDING FOLDING ROSEWOOD",
+    };
+
+    /** Return the conversion of LINES by M, from SETTINGS, as lines. */
+    private String convert(Machine M) {
+        Main.configure(M, SETTINGS);
+        StringBuilder result = new StringBuilder();
+        for (String line : LINES) {
+            result.append(M.convert(line)).append('\n');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testRepeats() throws Exception {
+        String expected = convert(navalMachine());
+        File file = File.createTempFile("results", ".cache");
+        file.delete();
+        ResultCache cache = new ResultCache("conf", 1 << 20, file);
+        Machine M = navalMachine();
+        M.setResultCache(cache);
+        assertEquals(expected, convert(M));
+        assertEquals(expected, convert(M));
+        assertEquals(expected, convert(M.copy()));
+        assertEquals(3, cache.misses());
+        assertEquals(6, cache.hits());
+        cache.save();
+
+        ResultCache loaded = new ResultCache("conf", 1 << 20, file);
+        assertEquals(3, loaded.size());
+        Machine other = navalMachine();
+        other.setResultCache(loaded);
+        assertEquals(expected, convert(other));
+        assertEquals(3, loaded.hits());
+        ResultCache elsewhere = new ResultCache("other", 1 << 20, file);
+        other.setResultCache(elsewhere);
+        assertEquals(expected, convert(other));
+        assertEquals(0, elsewhere.hits());
+        file.delete();
+    }
+
+    @Test
+    public void testEviction() {
+        ResultCache cache = new ResultCache(null, 400, null);
+        Machine M = navalMachine();
+        M.setResultCache(cache);
+        String expected = convert(M);
+        assertEquals(2, cache.size());
+        assertEquals(expected, convert(M));
+        assertEquals(0, cache.hits());
+        assertEquals(2, cache.size());
+    }
+
+}
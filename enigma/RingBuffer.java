@@ -0,0 +1,88 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded, lock-free queue between exactly one producer thread and
+ *  exactly one consumer thread.  The producer and consumer each own one
+ *  counter and only read the other's, so no locks or compare-and-set
+ *  operations are needed.  put() and take() wait, spinning briefly and
+ *  then parking, while the buffer is full or empty, which gives
+ *  backpressure between pipeline stages.
+ *  @author Divya Sivanandan
+ */
+final class RingBuffer<T> {
+
+    /** A buffer holding at most CAPACITY items, which is rounded up to a
+     *  power of two.  Waits are abandoned with an error once ABORTED
+     *  returns true. */
+    RingBuffer(int capacity, BooleanSupplier aborted) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        _items = new Object[size];
+        _mask = size - 1;
+        _aborted = aborted;
+    }
+
+    /** Add ITEM, waiting while the buffer is full.  Producer only. */
+    void put(T item) {
+        long tail = _tail.get();
+        for (int spins = 0; tail - _head.get() > _mask; spins += 1) {
+            pause(spins);
+        }
+        _items[(int) (tail & _mask)] = item;
+        _tail.lazySet(tail + 1);
+    }
+
+    /** Remove and return the oldest item, waiting while the buffer is
+     *  empty.  Consumer only. */
+    @SuppressWarnings("unchecked")
+    T take() {
+        long head = _head.get();
+        for (int spins = 0; head == _tail.get(); spins += 1) {
+            pause(spins);
+        }
+        int k = (int) (head & _mask);
+        T item = (T) _items[k];
+        _items[k] = null;
+        _head.lazySet(head + 1);
+        return item;
+    }
+
+    /** Wait a little, the SPINS-th time in a row, or fail if the pipeline
+     *  has been aborted. */
+    private void pause(int spins) {
+        if (_aborted.getAsBoolean()) {
+            throw error("pipeline aborted");
+        }
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** Number of busy-wait iterations before parking. */
+    private static final int SPINS = 100;
+
+    /** Duration of each park while waiting. */
+    private static final long PARK_NANOS = 50_000;
+
+    /** Slots. */
+    private final Object[] _items;
+
+    /** Slot index mask. */
+    private final int _mask;
+
+    /** Count of items taken; written only by the consumer. */
+    private final AtomicLong _head = new AtomicLong();
+
+    /** Count of items added; written only by the producer. */
+    private final AtomicLong _tail = new AtomicLong();
+
+    /** True once waiting should stop. */
+    private final BooleanSupplier _aborted;
+
+}
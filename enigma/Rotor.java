@@ -14,6 +14,7 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _setting = 0;
+        _ring = 0;
         _rightRotor = null;
         _leftNoPawl = false;
     }
@@ -82,13 +83,36 @@ class Rotor {
         _setting = _permutation.wrap(alphabet.toInt(cposn));
     }
 
+    /**
+     * Return my ring setting: the offset of my wiring from the
+     * alphabet ring that shows my setting and carries my notches.
+     */
+    int ring() {
+        return _ring;
+    }
+
+    /**
+     * Set ring() to RING.
+     */
+    void setRing(int ring) {
+        _ring = _permutation.wrap(ring);
+    }
+
+    /**
+     * Set ring() to character CRING.
+     */
+    void setRing(char cring) {
+        setRing(_permutation.alphabet().toInt(cring));
+    }
+
     /**
      * Return the conversion of P (an integer in the range 0..size()-1)
      * according to my permutation.
      */
     int convertForward(int p) {
-        int permuted = _permutation.permute(p + _setting);
-        return _permutation.wrap((permuted - _setting));
+        int shift = _setting - _ring;
+        int permuted = _permutation.permute(p + shift);
+        return _permutation.wrap((permuted - shift));
     }
 
     /**
@@ -96,8 +120,9 @@ class Rotor {
      * according to the inverse of my permutation.
      */
     int convertBackward(int e) {
-        int inverted = _permutation.invert(e + _setting);
-        return _permutation.wrap(inverted - _setting);
+        int shift = _setting - _ring;
+        int inverted = _permutation.invert(e + shift);
+        return _permutation.wrap(inverted - shift);
     }
 
     /**
@@ -146,6 +171,12 @@ class Rotor {
     void advance() {
     }
 
+    /** Return a new rotor like me, at setting and ring setting 0,
+     *  sharing my permutation. */
+    Rotor copy() {
+        return new Rotor(name(), permutation());
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -164,6 +195,9 @@ class Rotor {
     /** Current rotor position. */
     private int _setting;
 
+    /** Ring setting. */
+    private int _ring;
+
     /** Rotor to its right. */
     private Rotor _rightRotor;
 
@@ -0,0 +1,521 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Coordinator of a key search spread over worker processes (see
+ *  SearchWorker).  The key space is cut into shards of consecutive keys,
+ *  which are leased to workers over a line-oriented socket protocol:
+ *
+ *      coordinator: JOB top-K tolerance rings off-heap /
+ *                   CONFIG n, then n lines / TEXT ciphertext / CRIB crib /
+ *                   BIGRAMS counts
+ *      worker:      LEASE
+ *      coordinator: SHARD id from to  |  WAIT millis  |  DONE
+ *      worker:      RESULT id key score (up to top-K times) / COMPLETE id
+ *
+ *  The shards of a worker whose connection drops, or whose lease is not
+ *  completed in time, are leased again.  Completed shards and the best
+ *  results so far are recorded in a progress file after each completion,
+ *  so that a restarted coordinator carries on where it stopped.  The
+ *  tolerance of the JOB line is passed to KeySearch.setPruning by the
+ *  workers; NaN turns pruning off.  Rings is true if ring settings are
+ *  searched, as the KeySearch constructor describes, and off-heap is
+ *  passed to KeySearch.setOffHeap.  A non-empty crib is passed to
+ *  KeySearch.setCrib, and non-empty bigram counts, separated by blanks,
+ *  to KeySearch.setBigrams.  The best results are merged in a TopKeys.Heap,
+ *  itself kept off the Java heap if the workers' heaps are.
+ *  @author Divya Sivanandan
+ */
+public final class SearchCoordinator {
+
+    /** Run a coordinator as specified by ARGS, which are
+     *      [--port P] [--bind ADDR] [--workers N] [--top K] [--shard KEYS]
+     *      [--lease SECONDS] [--prune TOLERANCE] [--crib TEXT] [--rings]
+     *      [--offheap] [--results FILE] [--stats FILE]
+     *      CONFIG CIPHERTEXT PROGRESS
+     *  CONFIG and CIPHERTEXT name the configuration and ciphertext files,
+     *  and PROGRESS the progress file.  With --prune, workers abandon
+     *  keys that cannot make the top K as KeySearch.setPruning describes:
+     *  TOLERANCE is Infinity to abandon only keys that provably cannot,
+     *  or a number of standard deviations.  With --crib, keys are scored
+     *  by the plaintext TEXT at its admissible positions, as
+     *  KeySearch.setCrib describes.  With --rings, ring settings are
+     *  searched too, up to equivalence over the length of the
+     *  ciphertext.  With --offheap, the best K candidates are kept off
+     *  the Java heap, as TopKeys describes, for a large K.  With --stats,
+     *  keys are scored by the bigrams of the CorpusStats file FILE, as
+     *  KeySearch.setStatistics describes.  The
+     *  coordinator listens on the loopback interface unless given
+     *  --bind, and with --workers starts N local worker processes
+     *  itself.  Prints the best keys as settings lines when the search
+     *  completes, or with --results saves them to FILE, for
+     *  TopKeys.load. */
+    public static void main(String... args) {
+        try {
+            HashMap<String, String> opts = new HashMap<>();
+            int k;
+            boolean rings = false, offHeap = false;
+            for (k = 0; k < args.length && args[k].startsWith("--");
+                 k += 1) {
+                if (args[k].equals("--rings")) {
+                    rings = true;
+                } else if (args[k].equals("--offheap")) {
+                    offHeap = true;
+                } else if (k + 1 >= args.length) {
+                    throw error("missing value for %s", args[k]);
+                } else {
+                    opts.put(args[k], args[k + 1]);
+                    k += 1;
+                }
+            }
+            if (args.length - k != 3) {
+                throw error("usage: SearchCoordinator [options] CONFIG "
+                            + "CIPHERTEXT PROGRESS");
+            }
+            SearchCoordinator coord =
+                new SearchCoordinator(readFile(args[k]),
+                                      readFile(args[k + 1]),
+                                      new File(args[k + 2]),
+                                      intOption(opts, "--top", 10),
+                                      intOption(opts, "--shard", 1 << 20),
+                                      intOption(opts, "--lease", 600),
+                                      rings, offHeap);
+            coord.setPruning(doubleOption(opts, "--prune", Double.NaN));
+            if (opts.containsKey("--crib")) {
+                coord.setCrib(opts.get("--crib"));
+            }
+            if (opts.containsKey("--stats")) {
+                coord.setStatistics(
+                    CorpusStats.load(new File(opts.get("--stats"))));
+            }
+            InetAddress bind =
+                opts.containsKey("--bind")
+                ? InetAddress.getByName(opts.get("--bind"))
+                : InetAddress.getLoopbackAddress();
+            try (ServerSocket server =
+                 new ServerSocket(intOption(opts, "--port", 0), 0, bind)) {
+                List<Process> local =
+                    startLocalWorkers(intOption(opts, "--workers", 0),
+                                      server.getLocalPort());
+                System.err.printf("Coordinating on port %d%n",
+                                  server.getLocalPort());
+                coord.serve(server);
+                for (Process p : local) {
+                    p.waitFor();
+                }
+            }
+            KeySpace keys = coord._search.keySpace();
+            TopKeys.Results results = coord.best();
+            if (opts.containsKey("--results")) {
+                results.save(new File(opts.get("--results")));
+                System.err.printf("%d candidates saved to %s%n",
+                                  results.size(), opts.get("--results"));
+                return;
+            }
+            for (int i = 0; i < results.size(); i += 1) {
+                System.out.printf("%.6f %s%n", results.score(i),
+                                  results.settingsLine(i, keys));
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (InterruptedException excp) {
+            System.err.println("Error: interrupted");
+        }
+        System.exit(1);
+    }
+
+    /** A coordinator for a search of the configuration whose text is
+     *  CONFIG for decryptions of CIPHERTEXT, keeping the TOP best keys,
+     *  cutting the key space into shards of SHARDSIZE keys, leasing them
+     *  for LEASESECONDS, and recording its progress in PROGRESS. */
+    SearchCoordinator(String config, String ciphertext, File progress,
+                      int top, long shardSize, int leaseSeconds) {
+        this(config, ciphertext, progress, top, shardSize, leaseSeconds,
+             false, false);
+    }
+
+    /** A coordinator as above, whose search covers ring settings iff
+     *  RINGS, as the KeySearch constructor describes, and which keeps
+     *  its best candidates, and has workers keep theirs, off the Java
+     *  heap iff OFFHEAP. */
+    SearchCoordinator(String config, String ciphertext, File progress,
+                      int top, long shardSize, int leaseSeconds,
+                      boolean rings, boolean offHeap) {
+        if (top <= 0 || shardSize <= 0 || leaseSeconds <= 0) {
+            throw error("top, shard and lease must be positive");
+        }
+        _config = config;
+        _ciphertext = ciphertext.replaceAll("\\s+", "");
+        _search = new KeySearch(config, _ciphertext, rings);
+        _rings = rings;
+        _offHeap = offHeap;
+        _progress = progress;
+        _top = top;
+        _shardSize = shardSize;
+        _leaseMillis = leaseSeconds * 1000L;
+        long size = _search.keySpace().size();
+        _numShards = Math.toIntExact((size + shardSize - 1) / shardSize);
+        _done = new BitSet(_numShards);
+        _best = new TopKeys.Heap(top, offHeap);
+        _leases = new HashMap<>();
+        _holders = new HashMap<>();
+        _pending = new ArrayDeque<>();
+        loadProgress();
+        for (int s = _done.nextClearBit(0); s < _numShards;
+             s = _done.nextClearBit(s + 1)) {
+            _pending.add(s);
+        }
+    }
+
+    /** Have workers score keys progressively, with TOLERANCE as
+     *  KeySearch.setPruning describes.  A NaN TOLERANCE, the default,
+     *  turns pruning off. */
+    void setPruning(double tolerance) {
+        _tolerance = tolerance;
+    }
+
+    /** Have workers score keys by the plaintext CRIB, as
+     *  KeySearch.setCrib describes, and return the number of positions
+     *  at which it may lie. */
+    int setCrib(String crib) {
+        int positions = _search.setCrib(crib);
+        _crib = crib.replaceAll("\\s+", "");
+        return positions;
+    }
+
+    /** Have workers score keys by the bigrams of STATS, as
+     *  KeySearch.setStatistics describes. */
+    void setStatistics(CorpusStats stats) {
+        _search.setStatistics(stats);
+        StringBuilder counts = new StringBuilder();
+        for (long count : stats.bigrams()) {
+            counts.append(counts.length() == 0 ? "" : " ").append(count);
+        }
+        _bigrams = counts.toString();
+    }
+
+    /** Accept workers on SERVER until every shard is done. */
+    void serve(ServerSocket server) throws IOException {
+        server.setSoTimeout(POLL_MILLIS);
+        while (!finished()) {
+            try {
+                Socket socket = server.accept();
+                Thread handler = new Thread(() -> handle(socket));
+                handler.setDaemon(true);
+                handler.start();
+            } catch (SocketTimeoutException excp) {
+                continue;
+            }
+        }
+    }
+
+    /** Return true iff every shard has been searched. */
+    synchronized boolean finished() {
+        return _done.cardinality() == _numShards;
+    }
+
+    /** Return the best keys found so far, best first. */
+    synchronized List<Candidate> results() {
+        return best().candidates(_top);
+    }
+
+    /** Return the best keys found so far, best first, as TopKeys
+     *  results. */
+    synchronized TopKeys.Results best() {
+        return _best.results();
+    }
+
+    /** Serve the worker connected to SOCKET until it disconnects or the
+     *  search is finished.  Its outstanding leases are then returned.
+     *  Results and completions of shards it was not leased are
+     *  ignored. */
+    private void handle(Socket socket) {
+        ArrayList<Integer> held = new ArrayList<>();
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(),
+                                       StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(
+                 new OutputStreamWriter(socket.getOutputStream(),
+                                        StandardCharsets.UTF_8))) {
+            String[] configLines = _config.split("\\R", -1);
+            out.printf("JOB %d %s %b %b%nCONFIG %d%n", _top,
+                       Double.toString(_tolerance), _rings, _offHeap,
+                       configLines.length);
+            for (String line : configLines) {
+                out.println(line);
+            }
+            out.printf("TEXT %s%nCRIB %s%nBIGRAMS %s%n", _ciphertext, _crib,
+                       _bigrams);
+            out.flush();
+            ArrayList<Candidate> found = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                switch (words[0]) {
+                case "LEASE":
+                    out.println(lease(held));
+                    out.flush();
+                    break;
+                case "RESULT":
+                    if (held.contains(Integer.parseInt(words[1]))) {
+                        found.add(new Candidate(
+                            Long.parseLong(words[2]),
+                            Double.parseDouble(words[3])));
+                    }
+                    break;
+                case "COMPLETE":
+                    int shard = Integer.parseInt(words[1]);
+                    if (held.remove((Integer) shard)) {
+                        complete(shard, found);
+                    }
+                    found.clear();
+                    break;
+                default:
+                    return;
+                }
+            }
+        } catch (IOException | RuntimeException excp) {
+            return;
+        } finally {
+            release(held);
+        }
+    }
+
+    /** Return the reply to a LEASE request from a worker holding the
+     *  shards in HELD, adding any newly leased shard to HELD. */
+    private synchronized String lease(List<Integer> held) {
+        if (finished()) {
+            return "DONE";
+        }
+        long now = System.currentTimeMillis();
+        if (_pending.isEmpty()) {
+            for (Integer s : new ArrayList<>(_leases.keySet())) {
+                if (_leases.get(s) < now) {
+                    _leases.remove(s);
+                    _holders.remove(s);
+                    _pending.add(s);
+                }
+            }
+        }
+        Integer shard = _pending.poll();
+        if (shard == null) {
+            return "WAIT " + POLL_MILLIS;
+        }
+        _leases.put(shard, now + _leaseMillis);
+        _holders.put(shard, held);
+        held.add(shard);
+        long from = (long) shard * _shardSize;
+        long to = Math.min(from + _shardSize, _search.keySpace().size());
+        return String.format("SHARD %d %d %d", shard, from, to);
+    }
+
+    /** Record that SHARD has been searched, yielding the candidates
+     *  FOUND, and save my progress. */
+    private synchronized void complete(int shard, List<Candidate> found) {
+        if (shard < 0 || shard >= _numShards || _done.get(shard)) {
+            return;
+        }
+        _done.set(shard);
+        _leases.remove(shard);
+        _holders.remove(shard);
+        _pending.remove(shard);
+        for (Candidate c : found) {
+            _best.offer(c.key(), c.score());
+        }
+        saveProgress();
+    }
+
+    /** Return the shards in HELD that are not yet done to the pending
+     *  queue. */
+    private synchronized void release(List<Integer> held) {
+        for (int shard : held) {
+            if (!_done.get(shard) && _holders.get(shard) == held) {
+                _leases.remove(shard);
+                _holders.remove(shard);
+                _pending.addFirst(shard);
+            }
+        }
+    }
+
+    /** Write the done shards and best results to the progress file. */
+    private void saveProgress() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%d %d%n", _search.keySpace().size(),
+                                  _shardSize));
+        text.append(_done.cardinality());
+        for (int s = _done.nextSetBit(0); s >= 0;
+             s = _done.nextSetBit(s + 1)) {
+            text.append(' ').append(s);
+        }
+        text.append(System.lineSeparator());
+        TopKeys.Results best = _best.results();
+        for (int i = 0; i < best.size(); i += 1) {
+            text.append(String.format("%d %s%n", best.key(i),
+                                      Double.toString(best.score(i))));
+        }
+        AtomicFile.write(_progress, text.toString());
+    }
+
+    /** Restore the done shards and best results from the progress file,
+     *  if there is one. */
+    private void loadProgress() {
+        if (!_progress.exists()) {
+            return;
+        }
+        try (Scanner in = new Scanner(_progress)) {
+            if (in.nextLong() != _search.keySpace().size()
+                || in.nextLong() != _shardSize) {
+                throw error("progress file %s is for another search",
+                            _progress);
+            }
+            for (int n = in.nextInt(); n > 0; n -= 1) {
+                _done.set(in.nextInt());
+            }
+            while (in.hasNextLong()) {
+                long key = in.nextLong();
+                _best.offer(key, Double.parseDouble(in.next()));
+            }
+        } catch (IOException | NoSuchElementException
+                 | NumberFormatException excp) {
+            throw error("bad progress file %s", _progress);
+        }
+    }
+
+    /** Start N worker processes running in this JVM's class path and
+     *  connecting to PORT on the loopback interface, and return them. */
+    private static List<Process> startLocalWorkers(int n, int port)
+        throws IOException {
+        ArrayList<Process> result = new ArrayList<>();
+        String java = System.getProperty("java.home") + File.separator
+            + "bin" + File.separator + "java";
+        for (int i = 0; i < n; i += 1) {
+            result.add(new ProcessBuilder(java, "-cp",
+                                          System.getProperty(
+                                              "java.class.path"),
+                                          SearchWorker.class.getName(),
+                                          "localhost",
+                                          Integer.toString(port))
+                       .inheritIO().start());
+        }
+        return result;
+    }
+
+    /** Return the integer value of option NAME in OPTS, or DEFAULTVALUE. */
+    private static int intOption(HashMap<String, String> opts, String name,
+                                 int defaultValue) {
+        if (!opts.containsKey(name)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(opts.get(name));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /** Return the value of option NAME in OPTS, a number, Infinity or
+     *  NaN, or DEFAULTVALUE. */
+    private static double doubleOption(HashMap<String, String> opts,
+                                       String name, double defaultValue) {
+        if (!opts.containsKey(name)) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(opts.get(name));
+        } catch (NumberFormatException excp) {
+            throw error("bad value for %s", name);
+        }
+    }
+
+    /** Return the contents of the file named NAME, decompressed if it is
+     *  compressed. */
+    static String readFile(String name) {
+        try {
+            return Codecs.read(new File(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Interval at which idle workers and the accept loop poll. */
+    static final int POLL_MILLIS = 500;
+
+    /** Text of the configuration file. */
+    private final String _config;
+
+    /** Ciphertext, without whitespace. */
+    private final String _ciphertext;
+
+    /** True iff ring settings are searched. */
+    private final boolean _rings;
+
+    /** True iff best candidates are kept off the Java heap. */
+    private final boolean _offHeap;
+
+    /** Local search, used for the key space and to check the inputs. */
+    private final KeySearch _search;
+
+    /** Progress file. */
+    private final File _progress;
+
+    /** Number of best keys kept. */
+    private final int _top;
+
+    /** Number of keys per shard. */
+    private final long _shardSize;
+
+    /** Duration of a lease. */
+    private final long _leaseMillis;
+
+    /** Pruning tolerance sent to workers. */
+    private volatile double _tolerance = Double.NaN;
+
+    /** Crib sent to workers, without whitespace, or empty. */
+    private volatile String _crib = "";
+
+    /** Bigram counts sent to workers, separated by blanks, or empty. */
+    private volatile String _bigrams = "";
+
+    /** Number of shards. */
+    private final int _numShards;
+
+    /** Shards searched. */
+    private final BitSet _done;
+
+    /** Best keys found, worst at the head. */
+    private final TopKeys.Heap _best;
+
+    /** Expiry times of leased shards. */
+    private final HashMap<Integer, Long> _leases;
+
+    /** The list of held shards of the connection holding each leased
+     *  shard. */
+    private final HashMap<Integer, List<Integer>> _holders;
+
+    /** Shards waiting to be leased. */
+    private final ArrayDeque<Integer> _pending;
+
+}
@@ -0,0 +1,365 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/** The suite of all JUnit tests for the SearchCoordinator and
+ *  SearchWorker classes.  Coordinators listen on ephemeral loopback
+ *  ports, and workers run in threads of this JVM.
+ *  @author Divya Sivanandan
+ */
+public class SearchCoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** A small configuration, of 105456 keys. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + " 4 2\n"
+        + " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " Beta N    (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "           (RX) (SZ) (TV)\n";
+
+    /** Ciphertext searched. */
+    private static final String TEXT =
+        "WVLTP HUPUZ KIVIS CPBXF QKLRB RPBTD LLYXB XUAPU PKYMT CYQWI";
+
+    /** Number of best keys kept. */
+    private static final int TOP = 3;
+
+    /** Keys per shard. */
+    private static final int SHARD = 20000;
+
+    /** Return the best keys of the whole key space, searched in this
+     *  JVM. */
+    private List<Candidate> expected() {
+        KeySearch search = new KeySearch(CONFIG, TEXT);
+        return search.search(0, search.keySpace().size(), TOP);
+    }
+
+    /** Return the best keys of the whole key space by the crib CRIB,
+     *  searched in this JVM. */
+    private List<Candidate> expected(String crib) {
+        KeySearch search = new KeySearch(CONFIG, TEXT);
+        search.setCrib(crib);
+        return search.search(0, search.keySpace().size(), TOP);
+    }
+
+    /** Return a coordinator recording its progress in PROGRESS, with
+     *  leases of LEASE seconds. */
+    private SearchCoordinator coordinator(File progress, int lease) {
+        return new SearchCoordinator(CONFIG, TEXT, progress, TOP, SHARD,
+                                     lease);
+    }
+
+    /** Start a daemon thread running BODY, and return it. */
+    private Thread start(Body body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (IOException | EnigmaException excp) {
+                return;
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /** Something run in a thread. */
+    private interface Body {
+        /** Run. */
+        void run() throws IOException;
+    }
+
+    /** Start a SearchWorker connected to SERVER, and return its
+     *  thread. */
+    private Thread worker(ServerSocket server) {
+        return start(() -> {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                            server.getLocalPort())) {
+                new SearchWorker(socket).run();
+            }
+        });
+    }
+
+    /** A worker following the protocol by hand. */
+    private static final class Client implements AutoCloseable {
+
+        /** A client of the coordinator accepting on SERVER, having read
+         *  the job. */
+        Client(ServerSocket server) throws IOException {
+            _socket = new Socket(InetAddress.getLoopbackAddress(),
+                                 server.getLocalPort());
+            _in = new BufferedReader(
+                new InputStreamReader(_socket.getInputStream(),
+                                      StandardCharsets.UTF_8));
+            _out = new PrintWriter(
+                new OutputStreamWriter(_socket.getOutputStream(),
+                                       StandardCharsets.UTF_8));
+            assertTrue(_in.readLine().startsWith("JOB "));
+            String[] config = _in.readLine().split(" ");
+            for (int n = Integer.parseInt(config[1]); n > 0; n -= 1) {
+                _in.readLine();
+            }
+            assertTrue(_in.readLine().startsWith("TEXT "));
+            assertTrue(_in.readLine().startsWith("CRIB"));
+            assertTrue(_in.readLine().startsWith("BIGRAMS"));
+        }
+
+        /** Send LINE. */
+        void send(String line) {
+            _out.println(line);
+            _out.flush();
+        }
+
+        /** Request a lease and return the words of the reply.  Since
+         *  the coordinator handles a connection's lines in order, all
+         *  sent before have been handled when this returns. */
+        String[] lease() throws IOException {
+            send("LEASE");
+            return _in.readLine().split(" ");
+        }
+
+        /** Search the shard of the SHARD reply LEASE, reporting its best
+         *  keys and completing it. */
+        void search(String[] lease) {
+            KeySearch search = new KeySearch(CONFIG, TEXT);
+            for (Candidate c : search.search(Long.parseLong(lease[2]),
+                                             Long.parseLong(lease[3]),
+                                             TOP)) {
+                send(String.format("RESULT %s %d %s", lease[1], c.key(),
+                                   Double.toString(c.score())));
+            }
+            send("COMPLETE " + lease[1]);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _socket.close();
+        }
+
+        /** Connection to the coordinator. */
+        private final Socket _socket;
+        /** Lines from the coordinator. */
+        private final BufferedReader _in;
+        /** Lines to the coordinator. */
+        private final PrintWriter _out;
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        File progress = File.createTempFile("search", ".progress");
+        progress.delete();
+        SearchCoordinator coord = coordinator(progress, 1);
+        try (ServerSocket server =
+             new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            Thread serving = start(() -> coord.serve(server));
+
+            Client killed = new Client(server);
+            String[] shard = killed.lease();
+            assertEquals("SHARD", shard[0]);
+            int other = (Integer.parseInt(shard[1]) + 1) % 6;
+            killed.send("RESULT " + other + " 0 99.0");
+            killed.send("COMPLETE " + other);
+            killed.send("RESULT " + shard[1] + " 0 98.0");
+            assertEquals("SHARD", killed.lease()[0]);
+            killed.close();
+
+            Client hung = new Client(server);
+            assertEquals("SHARD", hung.lease()[0]);
+
+            Thread worker = worker(server);
+            serving.join();
+            worker.join();
+            assertTrue(coord.finished());
+            assertEquals(expected(), coord.results());
+            hung.send("COMPLETE 0");
+            assertEquals("DONE", hung.lease()[0]);
+            hung.close();
+            assertEquals(expected(), coord.results());
+        } finally {
+            progress.delete();
+        }
+    }
+
+    @Test
+    public void testCrib() throws Exception {
+        File progress = File.createTempFile("search", ".progress");
+        progress.delete();
+        SearchCoordinator coord = coordinator(progress, 600);
+        assertTrue(coord.setCrib("ATTACK AT DAWN") > 0);
+        try (ServerSocket server =
+             new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            Thread serving = start(() -> coord.serve(server));
+            Thread worker = worker(server);
+            serving.join();
+            worker.join();
+            assertTrue(coord.finished());
+            assertEquals(expected("ATTACKATDAWN"), coord.results());
+            assertTrue(coord.results().get(0).score() <= 1.0);
+        } finally {
+            progress.delete();
+        }
+    }
+
+    @Test
+    public void testRings() throws Exception {
+        File progress = File.createTempFile("search", ".progress");
+        progress.delete();
+        SearchCoordinator coord =
+            new SearchCoordinator(CONFIG, TEXT, progress, TOP, 1 << 20, 600,
+                                  true, false);
+        try (ServerSocket server =
+             new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            Thread serving = start(() -> coord.serve(server));
+            Thread worker = worker(server);
+            serving.join();
+            worker.join();
+            assertTrue(coord.finished());
+            KeySearch search = new KeySearch(CONFIG, TEXT, true);
+            assertTrue(search.keySpace().coversRings());
+            assertEquals(search.search(0, search.keySpace().size(), TOP),
+                         coord.results());
+            assertFalse(expected().equals(coord.results()));
+        } finally {
+            progress.delete();
+        }
+    }
+
+    @Test
+    public void testOffHeap() throws Exception {
+        File progress = File.createTempFile("search", ".progress");
+        File saved = File.createTempFile("search", ".keys");
+        progress.delete();
+        int top = 500;
+        SearchCoordinator coord =
+            new SearchCoordinator(CONFIG, TEXT, progress, top, SHARD, 600,
+                                  false, true);
+        try (ServerSocket server =
+             new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+            Thread serving = start(() -> coord.serve(server));
+            Thread worker = worker(server);
+            serving.join();
+            worker.join();
+            KeySearch search = new KeySearch(CONFIG, TEXT);
+            List<Candidate> expected =
+                search.search(0, search.keySpace().size(), top);
+            assertEquals(top, expected.size());
+            assertEquals(expected, coord.results());
+            coord.best().save(saved);
+            assertEquals(expected, TopKeys.load(saved).candidates(top));
+
+            SearchCoordinator restarted =
+                new SearchCoordinator(CONFIG, TEXT, progress, top, SHARD,
+                                      600, false, true);
+            assertTrue(restarted.finished());
+            assertEquals(expected, restarted.results());
+        } finally {
+            progress.delete();
+            saved.delete();
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        File progress = File.createTempFile("search", ".progress");
+        File corpus = File.createTempFile("search", ".corpus");
+        progress.delete();
+        try {
+            Files.writeString(corpus.toPath(),
+                              "* B Beta I II III AAA\nTHE QUICK BROWN FOX "
+                              + "JUMPS OVER THE LAZY DOG\n");
+            CorpusStats stats = new CorpusStats(new Alphabet(), 1);
+            stats.add(Arrays.asList(corpus));
+            SearchCoordinator coord = coordinator(progress, 600);
+            coord.setStatistics(stats);
+            try (ServerSocket server =
+                 new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+                Thread serving = start(() -> coord.serve(server));
+                Thread worker = worker(server);
+                serving.join();
+                worker.join();
+            }
+            KeySearch search = new KeySearch(CONFIG, TEXT);
+            search.setStatistics(stats);
+            assertEquals(search.search(0, search.keySpace().size(), TOP),
+                         coord.results());
+            assertTrue(coord.results().get(0).score() < 0);
+        } finally {
+            progress.delete();
+            corpus.delete();
+        }
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        File progress = File.createTempFile("search", ".progress");
+        progress.delete();
+        HashSet<String> done = new HashSet<>();
+        try {
+            SearchCoordinator first = coordinator(progress, 600);
+            try (ServerSocket server =
+                 new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+                start(() -> first.serve(server));
+                try (Client client = new Client(server)) {
+                    String[] lease = client.lease();
+                    for (int n = 0; n < 2; n += 1) {
+                        client.search(lease);
+                        done.add(lease[1]);
+                        lease = client.lease();
+                    }
+                }
+            }
+            assertFalse(first.finished());
+            assertTrue(progress.isFile());
+
+            SearchCoordinator second = coordinator(progress, 600);
+            assertFalse(second.finished());
+            try (ServerSocket server =
+                 new ServerSocket(0, 0, InetAddress.getLoopbackAddress())) {
+                Thread serving = start(() -> second.serve(server));
+                List<String> leased = new ArrayList<>();
+                try (Client client = new Client(server)) {
+                    for (String[] lease = client.lease();
+                         lease[0].equals("SHARD"); lease = client.lease()) {
+                        leased.add(lease[1]);
+                        client.search(lease);
+                    }
+                }
+                serving.join();
+                assertEquals(6 - done.size(), leased.size());
+                for (String shard : leased) {
+                    assertFalse(done.contains(shard));
+                }
+                assertEquals(expected(), second.results());
+            }
+        } finally {
+            progress.delete();
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** A worker process for a distributed key search.  Connects to a
+ *  SearchCoordinator, receives the configuration, ciphertext, pruning
+ *  tolerance, whether ring settings are searched and candidates kept off
+ *  the Java heap, and any crib and bigram counts, and then searches the
+ *  shards leased to it with all local processors, reporting the best
+ *  keys of each shard.
+ *  @author Divya Sivanandan
+ */
+public final class SearchWorker {
+
+    /** Run a worker for the coordinator at host ARGS[0], port ARGS[1]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("usage: SearchWorker HOST PORT");
+            }
+            int port;
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad port %s", args[1]);
+            }
+            try (Socket socket = new Socket(args[0], port)) {
+                new SearchWorker(socket).run();
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A worker talking to the coordinator over SOCKET. */
+    SearchWorker(Socket socket) throws IOException {
+        _in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(),
+                                  StandardCharsets.UTF_8));
+        _out = new PrintWriter(
+            new OutputStreamWriter(socket.getOutputStream(),
+                                   StandardCharsets.UTF_8));
+    }
+
+    /** Read the job and search leased shards until told that the search
+     *  is done. */
+    void run() throws IOException {
+        String[] job = expect("JOB")[1].split(" ");
+        int top = Integer.parseInt(job[0]);
+        double tolerance =
+            job.length > 1 ? Double.parseDouble(job[1]) : Double.NaN;
+        boolean rings = job.length > 2 && Boolean.parseBoolean(job[2]);
+        boolean offHeap = job.length > 3 && Boolean.parseBoolean(job[3]);
+        int lines = Integer.parseInt(expect("CONFIG")[1]);
+        StringBuilder config = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            if (i > 0) {
+                config.append('\n');
+            }
+            config.append(readLine());
+        }
+        String[] text = expect("TEXT");
+        KeySearch search = new KeySearch(config.toString(),
+                                         text.length > 1 ? text[1] : "",
+                                         rings);
+        search.setPruning(tolerance);
+        search.setOffHeap(offHeap);
+        String[] crib = expect("CRIB");
+        if (crib.length > 1 && !crib[1].isEmpty()) {
+            search.setCrib(crib[1]);
+        }
+        String[] bigrams = expect("BIGRAMS");
+        if (bigrams.length > 1 && !bigrams[1].isEmpty()) {
+            search.setBigrams(Arrays.stream(bigrams[1].split(" "))
+                              .mapToLong(Long::parseLong).toArray());
+        }
+        while (true) {
+            _out.println("LEASE");
+            _out.flush();
+            String[] reply = readLine().split(" ");
+            switch (reply[0]) {
+            case "SHARD":
+                List<Candidate> best =
+                    search.search(Long.parseLong(reply[2]),
+                                  Long.parseLong(reply[3]), top);
+                for (Candidate c : best) {
+                    _out.printf("RESULT %s %d %s%n", reply[1], c.key(),
+                                Double.toString(c.score()));
+                }
+                _out.printf("COMPLETE %s%n", reply[1]);
+                break;
+            case "WAIT":
+                try {
+                    Thread.sleep(Long.parseLong(reply[1]));
+                } catch (InterruptedException excp) {
+                    return;
+                }
+                break;
+            case "DONE":
+                return;
+            default:
+                throw error("unexpected reply from coordinator: %s",
+                            reply[0]);
+            }
+        }
+    }
+
+    /** Return the words of the next line from the coordinator, which
+     *  must start with KEYWORD. */
+    private String[] expect(String keyword) throws IOException {
+        String[] words = readLine().split(" ", 2);
+        if (!words[0].equals(keyword)) {
+            throw error("expected %s from coordinator", keyword);
+        }
+        return words;
+    }
+
+    /** Return the next line from the coordinator. */
+    private String readLine() throws IOException {
+        String line = _in.readLine();
+        if (line == null) {
+            throw error("coordinator closed the connection");
+        }
+        return line;
+    }
+
+    /** Messages from the coordinator. */
+    private final BufferedReader _in;
+
+    /** Messages to the coordinator. */
+    private final PrintWriter _out;
+
+}
@@ -0,0 +1,273 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static enigma.EnigmaException.*;
+
+/** A sidecar index of a message file, allowing any segment or range of
+ *  lines to be decrypted without processing what precedes it.  It holds
+ *  the offset and settings line of every segment and, at intervals of
+ *  about INTERVAL bytes, checkpoints: the offset of a line and the
+ *  positions of the rotors just before it.  Decryption from an offset
+ *  starts at the nearest segment or checkpoint before it, so its cost is
+ *  proportional to the range decrypted plus at most INTERVAL.
+ *
+ *  The index is a text file, by default the input file's name followed
+ *  by ".idx":
+ *      enigma-index 1
+ *      input LENGTH MODIFIED
+ *      S OFFSET SETTINGS-LINE
+ *      P OFFSET SEGMENT POSITION,POSITION,...
+ *  with an S line per segment and a P line per checkpoint, in input
+ *  order.  LENGTH and MODIFIED describe the input file when it was
+ *  indexed; an index that does not match its file is rejected.
+ *  @author Divya Sivanandan
+ */
+final class SegmentIndex {
+
+    /** Approximate input bytes between checkpoints. */
+    static final long INTERVAL = 1 << 16;
+
+    /** Where decryption from some offset should start. */
+    static final class Start {
+        /** A start at OFFSET in segment SEGMENT, with the rotors at
+         *  POSITIONS, or at the segment's settings line if POSITIONS is
+         *  null. */
+        Start(long offset, int segment, int[] positions) {
+            _offset = offset;
+            _segment = segment;
+            _positions = positions;
+        }
+
+        /** Return the offset of the line to start at. */
+        long offset() {
+            return _offset;
+        }
+
+        /** Return the number of the segment containing it. */
+        int segment() {
+            return _segment;
+        }
+
+        /** Return true iff it is the settings line of segment(). */
+        boolean atSettings() {
+            return _positions == null;
+        }
+
+        /** Set the rotors of M, already set up for segment(), to their
+         *  positions at this start, which must not be atSettings(). */
+        void restore(Machine M) {
+            for (int k = 0; k < _positions.length; k += 1) {
+                M.setRotor(k + 1, _positions[k]);
+            }
+        }
+
+        /** Offset of the line. */
+        private final long _offset;
+        /** Segment of the line. */
+        private final int _segment;
+        /** Rotor positions, slots 1 and up, or null. */
+        private final int[] _positions;
+    }
+
+    /** An empty index of FILE as it is now. */
+    private SegmentIndex(File file) {
+        _length = file.length();
+        _modified = file.lastModified();
+    }
+
+    /** Return the default index file of INPUT. */
+    static File indexFile(File input) {
+        return new File(input.getPath() + ".idx");
+    }
+
+    /** Return an index of INPUT, made by running M, which must convert
+     *  bytes, over it, with settings lines applied by SETUP. */
+    static SegmentIndex build(File input, Machine M,
+                              BiConsumer<Machine, String> setUp) {
+        SegmentIndex index = new SegmentIndex(input);
+        long[] line = { 0, -INTERVAL };
+        try (FileChannel in = FileChannel.open(input.toPath(),
+                                               StandardOpenOption.READ)) {
+            ByteProcessor scan =
+                new ByteProcessor(in, null, M, (machine, settings) -> {
+                    setUp.accept(machine, settings);
+                    index._segmentOffsets.add(line[0]);
+                    index._settings.add(settings);
+                    line[1] = line[0];
+                });
+            scan.setRange(0, Long.MAX_VALUE, Long.MAX_VALUE);
+            scan.setLineListener((offset) -> {
+                line[0] = offset;
+                if (offset - line[1] >= INTERVAL
+                    && !index._settings.isEmpty()) {
+                    index.addCheckpoint(offset, M);
+                    line[1] = offset;
+                }
+            });
+            if (!scan.run()) {
+                throw error("No input");
+            }
+        } catch (IOException excp) {
+            throw error("could not read %s", input);
+        }
+        return index;
+    }
+
+    /** Record a checkpoint at OFFSET, with the rotors as they are in M. */
+    private void addCheckpoint(long offset, Machine M) {
+        int[] positions = new int[M.getRotorsUsed().size() - 1];
+        for (int k = 0; k < positions.length; k += 1) {
+            positions[k] = M.getRotorsUsed().get(k + 1).setting();
+        }
+        _checkpoints.add(new Start(offset, _settings.size() - 1, positions));
+    }
+
+    /** Write me to FILE, atomically. */
+    void save(File file) {
+        StringBuilder text = new StringBuilder();
+        text.append(MAGIC).append('\n');
+        text.append("input ").append(_length).append(' ')
+            .append(_modified).append('\n');
+        int c = 0;
+        for (int s = 0; s < segments(); s += 1) {
+            text.append("S ").append(_segmentOffsets.get(s)).append(' ')
+                .append(_settings.get(s)).append('\n');
+            for (; c < _checkpoints.size()
+                     && _checkpoints.get(c).segment() == s; c += 1) {
+                Start p = _checkpoints.get(c);
+                text.append("P ").append(p.offset()).append(' ')
+                    .append(s).append(' ');
+                for (int k = 0; k < p._positions.length; k += 1) {
+                    text.append(k == 0 ? "" : ",").append(p._positions[k]);
+                }
+                text.append('\n');
+            }
+        }
+        AtomicFile.write(file, text.toString());
+    }
+
+    /** Return the index in FILE of INPUT, checking that INPUT has not
+     *  changed since it was indexed. */
+    static SegmentIndex load(File file, File input) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("no index %s; make one with --index", file);
+        }
+        SegmentIndex index = new SegmentIndex(input);
+        try {
+            String[] header = lines.get(1).split(" ");
+            if (!lines.get(0).equals(MAGIC) || !header[0].equals("input")) {
+                throw error("%s is not an index", file);
+            }
+            if (Long.parseLong(header[1]) != index._length
+                || Long.parseLong(header[2]) != index._modified) {
+                throw error("index %s is out of date", file);
+            }
+            for (String line : lines.subList(2, lines.size())) {
+                String[] fields = line.split(" ", 3);
+                if (fields[0].equals("S")) {
+                    index._segmentOffsets.add(Long.parseLong(fields[1]));
+                    index._settings.add(fields[2]);
+                } else if (fields[0].equals("P")) {
+                    String[] rest = fields[2].split(" ");
+                    String[] posns = rest[1].split(",");
+                    int[] positions = new int[posns.length];
+                    for (int k = 0; k < positions.length; k += 1) {
+                        positions[k] = Integer.parseInt(posns[k]);
+                    }
+                    index._checkpoints.add(
+                        new Start(Long.parseLong(fields[1]),
+                                  Integer.parseInt(rest[0]), positions));
+                } else {
+                    throw error("%s is not an index", file);
+                }
+            }
+        } catch (IndexOutOfBoundsException | NumberFormatException excp) {
+            throw error("%s is not an index", file);
+        }
+        return index;
+    }
+
+    /** Return the number of segments. */
+    int segments() {
+        return _segmentOffsets.size();
+    }
+
+    /** Return the offset of the settings line of segment K. */
+    long segmentOffset(int k) {
+        if (k < 0 || k >= segments()) {
+            throw error("no segment %d", k);
+        }
+        return _segmentOffsets.get(k);
+    }
+
+    /** Return the settings line of segment K. */
+    String settings(int k) {
+        segmentOffset(k);
+        return _settings.get(k);
+    }
+
+    /** Return the latest place at or before OFFSET from which decryption
+     *  can start. */
+    Start start(long offset) {
+        int s = lastAtOrBefore(_segmentOffsets, offset);
+        if (s < 0) {
+            s = 0;
+        }
+        int lo = 0, hi = _checkpoints.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_checkpoints.get(mid).offset() <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo > 0 && _checkpoints.get(lo - 1).segment() == s) {
+            return _checkpoints.get(lo - 1);
+        }
+        return new Start(segmentOffset(s), s, null);
+    }
+
+    /** Return the index of the last of the increasing OFFSETS that is at
+     *  most OFFSET, or -1. */
+    private static int lastAtOrBefore(List<Long> offsets, long offset) {
+        int lo = 0, hi = offsets.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (offsets.get(mid) <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /** First line of an index file. */
+    private static final String MAGIC = "enigma-index 1";
+
+    /** Length and modification time of the input file. */
+    private final long _length, _modified;
+
+    /** Offset of the settings line of each segment. */
+    private final ArrayList<Long> _segmentOffsets = new ArrayList<>();
+
+    /** Settings line of each segment. */
+    private final ArrayList<String> _settings = new ArrayList<>();
+
+    /** Checkpoints, in input order. */
+    private final ArrayList<Start> _checkpoints = new ArrayList<>();
+
+}
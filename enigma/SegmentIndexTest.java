@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SegmentIndex class.
+ *  @author Divya Sivanandan
+ */
+public class SegmentIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Sets up a naval machine from a settings line "* KEY". */
+    private static final BiConsumer<Machine, String> SETUP = (M, line) ->
+        new KeySpace(M).apply(Long.parseLong(line.substring(2)), M);
+
+    /** Return the output of processing FILE from offset FROM to TO,
+     *  starting at START. */
+    private String process(File file, SegmentIndex.Start start, long from,
+                           long to, SegmentIndex index) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Machine M = navalMachine();
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            in.position(start.offset());
+            ByteProcessor processor =
+                new ByteProcessor(in, Channels.newChannel(bytes), M, SETUP);
+            processor.setRange(start.offset(), from, to);
+            if (start.atSettings()) {
+                processor.run();
+            } else {
+                SETUP.accept(M, index.settings(start.segment()));
+                start.restore(M);
+                processor.resume(index.settings(start.segment()));
+            }
+        }
+        return bytes.toString();
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        Random random = new Random(36);
+        StringBuilder text = new StringBuilder();
+        for (int s = 0; s < 3; s += 1) {
+            text.append("* ").append(random.nextInt(1 << 20)).append('\n');
+            for (int n = 0; n < 3000; n += 1) {
+                for (int k = random.nextInt(60); k >= 0; k -= 1) {
+                    text.append(UPPER.toChar(random.nextInt(26)));
+                }
+                text.append('\n');
+            }
+        }
+        File file = File.createTempFile("segments", ".in");
+        Files.writeString(file.toPath(), text);
+        File indexFile = SegmentIndex.indexFile(file);
+        SegmentIndex.build(file, navalMachine(), SETUP).save(indexFile);
+        SegmentIndex index = SegmentIndex.load(indexFile, file);
+        assertEquals(3, index.segments());
+        SegmentIndex.Start whole = index.start(0);
+        assertTrue(whole.atSettings());
+        String[] all = process(file, whole, 0, Long.MAX_VALUE, index)
+            .split(System.lineSeparator());
+        String[] lines = text.toString().split("\n");
+        long[] starts = new long[lines.length];
+        int[] outputs = new int[lines.length];
+        for (int i = 1, out = 0; i < lines.length; i += 1) {
+            starts[i] = starts[i - 1] + lines[i - 1].length() + 1;
+            outputs[i] = lines[i].startsWith("*") ? out : out++;
+        }
+        for (int t = 0; t < 20; t += 1) {
+            int i = 1 + random.nextInt(lines.length - 1);
+            int j = Math.min(lines.length - 1, i + random.nextInt(300));
+            SegmentIndex.Start start = index.start(starts[i]);
+            assertTrue(start.offset() <= starts[i]);
+            assertTrue(starts[i] - start.offset()
+                       < SegmentIndex.INTERVAL + 100);
+            String expected = "";
+            for (int k = outputs[i]; k < outputs[j]; k += 1) {
+                expected += all[k] + System.lineSeparator();
+            }
+            assertEquals(expected,
+                         process(file, start, starts[i], starts[j], index));
+        }
+        file.delete();
+        indexFile.delete();
+    }
+
+}
@@ -0,0 +1,392 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** The whole substitution of a machine at every state of its moving
+ *  rotors, precomputed for one configuration and kept in a file that
+ *  any number of processes map read-only and so share through the page
+ *  cache.  A configuration is everything a settings line sets other than
+ *  the positions of the moving rotors (see Machine.configurationKey), so
+ *  one table serves every message key under the same daily key.
+ *
+ *  The state of the moving rotors, leftmost first, is a number in base
+ *  |alphabet|.  The file, big-endian, holds
+ *      MAGIC, HEADER (length of what follows up to the records),
+ *      KEY (modified UTF-8), SIZE, MOVING, the slot of each moving rotor,
+ *      ROWS,
+ *  then a record for each of the ROWS states: the state the machine
+ *  steps to from it, as an int, and the SIZE bytes giving the
+ *  conversion of each character there, plugboard included.  Converting
+ *  a character then costs two loads from the same record, with no
+ *  stepping logic and nothing to build in the converting process.
+ *
+ *  Tables are named after the checksum of the configuration file (see
+ *  EngineSelector.checksum) and of the key, so files in one directory
+ *  can serve several configuration files.
+ *  @author Divya Sivanandan
+ */
+public final class StateTable {
+
+    /** Write state tables as specified by ARGS, which are
+     *      CONFIG DIR SETTINGS...
+     *  for the configuration file CONFIG into the directory DIR, one for
+     *  each settings line SETTINGS, unless DIR already has it.  Prints the
+     *  name of each table. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("usage: StateTable CONFIG DIR SETTINGS...");
+            }
+            File config = new File(args[0]), dir = new File(args[1]);
+            String checksum = EngineSelector.checksum(config);
+            dir.mkdirs();
+            for (int k = 2; k < args.length; k += 1) {
+                Machine M;
+                try (Scanner in = Main.open(config)) {
+                    M = Main.configure(in);
+                }
+                Main.configure(M, args[k]);
+                File file = file(dir, checksum, M);
+                if (!file.isFile() || !open(file).matches(M)) {
+                    write(M, file);
+                }
+                System.out.println(file);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return true iff the current configuration of M, whose rotors have
+     *  been inserted, can be tabulated: it can be compiled (see
+     *  CompiledMachine.supports) and its table is at most MAX_BYTES
+     *  long. */
+    static boolean supports(Machine M) {
+        return CompiledMachine.supports(M)
+            && rows(M.alphabet().size(), movingSlots(M).length)
+               * (M.alphabet().size() + NEXT_BYTES) <= MAX_BYTES;
+    }
+
+    /** Return the file in DIR holding the table of the current
+     *  configuration of M, configured from a file with checksum
+     *  CHECKSUM. */
+    static File file(File dir, String checksum, Machine M) {
+        CRC32 crc = new CRC32();
+        crc.update(M.configurationKey().getBytes(StandardCharsets.UTF_8));
+        return new File(dir, String.format("%s-%08x.tab", checksum,
+                                           crc.getValue()));
+    }
+
+    /** Write the table of the current configuration of M, which must
+     *  satisfy supports(M), to FILE, streaming its records to a temporary
+     *  file that then replaces FILE, so that a table is never held in
+     *  memory.  The positions of the rotors of M are restored
+     *  afterwards. */
+    static void write(Machine M, File file) {
+        if (!supports(M)) {
+            throw error("cannot tabulate this configuration");
+        }
+        ArrayList<Rotor> used = M.getRotorsUsed();
+        int size = M.alphabet().size();
+        int[] slots = movingSlots(M);
+        int rows = (int) rows(size, slots.length);
+        int[] saved = new int[slots.length];
+        for (int j = 0; j < slots.length; j += 1) {
+            saved[j] = used.get(slots[j]).setting();
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream head = new DataOutputStream(header)) {
+            head.writeUTF(M.configurationKey());
+            head.writeInt(size);
+            head.writeInt(slots.length);
+            for (int slot : slots) {
+                head.writeInt(slot);
+            }
+            head.writeInt(rows);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+        try {
+            AtomicFile.write(file, stream -> {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeLong(MAGIC);
+                out.writeInt(header.size());
+                header.writeTo(out);
+                byte[] record = new byte[size];
+                for (int r = 0; r < rows; r += 1) {
+                    int next = 0;
+                    for (int c = 0; c < size; c += 1) {
+                        setState(used, slots, size, r);
+                        record[c] = (byte) M.convert(c);
+                        if (c == 0) {
+                            next = state(used, slots, size);
+                        }
+                    }
+                    out.writeInt(next);
+                    out.write(record);
+                }
+                out.flush();
+            });
+        } finally {
+            for (int j = 0; j < slots.length; j += 1) {
+                used.get(slots[j]).set(saved[j]);
+            }
+        }
+    }
+
+    /** Return the table in FILE, mapped read-only. */
+    static StateTable open(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw error("%s is not a state table", file);
+            }
+            return new StateTable(in.map(FileChannel.MapMode.READ_ONLY, 0,
+                                         in.size()), file);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** The table held in DATA, read from FILE. */
+    private StateTable(MappedByteBuffer data, File file) {
+        try {
+            if (data.limit() < PREFIX_BYTES || data.getLong(0) != MAGIC) {
+                throw error("%s is not a state table", file);
+            }
+            byte[] header = new byte[data.getInt(Long.BYTES)];
+            data.position(PREFIX_BYTES);
+            data.get(header);
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(header));
+            _key = in.readUTF();
+            _size = in.readInt();
+            _slots = new int[in.readInt()];
+            for (int j = 0; j < _slots.length; j += 1) {
+                _slots[j] = in.readInt();
+            }
+            int rows = in.readInt();
+            _base = PREFIX_BYTES + header.length;
+            _record = NEXT_BYTES + _size;
+            if (data.limit() != _base + (long) rows * _record) {
+                throw error("%s is truncated", file);
+            }
+        } catch (IOException | RuntimeException excp) {
+            if (excp instanceof EnigmaException) {
+                throw (EnigmaException) excp;
+            }
+            throw error("%s is not a state table", file);
+        }
+        _data = data;
+        _rotors = null;
+        _alphabet = null;
+    }
+
+    /** A table converting with M, sharing the mapped data of SHARED,
+     *  which must match M. */
+    StateTable(StateTable shared, Machine M) {
+        if (!shared.matches(M)) {
+            throw error("state table is for another configuration");
+        }
+        _data = shared._data;
+        _key = shared._key;
+        _size = shared._size;
+        _slots = shared._slots;
+        _base = shared._base;
+        _record = shared._record;
+        _alphabet = M.alphabet();
+        _rotors = new Rotor[_slots.length];
+        for (int j = 0; j < _slots.length; j += 1) {
+            _rotors[j] = M.getRotorsUsed().get(_slots[j]);
+        }
+    }
+
+    /** Return true iff I tabulate the current configuration of M. */
+    boolean matches(Machine M) {
+        return M.alphabet().size() == _size
+            && M.getRotorsUsed().size() == M.numRotors()
+            && M.plugboard() != null
+            && _key.equals(M.configurationKey());
+    }
+
+    /** Return the conversion of MSG, skipping whitespace, exactly as
+     *  Machine.convert(String) would, and advance the rotors. */
+    String convert(String msg) {
+        char[] text = msg.toCharArray();
+        return new String(text, 0, convert(text, 0, text.length, text, 0));
+    }
+
+    /** Convert the characters IN[FROM .. TO - 1], skipping whitespace,
+     *  into OUT, which may be IN, starting at OUTPOS, exactly as
+     *  Machine.convert(char[], int, int, char[], int) would.  Returns the
+     *  number of characters written. */
+    int convert(char[] in, int from, int to, char[] out, int outPos) {
+        if (_text.length < to - from) {
+            _text = new int[Math.max(to - from, 2 * _text.length)];
+        }
+        int len = 0;
+        for (int i = from; i < to; i += 1) {
+            char ch = in[i];
+            if (ch > ' ') {
+                int c = _alphabet.toInt(ch);
+                _text[len] = c < 0 ? _size - 1 : c;
+                len += 1;
+            }
+        }
+        convert(_text, 0, len, _text);
+        for (int i = 0; i < len; i += 1) {
+            out[outPos + i] = _alphabet.toChar(_text[i]);
+        }
+        return len;
+    }
+
+    /** Convert the remaining bytes of IN into OUT exactly as
+     *  Machine.convert(ByteBuffer, ByteBuffer) would, mapping bytes to
+     *  indices by TABLE, as returned by Alphabet.byteIndices.  Returns
+     *  the number of bytes written. */
+    int convert(ByteBuffer in, ByteBuffer out, int[] table) {
+        int n = in.remaining();
+        if (_text.length < n) {
+            _text = new int[Math.max(n, 2 * _text.length)];
+        }
+        int len = 0;
+        for (int i = 0; i < n; i += 1) {
+            int c = table[in.get() & BYTE_MASK];
+            if (c != Alphabet.SKIP) {
+                _text[len] = c;
+                len += 1;
+            }
+        }
+        convert(_text, 0, len, _text);
+        for (int i = 0; i < len; i += 1) {
+            out.put((byte) _alphabet.toChar(_text[i]));
+        }
+        return len;
+    }
+
+    /** Convert the alphabet indices IN[FROM .. TO - 1] into OUT[FROM ..
+     *  TO - 1], which may be IN, advancing the rotors before each. */
+    void convert(int[] in, int from, int to, int[] out) {
+        MappedByteBuffer data = _data;
+        int base = _base, record = _record;
+        int state = 0;
+        for (Rotor r : _rotors) {
+            state = state * _size + r.setting();
+        }
+        for (int i = from; i < to; i += 1) {
+            int at = base + state * record;
+            out[i] = data.get(at + NEXT_BYTES + in[i]) & BYTE_MASK;
+            state = data.getInt(at);
+        }
+        for (int j = _rotors.length - 1; j >= 0; j -= 1) {
+            _rotors[j].set(state % _size);
+            state /= _size;
+        }
+    }
+
+    /** Return the slots of the moving rotors of M, left to right. */
+    private static int[] movingSlots(Machine M) {
+        ArrayList<Rotor> used = M.getRotorsUsed();
+        int first = M.numRotors() - M.numPawls(), count = 0;
+        int[] slots = new int[M.numPawls()];
+        for (int k = first; k < used.size(); k += 1) {
+            if (used.get(k).rotates()) {
+                slots[count] = k;
+                count += 1;
+            }
+        }
+        int[] result = new int[count];
+        System.arraycopy(slots, 0, result, 0, count);
+        return result;
+    }
+
+    /** Return the number of states of MOVING rotors with SIZE
+     *  positions each, or more than MAX_BYTES if that is larger. */
+    private static long rows(int size, int moving) {
+        long rows = 1;
+        for (int j = 0; j < moving && rows <= MAX_BYTES; j += 1) {
+            rows *= size;
+        }
+        return rows;
+    }
+
+    /** Return the state of the rotors in SLOTS of USED, which have SIZE
+     *  positions each. */
+    private static int state(ArrayList<Rotor> used, int[] slots, int size) {
+        int state = 0;
+        for (int slot : slots) {
+            state = state * size + used.get(slot).setting();
+        }
+        return state;
+    }
+
+    /** Set the rotors in SLOTS of USED, which have SIZE positions each,
+     *  to STATE. */
+    private static void setState(ArrayList<Rotor> used, int[] slots,
+                                 int size, int state) {
+        for (int j = slots.length - 1; j >= 0; j -= 1) {
+            used.get(slots[j]).set(state % size);
+            state /= size;
+        }
+    }
+
+    /** Marks a state table file. */
+    private static final long MAGIC = 0x656e69676d615442L;
+
+    /** Bytes of MAGIC and of the length of the header. */
+    private static final int PREFIX_BYTES = Long.BYTES + Integer.BYTES;
+
+    /** Bytes of the next state in a record. */
+    private static final int NEXT_BYTES = Integer.BYTES;
+
+    /** Largest table written. */
+    static final long MAX_BYTES = 1L << 30;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Initial length of _text. */
+    private static final int TEXT_SIZE = 256;
+
+    /** The mapped file. */
+    private final MappedByteBuffer _data;
+
+    /** Configuration tabulated. */
+    private final String _key;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Slots of the moving rotors, left to right. */
+    private final int[] _slots;
+
+    /** Offset of the first record and length of each. */
+    private final int _base, _record;
+
+    /** The alphabet of the machine converting, or null. */
+    private final Alphabet _alphabet;
+
+    /** Rotors of the machine converting in _slots, or null. */
+    private final Rotor[] _rotors;
+
+    /** Working storage for the indices of converted characters. */
+    private int[] _text = new int[TEXT_SIZE];
+
+}
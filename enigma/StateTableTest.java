@@ -0,0 +1,69 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StateTable class.
+ *  @author Divya Sivanandan
+ */
+public class StateTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Settings line of the machines tested. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE QDVA (HQ) (EX) (IP) (TR) (BW)";
+
+    @Test
+    public void testConvert() throws Exception {
+        Machine M = navalMachine();
+        Main.configure(M, SETTINGS);
+        File file = File.createTempFile("states", ".tab");
+        StateTable.write(M, file);
+        assertEquals("AXLE", positions(M));
+        StateTable shared = StateTable.open(file);
+        assertTrue(shared.matches(M));
+
+        Random random = new Random(47);
+        char[] text = new char[20000];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = (char) ('A' + random.nextInt(26));
+        }
+        Machine tabled = navalMachine();
+        Main.configure(tabled, SETTINGS);
+        tabled.setTable(new StateTable(shared, tabled));
+        char[] expected = new char[text.length];
+        char[] actual = new char[text.length];
+        M.convert(text, 0, text.length, expected, 0);
+        tabled.convert(text, 0, text.length, actual, 0);
+        assertEquals(new String(expected), new String(actual));
+        assertEquals(positions(M), positions(tabled));
+
+        Machine other = navalMachine();
+        Main.configure(other, "* B Beta III IV I AXLE QDVB (HQ)");
+        assertFalse(shared.matches(other));
+        Main.configure(other, "* B Beta III IV I AZZZ QDVA (HQ) (EX) (IP) "
+                       + "(TR) (BW)");
+        assertTrue(shared.matches(other));
+        file.delete();
+    }
+
+    /** Return the positions of the rotors of M, leftmost first. */
+    private String positions(Machine M) {
+        StringBuilder result = new StringBuilder();
+        for (int k = 1; k < M.numRotors(); k += 1) {
+            result.append(UPPER.toChar(M.getRotorsUsed().get(k).setting()));
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** The conversion of a stream of text by a Machine, in chunks, shared by
+ *  EnigmaReader, EnigmaWriter and EnigmaChannels.  The machine converts
+ *  each chunk in bulk; the format decides what becomes of whitespace:
+ *      plain        whitespace is dropped, as by Machine.convert.
+ *      whitespace   whitespace is copied through where it occurs.
+ *      grouped      converted letters are written in groups of five
+ *                   separated by spaces, as Main prints them, and
+ *                   whitespace is dropped.
+ *      both         as grouped, but line ends are copied through and
+ *                   start a new run of groups, so each line is grouped
+ *                   as Main would print it.
+ *  A format carries its position in the current run of groups from one
+ *  chunk to the next, so the layout does not depend on how a stream is
+ *  divided into chunks.
+ *  @author Divya Sivanandan
+ */
+final class StreamFormat {
+
+    /** A format converting with M, which must already be set up, that
+     *  groups letters in fives iff GROUP and copies whitespace through
+     *  iff WHITESPACE. */
+    StreamFormat(Machine M, boolean group, boolean whitespace) {
+        _machine = M;
+        _group = group;
+        _whitespace = whitespace;
+    }
+
+    /** Return the most characters or bytes converting N can produce. */
+    static int maxOutput(int n) {
+        return n + n / GROUP + 1;
+    }
+
+    /** Throw an error unless my machine can convert bytes. */
+    void checkBytes() {
+        if (!_machine.convertsBytes()) {
+            throw error("alphabet is not single-byte in the default "
+                        + "charset");
+        }
+    }
+
+    /** Convert IN[FROM .. TO - 1] into OUT, starting at OUTPOS, which
+     *  must have room for maxOutput(TO - FROM) characters.  Returns the
+     *  number of characters written. */
+    int convert(char[] in, int from, int to, char[] out, int outPos) {
+        if (!_group && !_whitespace) {
+            return _machine.convert(in, from, to, out, outPos);
+        }
+        int k = outPos;
+        for (int i = from; i < to; ) {
+            int j = i;
+            while (j < to && !passed(in[j])) {
+                j += 1;
+            }
+            if (!_group) {
+                k += _machine.convert(in, i, j, out, k);
+            } else if (j > i) {
+                if (_chars.length < j - i) {
+                    _chars = new char[Math.max(j - i, 2 * _chars.length)];
+                }
+                int n = _machine.convert(in, i, j, _chars, 0);
+                for (int c = 0; c < n; c += 1) {
+                    if (_run > 0 && _run % GROUP == 0) {
+                        out[k] = ' ';
+                        k += 1;
+                    }
+                    out[k] = _chars[c];
+                    k += 1;
+                    _run += 1;
+                }
+            }
+            if (j < to) {
+                out[k] = in[j];
+                k += 1;
+                _run = 0;
+                j += 1;
+            }
+            i = j;
+        }
+        return k - outPos;
+    }
+
+    /** Convert the remaining bytes of IN, text in the default charset,
+     *  into OUT, which must have room for maxOutput(IN.remaining())
+     *  bytes, advancing the positions of both.  Requires that my machine
+     *  convertsBytes(). */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        if (!_group && !_whitespace) {
+            _machine.convert(in, out);
+            return;
+        }
+        ByteBuffer run = in.duplicate();
+        int to = in.limit();
+        for (int i = in.position(); i < to; ) {
+            int j = i;
+            while (j < to && !passed((char) (in.get(j) & BYTE_MASK))) {
+                j += 1;
+            }
+            run.limit(j).position(i);
+            if (!_group) {
+                _machine.convert(run, out);
+            } else if (j > i) {
+                if (_bytes == null || _bytes.capacity() < j - i) {
+                    _bytes = ByteBuffer.allocate(Math.max(j - i,
+                                                          SCRATCH_SIZE));
+                }
+                _bytes.clear();
+                _machine.convert(run, _bytes);
+                _bytes.flip();
+                while (_bytes.hasRemaining()) {
+                    if (_run > 0 && _run % GROUP == 0) {
+                        out.put((byte) ' ');
+                    }
+                    out.put(_bytes.get());
+                    _run += 1;
+                }
+            }
+            if (j < to) {
+                out.put(in.get(j));
+                _run = 0;
+                j += 1;
+            }
+            i = j;
+        }
+        in.position(to);
+    }
+
+    /** Return true iff CH is copied through rather than converted. */
+    private boolean passed(char ch) {
+        if (!_whitespace || ch > ' ') {
+            return false;
+        }
+        return !_group || ch == '\n' || ch == '\r';
+    }
+
+    /** Letters per output group. */
+    private static final int GROUP = 5;
+
+    /** Mask giving the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Initial size of _chars and _bytes. */
+    private static final int SCRATCH_SIZE = 1 << 12;
+
+    /** The machine. */
+    private final Machine _machine;
+
+    /** True iff letters are grouped. */
+    private final boolean _group;
+
+    /** True iff whitespace, or with grouping line ends, is copied. */
+    private final boolean _whitespace;
+
+    /** Letters written in the current run of groups. */
+    private int _run;
+
+    /** Converted letters awaiting grouping. */
+    private char[] _chars = new char[SCRATCH_SIZE];
+
+    /** Converted bytes awaiting grouping, or null. */
+    private ByteBuffer _bytes;
+
+}
@@ -18,6 +18,56 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a new 5-slot, 3-pawl machine holding all the naval rotors
+     *  of NAVALA, with an identity plugboard and no rotors inserted. */
+    static Machine navalMachine() {
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.put(name, new MovingRotor(name, perm,
+                                                 NAVAL_NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                rotors.put(name, new Reflector(name, perm));
+            } else {
+                rotors.put(name, new FixedRotor(name, perm));
+            }
+        }
+        Machine M = new Machine(UPPER, 5, 3, rotors);
+        M.setPlugboard(new Permutation("", UPPER));
+        return M;
+    }
+
+    /** Return the text of a configuration file describing
+     *  navalMachine(). */
+    static String navalConfig() {
+        StringBuilder config = new StringBuilder(UPPER_STRING + "\n5 3\n");
+        for (String name : NAVALA.keySet()) {
+            config.append(name).append(' ');
+            if (NAVAL_NOTCHES.containsKey(name)) {
+                config.append('M').append(NAVAL_NOTCHES.get(name));
+            } else {
+                config.append(name.equals("B") || name.equals("C") ? 'R'
+                              : 'N');
+            }
+            config.append(' ').append(NAVALA.get(name)).append('\n');
+        }
+        return config.toString();
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
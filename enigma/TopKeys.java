@@ -0,0 +1,323 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static enigma.EnigmaException.*;
+
+/** The best LIMIT keys of a search, by score, kept without boxing.  Each
+ *  searching thread offers keys to its own Heap, a min-heap of (score,
+ *  key) pairs in primitive buffers with the worst kept candidate at its
+ *  root, so an offer that does not make the cut costs one comparison and
+ *  no thread ever waits for another.  When searching is done, results()
+ *  merges the heaps into a single list, best first, ordered as
+ *  Candidates are.
+ *
+ *  For large limits, the heaps can be kept off the Java heap, in direct
+ *  buffers, and the results saved to a file that load() maps back into
+ *  memory, so that millions of candidates can be kept for later
+ *  refinement.  Keys are those of a KeySpace, whose settingsLine turns
+ *  them back into settings lines for Main.
+ *  @author Divya Sivanandan
+ */
+final class TopKeys {
+
+    /** A store of the LIMIT best keys, kept off the Java heap iff
+     *  OFFHEAP. */
+    TopKeys(int limit, boolean offHeap) {
+        if (limit < 0 || limit > MAX_LIMIT) {
+            throw error("cannot keep %d candidates", limit);
+        }
+        _limit = limit;
+        _offHeap = offHeap;
+        _local = ThreadLocal.withInitial(() -> {
+            Heap heap = new Heap(_limit, _offHeap);
+            _heaps.add(heap);
+            return heap;
+        });
+    }
+
+    /** A store of the LIMIT best keys, kept on the Java heap. */
+    TopKeys(int limit) {
+        this(limit, false);
+    }
+
+    /** Return the heap of the calling thread, to which it offers keys. */
+    Heap heap() {
+        return _local.get();
+    }
+
+    /** Return the best keys offered to any of my heaps, best first.  All
+     *  offers must have happened before this call. */
+    Results results() {
+        Heap all = new Heap(_limit, _offHeap);
+        for (Heap heap : _heaps) {
+            heap.offerTo(all);
+        }
+        return all.sorted();
+    }
+
+    /** A bounded min-heap of candidates, for use by one thread. */
+    static final class Heap {
+
+        /** A heap of at most LIMIT candidates, kept off the Java heap iff
+         *  OFFHEAP. */
+        Heap(int limit, boolean offHeap) {
+            _limit = limit;
+            if (offHeap) {
+                _scores = direct(limit).asDoubleBuffer();
+                _keys = direct(limit).asLongBuffer();
+            } else {
+                _scores = DoubleBuffer.allocate(limit);
+                _keys = LongBuffer.allocate(limit);
+            }
+        }
+
+        /** Keep KEY, scoring SCORE, if it is among the best offered. */
+        void offer(long key, double score) {
+            if (_size < _limit) {
+                int i = _size;
+                _size += 1;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!worse(score, key, _scores.get(parent),
+                               _keys.get(parent))) {
+                        break;
+                    }
+                    move(parent, i);
+                    i = parent;
+                }
+                put(i, key, score);
+            } else if (_limit > 0
+                       && worse(_scores.get(0), _keys.get(0), score, key)) {
+                siftDown(0, key, score, _size);
+            }
+        }
+
+        /** Return the number of candidates kept. */
+        int size() {
+            return _size;
+        }
+
+        /** Return my candidates, best first, leaving me as I am. */
+        Results results() {
+            Heap copy = new Heap(_limit, _scores.isDirect());
+            offerTo(copy);
+            return copy.sorted();
+        }
+
+        /** Offer each of my candidates to HEAP. */
+        private void offerTo(Heap heap) {
+            for (int i = 0; i < _size; i += 1) {
+                heap.offer(_keys.get(i), _scores.get(i));
+            }
+        }
+
+        /** Return the lowest score kept, or negative infinity if I am not
+         *  yet full, so that keys scoring less need not be offered. */
+        double threshold() {
+            return _size < _limit ? Double.NEGATIVE_INFINITY
+                : _scores.get(0);
+        }
+
+        /** Place KEY, scoring SCORE, at I, or below it, among the first
+         *  SIZE entries, replacing the entry at I. */
+        private void siftDown(int i, long key, double score, int size) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size
+                    && worse(_scores.get(child + 1), _keys.get(child + 1),
+                             _scores.get(child), _keys.get(child))) {
+                    child += 1;
+                }
+                if (!worse(_scores.get(child), _keys.get(child),
+                           score, key)) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            put(i, key, score);
+        }
+
+        /** Return true iff a candidate of SCORE1 and KEY1 is worse than
+         *  one of SCORE2 and KEY2. */
+        private static boolean worse(double score1, long key1,
+                                     double score2, long key2) {
+            int c = Double.compare(score1, score2);
+            return c < 0 || (c == 0 && key1 > key2);
+        }
+
+        /** Copy the entry at FROM to TO. */
+        private void move(int from, int to) {
+            put(to, _keys.get(from), _scores.get(from));
+        }
+
+        /** Set the entry at I to KEY and SCORE. */
+        private void put(int i, long key, double score) {
+            _keys.put(i, key);
+            _scores.put(i, score);
+        }
+
+        /** Return my candidates, best first, emptying me. */
+        private Results sorted() {
+            int n = _size;
+            for (int end = n - 1; end > 0; end -= 1) {
+                long key = _keys.get(end);
+                double score = _scores.get(end);
+                move(0, end);
+                siftDown(0, key, score, end);
+            }
+            _size = 0;
+            ByteBuffer records = _scores.isDirect() ? direct(2 * n)
+                : ByteBuffer.allocate(n * RECORD)
+                  .order(ByteOrder.nativeOrder());
+            for (int i = 0; i < n; i += 1) {
+                records.putDouble(i * RECORD, _scores.get(i));
+                records.putLong(i * RECORD + Long.BYTES, _keys.get(i));
+            }
+            return new Results(records, n);
+        }
+
+        /** Most candidates kept. */
+        private final int _limit;
+        /** Number kept. */
+        private int _size;
+        /** Scores of the candidates kept, in heap order. */
+        private final DoubleBuffer _scores;
+        /** Their keys. */
+        private final LongBuffer _keys;
+    }
+
+    /** Candidates, best first, in a buffer of (score, key) records. */
+    static final class Results {
+
+        /** The N candidates in RECORDS. */
+        Results(ByteBuffer records, int n) {
+            _records = records;
+            _size = n;
+        }
+
+        /** Return the number of candidates. */
+        int size() {
+            return _size;
+        }
+
+        /** Return the key of candidate I. */
+        long key(int i) {
+            return _records.getLong(i * RECORD + Long.BYTES);
+        }
+
+        /** Return the score of candidate I. */
+        double score(int i) {
+            return _records.getDouble(i * RECORD);
+        }
+
+        /** Return the settings line, as accepted by Main, of candidate I,
+         *  whose key is one of KEYS. */
+        String settingsLine(int i, KeySpace keys) {
+            return keys.settingsLine(key(i));
+        }
+
+        /** Return the first LIMIT candidates, or all if there are fewer,
+         *  as Candidates. */
+        List<Candidate> candidates(int limit) {
+            List<Candidate> result = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, _size); i += 1) {
+                result.add(new Candidate(key(i), score(i)));
+            }
+            return result;
+        }
+
+        /** Write me to FILE, in native byte order, for load(). */
+        void save(File file) {
+            ByteBuffer header =
+                ByteBuffer.allocate(HEADER).order(ByteOrder.nativeOrder());
+            header.putLong(MAGIC).putLong(_size).flip();
+            ByteBuffer records = _records.duplicate();
+            records.clear().limit(_size * RECORD);
+            try (FileChannel out =
+                 FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+                while (records.hasRemaining()) {
+                    out.write(records);
+                }
+            } catch (IOException excp) {
+                throw error("could not write %s", file);
+            }
+        }
+
+        /** Records, RECORD bytes each. */
+        private final ByteBuffer _records;
+        /** Number of records. */
+        private final int _size;
+    }
+
+    /** Return the results saved in FILE by Results.save, mapped into
+     *  memory rather than read. */
+    static Results load(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            ByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY, 0,
+                                    in.size())
+                .order(ByteOrder.nativeOrder());
+            if (in.size() < HEADER || map.getLong(0) != MAGIC
+                || in.size() != HEADER + map.getLong(Long.BYTES) * RECORD) {
+                throw error("%s is not a file of candidates", file);
+            }
+            int n = (int) map.getLong(Long.BYTES);
+            return new Results(map.position(HEADER).slice()
+                               .order(ByteOrder.nativeOrder()), n);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return a direct buffer of N longs in native order. */
+    private static ByteBuffer direct(int n) {
+        return ByteBuffer.allocateDirect(n * Long.BYTES)
+            .order(ByteOrder.nativeOrder());
+    }
+
+    /** Bytes per (score, key) record. */
+    private static final int RECORD = 2 * Long.BYTES;
+
+    /** Bytes of a file's header: MAGIC and the number of records. */
+    private static final int HEADER = 2 * Long.BYTES;
+
+    /** Most candidates that fit one buffer of records. */
+    static final int MAX_LIMIT = (Integer.MAX_VALUE - HEADER) / RECORD;
+
+    /** First bytes of a file of candidates. */
+    private static final long MAGIC = 0x656e69676d61544bL;
+
+    /** Most candidates kept. */
+    private final int _limit;
+
+    /** True iff heaps are kept off the Java heap. */
+    private final boolean _offHeap;
+
+    /** Heaps of all threads that have offered keys. */
+    private final ConcurrentLinkedQueue<Heap> _heaps =
+        new ConcurrentLinkedQueue<>();
+
+    /** Heap of each thread. */
+    private final ThreadLocal<Heap> _local;
+
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.stream.IntStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the TopKeys class.
+ *  @author Divya Sivanandan
+ */
+public class TopKeysTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void testBest() {
+        for (boolean offHeap : new boolean[] { false, true }) {
+            TopKeys best = new TopKeys(100, offHeap);
+            List<Candidate> all = Collections.synchronizedList(
+                new ArrayList<>());
+            IntStream.range(0, 8).parallel().forEach((t) -> {
+                Random random = new Random(t);
+                for (int i = 0; i < 20000; i += 1) {
+                    long key = t * 20000 + i;
+                    double score = random.nextInt(1000) / 10.0;
+                    best.heap().offer(key, score);
+                    all.add(new Candidate(key, score));
+                }
+            });
+            Collections.sort(all);
+            assertEquals(all.subList(0, 100), best.results().candidates(100));
+        }
+    }
+
+    @Test
+    public void testHeapResults() {
+        for (boolean offHeap : new boolean[] { false, true }) {
+            TopKeys.Heap heap = new TopKeys.Heap(50, offHeap);
+            List<Candidate> all = new ArrayList<>();
+            Random random = new Random(43);
+            for (int i = 0; i < 2000; i += 1) {
+                double score = random.nextInt(300) / 10.0;
+                heap.offer(i, score);
+                all.add(new Candidate(i, score));
+            }
+            Collections.sort(all);
+            assertEquals(all.subList(0, 50), heap.results().candidates(50));
+            assertEquals(50, heap.size());
+            assertEquals(all.subList(0, 50), heap.results().candidates(50));
+            assertEquals(all.get(49).score(), heap.threshold(), 0.0);
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Machine M = navalMachine();
+        KeySpace space = new KeySpace(M);
+        TopKeys best = new TopKeys(10, true);
+        Random random = new Random(41);
+        for (int i = 0; i < 1000; i += 1) {
+            best.heap().offer(Math.floorMod(random.nextLong(), space.size()),
+                              random.nextDouble());
+        }
+        TopKeys.Results results = best.results();
+        File file = File.createTempFile("top", ".keys");
+        results.save(file);
+        TopKeys.Results loaded = TopKeys.load(file);
+        assertEquals(10, loaded.size());
+        assertEquals(results.candidates(10), loaded.candidates(10));
+        file.delete();
+
+        String msg = "HELLOWORLD";
+        for (int i = 0; i < loaded.size(); i += 1) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new Main(new Scanner(navalConfig()),
+                     new Scanner(loaded.settingsLine(i, space) + "\n" + msg),
+                     new PrintStream(out)).process();
+            space.apply(loaded.key(i), M);
+            String expected = M.convert(msg);
+            assertEquals(expected.substring(0, 5) + " "
+                         + expected.substring(5), out.toString().trim());
+        }
+    }
+
+}
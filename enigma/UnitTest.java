@@ -11,7 +11,33 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      BanburismusTest.class,
+                                      KeySpaceTest.class,
+                                      BatchEngineTest.class,
+                                      PipelineTest.class,
+                                      CodecsTest.class,
+                                      ByteProcessorTest.class,
+                                      SegmentIndexTest.class,
+                                      CheckpointTest.class,
+                                      FileFollowerTest.class,
+                                      BatchRunnerTest.class,
+                                      EnigmaStreamTest.class,
+                                      TopKeysTest.class,
+                                      KeySearchTest.class,
+                                      CorpusStatsTest.class,
+                                      EquivalenceHarnessTest.class,
+                                      EngineSelectorTest.class,
+                                      StateTableTest.class,
+                                      ZygalskiSheetsTest.class,
+                                      WiringSolverTest.class,
+                                      ResultCacheTest.class,
+                                      CompiledMachineTest.class,
+                                      HistogramTest.class,
+                                      MetricsTest.class,
+                                      CribLocatorTest.class,
+                                      SearchCoordinatorTest.class,
+                                      MainTest.class));
     }
 
 }
@@ -0,0 +1,554 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Recovers the wiring of a rotor from known plaintext.  The rest of the
+ *  machine is known, and so, from the settings lines and the notches of
+ *  the unknown rotor, are the positions of every rotor at each letter.
+ *  Each known letter then says that the unknown wiring Q, entered at
+ *  offset O, carries some X to a letter that the known slots to its
+ *  left, L, send back to Q(Y) for a known Y:
+ *      Q(Y) = L(Q(X) - O) + O.
+ *  Each such constraint links the values of Q at two points through a
+ *  known permutation, and Q must be a permutation.  When the rotor
+ *  sought is the reflector, each known letter instead gives Q at two
+ *  points outright, and Q must be an involution without fixed points.
+ *
+ *  The domain of Q at each point is a bit set, packed in longs, over the
+ *  alphabet, so that large alphabets stay compact.  Constraints are
+ *  propagated to a fixed point: each narrows the domain at one end to
+ *  the image of that at the other, a point whose domain is a single
+ *  value removes it from every other, and a value possible at only one
+ *  point is fixed there.  What propagation leaves open is decided by
+ *  backtracking on the point with the smallest domain, the branches of
+ *  the first levels being explored in parallel.  The permutations L are
+ *  computed once for each position of the slots to the left, so that a
+ *  rightmost unknown rotor costs a table per turnover, not per letter.
+ *  @author Divya Sivanandan
+ */
+public final class WiringSolver {
+
+    /** Recover a wiring as specified by ARGS, which are
+     *      CONFIG ROTOR PAIRS
+     *  for the rotor named ROTOR of the configuration file CONFIG, whose
+     *  wiring there is only a placeholder (such as none), from the file
+     *  PAIRS of known text.  That holds, for each message, its settings
+     *  line, a line of plaintext and a line of ciphertext.  Prints the
+     *  rotor's line of a configuration file. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3) {
+                throw error("usage: WiringSolver CONFIG ROTOR PAIRS");
+            }
+            File config = new File(args[0]);
+            Machine M;
+            String type = null;
+            try {
+                String text = Codecs.read(config);
+                M = Main.configure(new Scanner(text));
+                for (String line : text.split("\\R")) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words.length > 1 && words[0].equals(args[1])) {
+                        type = words[1];
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("could not open %s", args[0]);
+            }
+            WiringSolver solver = new WiringSolver(M, args[1]);
+            try (Scanner pairs = Main.open(new File(args[2]))) {
+                ArrayList<String> lines = new ArrayList<>();
+                while (pairs.hasNextLine()) {
+                    String line = pairs.nextLine();
+                    if (!line.trim().isEmpty()) {
+                        lines.add(line);
+                    }
+                }
+                if (lines.size() % 3 != 0) {
+                    throw error("known text needs a settings line, a "
+                                + "plaintext and a ciphertext per message");
+                }
+                for (int k = 0; k < lines.size(); k += 3) {
+                    solver.add(lines.get(k), lines.get(k + 1),
+                               lines.get(k + 2));
+                }
+            }
+            List<Permutation> solutions = solver.solve(2);
+            if (solutions.isEmpty()) {
+                throw error("no wiring of %s fits the known text", args[1]);
+            } else if (solutions.size() > 1) {
+                System.err.printf("the known text does not determine the "
+                                  + "wiring of %s; one of them is%n",
+                                  args[1]);
+            }
+            System.out.printf(" %s %s %s%n", args[1], type,
+                              cycles(solutions.get(0)));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A solver for the wiring of the rotor named ROTOR available to M,
+     *  whose other rotors and alphabet are known. */
+    WiringSolver(Machine M, String rotor) {
+        if (!M.checkRotorAvailable(rotor)) {
+            throw error("Rotor not available");
+        }
+        _machine = M;
+        _rotor = M.getAllRotors().get(rotor);
+        _alphabet = M.alphabet();
+        _size = _alphabet.size();
+        _words = (_size + Long.SIZE - 1) / Long.SIZE;
+        _reflecting = _rotor.reflecting();
+    }
+
+    /** Add the constraints of the known text PLAIN, enciphered as CIPHER
+     *  by a machine set up by the settings line SETTINGS, which must use
+     *  my rotor.  Whitespace is ignored. */
+    void add(String settings, String plain, String cipher) {
+        Main.configure(_machine, settings);
+        ArrayList<Rotor> used = _machine.getRotorsUsed();
+        int slot = used.indexOf(_rotor);
+        if (slot < 0) {
+            throw error("%s does not use rotor %s", settings,
+                        _rotor.name());
+        }
+        plain = plain.replaceAll("\\s", "");
+        cipher = cipher.replaceAll("\\s", "");
+        if (plain.length() != cipher.length()) {
+            throw error("plaintext and ciphertext differ in length");
+        }
+        Permutation plug = _machine.plugboard();
+        for (int i = 0; i < plain.length(); i += 1) {
+            int p = _alphabet.toInt(plain.charAt(i)),
+                c = _alphabet.toInt(cipher.charAt(i));
+            if (p < 0 || c < 0) {
+                throw error("invalid character in known text");
+            }
+            _machine.step(1);
+            int a = right(used, slot, plug.wrap(plug.permute(p))),
+                b = right(used, slot, plug.wrap(plug.permute(c)));
+            if (slot == 0 && a == b) {
+                throw error("reflector %s cannot send %c to itself",
+                            _rotor.name(), _alphabet.toChar(a));
+            }
+            _letters += 1;
+            if (slot == 0) {
+                _fixed.add(new int[] { a, b });
+                _fixed.add(new int[] { b, a });
+                continue;
+            }
+            if (_constraints == _from.length) {
+                int length = Math.max(INITIAL_CONSTRAINTS, 2 * _from.length);
+                _from = Arrays.copyOf(_from, length);
+                _to = Arrays.copyOf(_to, length);
+                _offset = Arrays.copyOf(_offset, length);
+            }
+            int offset = wrap(_rotor.setting() - _rotor.ring());
+            _from[_constraints] = wrap(a + offset);
+            _to[_constraints] = wrap(b + offset);
+            _offset[_constraints] = offset;
+            _constraints += 1;
+            _left.add(left(used, slot));
+        }
+    }
+
+    /** Return the number of known letters added. */
+    int letters() {
+        return _letters;
+    }
+
+    /** Return up to LIMIT wirings of my rotor that fit every known
+     *  letter, as permutations of my alphabet.  If fewer than LIMIT are
+     *  returned, they are all there are. */
+    List<Permutation> solve(int limit) {
+        int n = _constraints;
+        int[] degree = new int[_size];
+        for (int k = 0; k < n; k += 1) {
+            degree[_from[k]] += 1;
+            degree[_to[k]] += 1;
+        }
+        _adjacent = new int[_size][];
+        for (int x = 0; x < _size; x += 1) {
+            _adjacent[x] = new int[degree[x]];
+        }
+        for (int k = 0; k < n; k += 1) {
+            int x = _from[k], y = _to[k];
+            _adjacent[x][--degree[x]] = k;
+            _adjacent[y][--degree[y]] = k;
+        }
+        long[] domains = new long[_size * _words];
+        for (int x = 0; x < _size; x += 1) {
+            for (int v = 0; v < _size; v += 1) {
+                set(domains, x, v);
+            }
+            if (_reflecting) {
+                clear(domains, x, x);
+            }
+        }
+        for (int[] fixed : _fixed) {
+            if (!get(domains, fixed[0], fixed[1])) {
+                return Collections.emptyList();
+            }
+            single(domains, fixed[0], fixed[1]);
+        }
+        List<Permutation> result =
+            Collections.synchronizedList(new ArrayList<>());
+        if (propagate(domains, IntStream.range(0, _size).toArray())) {
+            search(domains, 0, limit, result);
+        }
+        return new ArrayList<>(result.subList(0, Math.min(limit,
+                                                          result.size())));
+    }
+
+    /** Add to RESULT the wirings, up to LIMIT in all, within DOMAINS,
+     *  which has been propagated, branching in parallel iff DEPTH is
+     *  less than PARALLEL_DEPTH. */
+    private void search(long[] domains, int depth, int limit,
+                        List<Permutation> result) {
+        int best = -1, smallest = Integer.MAX_VALUE;
+        for (int x = 0; x < _size; x += 1) {
+            int count = count(domains, x);
+            if (count > 1 && count < smallest) {
+                best = x;
+                smallest = count;
+            }
+        }
+        if (best < 0) {
+            int[] wiring = new int[_size];
+            for (int x = 0; x < _size; x += 1) {
+                wiring[x] = first(domains, x);
+            }
+            result.add(permutation(wiring));
+            return;
+        }
+        int x = best;
+        int[] values = values(domains, x);
+        IntStream branches = IntStream.of(values);
+        if (depth < PARALLEL_DEPTH) {
+            branches = branches.parallel();
+        }
+        branches.forEach((v) -> {
+            if (result.size() >= limit) {
+                return;
+            }
+            long[] branch = domains.clone();
+            single(branch, x, v);
+            if (propagate(branch, new int[] { x })) {
+                search(branch, depth + 1, limit, result);
+            }
+        });
+    }
+
+    /** Narrow DOMAINS to a fixed point of the constraints, starting from
+     *  the points in CHANGED.  Returns false iff some domain becomes
+     *  empty. */
+    private boolean propagate(long[] domains, int[] changed) {
+        int[] stack = new int[_size];
+        boolean[] queued = new boolean[_size];
+        int top = 0;
+        for (int x : changed) {
+            if (!queued[x]) {
+                queued[x] = true;
+                stack[top++] = x;
+            }
+        }
+        long[] image = new long[_words];
+        while (true) {
+            while (top > 0) {
+                int x = stack[--top];
+                queued[x] = false;
+                int count = count(domains, x);
+                if (count == 0) {
+                    return false;
+                }
+                if (count == 1) {
+                    int v = first(domains, x);
+                    if (_reflecting) {
+                        if (!get(domains, v, x)) {
+                            return false;
+                        } else if (count(domains, v) > 1) {
+                            single(domains, v, x);
+                            if (!queued[v]) {
+                                queued[v] = true;
+                                stack[top++] = v;
+                            }
+                        }
+                    }
+                    for (int y = 0; y < _size; y += 1) {
+                        if (y != x && get(domains, y, v)) {
+                            clear(domains, y, v);
+                            if (!queued[y]) {
+                                queued[y] = true;
+                                stack[top++] = y;
+                            }
+                        }
+                    }
+                }
+                for (int k : _adjacent[x]) {
+                    int from = _from[k], to = _to[k];
+                    int[][] left = _left.get(k);
+                    int offset = _offset[k];
+                    if (narrow(domains, to, from, left[0], offset, image)
+                        && !queued[to]) {
+                        queued[to] = true;
+                        stack[top++] = to;
+                    }
+                    if (narrow(domains, from, to, left[1], offset, image)
+                        && !queued[from]) {
+                        queued[from] = true;
+                        stack[top++] = from;
+                    }
+                }
+            }
+            int hidden = hiddenSingle(domains);
+            if (hidden == -2) {
+                return false;
+            } else if (hidden < 0) {
+                return true;
+            }
+            queued[hidden] = true;
+            stack[top++] = hidden;
+        }
+    }
+
+    /** Narrow the domain of point X in DOMAINS to the image of that of Y
+     *  under the permutation z -> MAP(z - OFFSET) + OFFSET, using IMAGE
+     *  as working storage.  Returns true iff the domain of X changed. */
+    private boolean narrow(long[] domains, int x, int y, int[] map,
+                           int offset, long[] image) {
+        Arrays.fill(image, 0);
+        int base = y * _words;
+        for (int w = 0; w < _words; w += 1) {
+            for (long bits = domains[base + w]; bits != 0;
+                 bits &= bits - 1) {
+                int z = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                int v = wrap(map[wrap(z - offset)] + offset);
+                image[v >>> WORD_SHIFT] |= 1L << v;
+            }
+        }
+        boolean changed = false;
+        base = x * _words;
+        for (int w = 0; w < _words; w += 1) {
+            long narrowed = domains[base + w] & image[w];
+            changed |= narrowed != domains[base + w];
+            domains[base + w] = narrowed;
+        }
+        return changed;
+    }
+
+    /** Fix in DOMAINS a value that is possible at only one point whose
+     *  domain is larger, returning that point, or return -2 if some value
+     *  is possible nowhere, or -1 if neither. */
+    private int hiddenSingle(long[] domains) {
+        int[] where = new int[_size], times = new int[_size];
+        for (int x = 0; x < _size; x += 1) {
+            for (int v : values(domains, x)) {
+                where[v] = x;
+                times[v] += 1;
+            }
+        }
+        for (int v = 0; v < _size; v += 1) {
+            if (times[v] == 0) {
+                return -2;
+            } else if (times[v] == 1 && count(domains, where[v]) > 1) {
+                single(domains, where[v], v);
+                return where[v];
+            }
+        }
+        return -1;
+    }
+
+    /** Return the mapping of the slots left of SLOT of USED, through the
+     *  reflector and back, at their positions, and its inverse. */
+    private int[][] left(ArrayList<Rotor> used, int slot) {
+        StringBuilder key = new StringBuilder();
+        for (int k = 0; k < slot; k += 1) {
+            key.append(used.get(k).name()).append(' ')
+                .append(used.get(k).setting() - used.get(k).ring())
+                .append(' ');
+        }
+        return _lefts.computeIfAbsent(key.toString(), (k) -> {
+            int[][] result = new int[2][_size];
+            for (int c = 0; c < _size; c += 1) {
+                int x = c;
+                for (int s = slot - 1; s >= 0; s -= 1) {
+                    x = used.get(s).convertForward(x);
+                }
+                for (int s = 1; s < slot; s += 1) {
+                    x = used.get(s).convertBackward(x);
+                }
+                result[0][c] = x;
+                result[1][x] = c;
+            }
+            return result;
+        });
+    }
+
+    /** Return the conversion of C by the slots right of SLOT of USED at
+     *  their positions. */
+    private static int right(ArrayList<Rotor> used, int slot, int c) {
+        for (int s = used.size() - 1; s > slot; s -= 1) {
+            c = used.get(s).convertForward(c);
+        }
+        return c;
+    }
+
+    /** Return the permutation of my alphabet that maps each C to
+     *  WIRING[C]. */
+    private Permutation permutation(int[] wiring) {
+        return new Permutation(cycles(wiring, _alphabet), _alphabet);
+    }
+
+    /** Return PERM in the cycle notation of configuration files. */
+    static String cycles(Permutation perm) {
+        int[] wiring = new int[perm.size()];
+        for (int c = 0; c < wiring.length; c += 1) {
+            wiring[c] = perm.wrap(perm.permute(c));
+        }
+        return cycles(wiring, perm.alphabet());
+    }
+
+    /** Return the permutation of ALPHA mapping each C to WIRING[C] in
+     *  cycle notation. */
+    private static String cycles(int[] wiring, Alphabet alpha) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[wiring.length];
+        for (int c = 0; c < wiring.length; c += 1) {
+            if (seen[c]) {
+                continue;
+            }
+            result.append(result.length() == 0 ? "(" : " (");
+            for (int x = c; !seen[x]; x = wiring[x]) {
+                seen[x] = true;
+                result.append(alpha.toChar(x));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return P modulo the size of my alphabet. */
+    private int wrap(int p) {
+        int r = p % _size;
+        return r < 0 ? r + _size : r;
+    }
+
+    /** Return true iff V is in the domain of X in DOMAINS. */
+    private boolean get(long[] domains, int x, int v) {
+        return (domains[x * _words + (v >>> WORD_SHIFT)] & (1L << v)) != 0;
+    }
+
+    /** Add V to the domain of X in DOMAINS. */
+    private void set(long[] domains, int x, int v) {
+        domains[x * _words + (v >>> WORD_SHIFT)] |= 1L << v;
+    }
+
+    /** Remove V from the domain of X in DOMAINS. */
+    private void clear(long[] domains, int x, int v) {
+        domains[x * _words + (v >>> WORD_SHIFT)] &= ~(1L << v);
+    }
+
+    /** Make the domain of X in DOMAINS just V. */
+    private void single(long[] domains, int x, int v) {
+        Arrays.fill(domains, x * _words, (x + 1) * _words, 0);
+        set(domains, x, v);
+    }
+
+    /** Return the size of the domain of X in DOMAINS. */
+    private int count(long[] domains, int x) {
+        int count = 0;
+        for (int w = x * _words; w < (x + 1) * _words; w += 1) {
+            count += Long.bitCount(domains[w]);
+        }
+        return count;
+    }
+
+    /** Return the smallest value in the domain of X in DOMAINS, or -1. */
+    private int first(long[] domains, int x) {
+        for (int w = 0; w < _words; w += 1) {
+            long bits = domains[x * _words + w];
+            if (bits != 0) {
+                return w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    /** Return the values in the domain of X in DOMAINS, in order. */
+    private int[] values(long[] domains, int x) {
+        int[] result = new int[count(domains, x)];
+        int k = 0;
+        for (int w = 0; w < _words; w += 1) {
+            for (long bits = domains[x * _words + w]; bits != 0;
+                 bits &= bits - 1) {
+                result[k++] =
+                    w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return result;
+    }
+
+    /** Levels of the search whose branches are explored in parallel. */
+    static final int PARALLEL_DEPTH = 2;
+
+    /** Shift giving the word of a bit set holding a value. */
+    private static final int WORD_SHIFT = 6;
+
+    /** Constraints for which room is first made. */
+    private static final int INITIAL_CONSTRAINTS = 64;
+
+    /** Machine holding the known rotors. */
+    private final Machine _machine;
+
+    /** The rotor whose wiring is sought. */
+    private final Rotor _rotor;
+
+    /** Alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet, and longs in the bit set of a domain. */
+    private final int _size, _words;
+
+    /** True iff the rotor sought is the reflector, whose wiring is then
+     *  an involution without fixed points. */
+    private final boolean _reflecting;
+
+    /** Ends and offset of each constraint
+     *  Q(TO) = LEFT(Q(FROM) - OFFSET) + OFFSET, in their first
+     *  _constraints elements. */
+    private int[] _from = new int[0], _to = new int[0], _offset = new int[0];
+
+    /** Number of constraints. */
+    private int _constraints;
+
+    /** Known letters added. */
+    private int _letters;
+
+    /** Left mapping of each constraint and its inverse. */
+    private final ArrayList<int[][]> _left = new ArrayList<>();
+
+    /** Values Q(X) = Y known outright, as pairs X, Y, when the rotor
+     *  sought is the reflector: each known letter gives both Q(A) = B
+     *  and Q(B) = A. */
+    private final ArrayList<int[]> _fixed = new ArrayList<>();
+
+    /** Left mappings computed, by positions of the slots concerned. */
+    private final HashMap<String, int[][]> _lefts = new HashMap<>();
+
+    /** Constraints at each point, as indices. */
+    private int[][] _adjacent;
+
+}
@@ -0,0 +1,110 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the WiringSolver class.
+ *  @author Divya Sivanandan
+ */
+public class WiringSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Return navalMachine() with the wiring of rotor NAME, which
+     *  has notches NOTCHES, replaced by the identity. */
+    private Machine withUnknown(String name, String notches) {
+        Machine known = navalMachine();
+        HashMap<String, Rotor> rotors = known.getAllRotors();
+        Permutation none = new Permutation("", UPPER);
+        rotors.put(name, notches == null ? new Reflector(name, none)
+                   : new MovingRotor(name, none, notches));
+        Machine M = new Machine(UPPER, 5, 3, rotors);
+        M.setPlugboard(new Permutation("", UPPER));
+        return M;
+    }
+
+    /** Check that SOLVER, given LETTERS of known text per message under
+     *  settings using ROTORS, recovers the wiring of the rotor NAME. */
+    private void checkSolve(String name, String notches, String rotors,
+                            int messages, int letters) {
+        Random random = new Random(49);
+        WiringSolver solver =
+            new WiringSolver(withUnknown(name, notches), name);
+        for (int m = 0; m < messages; m += 1) {
+            StringBuilder plain = new StringBuilder();
+            StringBuilder position = new StringBuilder();
+            for (int i = 0; i < letters; i += 1) {
+                plain.append((char) ('A' + random.nextInt(26)));
+            }
+            for (int i = 0; i < 4; i += 1) {
+                position.append((char) ('A' + random.nextInt(26)));
+            }
+            String settings = "* " + rotors + " " + position
+                + " (HQ) (EX) (IP) (TR) (BW)";
+            Machine M = navalMachine();
+            Main.configure(M, settings);
+            solver.add(settings, plain.toString(),
+                       M.convert(plain.toString()));
+        }
+        assertEquals(messages * letters, solver.letters());
+        List<Permutation> solutions = solver.solve(2);
+        assertEquals(1, solutions.size());
+        Permutation truth = navalMachine().getAllRotors().get(name)
+            .permutation();
+        for (int c = 0; c < 26; c += 1) {
+            assertEquals(truth.wrap(truth.permute(c)),
+                         solutions.get(0).wrap(solutions.get(0).permute(c)));
+        }
+    }
+
+    @Test
+    public void testRightmost() {
+        checkSolve("I", "Q", "B Beta III IV I", 4, 60);
+    }
+
+    @Test
+    public void testMiddle() {
+        checkSolve("IV", "J", "B Beta III IV I", 4, 60);
+    }
+
+    @Test
+    public void testReflector() {
+        checkSolve("C", null, "C Beta III IV I", 10, 60);
+    }
+
+    @Test
+    public void testReflectorPairs() {
+        String settings = "* C Beta III IV I AXLE";
+        Machine M = navalMachine();
+        Main.configure(M, settings);
+        WiringSolver solver = new WiringSolver(withUnknown("C", null), "C");
+        solver.add(settings, "HIAWATHA", M.convert("HIAWATHA"));
+        assertEquals(8, solver.letters());
+        List<Permutation> solutions = solver.solve(50);
+        assertEquals(50, solutions.size());
+        for (Permutation Q : solutions) {
+            for (int c = 0; c < 26; c += 1) {
+                int q = Q.wrap(Q.permute(c));
+                assertTrue(q != c);
+                assertEquals(c, Q.wrap(Q.permute(q)));
+            }
+        }
+        try {
+            solver.add(settings, "A", "A");
+            fail("reflector fixed point accepted");
+        } catch (EnigmaException excp) {
+            assertEquals(8, solver.letters());
+        }
+    }
+
+}
@@ -0,0 +1,487 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** Perforated sheets for recovering the wheel order and ring settings
+ *  from indicators: message keys of D = numRotors - 1 letters,
+ *  enciphered twice in succession from a ground setting sent in the
+ *  clear.  When letters J and J + D of an enciphered indicator agree
+ *  (a "female"), the substitutions of the machine at those two letters
+ *  map some letter to the same letter, whatever the plugboard, which
+ *  only conjugates them.
+ *
+ *  As with the original sheets, only the rightmost rotor is assumed to
+ *  move during the 2 * D letters, so whether a female is possible at J
+ *  depends only on the wiring offsets of the rotors (see KeySpace): a
+ *  sheet, for each wheel order, offsets of all but the two rightmost
+ *  slots and J, is a grid over the offsets of those two, with a hole
+ *  where a female is possible.  Rows are packed into longs, each row
+ *  stored twice over and reversed so that the grid of every message,
+ *  whose offsets are its ground setting less the unknown rings, is read
+ *  off a shifted row.  A search then, for each wheel order and rings of
+ *  the left slots, ANDs the shifted rows of every female of the day's
+ *  traffic, and what survives are the possible rings of the right two.
+ *  Messages in which another rotor does turn over may eliminate the
+ *  right answer, as they could with the sheets.
+ *
+ *  Sheets are built in parallel, one wheel order per task, and saved to
+ *  a file, big-endian:
+ *      MAGIC, HEADER (length of what follows up to the sheets),
+ *      ALPHABET (modified UTF-8), SLOTS, ORDERS, and each wheel order's
+ *      rotor names (modified UTF-8, separated by blanks),
+ *  then the rows, by wheel order, left offsets, J and row.  Rows are
+ *  streamed to the file, and read from it mapped, not copied.  Only
+ *  alphabets of at most MAX_SIZE characters are supported, so that a
+ *  doubled row fits in one long.
+ *  @author Divya Sivanandan
+ */
+public final class ZygalskiSheets {
+
+    /** Build or search sheets as specified by ARGS, which are either
+     *      CONFIG SHEETS [ROTORS...]
+     *  to write to SHEETS the sheets of the machine configured by the
+     *  file CONFIG for each wheel order ROTORS (reflector first, rotor
+     *  names separated by blanks), or for every wheel order of its
+     *  KeySpace if none are given, or
+     *      --search SHEETS TRAFFIC
+     *  to print the wheel orders and ring settings consistent with the
+     *  females of the indicators in the file TRAFFIC, each line of which
+     *  is a ground setting and the doubled indicator sent with it. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 3 && args[0].equals("--search")) {
+                ZygalskiSheets sheets = load(new File(args[1]));
+                List<String> grounds = new ArrayList<>(),
+                    indicators = new ArrayList<>();
+                try (Scanner in = Main.open(new File(args[2]))) {
+                    while (in.hasNext()) {
+                        grounds.add(in.next());
+                        if (!in.hasNext()) {
+                            throw error("indicator missing");
+                        }
+                        indicators.add(in.next());
+                    }
+                }
+                long start = System.nanoTime();
+                List<Match> matches = sheets.search(grounds, indicators);
+                for (Match match : matches) {
+                    System.out.println(match);
+                }
+                System.err.printf("%d matches in %.1f ms%n", matches.size(),
+                                  (System.nanoTime() - start) / 1e6);
+                return;
+            }
+            if (args.length < 2) {
+                throw error("usage: ZygalskiSheets CONFIG SHEETS "
+                            + "[ROTORS...] | --search SHEETS TRAFFIC");
+            }
+            Machine M;
+            try (Scanner config = Main.open(new File(args[0]))) {
+                M = Main.configure(config);
+            }
+            List<String[]> orders = new ArrayList<>();
+            for (int k = 2; k < args.length; k += 1) {
+                orders.add(args[k].trim().split("\\s+"));
+            }
+            if (orders.isEmpty()) {
+                KeySpace keys = new KeySpace(M);
+                long perOrder = keys.positions() * keys.timings();
+                for (long w = 0; w < keys.size(); w += perOrder) {
+                    orders.add(keys.rotors(w));
+                }
+            }
+            new ZygalskiSheets(M, orders).save(new File(args[1]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A wheel order and ring settings consistent with some traffic. */
+    static final class Match {
+
+        /** A match of the rotors ROTORS, reflector first, with ring
+         *  settings RINGS, leftmost first. */
+        Match(String[] rotors, String rings) {
+            _rotors = rotors;
+            _rings = rings;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors;
+        }
+
+        /** Return my ring settings, leftmost rotor first. */
+        String rings() {
+            return _rings;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", _rotors) + " rings " + _rings;
+        }
+
+        /** My rotors. */
+        private final String[] _rotors;
+        /** My ring settings. */
+        private final String _rings;
+    }
+
+    /** The sheets of the rotors of M for each of the wheel ORDERS, each
+     *  naming rotors available to M, reflector first. */
+    ZygalskiSheets(Machine M, List<String[]> orders) {
+        this(M.alphabet(), M.numRotors(), orders);
+        for (String[] order : orders) {
+            if (order.length != _slots) {
+                throw error("wrong number of rotors");
+            }
+            for (String name : order) {
+                if (!M.checkRotorAvailable(name)) {
+                    throw error("Rotor not available");
+                }
+            }
+        }
+        long length = (long) orders.size() * sheets() * _period * _size;
+        if (length * Long.BYTES > MAX_BYTES) {
+            throw error("too many sheets; give fewer wheel orders");
+        }
+        _rows = LongBuffer.allocate((int) length);
+        IntStream.range(0, orders.size()).parallel()
+            .forEach((w) -> build(M.copy(), w));
+    }
+
+    /** Empty sheets in ALPHA for SLOTS slots and wheel ORDERS. */
+    private ZygalskiSheets(Alphabet alpha, int slots, List<String[]> orders) {
+        if (alpha.size() > MAX_SIZE) {
+            throw error("sheets need an alphabet of at most %d characters",
+                        MAX_SIZE);
+        } else if (slots < MIN_SLOTS) {
+            throw error("sheets need at least %d rotor slots", MIN_SLOTS);
+        }
+        _alphabet = alpha;
+        _size = alpha.size();
+        _slots = slots;
+        _period = slots - 1;
+        _orders = new ArrayList<>(orders);
+    }
+
+    /** Return the number of wheel orders I cover. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return the number of sheets of each wheel order and female
+     *  position: one for each set of offsets of the left slots. */
+    int sheets() {
+        int sheets = 1;
+        for (int k = 0; k < _period - 2; k += 1) {
+            sheets *= _size;
+        }
+        return sheets;
+    }
+
+    /** Return the positions within an enciphered indicator, 0 .. D - 1,
+     *  where D is half its length, of the females of INDICATOR. */
+    static int[] females(String indicator) {
+        if (indicator.length() % 2 != 0) {
+            throw error("indicator %s is not doubled", indicator);
+        }
+        int d = indicator.length() / 2;
+        return IntStream.range(0, d)
+            .filter((j) -> indicator.charAt(j) == indicator.charAt(j + d))
+            .toArray();
+    }
+
+    /** Return the wheel orders and ring settings that allow every female
+     *  of INDICATORS, doubled indicators each enciphered starting at the
+     *  ground setting of the same index in GROUNDS, in order. */
+    List<Match> search(List<String> grounds, List<String> indicators) {
+        if (grounds.size() != indicators.size()) {
+            throw error("a ground setting for each indicator is needed");
+        }
+        ArrayList<int[]> females = new ArrayList<>();
+        for (int m = 0; m < grounds.size(); m += 1) {
+            String ground = grounds.get(m), indicator = indicators.get(m);
+            if (ground.length() != _period
+                || indicator.length() != 2 * _period) {
+                throw error("wrong length of ground setting or indicator");
+            }
+            for (int j : females(indicator)) {
+                int[] female = new int[_period + 1];
+                for (int k = 0; k < _period; k += 1) {
+                    female[k] = _alphabet.toInt(ground.charAt(k));
+                    if (female[k] < 0) {
+                        throw error("invalid ground setting %s", ground);
+                    }
+                }
+                female[_period] = j;
+                females.add(female);
+            }
+        }
+        if (females.isEmpty()) {
+            throw error("no females in the traffic");
+        }
+        int[][] all = females.toArray(new int[0][]);
+        return IntStream.range(0, orders()).parallel()
+            .mapToObj((w) -> search(w, all))
+            .flatMap(List::stream)
+            .collect(Collectors.toList());
+    }
+
+    /** Return the matches of wheel order W with FEMALES, each the ground
+     *  setting of a message followed by the position of a female. */
+    private List<Match> search(int w, int[][] females) {
+        ArrayList<Match> result = new ArrayList<>();
+        int n = _size, d = _period, sheets = sheets();
+        long mask = (1L << n) - 1;
+        long[] rows = new long[n];
+        int[] rings = new int[d];
+        for (int left = 0; left < sheets; left += 1) {
+            digits(left, rings, d - 2);
+            Arrays.fill(rows, mask);
+            long any = mask;
+            for (int f = 0; f < females.length && any != 0; f += 1) {
+                int[] female = females[f];
+                int sheet = 0;
+                for (int k = 0; k < d - 2; k += 1) {
+                    sheet = sheet * n + Math.floorMod(female[k] - rings[k], n);
+                }
+                int base = ((w * sheets + sheet) * d + female[d]) * n;
+                int shift = (n - female[d - 1]) % n, g = female[d - 2];
+                any = 0;
+                for (int r = 0; r < n; r += 1) {
+                    long row = _rows.get(base + Math.floorMod(g - r, n));
+                    rows[r] &= row >>> shift;
+                    any |= rows[r];
+                }
+            }
+            for (int r = 0; r < n && any != 0; r += 1) {
+                for (long bits = rows[r] & mask; bits != 0;
+                     bits &= bits - 1) {
+                    rings[d - 2] = r;
+                    rings[d - 1] = Long.numberOfTrailingZeros(bits);
+                    StringBuilder letters = new StringBuilder();
+                    for (int ring : rings) {
+                        letters.append(_alphabet.toChar(ring));
+                    }
+                    result.add(new Match(_orders.get(w),
+                                         letters.toString()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Store in DIGITS[0 .. COUNT - 1] the digits of VALUE in base
+     *  _size, most significant first. */
+    private void digits(int value, int[] digits, int count) {
+        for (int k = count - 1; k >= 0; k -= 1) {
+            digits[k] = value % _size;
+            value /= _size;
+        }
+    }
+
+    /** Fill the sheets of wheel order W, using the rotors of M.  The
+     *  slots left of the rightmost two collapse into one substitution
+     *  for each sheet, as in CompiledMachine, which each of those two
+     *  then conjugates. */
+    private void build(Machine M, int w) {
+        int n = _size, d = _period, sheets = sheets();
+        int[][][] fwd = new int[_slots][][], bwd = new int[_slots][][];
+        for (int k = 0; k < _slots; k += 1) {
+            Rotor r = M.getAllRotors().get(_orders.get(w)[k]);
+            r.setRing(0);
+            fwd[k] = new int[k == 0 ? 1 : n][n];
+            bwd[k] = new int[fwd[k].length][n];
+            for (int p = 0; p < fwd[k].length; p += 1) {
+                r.set(p);
+                for (int c = 0; c < n; c += 1) {
+                    fwd[k][p][c] = r.convertForward(c);
+                    bwd[k][p][c] = r.convertBackward(c);
+                }
+            }
+        }
+        int[] offsets = new int[d], core = new int[n], inner = new int[n];
+        int[][] subs = new int[n][n];
+        int[][] fwdU = fwd[_slots - 2], bwdU = bwd[_slots - 2];
+        int[][] fwdV = fwd[_slots - 1], bwdV = bwd[_slots - 1];
+        for (int sheet = 0; sheet < sheets; sheet += 1) {
+            digits(sheet, offsets, d - 2);
+            for (int c = 0; c < n; c += 1) {
+                int x = c;
+                for (int k = _slots - 3; k > 0; k -= 1) {
+                    x = fwd[k][offsets[k - 1]][x];
+                }
+                x = fwd[0][0][x];
+                for (int k = 1; k < _slots - 2; k += 1) {
+                    x = bwd[k][offsets[k - 1]][x];
+                }
+                core[c] = x;
+            }
+            for (int u = 0; u < n; u += 1) {
+                for (int c = 0; c < n; c += 1) {
+                    inner[c] = bwdU[u][core[fwdU[u][c]]];
+                }
+                for (int v = 0; v < n; v += 1) {
+                    for (int c = 0; c < n; c += 1) {
+                        subs[v][c] = bwdV[v][inner[fwdV[v][c]]];
+                    }
+                }
+                for (int j = 0; j < d; j += 1) {
+                    long row = 0;
+                    for (int v = 0; v < n; v += 1) {
+                        if (meet(subs[(v + j + 1) % n],
+                                 subs[(v + j + 1 + d) % n])) {
+                            int reversed = (n - v) % n;
+                            row |= (1L << reversed) | (1L << (reversed + n));
+                        }
+                    }
+                    _rows.put(((w * sheets + sheet) * d + j) * n + u, row);
+                }
+            }
+        }
+    }
+
+    /** Return true iff A and B map some character to the same one. */
+    private static boolean meet(int[] a, int[] b) {
+        for (int c = 0; c < a.length; c += 1) {
+            if (a[c] == b[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Save my sheets to FILE, streaming the rows to a temporary file
+     *  that then replaces FILE. */
+    void save(File file) {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream head = new DataOutputStream(header)) {
+            StringBuilder chars = new StringBuilder();
+            for (int c = 0; c < _size; c += 1) {
+                chars.append(_alphabet.toChar(c));
+            }
+            head.writeUTF(chars.toString());
+            head.writeInt(_slots);
+            head.writeInt(_orders.size());
+            for (String[] order : _orders) {
+                head.writeUTF(String.join(" ", order));
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+        AtomicFile.write(file, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeLong(MAGIC);
+            out.writeInt(header.size());
+            header.writeTo(out);
+            ByteBuffer block = ByteBuffer.allocate(WRITE_BYTES);
+            LongBuffer rows = _rows.duplicate();
+            rows.clear();
+            while (rows.hasRemaining()) {
+                LongBuffer longs = block.asLongBuffer();
+                int n = Math.min(longs.remaining(), rows.remaining());
+                LongBuffer part = rows.slice();
+                part.limit(n);
+                longs.put(part);
+                rows.position(rows.position() + n);
+                out.write(block.array(), 0, n * Long.BYTES);
+            }
+            out.flush();
+        });
+    }
+
+    /** Return the sheets saved in FILE. */
+    static ZygalskiSheets load(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                                               StandardOpenOption.READ)) {
+            MappedByteBuffer data =
+                in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (data.limit() < PREFIX_BYTES || data.getLong(0) != MAGIC) {
+                throw error("%s is not a sheets file", file);
+            }
+            byte[] header = new byte[data.getInt(Long.BYTES)];
+            data.position(PREFIX_BYTES);
+            data.get(header);
+            DataInputStream head =
+                new DataInputStream(new ByteArrayInputStream(header));
+            Alphabet alpha = new Alphabet(head.readUTF());
+            int slots = head.readInt();
+            List<String[]> orders = new ArrayList<>();
+            for (int w = head.readInt(); w > 0; w -= 1) {
+                orders.add(head.readUTF().split(" "));
+            }
+            ZygalskiSheets result = new ZygalskiSheets(alpha, slots, orders);
+            long length = (long) orders.size() * result.sheets()
+                * result._period * result._size;
+            if (data.remaining() != length * Long.BYTES) {
+                throw error("%s is truncated", file);
+            }
+            result._rows = data.slice().asLongBuffer();
+            return result;
+        } catch (IOException | RuntimeException excp) {
+            if (excp instanceof EnigmaException) {
+                throw (EnigmaException) excp;
+            }
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Largest alphabet supported. */
+    static final int MAX_SIZE = Long.SIZE / 2;
+
+    /** Fewest rotor slots supported: the reflector and two rotors. */
+    static final int MIN_SLOTS = 3;
+
+    /** Largest sheets built. */
+    static final long MAX_BYTES = 1L << 30;
+
+    /** Bytes of rows written at a time by save. */
+    private static final int WRITE_BYTES = 1 << 16;
+
+    /** Marks a sheets file. */
+    private static final long MAGIC = 0x656e69676d615a53L;
+
+    /** Bytes of MAGIC and of the length of the header. */
+    private static final int PREFIX_BYTES = Long.BYTES + Integer.BYTES;
+
+    /** Alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of rotor slots, and of letters in an indicator. */
+    private final int _slots, _period;
+
+    /** Wheel orders, reflector first. */
+    private final List<String[]> _orders;
+
+    /** Rows of the sheets, by wheel order, offsets of the left slots,
+     *  position of a female and offset of the second slot from the
+     *  right, as doubled reversed bit sets over the offsets of the
+     *  rightmost slot: on the heap when built, and mapped when
+     *  loaded. */
+    private LongBuffer _rows;
+
+}
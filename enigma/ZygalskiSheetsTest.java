@@ -0,0 +1,88 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ZygalskiSheets class.
+ *  @author Divya Sivanandan
+ */
+public class ZygalskiSheetsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return a random string of LENGTH letters from RANDOM. */
+    private String letters(Random random, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append((char) ('A' + random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testFemales() {
+        assertArrayEquals(new int[] { 1, 2 },
+                          ZygalskiSheets.females("ABCAXBCE"));
+        assertEquals(0, ZygalskiSheets.females("ABCDEFGH").length);
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        Random random = new Random(48);
+        String rings = "QDVM";
+        List<String> grounds = new ArrayList<>(),
+            indicators = new ArrayList<>();
+        int females = 0;
+        while (females < 40) {
+            Machine M = navalMachine();
+            String ground = letters(random, 4);
+            Main.configure(M, "* B Beta III IV I " + ground + " " + rings
+                           + " (HQ) (EX) (IP) (TR) (BW)");
+            String key = letters(random, 4);
+            String indicator = M.convert(key + key);
+            StringBuilder after = new StringBuilder();
+            for (int k = 1; k < 4; k += 1) {
+                after.append(UPPER.toChar(M.getRotorsUsed().get(k)
+                                          .setting()));
+            }
+            if (!ground.startsWith(after.toString())) {
+                continue;
+            }
+            grounds.add(ground);
+            indicators.add(indicator);
+            females += ZygalskiSheets.females(indicator).length;
+        }
+
+        String[] truth = { "B", "Beta", "III", "IV", "I" };
+        String[] decoy = { "B", "Beta", "I", "II", "III" };
+        ZygalskiSheets sheets =
+            new ZygalskiSheets(navalMachine(), Arrays.asList(decoy, truth));
+        File file = File.createTempFile("sheets", ".zyg");
+        sheets.save(file);
+        ZygalskiSheets loaded = ZygalskiSheets.load(file);
+        file.delete();
+        assertEquals(2, loaded.orders());
+        List<ZygalskiSheets.Match> matches =
+            loaded.search(grounds, indicators);
+        assertTrue(matches.size() < 10);
+        boolean found = false;
+        for (ZygalskiSheets.Match match : matches) {
+            found |= Arrays.equals(truth, match.rotors())
+                && match.rings().equals(rings);
+        }
+        assertTrue(found);
+    }
+
+}